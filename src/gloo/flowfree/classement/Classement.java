@@ -0,0 +1,573 @@
+package gloo.flowfree.classement;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gloo.flowfree.model.Niveau;
+
+/**
+ * <b>Classement sur disque des meilleurs temps et des plus petits nombres de coups
+ * de chaque joueur sur chaque niveau, projeté en mémoire.</b>
+ * 
+ * <p> Format du fichier, à enregistrements de taille fixe :
+ * <ul>
+ *     <li> En-tête (64 octets) : entier magique "FFCL", version, capacités des tables
+ *          d'entrées, de niveaux et de profils (puissances de 2), puis nombres
+ *          d'entrées, de niveaux et de profils (longs).
+ *     <li> Profils (64 octets) : longueur puis nom UTF-8 du joueur. L'identifiant d'un
+ *          joueur est l'indice de son profil.
+ *     <li> Niveaux, table à adressage ouvert indexée par l'empreinte du niveau
+ *          (TAILLE_NIVEAU octets) : empreinte, version, puis les TAILLE_PODIUM meilleurs
+ *          joueurs du niveau par temps, puis par nombre de coups (score et identifiant
+ *          du joueur, longs).
+ *     <li> Entrées, table à adressage ouvert indexée par une clé mêlant l'empreinte du
+ *          niveau et l'identifiant du joueur (32 octets) : clé, meilleur score par temps,
+ *          meilleur score par coups, nombre de réussites.
+ * </ul>
+ * 
+ * <p> Un score par temps est le temps en microsecondes suivi du nombre de coups ; un
+ * score par coups est le nombre de coups suivi du temps : le plus petit score est le
+ * meilleur, et les égalités sont départagées par l'autre critère. 0 marque un score
+ * absent.
+ * 
+ * <p> Le fichier n'est jamais chargé dans le tas, seuls les noms des joueurs y sont
+ * gardés. Les mises à jour ne prennent aucun verrou : une entrée est réservée par
+ * comparaison-échange de sa clé, et un record personnel remplace l'ancien par
+ * comparaison-échange tant qu'il est meilleur. Les podiums des niveaux sont protégés
+ * par un compteur de version (verrou séquentiel) : un écrivain ne l'attend que s'il
+ * bat un record personnel sur un niveau qu'un autre joueur met à jour au même
+ * instant, un lecteur copie le podium sans jamais bloquer et recommence si la version
+ * a changé. Les 10 premiers d'un niveau se lisent ainsi en quelques microsecondes,
+ * quel que soit le nombre d'entrées.
+ * 
+ * <p> Les capacités sont fixées à la création du fichier, qui est creux : seules les
+ * pages écrites occupent le disque. Un fichier ne doit être ouvert que par un
+ * processus à la fois.
+ * 
+ * <p> La version 2 peut classer des niveaux hexagonaux, que la version 1 ne
+ * connaissait pas : un programme plus ancien refuse ainsi un classement qui peut en
+ * contenir. Le format est inchangé, et un fichier de version 1 est mis à niveau à
+ * l'ouverture.
+ * 
+ * @see Niveau#getEmpreinte()
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class Classement implements Closeable {
+	
+	/**
+	 * <b>Critère de classement.</b>
+	 */
+	public enum Critere {
+		TEMPS, COUPS
+	}
+	
+	/**
+	 * <b>Résultat d'un joueur sur un niveau.</b>
+	 */
+	public static final class Place {
+		private final String joueur;
+		private final long tempsMicros;
+		private final int nbCoups;
+		
+		Place(String joueur, long tempsMicros, int nbCoups) {
+			this.joueur = joueur;
+			this.tempsMicros = tempsMicros;
+			this.nbCoups = nbCoups;
+		}
+		
+		public String getJoueur() {
+			return joueur;
+		}
+		
+		public long getTempsMicros() {
+			return tempsMicros;
+		}
+		
+		public int getNbCoups() {
+			return nbCoups;
+		}
+		
+		@Override
+		public String toString() {
+			return joueur + " " + tempsMicros / 1000 + " ms " + nbCoups + " coups";
+		}
+	}
+	
+	/**
+	 * <b>Propriété système donnant le fichier du classement ; sans elle, aucun résultat
+	 * n'est enregistré.</b>
+	 * 
+	 * @see Classement#depuisConfiguration()
+	 */
+	public static final String PROPRIETE_FICHIER = "flowfree.classement";
+	
+	/**
+	 * <b>Propriété système donnant le nom du joueur de l'IHM, par défaut le nom de
+	 * l'utilisateur du système.</b>
+	 */
+	public static final String PROPRIETE_JOUEUR = "flowfree.joueur";
+	
+	public static final int TAILLE_PODIUM = 10;
+	
+	static final int MAGIQUE = 0x4646434C;	// "FFCL"
+	static final int VERSION = 2;
+	static final int VERSION_SANS_HEXAGONES = 1;
+	private static final int TAILLE_EN_TETE = 64;
+	private static final int TAILLE_PROFIL = 64;
+	private static final int TAILLE_ENTREE = 32;
+	private static final int TAILLE_NIVEAU = 16 + 2 * TAILLE_PODIUM * 16;
+	private static final int CAPACITE_ENTREES = 1 << 22;
+	private static final int CAPACITE_NIVEAUX = 1 << 18;
+	private static final int CAPACITE_PROFILS = 1 << 16;
+	
+	// Positions des compteurs dans l'en-tête
+	private static final int NB_ENTREES = 24;
+	private static final int NB_NIVEAUX = 32;
+	private static final int NB_PROFILS = 40;
+	
+	private static final int BITS_COUPS = 23;
+	private static final int BITS_TEMPS = 40;
+	private static final long MAX_COUPS = (1L << BITS_COUPS) - 1;
+	private static final long MAX_TEMPS = (1L << BITS_TEMPS) - 1;
+	
+	/**
+	 * <b>Accès atomiques aux longs de la projection (alignés sur 8 octets).</b>
+	 */
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	
+	private static Classement partage;
+	private static boolean partageOuvert;
+	
+	private final Path fichier;
+	private final FileChannel canal;
+	private final MappedByteBuffer carte;
+	private final int capaciteEntrees;
+	private final int capaciteNiveaux;
+	private final int capaciteProfils;
+	private final int debutNiveaux;
+	private final int debutEntrees;
+	
+	/**
+	 * <b>Identifiant de chaque joueur inscrit, lu à l'ouverture.</b>
+	 */
+	private final ConcurrentHashMap<String, Integer> profils = new ConcurrentHashMap<String, Integer>();
+	
+	private Classement(Path fichier, int capaciteEntrees, int capaciteNiveaux, int capaciteProfils) throws IOException {
+		this.fichier = fichier;
+		this.canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		boolean nouveau = canal.size() == 0;
+		if (!nouveau) {
+			ByteBuffer enTete = ByteBuffer.allocate(TAILLE_EN_TETE);
+			canal.read(enTete, 0);
+			enTete.flip();
+			if (enTete.remaining() < TAILLE_EN_TETE || enTete.getInt() != MAGIQUE) {
+				canal.close();
+				throw new IOException(fichier + " n'est pas un classement FlowFree");
+			}
+			int version = enTete.getInt();
+			if (version != VERSION && version != VERSION_SANS_HEXAGONES) {
+				canal.close();
+				throw new IOException(fichier + " : version " + version + " non supportée");
+			}
+			capaciteEntrees = enTete.getInt();
+			capaciteNiveaux = enTete.getInt();
+			capaciteProfils = enTete.getInt();
+		}
+		this.capaciteEntrees = capaciteEntrees;
+		this.capaciteNiveaux = capaciteNiveaux;
+		this.capaciteProfils = capaciteProfils;
+		long niveaux = TAILLE_EN_TETE + (long) capaciteProfils * TAILLE_PROFIL;
+		long entrees = niveaux + (long) capaciteNiveaux * TAILLE_NIVEAU;
+		long taille = entrees + (long) capaciteEntrees * TAILLE_ENTREE;
+		if (taille > Integer.MAX_VALUE || (!nouveau && canal.size() < taille)) {
+			canal.close();
+			throw new IOException(fichier + " : taille du classement invalide");
+		}
+		this.debutNiveaux = (int) niveaux;
+		this.debutEntrees = (int) entrees;
+		this.carte = canal.map(FileChannel.MapMode.READ_WRITE, 0, taille);
+		if (nouveau) {
+			carte.putInt(0, MAGIQUE);
+			carte.putInt(4, VERSION);
+			carte.putInt(8, capaciteEntrees);
+			carte.putInt(12, capaciteNiveaux);
+			carte.putInt(16, capaciteProfils);
+		} else {
+			carte.putInt(4, VERSION);
+		}
+		long nbProfils = (long) LONGS.getVolatile(carte, NB_PROFILS);
+		for (int id=0 ; id < nbProfils ; id++) {
+			String nom = nomJoueur(id);
+			if (!nom.isEmpty()) profils.put(nom, id);
+		}
+	}
+	
+	/**
+	 * <b>Ouvre un classement, en le créant avec les capacités par défaut s'il n'existe
+	 * pas (4 millions d'entrées, 262 144 niveaux, 65 536 joueurs).</b>
+	 * 
+	 * @param fichier Fichier du classement.
+	 * 
+	 * @return Le classement ouvert, à fermer après usage.
+	 * 
+	 * @throws IOException Si le fichier ne peut pas être ouvert ou n'est pas un
+	 *         classement valide.
+	 */
+	public static Classement ouvrir(Path fichier) throws IOException {
+		return ouvrir(fichier, CAPACITE_ENTREES, CAPACITE_NIVEAUX, CAPACITE_PROFILS);
+	}
+	
+	/**
+	 * <b>Ouvre un classement, en le créant avec les capacités données s'il n'existe
+	 * pas.</b>
+	 * 
+	 * <p> Les capacités sont arrondies à la puissance de 2 supérieure. Une table
+	 * d'entrées ou de niveaux n'est remplie qu'aux trois quarts.
+	 * 
+	 * @param fichier Fichier du classement.
+	 * @param capaciteEntrees Nombre de couples (joueur, niveau) à prévoir.
+	 * @param capaciteNiveaux Nombre de niveaux à prévoir.
+	 * @param capaciteProfils Nombre de joueurs à prévoir.
+	 * 
+	 * @return Le classement ouvert, à fermer après usage.
+	 * 
+	 * @throws IOException Si le fichier ne peut pas être ouvert, n'est pas un
+	 *         classement valide ou dépasserait 2 Go.
+	 */
+	public static Classement ouvrir(Path fichier, int capaciteEntrees, int capaciteNiveaux, int capaciteProfils)
+			throws IOException {
+		return new Classement(fichier, puissanceDeDeux(capaciteEntrees), puissanceDeDeux(capaciteNiveaux),
+				puissanceDeDeux(capaciteProfils));
+	}
+	
+	/**
+	 * <b>Classement commun à toute la JVM, ouvert au premier appel si la propriété
+	 * système flowfree.classement est définie.</b>
+	 * 
+	 * @return Le classement partagé, null si la propriété n'est pas définie ou si le
+	 *         fichier ne peut pas être ouvert.
+	 */
+	public static synchronized Classement depuisConfiguration() {
+		if (!partageOuvert) {
+			partageOuvert = true;
+			String chemin = System.getProperty(PROPRIETE_FICHIER);
+			if (chemin != null) {
+				try {
+					partage = ouvrir(Path.of(chemin));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return partage;
+	}
+	
+	/**
+	 * @return Le nom du joueur de l'IHM.
+	 * 
+	 * @see Classement#PROPRIETE_JOUEUR
+	 */
+	public static String joueurConfigure() {
+		return System.getProperty(PROPRIETE_JOUEUR, System.getProperty("user.name", "joueur"));
+	}
+	
+	// Getters
+	public long getNbEntrees() {
+		return (long) LONGS.getVolatile(carte, NB_ENTREES);
+	}
+	
+	public long getNbNiveaux() {
+		return (long) LONGS.getVolatile(carte, NB_NIVEAUX);
+	}
+	
+	public int getNbJoueurs() {
+		return profils.size();
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Enregistre une réussite d'un joueur sur un niveau et met à jour ses records
+	 * personnels et le podium du niveau.</b>
+	 * 
+	 * <p> Méthode sans verrou, appelable depuis n'importe quel thread.
+	 * 
+	 * @param joueur Nom du joueur, inscrit s'il ne l'est pas encore.
+	 * @param niveau Niveau réussi.
+	 * @param dureeNanos Durée de la partie, de la première sélection au coup gagnant.
+	 * @param nbCoups Nombre de coups joués.
+	 * 
+	 * @return Vrai si c'est un nouveau record personnel du joueur, en temps ou en coups.
+	 * 
+	 * @throws IllegalArgumentException Si le nom du joueur dépasse 63 octets.
+	 * @throws IllegalStateException Si le classement est plein.
+	 */
+	public boolean enregistrer(String joueur, Niveau niveau, long dureeNanos, int nbCoups) {
+		int id = inscrire(joueur);
+		long empreinte = niveau.getEmpreinte();
+		int entree = trouverEntree(cleEntree(empreinte, id), true);
+		LONGS.getAndAdd(carte, entree + 24, 1L);
+		long micros = Math.max(1, Math.min(MAX_TEMPS, dureeNanos / 1000));
+		long coups = Math.min(MAX_COUPS, Math.max(0, nbCoups));
+		int niveauTable = -1;
+		boolean record = false;
+		for (Critere critere : Critere.values()) {
+			long score = critere == Critere.TEMPS ? micros << BITS_COUPS | coups : coups << BITS_TEMPS | micros;
+			if (abaisser(entree + 8 + 8 * critere.ordinal(), score)) {
+				record = true;
+				if (niveauTable < 0) niveauTable = trouverNiveau(empreinte, true);
+				placer(niveauTable, critere, id, score);
+			}
+		}
+		return record;
+	}
+	
+	/**
+	 * <b>Meilleurs joueurs d'un niveau selon un critère.</b>
+	 * 
+	 * <p> Lit le podium du niveau sans verrou : le coût ne dépend ni du nombre de
+	 * joueurs ni du nombre d'entrées.
+	 * 
+	 * @param niveau Niveau dont on veut le classement.
+	 * @param critere Critère de classement.
+	 * @param n Nombre de places voulues, au plus TAILLE_PODIUM.
+	 * 
+	 * @return Les n premières places au plus, de la meilleure à la moins bonne.
+	 */
+	public List<Place> meilleurs(Niveau niveau, Critere critere, int n) {
+		n = Math.min(n, TAILLE_PODIUM);
+		List<Place> places = new ArrayList<Place>(Math.max(0, n));
+		int niveauTable = trouverNiveau(niveau.getEmpreinte(), false);
+		if (niveauTable < 0 || n <= 0) return places;
+		int podium = niveauTable + 16 + critere.ordinal() * TAILLE_PODIUM * 16;
+		long[] scores = new long[n];
+		int[] ids = new int[n];
+		while (true) {
+			long version = (long) LONGS.getAcquire(carte, niveauTable + 8);
+			if ((version & 1) == 0) {
+				for (int k=0 ; k < n ; k++) {
+					scores[k] = carte.getLong(podium + 16 * k);
+					ids[k] = (int) carte.getLong(podium + 16 * k + 8);
+				}
+				VarHandle.loadLoadFence();
+				if ((long) LONGS.getVolatile(carte, niveauTable + 8) == version) break;
+			}
+			Thread.onSpinWait();
+		}
+		for (int k=0 ; k < n && scores[k] != 0 ; k++) {
+			places.add(place(ids[k], critere, scores[k]));
+		}
+		return places;
+	}
+	
+	/**
+	 * <b>Record personnel d'un joueur sur un niveau selon un critère.</b>
+	 * 
+	 * @return Le record, null si le joueur n'a pas réussi ce niveau.
+	 */
+	public Place record(String joueur, Niveau niveau, Critere critere) {
+		Integer id = profils.get(joueur);
+		if (id == null) return null;
+		int entree = trouverEntree(cleEntree(niveau.getEmpreinte(), id), false);
+		if (entree < 0) return null;
+		long score = (long) LONGS.getVolatile(carte, entree + 8 + 8 * critere.ordinal());
+		return score == 0 ? null : place(id, critere, score);
+	}
+	
+	/**
+	 * @return Le nombre de réussites d'un joueur sur un niveau.
+	 */
+	public long getNbReussites(String joueur, Niveau niveau) {
+		Integer id = profils.get(joueur);
+		if (id == null) return 0;
+		int entree = trouverEntree(cleEntree(niveau.getEmpreinte(), id), false);
+		return entree < 0 ? 0 : (long) LONGS.getVolatile(carte, entree + 24);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		carte.force();
+		canal.close();
+	}
+	
+	private Place place(int id, Critere critere, long score) {
+		long micros = critere == Critere.TEMPS ? score >>> BITS_COUPS : score & MAX_TEMPS;
+		int coups = (int) (critere == Critere.TEMPS ? score & MAX_COUPS : score >>> BITS_TEMPS);
+		return new Place(nomJoueur(id), micros, coups);
+	}
+	
+	/**
+	 * <b>Remplace le score à la position donnée s'il est absent ou moins bon, par
+	 * comparaison-échange.</b>
+	 * 
+	 * @return Vrai si le score a été remplacé.
+	 */
+	private boolean abaisser(int position, long score) {
+		long actuel = (long) LONGS.getVolatile(carte, position);
+		while (actuel == 0 || score < actuel) {
+			long vu = (long) LONGS.compareAndExchange(carte, position, actuel, score);
+			if (vu == actuel) return true;
+			actuel = vu;
+		}
+		return false;
+	}
+	
+	/**
+	 * <b>Place un nouveau record personnel dans un podium trié, en retirant l'ancienne
+	 * place du joueur.</b>
+	 * 
+	 * <p> L'écrivain prend la version du niveau en la rendant impaire, modifie le podium
+	 * puis la rend paire : les lecteurs qui l'ont lue pendant ce temps recommencent.
+	 */
+	private void placer(int niveauTable, Critere critere, int id, long score) {
+		int podium = niveauTable + 16 + critere.ordinal() * TAILLE_PODIUM * 16;
+		long pire = (long) LONGS.getVolatile(carte, podium + 16 * (TAILLE_PODIUM - 1));
+		if (pire != 0 && score >= pire) return;	// Le podium ne fait que s'améliorer
+		int version = niveauTable + 8;
+		long v;
+		while (true) {
+			v = (long) LONGS.getVolatile(carte, version);
+			if ((v & 1) == 0 && LONGS.compareAndSet(carte, version, v, v + 1)) break;
+			Thread.onSpinWait();
+		}
+		
+		// Place actuelle du joueur (retirée si le nouveau score est meilleur) et place du nouveau score
+		int ancienne = TAILLE_PODIUM - 1;
+		int nouvelle = TAILLE_PODIUM;
+		for (int k=0 ; k < TAILLE_PODIUM ; k++) {
+			long s = carte.getLong(podium + 16 * k);
+			if (nouvelle == TAILLE_PODIUM && (s == 0 || score < s)) nouvelle = k;
+			if (s != 0 && carte.getLong(podium + 16 * k + 8) == id) {
+				ancienne = k;
+				if (s <= score) nouvelle = TAILLE_PODIUM;
+				break;
+			}
+			if (s == 0) break;
+		}
+		if (nouvelle < TAILLE_PODIUM) {
+			for (int k=ancienne ; k > nouvelle ; k--) {
+				carte.putLong(podium + 16 * k, carte.getLong(podium + 16 * (k - 1)));
+				carte.putLong(podium + 16 * k + 8, carte.getLong(podium + 16 * (k - 1) + 8));
+			}
+			carte.putLong(podium + 16 * nouvelle, score);
+			carte.putLong(podium + 16 * nouvelle + 8, id);
+		}
+		LONGS.setRelease(carte, version, v + 2);
+	}
+	
+	/**
+	 * @return La position de l'entrée de clé donnée, -1 si elle n'existe pas et ne
+	 *         doit pas être créée.
+	 */
+	private int trouverEntree(long cle, boolean creer) {
+		int masque = capaciteEntrees - 1;
+		int indice = (int) (cle ^ cle >>> 32) & masque;
+		while (true) {
+			int entree = debutEntrees + indice * TAILLE_ENTREE;
+			long vue = (long) LONGS.getVolatile(carte, entree);
+			if (vue == 0) {
+				if (!creer) return -1;
+				if ((long) LONGS.getVolatile(carte, NB_ENTREES) >= capaciteEntrees / 4 * 3) {
+					throw new IllegalStateException(fichier + " : classement plein");
+				}
+				vue = (long) LONGS.compareAndExchange(carte, entree, 0L, cle);
+				if (vue == 0) {
+					LONGS.getAndAdd(carte, NB_ENTREES, 1L);
+					return entree;
+				}
+			}
+			if (vue == cle) return entree;
+			indice = indice + 1 & masque;
+		}
+	}
+	
+	/**
+	 * @return La position du podium du niveau d'empreinte donnée, -1 s'il n'existe pas
+	 *         et ne doit pas être créé.
+	 */
+	private int trouverNiveau(long empreinte, boolean creer) {
+		long cle = empreinte != 0 ? empreinte : 1;	// 0 marque une place libre
+		int masque = capaciteNiveaux - 1;
+		int indice = (int) (cle ^ cle >>> 32) & masque;
+		while (true) {
+			int niveau = debutNiveaux + indice * TAILLE_NIVEAU;
+			long vue = (long) LONGS.getVolatile(carte, niveau);
+			if (vue == 0) {
+				if (!creer) return -1;
+				if ((long) LONGS.getVolatile(carte, NB_NIVEAUX) >= capaciteNiveaux / 4 * 3) {
+					throw new IllegalStateException(fichier + " : classement plein");
+				}
+				vue = (long) LONGS.compareAndExchange(carte, niveau, 0L, cle);
+				if (vue == 0) {
+					LONGS.getAndAdd(carte, NB_NIVEAUX, 1L);
+					return niveau;
+				}
+			}
+			if (vue == cle) return niveau;
+			indice = indice + 1 & masque;
+		}
+	}
+	
+	/**
+	 * <b>Identifiant d'un joueur, inscrit dans la table des profils s'il est nouveau.</b>
+	 */
+	private int inscrire(String joueur) {
+		Integer id = profils.get(joueur);
+		if (id != null) return id;
+		byte[] nom = joueur.getBytes(StandardCharsets.UTF_8);
+		if (nom.length == 0 || nom.length >= TAILLE_PROFIL) {
+			throw new IllegalArgumentException("Nom de joueur vide ou trop long : " + joueur);
+		}
+		return profils.computeIfAbsent(joueur, j -> {
+			long nouveau = (long) LONGS.getAndAdd(carte, NB_PROFILS, 1L);
+			if (nouveau >= capaciteProfils) {
+				LONGS.getAndAdd(carte, NB_PROFILS, -1L);
+				throw new IllegalStateException(fichier + " : trop de joueurs");
+			}
+			int profil = TAILLE_EN_TETE + (int) nouveau * TAILLE_PROFIL;
+			for (int k=0 ; k < nom.length ; k++) {
+				carte.put(profil + 1 + k, nom[k]);
+			}
+			carte.put(profil, (byte) nom.length);
+			return (int) nouveau;
+		});
+	}
+	
+	private String nomJoueur(int id) {
+		int profil = TAILLE_EN_TETE + id * TAILLE_PROFIL;
+		byte[] nom = new byte[carte.get(profil) & 0xFF];
+		for (int k=0 ; k < nom.length ; k++) {
+			nom[k] = carte.get(profil + 1 + k);
+		}
+		return new String(nom, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * <b>Clé d'une entrée, non nulle : mélange (bijectif) de l'empreinte du niveau et de
+	 * l'identifiant du joueur.</b>
+	 */
+	private static long cleEntree(long empreinte, int id) {
+		long x = empreinte * 0x9E3779B97F4A7C15L + id;
+		x = (x ^ x >>> 33) * 0xFF51AFD7ED558CCDL;
+		x = (x ^ x >>> 33) * 0xC4CEB9FE1A85EC53L;
+		x ^= x >>> 33;
+		return x != 0 ? x : 1;
+	}
+	
+	private static int puissanceDeDeux(int capacite) {
+		return capacite <= 2 ? 2 : Integer.highestOneBit(capacite - 1) << 1;
+	}
+}
@@ -1,23 +1,35 @@
 package gloo.flowfree.control;
 
-import java.util.ArrayList;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
+import gloo.flowfree.classement.Classement;
+import gloo.flowfree.enregistrement.Enregistreur;
 import gloo.flowfree.ihm.FenetreNiveau;
-import gloo.flowfree.model.Case;
-import gloo.flowfree.model.Couleur;
+import gloo.flowfree.mesure.EvenementAction;
+import gloo.flowfree.mesure.EvenementVerificationVictoire;
+import gloo.flowfree.mesure.MetriquesMoteur;
 import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.InstantaneTuyau;
 import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Palette;
 import gloo.flowfree.model.Plateau;
 import gloo.flowfree.model.Plot;
+import gloo.flowfree.model.PoolPlateaux;
 import gloo.flowfree.model.TousNiveaux;
+import gloo.flowfree.model.Topologie;
 import gloo.flowfree.model.Tuyau;
+import gloo.flowfree.solveur.CacheSolutions;
 
 /**
  * <b>Classe controleur faisant le lien entre l'IHM et les classes métiers.</b>
  * 
- * <p> On a une seule instance du controleur pendant toute la session de jeu.
+ * <p> On a une seule instance du controleur pendant toute la session de jeu (une par
+ * session hébergée par le serveur de jeu).
  * 
  * <p>Ce controleur connaît :
  * <ul>
@@ -33,7 +45,7 @@ import gloo.flowfree.model.Tuyau;
  * </ul>
  * 
  * @author Maëlle Renaud
- *
+ * 
  */
 public class Controleur {
 	
@@ -79,16 +91,114 @@ public class Controleur {
 	 */
 	private Tuyau tuyauCourant;
 	
+	/**
+	 * <b>Booléen indiquant si le niveau courant a déjà été gagné depuis son lancement.</b>
+	 * 
+	 * <p>Permet de ne compter qu'une seule victoire par lancement dans les métriques,
+	 * même si le joueur continue d'appuyer sur les flèches une fois le niveau réussi.
+	 * 
+	 * @see Controleur#action(Direction)
+	 * @see MetriquesMoteur#niveauReussi()
+	 */
+	private boolean victoireComptee;
+	
+	/**
+	 * <b>Enregistreur éventuel de la partie en cours, null si l'enregistrement
+	 * n'est pas demandé.</b>
+	 * 
+	 * @see Controleur#lancerNiveau(int)
+	 * @see Controleur#quitterNiveau()
+	 */
+	private Enregistreur enregistreur;
+	
+	/**
+	 * <b>Classement où la partie est inscrite si elle est gagnée, et nom du joueur ;
+	 * null si les résultats ne sont pas classés.</b>
+	 * 
+	 * @see Controleur#setClassement(Classement, String)
+	 */
+	private Classement classement;
+	private String joueur;
+	
+	/**
+	 * <b>Instant (System.nanoTime) de la première sélection depuis la préparation du
+	 * niveau, 0 avant elle, et nombre de mouvements joués depuis.</b>
+	 * 
+	 * <p>Seuls les mouvements qui ont allongé ou raccourci le tuyau courant sont
+	 * comptés : un mouvement vers un bord ou une case refusée ne coûte rien au joueur.
+	 * 
+	 * @see Controleur#selectionCase(int, int)
+	 * @see Tuyau#modifier(Direction)
+	 * @see Controleur#marquerReussi()
+	 */
+	private long debutPartie;
+	private int nbCoups;
+	
+	/**
+	 * <b>Booléen indiquant si l'état du plateau est affiché dans la console après
+	 * chaque sélection et chaque action.</b>
+	 * 
+	 * <p>Vrai par défaut, désactivé pour les rejeux à pleine vitesse.
+	 * 
+	 * @see Controleur#setAffichageConsole(boolean)
+	 */
+	private boolean affichageConsole = true;
+	
+	/**
+	 * <b>Plateau du niveau suivant, préparé en arrière-plan pendant que le joueur
+	 * joue le niveau courant, et identifiant de ce niveau.</b>
+	 * 
+	 * <p>Null tant qu'aucun préchargement n'a été demandé, ou une fois le plateau
+	 * utilisé ou rendu à la réserve.
+	 * 
+	 * @see Controleur#prechargerNiveauSuivant()
+	 * @see Controleur#preparerNiveau(int)
+	 */
+	private CompletableFuture<Plateau> plateauSuivant;
+	private int idPlateauSuivant;
+	
+	/**
+	 * <b>Propriété système donnant le cache de solutions dont l'IHM affiche les solutions
+	 * des niveaux réussis, par défaut ressources/solutions.cache.</b>
+	 * 
+	 * @see Controleur#getSolution(int)
+	 */
+	public static final String PROPRIETE_SOLUTIONS = "flowfree.solutions";
+	
+	/**
+	 * <b>Cache de solutions ouvert à la première demande ; reste null si le fichier
+	 * n'existe pas.</b>
+	 */
+	private CacheSolutions cacheSolutions;
+	private boolean cacheSolutionsOuvert;
+	
 	// Constructeur
 	/**
-	 * <b>Constructeur appelé dans la méthode main de la classe Main pour commencer le jeu.</b>
+	 * <b>Constructeur lisant tous les niveaux avant de rendre la main (rejeu des parties
+	 * enregistrées).</b>
 	 * 
 	 * <p>Appel du constructeur de TousNiveaux pour initialiser l'attribut tousNiveaux.
 	 * 
 	 * @see TousNiveaux#TousNiveaux()
 	 */
 	public Controleur() {
-		this.tousNiveaux = new TousNiveaux();
+		this(new TousNiveaux());
+	}
+	
+	/**
+	 * <b>Constructeur partageant un ensemble de niveaux déjà chargé.</b>
+	 * 
+	 * <p>Utilisé par le serveur de jeu : chaque session a son propre controleur (donc
+	 * son propre plateau et ses propres tuyaux), mais le fichier niveaux.txt n'est lu
+	 * qu'une seule fois. Utilisé aussi par la méthode main de la classe Main, avec des
+	 * niveaux chargés en arrière-plan.
+	 * 
+	 * @see TousNiveaux#chargerEnArrierePlan()
+	 * 
+	 * @param tousNiveaux Ensemble des niveaux disponibles.
+	 */
+	public Controleur(TousNiveaux tousNiveaux) {
+		this.tousNiveaux = tousNiveaux;
 	}
 	
 	// Autres méthodes
@@ -104,14 +214,51 @@ public class Controleur {
 	 * 
 	 * @see TousNiveaux#getNiveauxParTaille()
 	 * 
-	 * @return Treemap dont les clés sont les tailles de plateau [nbLignes, nbColonnes] et les valeurs
-	 *         [indice du premier niveau de cette taille, nombre de niveaux de cette taille]. L'indice
-	 *         d'un niveau correspond à son indice dans le fichier niveaux.txt.
+	 * @return Treemap dont les clés sont les tailles de plateau suivies du rang du fichier de niveaux
+	 *         [nbLignes, nbColonnes, rang] et les valeurs [indice du premier niveau de cette taille
+	 *         dans ce fichier, nombre de niveaux de cette taille dans ce fichier]. L'indice d'un
+	 *         niveau correspond à sa position dans les fichiers de niveaux, lus à la suite.
 	 */
 	public TreeMap<int[], int[]> getNiveauxParTaille() {
 		return tousNiveaux.getNiveauxParTaille();
 	}
 	
+	/**
+	 * <b>Méthodes permettant à la fenêtre d'accueil de suivre un chargement des niveaux
+	 * en arrière-plan.</b>
+	 * 
+	 * @see TousNiveaux#chargerEnArrierePlan()
+	 */
+	public boolean chargementTermine() {
+		return tousNiveaux.chargementTermine();
+	}
+	
+	public String getErreurChargement() {
+		return tousNiveaux.getErreurChargement();
+	}
+	
+	public void ajouterEcouteurChargement(TousNiveaux.EcouteurChargement ecouteur) {
+		tousNiveaux.ajouterEcouteur(ecouteur);
+	}
+	
+	public void retirerEcouteurChargement(TousNiveaux.EcouteurChargement ecouteur) {
+		tousNiveaux.retirerEcouteur(ecouteur);
+	}
+	
+	/**
+	 * <b>Méthode permettant de vérifier qu'un identifiant de niveau existe avant de
+	 * le lancer.</b>
+	 * 
+	 * @see TousNiveaux#existe(int)
+	 * 
+	 * @param idNiveau Identifiant du niveau
+	 * 
+	 * @return Vrai si le niveau existe, faux sinon.
+	 */
+	public boolean niveauExiste(int idNiveau) {
+		return tousNiveaux.existe(idNiveau);
+	}
+	
 	/**
 	 * Méthode appelée par l'IHM pour déterminer si un niveau a été réussi par le joueur et l'afficher
 	 * en vert le cas échéant.
@@ -124,6 +271,133 @@ public class Controleur {
 		return tousNiveaux.getReussi(idNiveau);
 	}
 	
+	/**
+	 * <b>Méthodes appelées par l'IHM pour dessiner un niveau autre que le niveau courant
+	 * (niveau suivant préparé en arrière-plan), éventuellement hors du thread de l'IHM.</b>
+	 * 
+	 * @see TousNiveaux#getNiveau(int)
+	 * 
+	 * @param idNiveau Identifiant du niveau (indice dans le fichier niveaux.txt)
+	 */
+	public int getNbLignesNiveau(int idNiveau) {
+		return tousNiveaux.getNiveau(idNiveau).getNbLignes();
+	}
+	
+	public int getNbColonnesNiveau(int idNiveau) {
+		return tousNiveaux.getNiveau(idNiveau).getNbColonnes();
+	}
+	
+	public int[] getCouleursNiveau(int idNiveau) {
+		return tousNiveaux.getNiveau(idNiveau).getCouleursNiveau();
+	}
+	
+	public int[][] getPositionPlots(int idNiveau, int c) {
+		return tousNiveaux.getNiveau(idNiveau).getPlotsCouleur(c);
+	}
+	
+	public int getRgbCouleur(int idNiveau, int c) {
+		return tousNiveaux.getNiveau(idNiveau).getPalette().getRgb(c);
+	}
+	
+	/**
+	 * @see Niveau#getTopologie()
+	 * 
+	 * @return La topologie du plateau du niveau (lignes et colonnes bouclées, ponts).
+	 */
+	public Topologie getTopologieNiveau(int idNiveau) {
+		return tousNiveaux.getNiveau(idNiveau).getTopologie();
+	}
+	
+	/**
+	 * @see Niveau#getEmpreinte()
+	 * 
+	 * @return L'empreinte du contenu du niveau, clé des caches sur disque de l'IHM.
+	 */
+	public long getEmpreinteNiveau(int idNiveau) {
+		return tousNiveaux.getEmpreinte(idNiveau);
+	}
+	
+	/**
+	 * <b>Méthode appelée par l'IHM pour dessiner la solution d'un niveau, si elle est
+	 * connue du cache de solutions.</b>
+	 * 
+	 * <p>Le cache n'est jamais complété ici : aucun niveau n'est résolu à la demande.
+	 * 
+	 * @see Controleur#PROPRIETE_SOLUTIONS
+	 * @see CacheSolutions#chercher(Niveau)
+	 * 
+	 * @param idNiveau Identifiant du niveau (indice dans le fichier niveaux.txt)
+	 * 
+	 * @return Pour chaque couleur (indice dans la palette), les ordinaux des directions du
+	 *         tuyau partant de son premier plot ; null si la solution n'est pas connue.
+	 */
+	public synchronized byte[][] getSolution(int idNiveau) {
+		if (!cacheSolutionsOuvert) {
+			cacheSolutionsOuvert = true;
+			Path fichier = Path.of(System.getProperty(PROPRIETE_SOLUTIONS,
+					Path.of(System.getProperty("user.dir"), "ressources", "solutions.cache").toString()));
+			if (Files.exists(fichier)) {
+				try {
+					cacheSolutions = CacheSolutions.ouvrir(fichier);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return cacheSolutions == null ? null : cacheSolutions.chercher(tousNiveaux.getNiveau(idNiveau));
+	}
+	
+	/**
+	 * <b>Méthode donnant le niveau à proposer après le niveau courant : le premier niveau
+	 * non réussi qui le suit dans le fichier niveaux.txt, en revenant au début si besoin.</b>
+	 * 
+	 * @return L'identifiant de ce niveau, -1 si tous les autres niveaux sont réussis.
+	 */
+	public int getIdNiveauSuivant() {
+		int idCourant = niveau == null ? 0 : niveau.getId();
+		for (int id = idCourant + 1 ; tousNiveaux.existe(id) ; id++) {
+			if (!tousNiveaux.getReussi(id)) return id;
+		}
+		for (int id=1 ; id < idCourant ; id++) {
+			if (!tousNiveaux.getReussi(id)) return id;
+		}
+		return -1;
+	}
+	
+	/**
+	 * <b>Méthode appelée par l'IHM pendant que le joueur joue le niveau courant, pour
+	 * que le passage au niveau suivant soit immédiat.</b>
+	 * 
+	 * <p>Le plateau du niveau suivant est obtenu de la réserve (ou construit) sur un
+	 * thread du pool commun ; preparerNiveau l'utilisera si ce niveau est lancé, et le
+	 * rendra à la réserve sinon.
+	 * 
+	 * @see Controleur#getIdNiveauSuivant()
+	 * @see PoolPlateaux#obtenir(Niveau)
+	 * 
+	 * @return L'identifiant du niveau suivant, -1 s'il n'y en a pas.
+	 */
+	public int prechargerNiveauSuivant() {
+		int id = getIdNiveauSuivant();
+		if (plateauSuivant != null && idPlateauSuivant == id) {
+			return id;
+		}
+		abandonnerPlateauSuivant();
+		if (id > 0) {
+			Niveau suivant = tousNiveaux.getNiveau(id);
+			this.plateauSuivant = CompletableFuture.supplyAsync(() -> PoolPlateaux.obtenir(suivant));
+			this.idPlateauSuivant = id;
+		}
+		return id;
+	}
+	
+	private void abandonnerPlateauSuivant() {
+		if (plateauSuivant != null) {
+			plateauSuivant.thenAccept(PoolPlateaux::rendre);
+			plateauSuivant = null;
+		}
+	}
+		
 		///////////////////////////
 		// Initialiser un niveau //
 		///////////////////////////
@@ -132,22 +406,153 @@ public class Controleur {
 	 * 
 	 * <p>Lancement du niveau
 	 * <ul>
-	 *     <li> Les spécificités du niveau sont récupérées (taille grille, positions plots).
-	 *     <li> Les objets métiers (plateau, cases, plots) sont initialisés à partir des ces spécificités.
+	 *     <li> Les spécificités du niveau sont récupérées et les objets métiers
+	 *          sont initialisés (voir preparerNiveau).
+	 *     <li> Si la propriété système flowfree.enregistrement est définie, la partie
+	 *          est enregistrée.
+	 *     <li> Si la propriété système flowfree.classement est définie, une victoire
+	 *          est inscrite au classement sous le nom du joueur configuré.
 	 *     <li> Le niveau est lancé dans une nouvelle fenêtre.
 	 * </ul>
 	 * 
-	 * @see TousNiveaux#getNiveau(int)
-	 * @see Plateau#Plateau(Niveau)
+	 * @see Controleur#preparerNiveau(int)
+	 * @see Enregistreur#depuisConfiguration(Niveau)
+	 * @see Classement#depuisConfiguration()
 	 * @see FenetreNiveau#FenetreNiveau(Controleur)
 	 * 
 	 * @param idNiveau Identifiant du niveau (indice dans le fichier niveaux.txt)
+	 * 
+	 * @return La fenêtre du niveau lancé.
 	 */
-	public void lancerNiveau(int idNiveau) {
+	public FenetreNiveau lancerNiveau(int idNiveau) {
+		quitterNiveau();
+		preparerNiveau(idNiveau);
+		this.enregistreur = Enregistreur.depuisConfiguration(niveau);
+		setClassement(Classement.depuisConfiguration(), Classement.joueurConfigure());
+		return new FenetreNiveau(this);
+	}
+	
+	/**
+	 * <b>Méthode initialisant le niveau demandé sans ouvrir de fenêtre.</b>
+	 * 
+	 * <p>Les spécificités du niveau sont récupérées (taille grille, positions plots) et
+	 * les objets métiers (plateau, cases, plots) sont initialisés à partir des ces
+	 * spécificités. Le plateau précédent est rendu à la réserve de plateaux et le
+	 * nouveau plateau y est pris : s'il a la même taille, aucune case, aucun plot ni
+	 * aucun tuyau n'est réalloué.
+	 * 
+	 * <p>Si le plateau de ce niveau a été préchargé et qu'il est prêt, il est utilisé
+	 * tel quel. Sinon il est construit ici, sans attendre la préparation en cours (le
+	 * thread de l'IHM ne reste pas bloqué), et le plateau préchargé sera rendu à la
+	 * réserve à la fin de sa construction.
+	 * 
+	 * <p>Méthode appelée par lancerNiveau et par les outils sans IHM (rejeu de parties,
+	 * serveur de jeu).
+	 * 
+	 * @see Controleur#prechargerNiveauSuivant()
+	 * @see TousNiveaux#getNiveau(int)
+	 * @see PoolPlateaux#rendre(Plateau)
+	 * @see PoolPlateaux#obtenir(Niveau)
+	 * 
+	 * @param idNiveau Identifiant du niveau (indice dans le fichier niveaux.txt)
+	 */
+	public void preparerNiveau(int idNiveau) {
+		long debut = System.nanoTime();
 		this.niveau = tousNiveaux.getNiveau(idNiveau);
-		this.plateau = new Plateau(niveau);
+		if (plateau != null) {
+			PoolPlateaux.rendre(plateau);
+		}
+		if (plateauSuivant != null && idPlateauSuivant == idNiveau
+				&& plateauSuivant.isDone() && !plateauSuivant.isCompletedExceptionally()) {
+			this.plateau = plateauSuivant.join();
+			plateauSuivant = null;
+		} else {	// Préparation en cours ou en échec : on n'attend pas le thread du pool
+			abandonnerPlateauSuivant();
+			this.plateau = PoolPlateaux.obtenir(niveau);
+		}
 		this.tuyauCourant = null;
-		new FenetreNiveau(this);
+		this.victoireComptee = false;
+		this.debutPartie = 0;
+		this.nbCoups = 0;
+		MetriquesMoteur.get().niveauDemarre(System.nanoTime() - debut);
+	}
+	
+	/**
+	 * <b>Méthode appelée par l'IHM quand la fenêtre du niveau est fermée.</b>
+	 * 
+	 * <p>Termine l'enregistrement éventuel de la partie en y inscrivant la signature
+	 * du plateau final.
+	 * 
+	 * @see Enregistreur#terminer(int, boolean)
+	 */
+	public void quitterNiveau() {
+		if (enregistreur != null) {
+			enregistreur.terminer(plateau.signature(), victoireComptee);
+			enregistreur = null;
+		}
+	}
+	
+	/**
+	 * <b>Méthode renvoyant la signature du plateau courant, utilisée pour vérifier
+	 * le rejeu d'une partie enregistrée.</b>
+	 * 
+	 * @see Plateau#signature()
+	 * 
+	 * @return La signature du plateau courant.
+	 */
+	public int getSignaturePlateau() {
+		return plateau.signature();
+	}
+	
+	public void setAffichageConsole(boolean affichageConsole) {
+		this.affichageConsole = affichageConsole;
+	}
+	
+	/**
+	 * <b>Méthode donnant le classement où inscrire les victoires de ce controleur.</b>
+	 * 
+	 * @param classement Classement, null pour ne pas classer les résultats.
+	 * @param joueur Nom du joueur sous lequel les victoires sont inscrites.
+	 */
+	public void setClassement(Classement classement, String joueur) {
+		this.classement = classement;
+		this.joueur = joueur;
+	}
+	
+	/**
+	 * @return L'instant (System.nanoTime) de la première sélection de la partie, 0 si
+	 *         aucune case n'a encore été sélectionnée.
+	 */
+	public long getDebutPartie() {
+		return debutPartie;
+	}
+	
+	/**
+	 * @return L'indice de la couleur du tuyau courant, -1 s'il n'y en a pas.
+	 */
+	public int getCouleurCourante() {
+		return tuyauCourant == null ? -1 : tuyauCourant.getCouleur();
+	}
+	
+	/**
+	 * <b>Méthode remettant le plateau dans un état antérieur de la partie, pour annuler
+	 * des coups.</b>
+	 * 
+	 * <p>Seuls les tuyaux sont modifiés : le niveau n'est pas préparé à nouveau, aucune
+	 * métrique n'est comptée, rien n'est enregistré, et le chronomètre, le nombre de
+	 * coups et la victoire déjà comptée sont conservés (une victoire rejouée après une
+	 * annulation n'est ni comptée ni classée une seconde fois).
+	 * 
+	 * @see Plateau#restaurer(InstantaneTuyau[], InstantaneTuyau[])
+	 * @see Controleur#getInstantaneTuyau(int, InstantaneTuyau)
+	 * 
+	 * @param cibles Instantanés des tuyaux dans l'état visé, par indice dans la palette.
+	 * @param actuels Derniers instantanés pris des tuyaux, dans l'état actuel.
+	 * @param couleurCourante Couleur du tuyau courant dans l'état visé, -1 pour aucune.
+	 */
+	public void restaurerPlateau(InstantaneTuyau[] cibles, InstantaneTuyau[] actuels, int couleurCourante) {
+		plateau.restaurer(cibles, actuels);
+		this.tuyauCourant = plateau.getTuyau(couleurCourante);
 	}
 	
 	/**
@@ -189,6 +594,18 @@ public class Controleur {
 		return niveau.getNbColonnes();
 	}
 	
+	/**
+	 * <b>Méthode appelée par l'IHM pour suivre les tuyaux qui traversent un bord bouclé
+	 * du plateau du niveau courant.</b>
+	 * 
+	 * @see Niveau#getTopologie()
+	 * 
+	 * @return La topologie du plateau du niveau courant.
+	 */
+	public Topologie getTopologie() {
+		return niveau.getTopologie();
+	}
+		
 		////////////////////////
 		// Dessiner un niveau //
 		////////////////////////
@@ -200,41 +617,87 @@ public class Controleur {
 	 * 
 	 * @see Niveau#getCouleursNiveau()
 	 * 
-	 * @return L'ensemble des instances de l'enumération Couleur utilisées dans le niveau courant.
+	 * @return Les indices dans la palette des couleurs utilisées dans le niveau courant.
 	 */
-	public Set<Couleur> getCouleursNiveau() {
+	public int[] getCouleursNiveau() {
 		return niveau.getCouleursNiveau();
 	}
 	
+	/**
+	 * <b>Méthode appelée par l'IHM pour connaître le nombre de couleurs de la palette
+	 * du niveau courant, afin de préparer ses couleurs graphiques.</b>
+	 * 
+	 * @see Palette#getNbCouleurs()
+	 * 
+	 * @return Le nombre de couleurs de la palette.
+	 */
+	public int getNbCouleursPalette() {
+		return niveau.getPalette().getNbCouleurs();
+	}
+	
+	/**
+	 * @see Palette#getNom(int)
+	 * 
+	 * @param c Indice de la couleur dans la palette.
+	 * @return Le nom de la couleur tel qu'écrit dans le fichier niveaux.txt.
+	 */
+	public String getNomCouleur(int c) {
+		return niveau.getPalette().getNom(c);
+	}
+	
+	/**
+	 * @see Palette#getRgb(int)
+	 * 
+	 * @param c Indice de la couleur dans la palette.
+	 * @return La valeur RGB (0xRRGGBB) avec laquelle dessiner la couleur.
+	 */
+	public int getRgbCouleur(int c) {
+		return niveau.getPalette().getRgb(c);
+	}
+	
 	/**
 	 * <b>Méthode appelée par l'IHM pour obtenir obtenir les coordonnées des plots de la couleur passée en paramètre
 	 * pour les dessiner.</b>
 	 * 
 	 * <p>Demande la position des plots de la couleur demandée au niveau courant.
 	 * 
-	 * @see Niveau#getPlotsCouleur(Couleur)
+	 * @see Niveau#getPlotsCouleur(int)
 	 * 
-	 * @param c Couleur dont on cherche la position des plots
+	 * @param c Indice de la couleur dont on cherche la position des plots
 	 * 
 	 * @return Tableau d'entiers avec les coordonnées [ligne,colonne] des cases des 2 plots de la couleur c
 	 */
-	public int[][] getPositionPlots(Couleur c) {
+	public int[][] getPositionPlots(int c) {
 		return niveau.getPlotsCouleur(c);
 	}
 	
 	/**
 	 * <b>Méthode appelée par l'IHM pour savoir s'il y a un tuyau à dessiner pour la couleur passée en paramètre.</b>
 	 * 
-	 * <p>Demande à la couleur passée en paramètre si elle a un tuyau démarré.
+	 * <p>Demande au plateau si la couleur passée en paramètre a un tuyau démarré.
 	 * 
-	 * @see Couleur#hasTuyau()
+	 * @see Plateau#hasTuyau(int)
 	 * 
-	 * @param c Couleur dont on veut savoir si elle a un tuyau
+	 * @param c Indice de la couleur dont on veut savoir si elle a un tuyau
 	 * 
 	 * @return vrai si la Couleur c a un tuyau, faux sinon
 	 */
-	public boolean hasTuyau(Couleur c) {
-		return c.hasTuyau();
+	public boolean hasTuyau(int c) {
+		return plateau.hasTuyau(c);
+	}
+	
+	/**
+	 * <b>Méthode appelée par l'IHM pour savoir si le tuyau de la couleur passée en
+	 * paramètre relie ses deux plots, et l'animer quand il vient de les relier.</b>
+	 * 
+	 * @see Plateau#couleurComplete(int)
+	 * 
+	 * @param c Indice de la couleur.
+	 * 
+	 * @return Vrai si la couleur c a un tuyau complet, faux sinon.
+	 */
+	public boolean couleurComplete(int c) {
+		return plateau.couleurComplete(c);
 	}
 	
 	/** 
@@ -242,20 +705,20 @@ public class Controleur {
 	 * passée en paramètre.</b>
 	 * 
 	 * <p> Méthode appelée seulement si cette Couleur a un tuyau.
-	 * <p>Demande à cette Couleur la Case de départ de son tuyau.
-	 * Demande au Plateau les coordonnées de cette Case.
+	 * <p>Demande au Plateau le tuyau de cette Couleur, puis l'indice de la Case de départ
+	 * de ce tuyau, dont on déduit les coordonnées.
 	 * 
-	 * @see Couleur#getCaseDepart()
-	 * @see Plateau#findPositionCase(Case)
+	 * @see Plateau#getTuyau(int)
+	 * @see Tuyau#getCelluleDepart()
 	 * 
-	 * @param c Couleur dont on cherche les coordonnées du premier plot.
+	 * @param c Indice de la couleur dont on cherche les coordonnées du premier plot.
 	 * 
 	 * @return Les coordonnées [ligne,colonne] du premier plot (selon l'ordre inscrit dans le fichier niveaux.txt)
 	 * 		   de la couleur c.
 	 */
-	public int[] getCoordDepart(Couleur c) {
-		Case caseDepart = c.getCaseDepart();
-		return plateau.findPositionCase(caseDepart);
+	public int[] getCoordDepart(int c) {
+		int depart = plateau.getTuyau(c).getCelluleDepart();
+		return new int[] { depart / plateau.getNbColonnes() , depart % plateau.getNbColonnes() };
 	}
 	
 	/**
@@ -263,17 +726,34 @@ public class Controleur {
 	 * passée en paramètre pour dessiner ce tuyau.</b>
 	 * 
 	 * <p>Méthode appelée uniquement si cette Couleur a un tuyau.
-	 * <p>Demande à cette Couleur les directions constituant son tuyau.
+	 * <p>Demande au Plateau le tuyau de cette Couleur, puis les directions constituant ce tuyau.
+	 * La liste retournée est une vue en lecture seule, sans copie.
 	 * 
-	 * @see Couleur#getDirections()
+	 * @see Plateau#getTuyau(int)
+	 * @see Tuyau#getDirections()
 	 * 
-	 * @param c Couleur dont on chercher à dessiner le tuyau
+	 * @param c Indice de la couleur dont on chercher à dessiner le tuyau
 	 * @return Liste de Directions successives constituant le tuyau de la Couleur c.
 	 */
-	public ArrayList<Direction> getDirections(Couleur c) {
-		return c.getDirections();
+	public List<Direction> getDirections(int c) {
+		return plateau.getTuyau(c).getDirections();
 	}
 	
+	/**
+	 * <b>Méthode appelée par le moteur de jeu pour publier l'état du tuyau de la
+	 * Couleur passée en paramètre, lisible depuis le thread de l'IHM.</b>
+	 * 
+	 * @see MoteurJeu
+	 * @see Tuyau#instantane(InstantaneTuyau)
+	 * 
+	 * @param c Indice de la couleur.
+	 * @param precedent Dernier instantané de ce tuyau, null s'il n'y en a pas.
+	 * @return L'instantané du tuyau de la Couleur c, null si elle n'a pas de tuyau.
+	 */
+	public InstantaneTuyau getInstantaneTuyau(int c, InstantaneTuyau precedent) {
+		return plateau.hasTuyau(c) ? plateau.getTuyau(c).instantane(precedent) : null;
+	}
+		
 		///////////
 		// Jouer //
 	    ///////////
@@ -304,10 +784,16 @@ public class Controleur {
 	 * @return Vrai si la case contient un plot (la case a bien été sélectionnée), faux sinon.
 	 */
 	public boolean selectionCase(int i, int j) {
+		if (enregistreur != null) {
+			enregistreur.selection(i, j);
+		}
+		if (debutPartie == 0) {
+			debutPartie = System.nanoTime();
+		}
 		Plot plotCourant = plateau.getPlot(i, j);
 		if (plotCourant != null) {
 			tuyauCourant = plotCourant.nouveauTuyau();
-			System.out.println(plateau.display());
+			if (affichageConsole) System.out.println(plateau.display());
 			return true;
 		};
 		return false;
@@ -328,24 +814,147 @@ public class Controleur {
      * 
      * @see Tuyau#modifier(Direction)
      * @see Plateau#display()
-     * @see Controleur#couleursCompletes()
-     * @see Plateau#plateauComplet()
-     * @see Niveau#setReussi(boolean)
+     * @see Controleur#verifierVictoire()
+     * @see TousNiveaux#setReussi(Niveau)
 	 * 
 	 * @param dir Direction de la progression demandée par le joueur.
 	 * @return Vrai si cette action a permis de terminer le niveau, faux sinon.
 	 */
 	public boolean action(Direction dir) {
+		EvenementAction evenement = new EvenementAction();
+		evenement.begin();
+		boolean niveauReussi = false;
+		if (tuyauCourant != null) {
+			MetriquesMoteur.get().mouvement();
+			if (enregistreur != null) {
+				enregistreur.mouvement(dir);
+			}
+			if (tuyauCourant.modifier(dir)) {
+				nbCoups++;
+			}
+			if (affichageConsole) System.out.println(plateau.display());
+			niveauReussi = verifierVictoire();
+			if (niveauReussi) {
+				marquerReussi();
+			}
+		}
+		if (evenement.shouldCommit()) {
+			evenement.idNiveau = niveau.getId();
+			evenement.nbLignes = niveau.getNbLignes();
+			evenement.nbColonnes = niveau.getNbColonnes();
+			evenement.direction = dir.name();
+			evenement.nbDirections = 1;
+			evenement.tuyauCourant = tuyauCourant != null;
+			evenement.niveauReussi = niveauReussi;
+			evenement.commit();
+		}
+		return niveauReussi;
+	}
+	
+	/**
+	 * <b>Méthode appelée par l'IHM pour appliquer d'un coup les flèches appuyées
+	 * depuis la dernière image.</b>
+	 * 
+	 * <p>Chaque direction est appliquée et enregistrée comme par action(Direction),
+	 * mais l'état du plateau n'est affiché dans la console qu'une fois, à la fin du
+	 * lot, et le test de victoire complet n'est fait qu'après un mouvement qui
+	 * complète le tuyau courant : aucun autre mouvement ne peut terminer le niveau.
+	 * Les directions qui suivent une victoire ne sont pas appliquées.
+	 * 
+	 * @see Controleur#action(Direction)
+	 * @see Tuyau#estComplet()
+	 * 
+	 * @param dirs Directions demandées par le joueur, dans l'ordre.
+	 * @param nb Nombre de directions à prendre dans dirs.
+	 * @return Vrai si ce lot a permis de terminer le niveau, faux sinon.
+	 */
+	public boolean actions(Direction[] dirs, int nb) {
+		EvenementAction evenement = new EvenementAction();
+		evenement.begin();
+		boolean niveauReussi = false;
+		int nbAppliquees = 0;
 		if (tuyauCourant != null) {
-			tuyauCourant.modifier(dir);
-			System.out.println(plateau.display());
-			boolean niveauReussi = couleursCompletes() && plateau.plateauComplet();
+			while (nbAppliquees < nb && !niveauReussi) {
+				Direction dir = dirs[nbAppliquees++];
+				MetriquesMoteur.get().mouvement();
+				if (enregistreur != null) {
+					enregistreur.mouvement(dir);
+				}
+				if (tuyauCourant.modifier(dir)) {
+					nbCoups++;
+					niveauReussi = tuyauCourant.estComplet() && verifierVictoire();
+				}
+			}
+			if (affichageConsole && nbAppliquees > 0) System.out.println(plateau.display());
 			if (niveauReussi) {
-				niveau.setReussi(true);
+				marquerReussi();
 			}
-			return niveauReussi;
+		}
+		if (evenement.shouldCommit()) {
+			StringBuilder directions = new StringBuilder();
+			for (int k=0 ; k < nbAppliquees ; k++) {	// Sans les directions ignorées après une victoire
+				if (k > 0) directions.append(',');
+				directions.append(dirs[k].name());
 			}
-		return false;
+			evenement.idNiveau = niveau.getId();
+			evenement.nbLignes = niveau.getNbLignes();
+			evenement.nbColonnes = niveau.getNbColonnes();
+			evenement.direction = directions.toString();
+			evenement.nbDirections = nbAppliquees;
+			evenement.tuyauCourant = tuyauCourant != null;
+			evenement.niveauReussi = niveauReussi;
+			evenement.commit();
+		}
+		return niveauReussi;
+	}
+	
+	/**
+	 * <b>Indique au niveau courant qu'il a été réussi, en ne comptant la victoire
+	 * qu'une fois par partie.</b>
+	 * 
+	 * <p>La première victoire est inscrite au classement éventuel, avec la durée
+	 * écoulée depuis la première sélection et le nombre de mouvements joués.
+	 * 
+	 * @see Classement#enregistrer(String, Niveau, long, int)
+	 */
+	private void marquerReussi() {
+		tousNiveaux.setReussi(niveau);
+		if (!victoireComptee) {
+			victoireComptee = true;
+			MetriquesMoteur.get().niveauReussi();
+			if (classement != null) {
+				try {
+					classement.enregistrer(joueur, niveau, System.nanoTime() - debutPartie, nbCoups);
+				} catch (IllegalStateException | IllegalArgumentException e) {	// Classement plein, nom invalide
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * <b>Méthode privée appelée après chaque action pour tester si le niveau est réussi :
+	 * tous les plots sont reliés et toutes les cases sont utilisées.</b>
+	 * 
+	 * <p>Le test est mesuré par un événement JFR EvenementVerificationVictoire.
+	 * 
+	 * @see Controleur#couleursCompletes()
+	 * @see Plateau#plateauComplet()
+	 * 
+	 * @return Vrai si le niveau courant est réussi, faux sinon.
+	 */
+	private boolean verifierVictoire() {
+		EvenementVerificationVictoire evenement = new EvenementVerificationVictoire();
+		evenement.begin();
+		boolean niveauReussi = couleursCompletes() && plateau.plateauComplet();
+		if (evenement.shouldCommit()) {
+			evenement.idNiveau = niveau.getId();
+			evenement.nbCases = niveau.getNbLignes() * niveau.getNbColonnes();
+			evenement.nbCouleurs = niveau.getCouleursNiveau().length;
+			evenement.niveauReussi = niveauReussi;
+			evenement.commit();
+		}
+		return niveauReussi;
 	}
 	
 	/**
@@ -353,39 +962,20 @@ public class Controleur {
 	 * réussi dans la configuration courante, c'est-à-dire si tous les plots sont
 	 * reliés (les couleurs ont des tuyaux complets).</b>
 	 * 
-	 * <p>Demande au niveau courant l'ensemble des couleurs utilisées, puis demande à
-	 * chaque couleur si elle est complète.
+	 * <p>Demande au niveau courant l'ensemble des couleurs utilisées, puis demande au
+	 * plateau si chaque couleur est complète.
 	 * 
 	 * @see Niveau#getCouleursNiveau()
-	 * @see Couleur#estComplete()
+	 * @see Plateau#couleurComplete(int)
 	 * 
 	 * @return Vrai si toutes les couleurs du niveau courant ont des tuyaux complets, 
 	 *         faux sinon.
 	 */
 	private boolean couleursCompletes() {
-		for (Couleur c : niveau.getCouleursNiveau()) {
-			if (!c.estComplete()) return false;
+		for (int c : niveau.getCouleursNiveau()) {
+			if (!plateau.couleurComplete(c)) return false;
 		}
 		return true;
 	}
-	
-		/////////////////////////////////////////////////////////
-		// Réinitialiser les composants pour changer de niveau //
-		/////////////////////////////////////////////////////////
-	/**
-	 * <b>Méthode appelée par l'IHM quand la fenêtre du niveau est fermée pour supprimer les
-	 * tuyaux associés à chaque instance de la classe Couleur.</b>
-	 * 
-	 * <p>Les instances de la classe Couleur sont les seules instances métiers 
-	 * qui ne changent pas d'un niveau à l'autre.
-	 * <p>Les attributs tuyaux des couleurs sont réinitialisés pour lancer un nouveau niveau.
-	 * 
-	 * @see Couleur#setNullTuyau()
-	 */
-	public void nettoyerCouleurs() {
-		for (Couleur c : Couleur.values()) {
-			c.setNullTuyau();
-		}
-	}
-	
+
 }
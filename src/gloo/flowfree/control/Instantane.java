@@ -0,0 +1,78 @@
+package gloo.flowfree.control;
+
+import gloo.flowfree.model.InstantaneTuyau;
+
+/**
+ * <b>Classe représentant l'état du plateau publié par le moteur de jeu après un lot
+ * de commandes : tuyaux, plot sélectionné et nombre de victoires.</b>
+ * 
+ * <p> Un instantané n'est plus modifié après sa publication : l'IHM le dessine sans
+ * jamais voir un plateau à moitié modifié. Les instantanés successifs partagent les
+ * instantanés des tuyaux qui n'ont pas changé.
+ * 
+ * @see MoteurJeu#getInstantane()
+ * @see InstantaneTuyau
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public final class Instantane {
+	
+	private final int nbColonnes;
+	
+	/**
+	 * <b>Instantanés des tuyaux, par indice dans la palette, null pour une couleur
+	 * sans tuyau.</b>
+	 */
+	private final InstantaneTuyau[] tuyaux;
+	
+	/**
+	 * <b>Coordonnées [ligne,colonne] du dernier plot sélectionné, null s'il n'y en a
+	 * pas.</b>
+	 */
+	private final int[] selection;
+	
+	/**
+	 * <b>Nombre de lots de flèches qui ont terminé le niveau depuis le lancement du
+	 * moteur.</b>
+	 */
+	private final int nbVictoires;
+	
+	// Constructeur
+	/**
+	 * <b>Constructeur appelé par le moteur de jeu, qui ne modifie plus les tableaux
+	 * qu'il lui confie.</b>
+	 */
+	Instantane(int nbColonnes, InstantaneTuyau[] tuyaux, int[] selection, int nbVictoires) {
+		this.nbColonnes = nbColonnes;
+		this.tuyaux = tuyaux;
+		this.selection = selection;
+		this.nbVictoires = nbVictoires;
+	}
+	
+	// Getters
+	/**
+	 * @param c Indice de la couleur.
+	 * @return L'instantané du tuyau de la couleur c, null si elle n'a pas de tuyau.
+	 */
+	public InstantaneTuyau getTuyau(int c) {
+		return tuyaux[c];
+	}
+	
+	/**
+	 * @param c Indice d'une couleur qui a un tuyau.
+	 * @return Les coordonnées [ligne,colonne] de la case de départ du tuyau de la couleur c.
+	 */
+	public int[] getCoordDepart(int c) {
+		int depart = tuyaux[c].getCelluleDepart();
+		return new int[] { depart / nbColonnes , depart % nbColonnes };
+	}
+	
+	public int[] getSelection() {
+		return selection == null ? null : selection.clone();
+	}
+	
+	public int getNbVictoires() {
+		return nbVictoires;
+	}
+}
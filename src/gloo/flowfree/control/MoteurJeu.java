@@ -0,0 +1,206 @@
+package gloo.flowfree.control;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.InstantaneTuyau;
+
+/**
+ * <b>Classe représentant le moteur de jeu d'une fenêtre de niveau : seul thread qui
+ * modifie le plateau du controleur, alimenté par une file de commandes.</b>
+ * 
+ * <p> L'IHM n'appelle plus le controleur pour jouer : elle envoie ses sélections et
+ * ses lots de flèches au moteur, qui les applique dans l'ordre. Après chaque lot de
+ * commandes trouvées dans la file, le moteur publie un Instantane du plateau dans un
+ * champ volatile puis prévient son écouteur ; l'IHM ne dessine que cet instantané.
+ * 
+ * <p> Les calculs qui doivent lire le plateau (rejeu, vérifications) passent aussi
+ * par la file, avec executer(Function) : ils ne bloquent jamais le dessin, et le
+ * dessin ne voit jamais un plateau à moitié modifié.
+ * 
+ * @see Instantane
+ * @see Controleur#getInstantaneTuyau(int, InstantaneTuyau)
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class MoteurJeu {
+	
+	/**
+	 * <b>Commande qui termine le thread du moteur.</b>
+	 */
+	private static final Runnable ARRET = () -> {};
+	
+	private final Controleur controleur;
+	private final BlockingQueue<Runnable> commandes = new LinkedBlockingQueue<>();
+	private final Runnable ecouteur;
+	private final Thread thread;
+	private boolean arrete;
+	
+	/**
+	 * <b>Dernier instantané publié, lu par l'IHM.</b>
+	 */
+	private volatile Instantane instantane;
+	
+	/**
+	 * <b>Plot sélectionné et nombre de victoires, lus et modifiés par le seul thread du
+	 * moteur.</b>
+	 */
+	private int[] selection;
+	private int nbVictoires;
+	
+	// Constructeur
+	/**
+	 * <b>Constructeur du moteur de jeu, qui publie l'état initial du plateau puis
+	 * démarre son thread.</b>
+	 * 
+	 * <p> Le niveau doit déjà être préparé dans le controleur, qui ne doit plus être
+	 * modifié que par ce moteur jusqu'à son arrêt.
+	 * 
+	 * @param controleur Controleur du niveau en cours.
+	 * @param ecouteur Action appelée sur le thread du moteur après chaque publication
+	 *                 d'un nouvel instantané.
+	 */
+	public MoteurJeu(Controleur controleur, Runnable ecouteur) {
+		this.controleur = controleur;
+		this.ecouteur = ecouteur;
+		this.instantane = prendreInstantane(null);
+		this.thread = new Thread(this::boucle, "flowfree-moteur-jeu");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	// Getters
+	public Instantane getInstantane() {
+		return instantane;
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Demande la sélection de la case passée en paramètre.</b>
+	 * 
+	 * @see Controleur#selectionCase(int, int)
+	 */
+	public void selection(int i, int j) {
+		envoyer(() -> {
+			if (controleur.selectionCase(i, j)) {
+				selection = new int[] { i, j };
+			}
+		});
+	}
+	
+	/**
+	 * <b>Demande l'application d'un lot de flèches. Le tableau est copié : l'appelant
+	 * peut le réutiliser dès le retour.</b>
+	 * 
+	 * @see Controleur#actions(Direction[], int)
+	 */
+	public void directions(Direction[] dirs, int nb) {
+		Direction[] copie = Arrays.copyOf(dirs, nb);
+		envoyer(() -> {
+			if (controleur.actions(copie, nb)) {
+				nbVictoires++;
+			}
+		});
+	}
+	
+	/**
+	 * <b>Exécute un calcul sur le controleur depuis le thread du moteur, après les
+	 * commandes déjà envoyées.</b>
+	 * 
+	 * @param calcul Calcul à exécuter, qui peut aussi modifier le plateau.
+	 * @return Le résultat du calcul, en échec si le calcul lève une exception ou si le
+	 *         moteur est arrêté.
+	 */
+	public <T> CompletableFuture<T> executer(Function<Controleur, T> calcul) {
+		CompletableFuture<T> resultat = new CompletableFuture<>();
+		boolean envoye = envoyer(() -> {
+			try {
+				resultat.complete(calcul.apply(controleur));
+			} catch (RuntimeException e) {
+				resultat.completeExceptionally(e);
+			}
+		});
+		if (!envoye) {
+			resultat.completeExceptionally(new IllegalStateException("Le moteur de jeu est arrêté"));
+		}
+		return resultat;
+	}
+	
+	/**
+	 * <b>Arrête le moteur après les commandes déjà envoyées, et attend la fin de son
+	 * thread : le controleur peut ensuite être utilisé par le thread appelant.</b>
+	 * 
+	 * <p> Les commandes envoyées après l'arrêt sont ignorées.
+	 */
+	public void arreter() {
+		synchronized (this) {
+			if (arrete) return;
+			arrete = true;
+			commandes.add(ARRET);
+		}
+		if (Thread.currentThread() == thread) return;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private synchronized boolean envoyer(Runnable commande) {
+		if (arrete) return false;
+		commandes.add(commande);
+		return true;
+	}
+	
+	/**
+	 * <b>Boucle du thread du moteur : applique toutes les commandes présentes dans la
+	 * file, puis publie un instantané si le plateau a changé.</b>
+	 */
+	private void boucle() {
+		try {
+			while (true) {
+				Runnable commande = commandes.take();
+				do {
+					if (commande == ARRET) return;
+					try {
+						commande.run();
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				} while ((commande = commandes.poll()) != null);
+				Instantane nouveau = prendreInstantane(instantane);
+				if (nouveau != instantane) {
+					instantane = nouveau;
+					ecouteur.run();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * <b>Construit l'instantané du plateau en reprenant les instantanés des tuyaux qui
+	 * n'ont pas changé depuis le précédent.</b>
+	 * 
+	 * @param precedent Dernier instantané publié, null pour le premier.
+	 * @return Un nouvel instantané, ou le précédent si rien n'a changé.
+	 */
+	private Instantane prendreInstantane(Instantane precedent) {
+		InstantaneTuyau[] tuyaux = new InstantaneTuyau[controleur.getNbCouleursPalette()];
+		boolean change = precedent == null || precedent.getNbVictoires() != nbVictoires
+				|| !Arrays.equals(precedent.getSelection(), selection);
+		for (int c : controleur.getCouleursNiveau()) {
+			InstantaneTuyau avant = precedent == null ? null : precedent.getTuyau(c);
+			tuyaux[c] = controleur.getInstantaneTuyau(c, avant);
+			change |= tuyaux[c] != avant;
+		}
+		if (!change) return precedent;
+		return new Instantane(controleur.getNbColonnes(), tuyaux, selection, nbVictoires);
+	}
+}
@@ -0,0 +1,198 @@
+package gloo.flowfree.enregistrement;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import gloo.flowfree.model.Direction;
+
+/**
+ * <b>Classe représentant une partie enregistrée, décodée à partir d'un fichier
+ * écrit par un Enregistreur.</b>
+ * 
+ * <p> Les événements sont stockés dans des tableaux primitifs parallèles pour que
+ * le rejeu à pleine vitesse ne parcoure aucun objet intermédiaire.
+ * 
+ * @see Enregistreur
+ * @see Rejoueur
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class Enregistrement {
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private int idNiveau;
+	
+	/**
+	 * <b>Empreinte du niveau enregistré, 0 pour un enregistrement de version 1 qui
+	 * ne la contient pas.</b>
+	 * 
+	 * @see gloo.flowfree.model.Niveau#getEmpreinte()
+	 */
+	private long empreinte;
+	private int nbEvenements;
+	
+	/**
+	 * <b>Type de chaque événement : TYPE_SELECTION ou TYPE_MOUVEMENT.</b>
+	 */
+	private byte[] types;
+	
+	/**
+	 * <b>Délai en microsecondes depuis l'événement précédent.</b>
+	 */
+	private long[] delais;
+	
+	/**
+	 * <b>Ligne sélectionnée, ou ordinal de la direction pour un mouvement.</b>
+	 */
+	private int[] arguments1;
+	
+	/**
+	 * <b>Colonne sélectionnée, inutilisé pour un mouvement.</b>
+	 */
+	private int[] arguments2;
+	
+	private boolean termine;
+	private int signatureFinale;
+	private boolean reussi;
+	
+	private Enregistrement() {
+	}
+	
+	/**
+	 * <b>Lit et décode un fichier d'enregistrement.</b>
+	 * 
+	 * <p> Un fichier sans événement de fin (partie interrompue) est accepté, mais
+	 * ne permet pas de vérifier le plateau final. Un fichier coupé au milieu d'un
+	 * événement, comme en laisse un programme tué pendant une écriture, est refusé.
+	 * 
+	 * @param fichier Fichier écrit par un Enregistreur.
+	 * 
+	 * @return La partie décodée.
+	 * 
+	 * @throws IOException Si le fichier ne peut pas être lu, est tronqué ou n'est pas
+	 *         un enregistrement valide.
+	 */
+	public static Enregistrement lire(Path fichier) throws IOException {
+		ByteBuffer octets = ByteBuffer.wrap(Files.readAllBytes(fichier));
+		try {
+			return decoder(fichier, octets);
+		} catch (BufferUnderflowException e) {
+			throw new IOException(fichier + " : tronqué à l'octet " + octets.position(), e);
+		}
+	}
+	
+	private static Enregistrement decoder(Path fichier, ByteBuffer octets) throws IOException {
+		if (octets.remaining() < 5 || octets.getInt() != Enregistreur.MAGIQUE) {
+			throw new IOException(fichier + " n'est pas un enregistrement FlowFree");
+		}
+		byte version = octets.get();
+		if (version < Enregistreur.VERSION_SANS_EMPREINTE || version > Enregistreur.VERSION) {
+			throw new IOException(fichier + " : version " + version + " non supportée");
+		}
+		
+		Enregistrement e = new Enregistrement();
+		e.idNiveau = (int) lireVarint(octets);
+		if (version >= Enregistreur.VERSION_SANS_DIAGONALES) {
+			e.empreinte = octets.getLong();
+		}
+		int capacite = Math.max(16, octets.remaining() / 2);
+		e.types = new byte[capacite];
+		e.delais = new long[capacite];
+		e.arguments1 = new int[capacite];
+		e.arguments2 = new int[capacite];
+		
+		while (octets.hasRemaining()) {
+			int type = octets.get() & 0xFF;
+			long delai = lireVarint(octets);
+			if (type == Enregistreur.TYPE_FIN) {
+				e.signatureFinale = octets.getInt();
+				e.reussi = octets.get() == 1;
+				e.termine = true;
+				break;
+			}
+			int n = e.nbEvenements++;
+			e.delais[n] = delai;
+			if (type == Enregistreur.TYPE_SELECTION) {
+				e.types[n] = Enregistreur.TYPE_SELECTION;
+				e.arguments1[n] = (int) lireVarint(octets);
+				e.arguments2[n] = (int) lireVarint(octets);
+			} else if ((type & 0xF8) == Enregistreur.TYPE_MOUVEMENT && (type & 0x07) < DIRECTIONS.length) {
+				e.types[n] = Enregistreur.TYPE_MOUVEMENT;
+				e.arguments1[n] = type & 0x07;
+			} else {
+				throw new IOException(fichier + " : type d'événement inconnu " + type);
+			}
+		}
+		e.types = Arrays.copyOf(e.types, e.nbEvenements);
+		e.delais = Arrays.copyOf(e.delais, e.nbEvenements);
+		e.arguments1 = Arrays.copyOf(e.arguments1, e.nbEvenements);
+		e.arguments2 = Arrays.copyOf(e.arguments2, e.nbEvenements);
+		return e;
+	}
+	
+	private static long lireVarint(ByteBuffer octets) {
+		long valeur = 0;
+		int decalage = 0;
+		byte b;
+		do {
+			b = octets.get();
+			valeur |= (long) (b & 0x7F) << decalage;
+			decalage += 7;
+		} while ((b & 0x80) != 0);
+		return valeur;
+	}
+	
+	// Getters
+	public int getIdNiveau() {
+		return idNiveau;
+	}
+	
+	/**
+	 * @return L'empreinte du niveau enregistré, 0 si l'enregistrement ne la contient pas.
+	 */
+	public long getEmpreinte() {
+		return empreinte;
+	}
+	
+	public int getNbEvenements() {
+		return nbEvenements;
+	}
+	
+	public boolean estSelection(int k) {
+		return types[k] == Enregistreur.TYPE_SELECTION;
+	}
+	
+	public long getDelaiMicros(int k) {
+		return delais[k];
+	}
+	
+	public int getLigne(int k) {
+		return arguments1[k];
+	}
+	
+	public int getColonne(int k) {
+		return arguments2[k];
+	}
+	
+	public Direction getDirection(int k) {
+		return DIRECTIONS[arguments1[k]];
+	}
+	
+	public boolean estTermine() {
+		return termine;
+	}
+	
+	public int getSignatureFinale() {
+		return signatureFinale;
+	}
+	
+	public boolean getReussi() {
+		return reussi;
+	}
+}
@@ -0,0 +1,202 @@
+package gloo.flowfree.enregistrement;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Niveau;
+
+/**
+ * <b>Classe enregistrant une partie sous forme d'un flux binaire compact
+ * d'événements (sélection d'une case, progression dans une direction).</b>
+ * 
+ * <p> Format du fichier :
+ * <ul>
+ *     <li> En-tête : entier magique "FFRE", octet de version, identifiant du niveau
+ *          (varint), empreinte du niveau (long). L'identifiant dépend de l'ordre et
+ *          du contenu des fichiers de niveaux ; l'empreinte retrouve le niveau même
+ *          si un fichier a été ajouté ou modifié depuis. La version 1 n'avait pas
+ *          d'empreinte.
+ *     <li> Evénement sélection : octet 0x00, délai depuis l'événement précédent
+ *          en microsecondes (varint), ligne (varint), colonne (varint).
+ *     <li> Evénement mouvement : octet 0x10 | ordinal de la direction sur 3 bits,
+ *          délai (varint). Avant la version 3, seules les quatre directions d'un
+ *          plateau rectangulaire (ordinaux 0 à 3) pouvaient y figurer.
+ *     <li> Fin : octet 0x20, délai (varint), signature du plateau final (int), 
+ *          octet 1 si le niveau est réussi, 0 sinon.
+ * </ul>
+ * 
+ * <p> Les méthodes d'enregistrement sont appelées par le controleur sur le thread
+ * de l'IHM : elles ne font que mesurer le délai et confient l'encodage et l'écriture
+ * à un thread dédié, qui écrit par blocs dans un FileChannel.
+ * 
+ * @see Enregistrement
+ * @see Rejoueur
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class Enregistreur {
+	
+	static final int MAGIQUE = 0x46465245;	// "FFRE"
+	static final byte VERSION = 3;
+	static final byte VERSION_SANS_DIAGONALES = 2;
+	static final byte VERSION_SANS_EMPREINTE = 1;
+	static final int TYPE_SELECTION = 0x00;
+	static final int TYPE_MOUVEMENT = 0x10;
+	static final int TYPE_FIN = 0x20;
+	private static final int TAILLE_MAX_EVENEMENT = 32;
+	
+	/**
+	 * <b>Propriété système donnant le répertoire dans lequel enregistrer les parties.</b>
+	 * 
+	 * <p> Si elle n'est pas définie, aucune partie n'est enregistrée.
+	 */
+	public static final String PROPRIETE_REPERTOIRE = "flowfree.enregistrement";
+	
+	private final FileChannel canal;
+	private final ByteBuffer tampon = ByteBuffer.allocateDirect(64 * 1024);
+	private final ExecutorService ecrivain;
+	private long dernierInstant;
+	
+	/**
+	 * <b>Constructeur ouvrant le fichier d'enregistrement et écrivant l'en-tête.</b>
+	 * 
+	 * @param fichier Fichier à créer (écrasé s'il existe).
+	 * @param niveau Niveau joué.
+	 * 
+	 * @see Niveau#getEmpreinte()
+	 * 
+	 * @throws IOException Si le fichier ne peut pas être ouvert.
+	 */
+	public Enregistreur(Path fichier, Niveau niveau) throws IOException {
+		int idNiveau = niveau.getId();
+		long empreinte = niveau.getEmpreinte();
+		this.canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.ecrivain = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "flowfree-enregistreur");
+			t.setDaemon(true);
+			return t;
+		});
+		this.dernierInstant = System.nanoTime();
+		ecrivain.execute(() -> {
+			reserver();
+			tampon.putInt(MAGIQUE);
+			tampon.put(VERSION);
+			ecrireVarint(idNiveau);
+			tampon.putLong(empreinte);
+		});
+	}
+	
+	/**
+	 * <b>Crée un enregistreur pour le niveau donné si la propriété système
+	 * flowfree.enregistrement est définie.</b>
+	 * 
+	 * @param niveau Niveau joué.
+	 * 
+	 * @return Un nouvel enregistreur, null si l'enregistrement n'est pas demandé
+	 *         ou si le fichier ne peut pas être créé.
+	 */
+	public static Enregistreur depuisConfiguration(Niveau niveau) {
+		String repertoire = System.getProperty(PROPRIETE_REPERTOIRE);
+		if (repertoire == null) return null;
+		Path fichier = Path.of(repertoire, "niveau-" + niveau.getId() + "-" + System.currentTimeMillis() + ".ffr");
+		try {
+			return new Enregistreur(fichier, niveau);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	public void selection(int i, int j) {
+		long delai = delaiMicros();
+		ecrivain.execute(() -> {
+			reserver();
+			tampon.put((byte) TYPE_SELECTION);
+			ecrireVarint(delai);
+			ecrireVarint(i);
+			ecrireVarint(j);
+		});
+	}
+	
+	public void mouvement(Direction dir) {
+		long delai = delaiMicros();
+		ecrivain.execute(() -> {
+			reserver();
+			tampon.put((byte) (TYPE_MOUVEMENT | dir.ordinal()));
+			ecrireVarint(delai);
+		});
+	}
+	
+	/**
+	 * <b>Ecrit l'événement de fin et ferme le fichier, en attendant que toutes
+	 * les écritures en attente soient terminées.</b>
+	 * 
+	 * @param signaturePlateau Signature du plateau final.
+	 * @param reussi Vrai si le niveau est réussi à la fin de la partie.
+	 * 
+	 * @see gloo.flowfree.model.Plateau#signature()
+	 */
+	public void terminer(int signaturePlateau, boolean reussi) {
+		long delai = delaiMicros();
+		ecrivain.execute(() -> {
+			reserver();
+			tampon.put((byte) TYPE_FIN);
+			ecrireVarint(delai);
+			tampon.putInt(signaturePlateau);
+			tampon.put((byte) (reussi ? 1 : 0));
+			vider();
+			try {
+				canal.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		ecrivain.shutdown();
+		try {
+			ecrivain.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private long delaiMicros() {
+		long maintenant = System.nanoTime();
+		long delai = (maintenant - dernierInstant) / 1000;
+		dernierInstant = maintenant;
+		return delai;
+	}
+	
+	// Méthodes exécutées uniquement par le thread d'écriture
+	private void reserver() {
+		if (tampon.remaining() < TAILLE_MAX_EVENEMENT) vider();
+	}
+	
+	private void ecrireVarint(long valeur) {
+		while ((valeur & ~0x7FL) != 0) {
+			tampon.put((byte) ((valeur & 0x7F) | 0x80));
+			valeur >>>= 7;
+		}
+		tampon.put((byte) valeur);
+	}
+	
+	private void vider() {
+		tampon.flip();
+		try {
+			while (tampon.hasRemaining()) {
+				canal.write(tampon);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		tampon.clear();
+	}
+}
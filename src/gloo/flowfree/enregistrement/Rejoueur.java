@@ -0,0 +1,233 @@
+package gloo.flowfree.enregistrement;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import gloo.flowfree.control.Controleur;
+import gloo.flowfree.control.MoteurJeu;
+import gloo.flowfree.ihm.FenetreNiveau;
+
+/**
+ * <b>Outil rejouant des parties enregistrées et vérifiant que le plateau final
+ * est identique à celui de la partie d'origine.</b>
+ * 
+ * <p> Deux modes :
+ * <ul>
+ *     <li> Sans IHM, à pleine vitesse (par défaut) : les événements sont envoyés
+ *          directement au controleur, sans affichage console. Les parties
+ *          enregistrées servent alors de charge de travail et de tests de non
+ *          régression.
+ *     <li> En temps réel dans la fenêtre du niveau (option --temps-reel) : les
+ *          délais enregistrés entre les événements sont respectés.
+ * </ul>
+ * 
+ * <p> Le niveau d'une partie est retrouvé par son empreinte, enregistrée dans
+ * l'en-tête : les identifiants changent quand un fichier de niveaux est ajouté ou
+ * modifié, et une partie n'est jamais rejouée sur un autre niveau. Une partie dont
+ * le niveau n'existe plus compte comme un échec, de même qu'un fichier illisible ou
+ * tronqué.
+ * 
+ * <p> Utilisation : <code>Rejoueur [--temps-reel] fichier.ffr...</code>
+ * 
+ * @see Enregistrement
+ * @see Enregistreur
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class Rejoueur {
+	
+	public static void main(String[] args) throws IOException {
+		boolean tempsReel = false;
+		List<Enregistrement> enregistrements = new ArrayList<Enregistrement>();
+		int nbFichiers = 0;
+		int nbEchecs = 0;
+		for (String arg : args) {
+			if (arg.equals("--temps-reel")) {
+				tempsReel = true;
+				continue;
+			}
+			nbFichiers++;
+			try {
+				enregistrements.add(Enregistrement.lire(Path.of(arg)));
+			} catch (IOException e) {
+				nbEchecs++;		// Fichier illisible ou tronqué : un échec, pas un arrêt
+				System.out.println(e.getMessage());
+			}
+		}
+		if (nbFichiers == 0) {
+			System.err.println("Utilisation : Rejoueur [--temps-reel] fichier.ffr...");
+			System.exit(2);
+		}
+		if (enregistrements.isEmpty()) {
+			System.exit(1);
+		}
+		
+		if (tempsReel) {
+			Enregistrement e = enregistrements.get(0);
+			SwingUtilities.invokeLater(() -> {
+				Controleur controleur = new Controleur();
+				int idNiveau = trouverNiveau(controleur, e, new HashMap<Long, Integer>());
+				if (idNiveau < 0) {
+					System.out.println(messageIntrouvable(e));
+				} else {
+					rejouerTempsReel(controleur, e, idNiveau);
+				}
+			});
+			return;
+		}
+		
+		Controleur controleur = new Controleur();
+		controleur.setAffichageConsole(false);
+		Map<Long, Integer> index = new HashMap<Long, Integer>();
+		long nbEvenements = 0;
+		long debut = System.nanoTime();
+		for (Enregistrement e : enregistrements) {
+			int idNiveau = trouverNiveau(controleur, e, index);
+			if (idNiveau < 0) {
+				nbEchecs++;
+				System.out.println(messageIntrouvable(e));
+				continue;
+			}
+			if (idNiveau != e.getIdNiveau()) {
+				System.out.println("Niveau " + e.getIdNiveau() + " enregistré : rejoué sur le niveau " + idNiveau
+						+ ", de même empreinte");
+			}
+			boolean identique = rejouer(controleur, e, idNiveau);
+			nbEvenements += e.getNbEvenements();
+			if (!identique) {
+				nbEchecs++;
+				System.out.println("Niveau " + idNiveau + " : plateau final différent de l'enregistrement");
+			}
+		}
+		long duree = System.nanoTime() - debut;
+		System.out.println(nbFichiers + " parties, " + nbEvenements + " événements rejoués en "
+				+ duree / 1_000_000 + " ms (" + (long) (nbEvenements * 1e9 / Math.max(1, duree)) + " événements/s), "
+				+ nbEchecs + " échec(s)");
+		System.exit(nbEchecs == 0 ? 0 : 1);
+	}
+	
+	/**
+	 * <b>Retrouve le niveau d'une partie enregistrée parmi les niveaux chargés.</b>
+	 * 
+	 * <p> Le niveau de l'identifiant enregistré est pris s'il a l'empreinte
+	 * enregistrée ; sinon tous les niveaux sont indexés par empreinte, une seule fois
+	 * pour toutes les parties rejouées. Un enregistrement de version 1, sans
+	 * empreinte, est rejoué sur l'identifiant enregistré.
+	 * 
+	 * @see Controleur#getEmpreinteNiveau(int)
+	 * 
+	 * @param controleur Controleur donnant accès aux niveaux.
+	 * @param e Partie enregistrée.
+	 * @param index Index des niveaux par empreinte, vide tant qu'il n'a pas servi.
+	 * 
+	 * @return L'identifiant actuel du niveau enregistré, -1 s'il n'existe plus.
+	 */
+	public static int trouverNiveau(Controleur controleur, Enregistrement e, Map<Long, Integer> index) {
+		int id = e.getIdNiveau();
+		if (e.getEmpreinte() == 0) {
+			return controleur.niveauExiste(id) ? id : -1;
+		}
+		if (controleur.niveauExiste(id) && controleur.getEmpreinteNiveau(id) == e.getEmpreinte()) {
+			return id;
+		}
+		if (index.isEmpty()) {
+			for (int k=1 ; controleur.niveauExiste(k) ; k++) {
+				index.putIfAbsent(controleur.getEmpreinteNiveau(k), k);
+			}
+		}
+		return index.getOrDefault(e.getEmpreinte(), -1);
+	}
+	
+	private static String messageIntrouvable(Enregistrement e) {
+		return "Niveau " + e.getIdNiveau() + " enregistré (empreinte " + Long.toHexString(e.getEmpreinte())
+				+ ") : introuvable dans les fichiers de niveaux";
+	}
+	
+	/**
+	 * <b>Rejoue une partie à pleine vitesse, sans IHM.</b>
+	 * 
+	 * @see Rejoueur#trouverNiveau(Controleur, Enregistrement, Map)
+	 * 
+	 * @param controleur Controleur sur lequel rejouer la partie (le niveau y est
+	 *                   préparé).
+	 * @param e Partie enregistrée.
+	 * @param idNiveau Identifiant actuel du niveau de la partie.
+	 * 
+	 * @return Vrai si le plateau final et l'état de réussite correspondent à
+	 *         l'enregistrement (ou si l'enregistrement est interrompu), faux sinon.
+	 */
+	public static boolean rejouer(Controleur controleur, Enregistrement e, int idNiveau) {
+		controleur.preparerNiveau(idNiveau);
+		boolean reussi = false;
+		for (int k=0 ; k < e.getNbEvenements() ; k++) {
+			reussi |= appliquer(controleur, e, k);
+		}
+		return verifier(controleur, e, reussi);
+	}
+	
+	/**
+	 * <b>Rejoue une partie dans la fenêtre du niveau en respectant les délais
+	 * enregistrés.</b>
+	 * 
+	 * <p> Méthode à appeler sur le thread de l'IHM. Les événements sont envoyés au
+	 * moteur de jeu de la fenêtre, comme les entrées du joueur, et la vérification est
+	 * faite par le moteur après le dernier ; son résultat est affiché dans la console.
+	 * Le rejeu s'arrête si la fenêtre est fermée.
+	 * 
+	 * @see MoteurJeu#executer(java.util.function.Function)
+	 * 
+	 * @param controleur Controleur sur lequel lancer le niveau enregistré.
+	 * @param e Partie enregistrée.
+	 * @param idNiveau Identifiant actuel du niveau de la partie.
+	 */
+	public static void rejouerTempsReel(Controleur controleur, Enregistrement e, int idNiveau) {
+		FenetreNiveau fenetre = controleur.lancerNiveau(idNiveau);
+		MoteurJeu moteur = fenetre.getMoteur();
+		boolean[] reussi = new boolean[1];	// Lu et modifié sur le thread du moteur
+		int[] prochain = new int[1];
+		Timer minuteur = new Timer(0, null);
+		minuteur.setRepeats(false);
+		minuteur.addActionListener(evt -> {
+			if (!fenetre.isDisplayable()) return;
+			int k = prochain[0]++;
+			moteur.executer(c -> reussi[0] |= appliquer(c, e, k));
+			if (prochain[0] < e.getNbEvenements()) {
+				minuteur.setInitialDelay(delaiMillis(e, prochain[0]));
+				minuteur.start();
+			} else {
+				moteur.executer(c -> verifier(c, e, reussi[0])).thenAccept(identique ->
+						System.out.println("Rejeu terminé : " + (identique
+								? "plateau final identique" : "plateau final différent de l'enregistrement")));
+			}
+		});
+		if (e.getNbEvenements() > 0) {
+			minuteur.setInitialDelay(delaiMillis(e, 0));
+			minuteur.start();
+		}
+	}
+	
+	private static boolean appliquer(Controleur controleur, Enregistrement e, int k) {
+		if (e.estSelection(k)) {
+			controleur.selectionCase(e.getLigne(k), e.getColonne(k));
+			return false;
+		}
+		return controleur.action(e.getDirection(k));
+	}
+	
+	private static boolean verifier(Controleur controleur, Enregistrement e, boolean reussi) {
+		if (!e.estTermine()) return true;
+		return controleur.getSignaturePlateau() == e.getSignatureFinale() && reussi == e.getReussi();
+	}
+	
+	private static int delaiMillis(Enregistrement e, int k) {
+		return (int) Math.min(Integer.MAX_VALUE, e.getDelaiMicros(k) / 1000);
+	}
+}
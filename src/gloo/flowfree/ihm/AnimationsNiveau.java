@@ -0,0 +1,177 @@
+package gloo.flowfree.ihm;
+
+import java.util.Arrays;
+
+import javax.swing.Timer;
+
+/**
+ * <b>Animations du panneau d'un niveau : croissance des tuyaux, écoulement le long
+ * d'un tuyau qui vient de relier ses plots, et victoire.</b>
+ *
+ * <p> Toutes les animations sont menées par une seule minuterie Swing, dont la période
+ * est celle d'une image de l'écran sans descendre sous PERIODE_MIN_MS. La minuterie
+ * ne tourne que tant qu'une animation est en cours : au repos, le panneau ne consomme
+ * rien. Chaque animation a une durée bornée ; les phases sont calculées sur l'instant
+ * de la dernière image, si bien que tout ce qui est dessiné dans une même image est
+ * cohérent.
+ *
+ * <p> Les animations sont indexées par couleur (indice dans la palette). Toutes les
+ * méthodes sont appelées sur le thread de l'IHM.
+ *
+ * @see PanneauNiveau
+ */
+class AnimationsNiveau {
+
+    /**
+     * <b>Reçoit, à chaque image, les couleurs animées (ou qui viennent de finir de
+     * l'être) à redessiner, et si tout le panneau doit l'être.</b>
+     */
+    interface Rafraichissement {
+        void rafraichir( boolean[] couleurs, boolean toutLePanneau );
+    }
+
+    static final int PERIODE_MIN_MS = 16;
+    private static final long DUREE_CASE = 60_000_000L;
+    private static final long DUREE_CROISSANCE_MAX = 180_000_000L;
+    private static final long DUREE_ECOULEMENT = 600_000_000L;
+    private static final long DUREE_VICTOIRE = 900_000_000L;
+    private static final long INACTIVE = -1;
+
+    private final Rafraichissement rafraichissement;
+    private final Timer minuterie;
+    private long instant;
+
+    // Par couleur : croissance de longueurDepart à longueurCible, et écoulement
+    private final long[] debutCroissance;
+    private final long[] dureeCroissance;
+    private final double[] longueurDepart;
+    private final int[] longueurCible;
+    private final long[] debutEcoulement;
+    private final boolean[] aRedessiner;
+    private long debutVictoire = INACTIVE;
+
+    AnimationsNiveau( int nbCouleurs, int periodeMs, Rafraichissement rafraichissement ) {
+        this.rafraichissement = rafraichissement;
+        this.debutCroissance = new long[nbCouleurs];
+        this.dureeCroissance = new long[nbCouleurs];
+        this.longueurDepart = new double[nbCouleurs];
+        this.longueurCible = new int[nbCouleurs];
+        this.debutEcoulement = new long[nbCouleurs];
+        this.aRedessiner = new boolean[nbCouleurs];
+        Arrays.fill( debutCroissance, INACTIVE );
+        Arrays.fill( debutEcoulement, INACTIVE );
+        this.minuterie = new Timer( Math.max( PERIODE_MIN_MS, periodeMs ), e -> image() );
+        minuterie.setCoalesce( true );	// Jamais de file d'images en retard
+    }
+
+    /**
+     * <b>Fait croître l'affichage du tuyau d'une couleur de sa longueur affichée
+     * jusqu'à sa nouvelle longueur.</b>
+     */
+    void croissance( int couleur, int longueurAvant, int longueurApres ) {
+        double depart = Math.min( longueurAvant, longueurAffichee( couleur, longueurAvant ) );
+        debutCroissance[couleur] = demarrer();
+        dureeCroissance[couleur] = Math.min( DUREE_CROISSANCE_MAX, DUREE_CASE * ( longueurApres - ( long ) depart ) );
+        longueurDepart[couleur] = depart;
+        longueurCible[couleur] = longueurApres;
+    }
+
+    /**
+     * <b>Interrompt la croissance d'une couleur dont le tuyau a été coupé.</b>
+     */
+    void couper( int couleur ) {
+        debutCroissance[couleur] = INACTIVE;
+        debutEcoulement[couleur] = INACTIVE;
+        aRedessiner[couleur] = true;
+    }
+
+    void ecoulement( int couleur ) {
+        debutEcoulement[couleur] = demarrer();
+    }
+
+    void victoire() {
+        debutVictoire = demarrer();
+    }
+
+    /**
+     * <b>Termine toutes les animations et arrête la minuterie, quand le panneau n'est
+     * plus affiché.</b>
+     */
+    void arreter() {
+        minuterie.stop();
+        Arrays.fill( debutCroissance, INACTIVE );
+        Arrays.fill( debutEcoulement, INACTIVE );
+        debutVictoire = INACTIVE;
+    }
+
+    /**
+     * @return La longueur à dessiner pour le tuyau d'une couleur, éventuellement
+     *         fractionnaire pendant sa croissance.
+     */
+    double longueurAffichee( int couleur, int longueur ) {
+        double p = phase( debutCroissance[couleur], dureeCroissance[couleur] );
+        if( p < 0 || longueurCible[couleur] != longueur ) return longueur;
+        double t = 1 - ( 1 - p ) * ( 1 - p );	// Décélération en fin de croissance
+        return longueurDepart[couleur] + ( longueur - longueurDepart[couleur] ) * t;
+    }
+
+    /**
+     * @return L'avancement de l'écoulement le long du tuyau d'une couleur, entre 0 et 1,
+     *         négatif s'il n'y en a pas.
+     */
+    double phaseEcoulement( int couleur ) {
+        return phase( debutEcoulement[couleur], DUREE_ECOULEMENT );
+    }
+
+    /**
+     * @return L'avancement de l'animation de victoire, entre 0 et 1, négatif s'il n'y
+     *         en a pas.
+     */
+    double phaseVictoire() {
+        return phase( debutVictoire, DUREE_VICTOIRE );
+    }
+
+    private double phase( long debut, long duree ) {
+        if( debut == INACTIVE || duree <= 0 || instant - debut >= duree ) return -1;
+        return ( double ) ( instant - debut ) / duree;
+    }
+
+    private long demarrer() {
+        instant = System.nanoTime();
+        if( !minuterie.isRunning() ) {
+            minuterie.start();
+        }
+        return instant;
+    }
+
+    /**
+     * <b>Une image : avance l'instant, fait redessiner ce qui est animé ou vient de
+     * finir de l'être, puis arrête la minuterie si plus rien ne l'est.</b>
+     */
+    private void image() {
+        instant = System.nanoTime();
+        boolean active = false;
+        for( int c = 0; c < aRedessiner.length; ++c ) {
+            if( debutCroissance[c] != INACTIVE ) {
+                aRedessiner[c] = true;
+                if( instant - debutCroissance[c] >= dureeCroissance[c] ) debutCroissance[c] = INACTIVE;
+                else active = true;
+            }
+            if( debutEcoulement[c] != INACTIVE ) {
+                aRedessiner[c] = true;
+                if( instant - debutEcoulement[c] >= DUREE_ECOULEMENT ) debutEcoulement[c] = INACTIVE;
+                else active = true;
+            }
+        }
+        boolean victoire = debutVictoire != INACTIVE;
+        if( victoire ) {
+            if( instant - debutVictoire >= DUREE_VICTOIRE ) debutVictoire = INACTIVE;
+            else active = true;
+        }
+        if( !active ) {
+            minuterie.stop();
+        }
+        rafraichissement.rafraichir( aRedessiner, victoire );
+        Arrays.fill( aRedessiner, false );
+    }
+}
@@ -1,130 +1,159 @@
 package gloo.flowfree.ihm;
 
-import java.awt.Color;
+import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.util.ArrayList;
-import java.util.TreeMap;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import gloo.flowfree.control.Controleur;
+import gloo.flowfree.model.TousNiveaux;
 
 @SuppressWarnings("serial")
-public class FenetreAccueil extends JFrame  implements MouseListener {
-	
-	public int largeurFenetre = 400;
-	public int hauteurFenetre;
-    private int hauteurBarreFenetre = 20;
+public class FenetreAccueil extends JFrame implements TousNiveaux.EcouteurChargement {
+
     private static int coteCarre = 50;
     private static int paddingGlobal = 80;
     private static int paddingCarre = 10;
     private Controleur controleur;
-    private TreeMap<int[],int[]> niveauxParTaille;
+    private JLabel labelSubtitle;
+    private GrilleNiveaux grille;
+    private final AtomicBoolean actualisationPrevue = new AtomicBoolean();
+
+    /**
+     * <b>Miniatures des niveaux, communes à toutes les fenêtres d'accueil de la session.</b>
+     */
+    private static Miniatures miniatures;
+
+    /**
+     * <b>Fenêtre d'accueil de la session : masquée pendant qu'un niveau est joué puis
+     * réaffichée, plutôt que reconstruite à chaque retour.</b>
+     */
+    private static FenetreAccueil fenetre;
+
+    /**
+     * <b>Affiche la fenêtre d'accueil, en la créant au premier appel.</b>
+     *
+     * @return La fenêtre d'accueil de la session.
+     */
+    public static FenetreAccueil afficher( Controleur controleur ) {
+        if ( fenetre == null || fenetre.controleur != controleur ) {
+            fenetre = new FenetreAccueil( controleur );
+        }
+        fenetre.setVisible( true );
+        fenetre.toFront();
+        fenetre.actualiser();			// Le catalogue a pu être rechargé entre-temps
+        fenetre.grille.repaint();		// Les niveaux réussis ont pu changer
+        return fenetre;
+    }
 
-    public FenetreAccueil( Controleur controleur ) {
+    /**
+     * <b>Ferme la fenêtre d'accueil si elle est masquée, pour que la fermeture de la
+     * fenêtre d'un niveau termine l'application comme avant.</b>
+     */
+    public static void fermerSiMasquee() {
+        if ( fenetre != null && !fenetre.isVisible() ) {
+            fenetre.dispose();
+        }
+    }
+
+    private FenetreAccueil( Controleur controleur ) {
         this.controleur = controleur;
-        this.niveauxParTaille = controleur.getNiveauxParTaille();
-        this.hauteurFenetre = niveauxParTaille.keySet().size() * 2 * coteCarre + paddingGlobal * 2;
+        // S'abonner avant de lire les niveaux, même si le chargement est terminé : aucune
+        // publication ne peut être manquée, ni celles des rechargements à chaud
+        controleur.ajouterEcouteurChargement( this );
 
         this.setDefaultCloseOperation( JFrame.DISPOSE_ON_CLOSE );
-        this.setPreferredSize( new Dimension( largeurFenetre, hauteurFenetre ));
         this.setTitle( "FreeFlow" );
-        this.addMouseListener(this);
-        
-        drawPanel();
-        
+        if ( miniatures == null ) {
+            miniatures = new Miniatures( controleur,
+                    Path.of( System.getProperty( "user.dir" ), "ressources", "miniatures" ), coteCarre );
+        }
+
+        this.labelSubtitle = new JLabel( "", JLabel.CENTER );
+        labelSubtitle.setFont( new Font( "Courrier", Font.BOLD, 20 ) );
+        labelSubtitle.setPreferredSize( new Dimension( 0, paddingGlobal ) );
+        this.add( labelSubtitle, BorderLayout.PAGE_START );
+
+        this.grille = new GrilleNiveaux( controleur, miniatures, coteCarre, paddingGlobal, paddingCarre );
+        grille.addMouseListener( new MouseAdapter() {
+            @Override
+            public void mouseClicked( MouseEvent e ) {
+                int idNiveau = grille.niveauEn( e.getX(), e.getY() );
+                if ( idNiveau > 0 ) {
+                    lancerNiveau( idNiveau );
+                }
+            }
+        });
+        JScrollPane defilement = new JScrollPane( grille, JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER );
+        defilement.getViewport().addChangeListener( e -> demanderMiniatures() );
+        this.add( defilement, BorderLayout.CENTER );
+
+        actualiser();
         this.pack();
-        this.setVisible( true );
     }
-    
-    private void drawPanel() {
-    	JPanel panel = new JPanel();
-    	panel.setLayout(null);
-    	
-    	JLabel labelSubtitle = new JLabel("Choisissez votre niveau !", JLabel.CENTER);
-    	labelSubtitle.setBounds(0, 0, largeurFenetre, paddingGlobal);
-    	Font font = new Font("Courrier", Font.BOLD, 20);
-    	labelSubtitle.setFont(font);
-    	panel.add(labelSubtitle);
-    	
-    	int y = paddingGlobal;
-    	
-    	for (int[] taille : niveauxParTaille.keySet()) {
-    		
-    		JLabel labelTaille = new JLabel(taille[0] + "x" + taille[1], JLabel.CENTER);
-			labelTaille.setBounds(paddingGlobal, y, coteCarre, coteCarre);
-			labelTaille.setFont(font);
-	        panel.add(labelTaille);
-	        y += coteCarre ;
-	        
-	        int[] infos = niveauxParTaille.get(taille);
-	        int nbNiveaux = infos[1];
-    		for (int id=1; id <= nbNiveaux; id ++) {
-				int xRect = (id - 1) * (coteCarre + paddingCarre) + paddingGlobal;
-				JLabel label = new JLabel(Integer.toString(id), JLabel.CENTER);
-		        label.setBounds(xRect, y, coteCarre, coteCarre);
-		        label.setFont(font);
-		        int idNiveau = infos[0] + id - 1;
-		        if (controleur.niveauReussi(idNiveau)) {
-		        	label.setBackground(Color.GREEN);
-		        } else {
-		        	label.setBackground(Color.RED);
-		        }
-		        label.setOpaque(true);
-		        panel.add(label);
-    		}
-    		
-    		y += coteCarre ;
-    	}
-    	
-        this.add(panel);
+
+    /**
+     * <b>Appelée sur le thread de chargement quand de nouveaux niveaux sont lus :
+     * programme une actualisation sur le thread de l'IHM, sauf si une actualisation
+     * est déjà en attente.</b>
+     */
+    @Override
+    public void niveauxCharges() {
+        if ( actualisationPrevue.compareAndSet( false, true ) ) {
+            SwingUtilities.invokeLater( () -> {
+                actualisationPrevue.set( false );
+                actualiser();
+            });
+        }
+    }
+
+    private void actualiser() {
+        String sousTitre = "Choisissez votre niveau !";
+        if ( controleur.getErreurChargement() != null ) {
+            sousTitre = "Niveaux incomplets : fichier invalide";
+        } else if ( !controleur.chargementTermine() ) {
+            sousTitre = "Chargement des niveaux...";
+        }
+        labelSubtitle.setText( sousTitre );
+        grille.setNiveaux( controleur.getNiveauxParTaille() );
+        demanderMiniatures();
+    }
+
+    /**
+     * <b>Demande les miniatures des seules tuiles visibles dans la zone de défilement.</b>
+     */
+    private void demanderMiniatures() {
+        if ( !isVisible() ) return;
+        miniatures.demander( grille.niveauxDans( grille.getVisibleRect() ), idNiveau -> {
+            Rectangle tuile = grille.rectangleTuile( idNiveau );
+            if ( tuile != null ) grille.repaint( tuile );
+        });
+    }
+
+    private void lancerNiveau( int idNiveau ) {
+        miniatures.demander( List.of(), id -> {} );	// Abandonner les miniatures en attente
+        controleur.lancerNiveau( idNiveau );
+        this.setVisible( false );
     }
-    
-    
+
     @Override
-	public void mouseClicked(MouseEvent e) {
-    	
-    	int x = e.getPoint().x - paddingGlobal;
-    	int y = e.getPoint().y - hauteurBarreFenetre - paddingGlobal + 
-    			10;
-    	int rangTaille = y / (2*coteCarre + 10);
-    	
-    	if (y > 0 && y % (2*coteCarre + 10) >= coteCarre) {
-    		int rangNiveau = x / (coteCarre + paddingCarre);
-    		if ( x > 0 && x % (coteCarre + paddingCarre) <=  coteCarre ) {
-    			int[] taille = ( new ArrayList<int[]>(niveauxParTaille.keySet()) ).get(rangTaille);
-    			if ( rangNiveau < niveauxParTaille.get(taille)[1] ) {		// niveauxParTaille.get(taille)[1] désigne le nombre de niveaux de cette taille
-    				int idNiveau = niveauxParTaille.get(taille)[0] + rangNiveau; // niveauxParTaille.get(taille)[0] désigne l'indice du premier niveau de cette taille
-    			controleur.lancerNiveau(idNiveau);
-    			this.dispose();
-    			}
-    		}
-    	}
-	}
-
-	@Override
-	public void mousePressed(MouseEvent e) {
-		// nothing
-	}
-
-	@Override
-	public void mouseReleased(MouseEvent e) {
-		// nothing
-	}
-
-	@Override
-	public void mouseEntered(MouseEvent e) {
-		// nothing
-	}
-
-	@Override
-	public void mouseExited(MouseEvent e) {
-		// nothing
-	}
+    public void dispose() {
+        controleur.retirerEcouteurChargement( this );
+        miniatures.demander( List.of(), id -> {} );
+        if ( fenetre == this ) {
+            fenetre = null;
+        }
+        super.dispose();
+    }
 
 }
@@ -1,11 +1,16 @@
 package gloo.flowfree.ihm;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -13,6 +18,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
 import gloo.flowfree.control.Controleur;
+import gloo.flowfree.control.MoteurJeu;
 
 
 @SuppressWarnings( "serial" )
@@ -24,6 +30,11 @@ public class FenetreNiveau extends JFrame implements ActionListener {
     private Controleur controleur;
     private JButton aide;
     private JButton retourAccueil;
+    private JButton suivant;
+    private PanneauNiveau panneau;
+    private int idSuivant = -1;
+    private CompletableFuture<BufferedImage> fondSuivant;
+    private boolean passageAuSuivant;
     
 
     public FenetreNiveau( Controleur controleur ) {
@@ -32,8 +43,19 @@ public class FenetreNiveau extends JFrame implements ActionListener {
         this.setDefaultCloseOperation( JFrame.DISPOSE_ON_CLOSE );
         this.setPreferredSize( new Dimension( COTE_FENETRE, COTE_FENETRE + HAUTEUR_BARRE_FENETRE + HAUTEUR_BARRE_INFOS));
         this.setTitle( "FreeFlow - Niveau " + controleur.getIdNiveau() );
+        this.addWindowListener( new WindowAdapter() {
+            @Override
+            public void windowClosed( WindowEvent e ) {
+                if( !passageAuSuivant ) {	// Sinon le niveau suivant est déjà lancé
+                    panneau.arreterMoteur();
+                    controleur.quitterNiveau();
+                    FenetreAccueil.fermerSiMasquee();
+                }
+            }
+        });
         
-        this.add( new PanneauNiveau( controleur ), BorderLayout.CENTER);
+        this.panneau = new PanneauNiveau( controleur );
+        this.add( panneau, BorderLayout.CENTER);
         
         // Ajouter barre d'informations
         JPanel barreInfos = new JPanel( new FlowLayout(FlowLayout.CENTER) );
@@ -51,10 +73,61 @@ public class FenetreNiveau extends JFrame implements ActionListener {
         barreInfos.add(retourAccueil);
         retourAccueil.addActionListener(this);
         
+        	// Bouton niveau suivant
+        this.suivant = new JButton("Suivant");
+        suivant.setFont(font);
+        barreInfos.add(suivant);
+        suivant.addActionListener(this);
+        
         this.add(barreInfos, BorderLayout.PAGE_END);
 
         this.pack();
         this.setVisible( true );
+        
+        preparerNiveauSuivant();
+    }
+    
+    /**
+     * <b>Prépare le niveau suivant pendant que le joueur joue : son plateau est
+     * obtenu par le controleur, et sa grille et ses plots sont dessinés, en
+     * arrière-plan.</b>
+     */
+    private void preparerNiveauSuivant() {
+        idSuivant = controleur.prechargerNiveauSuivant();
+        suivant.setEnabled( idSuivant > 0 );
+        if( idSuivant > 0 ) {
+            int id = idSuivant;
+            int largeur = panneau.getWidth();
+            int hauteur = panneau.getHeight();
+            Color arrierePlan = panneau.getBackground();
+            fondSuivant = CompletableFuture.supplyAsync(
+                    () -> PanneauNiveau.dessinerFond( controleur, id, largeur, hauteur, arrierePlan ) );
+        }
+    }
+    
+    /**
+     * @return Le moteur qui applique les entrées du joueur sur le plateau du niveau.
+     */
+    public MoteurJeu getMoteur() {
+        return panneau.getMoteur();
+    }
+
+    public boolean aUnNiveauSuivant() {
+        return idSuivant > 0;
+    }
+    
+    /**
+     * <b>Lance le niveau suivant dans une nouvelle fenêtre, avec le plateau et le
+     * fond préparés s'ils sont prêts.</b>
+     */
+    public void niveauSuivant() {
+        if( idSuivant <= 0 ) return;
+        BufferedImage fond = fondSuivant == null ? null : fondSuivant.getNow( null );
+        passageAuSuivant = true;
+        panneau.arreterMoteur();	// Le controleur repasse au thread de l'IHM
+        FenetreNiveau fenetre = controleur.lancerNiveau( idSuivant );
+        fenetre.panneau.setFond( fond );
+        this.dispose();
     }
 
 	@Override
@@ -64,9 +137,10 @@ public class FenetreNiveau extends JFrame implements ActionListener {
 			String aide = "But du jeu : relier les plots de même couleur avec des tuyaux !\n\nCliquez sur un plot et utilisez les flèches du clavier pour construire\nle tuyau.\nVous pouvez revenir en arrière quand vous vous êtes trompés\nou réinitialiser le tuyau en cliquant sur un des plots de la couleur.\n\nToutes les cases doivent être remplies par un plot ou un tuyau.";
 			JOptionPane.showMessageDialog( this, aide, "Aide", JOptionPane.INFORMATION_MESSAGE );
 		} else if (e.getSource() == retourAccueil) {
-			controleur.nettoyerCouleurs();
-			new FenetreAccueil ( controleur );
+			FenetreAccueil.afficher( controleur );
 			this.dispose();
+		} else if (e.getSource() == suivant) {
+			niveauSuivant();
 		}
 		
 	}
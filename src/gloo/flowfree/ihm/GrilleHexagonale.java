@@ -0,0 +1,105 @@
+package gloo.flowfree.ihm;
+
+import java.awt.Polygon;
+
+import gloo.flowfree.model.Topologie;
+
+/**
+ * <b>Position à l'écran des cases d'un plateau hexagonal : cases à six côtés, pointe
+ * en haut, lignes impaires décalées d'une demi-case vers la droite.</b>
+ *
+ * <p> Le pas est la distance entre les centres de deux cases voisines, et la largeur
+ * d'une case ; deux lignes voisines sont espacées de 3/4 de la hauteur d'une case.
+ *
+ * @see Topologie#hexagonale(int, int)
+ */
+final class GrilleHexagonale {
+
+    private static final double RACINE_3 = Math.sqrt( 3 );
+
+    private final int nbLignes;
+    private final int nbColonnes;
+    private final double pas;
+
+    /**
+     * <b>Distance du centre d'une case à ses sommets.</b>
+     */
+    private final double rayon;
+
+    /**
+     * <b>Grille la plus grande qui tient dans la zone donnée, calée en haut à gauche.</b>
+     */
+    GrilleHexagonale( int nbLignes, int nbColonnes, int largeur, int hauteur ) {
+        this.nbLignes = nbLignes;
+        this.nbColonnes = nbColonnes;
+        double largeurEnPas = nbColonnes + ( nbLignes > 1 ? 0.5 : 0 );
+        double hauteurEnPas = ( 1.5 * nbLignes + 0.5 ) / RACINE_3;
+        this.pas = Math.min( largeur / largeurEnPas, hauteur / hauteurEnPas );
+        this.rayon = pas / RACINE_3;
+    }
+
+    int getPas() {
+        return ( int ) pas;
+    }
+
+    int getLargeur() {
+        return ( int ) Math.ceil( pas * ( nbColonnes + ( nbLignes > 1 ? 0.5 : 0 ) ) );
+    }
+
+    int getHauteur() {
+        return ( int ) Math.ceil( rayon * ( 1.5 * nbLignes + 0.5 ) );
+    }
+
+    /**
+     * @return L'abscisse du centre de la case ( i, j ).
+     */
+    double x( int i, int j ) {
+        return pas * ( j + 0.5 + ( i & 1 ) * 0.5 );
+    }
+
+    /**
+     * @return L'ordonnée du centre des cases de la ligne i.
+     */
+    double y( int i ) {
+        return rayon * ( 1 + 1.5 * i );
+    }
+
+    /**
+     * @return Le contour de la case ( i, j ), sommets arrondis au pixel.
+     */
+    Polygon contour( int i, int j ) {
+        Polygon contour = new Polygon();
+        for( int k = 0; k < 6; ++k ) {
+            double angle = Math.PI / 3 * k - Math.PI / 2;	// Premier sommet en haut
+            contour.addPoint( ( int ) Math.round( x( i, j ) + rayon * Math.cos( angle ) ),
+                    ( int ) Math.round( y( i ) + rayon * Math.sin( angle ) ) );
+        }
+        return contour;
+    }
+
+    /**
+     * <b>Trouve la case sous un point : celle dont le centre est le plus proche, parmi
+     * les cases voisines de la case estimée.</b>
+     *
+     * @return Les coordonnées [i, j] de la case, null si le point est hors du plateau.
+     */
+    int[] caseSous( int x, int y ) {
+        int iEstimee = ( int ) Math.round( ( y - rayon ) / ( 1.5 * rayon ) );
+        int[] plusProche = null;
+        double distanceMin = rayon * rayon;
+        for( int i = iEstimee - 1; i <= iEstimee + 1; ++i ) {
+            if( i < 0 || i >= nbLignes ) continue;
+            int jEstimee = ( int ) Math.round( x / pas - 0.5 - ( i & 1 ) * 0.5 );
+            for( int j = jEstimee - 1; j <= jEstimee + 1; ++j ) {
+                if( j < 0 || j >= nbColonnes ) continue;
+                double dx = x - x( i, j );
+                double dy = y - y( i );
+                if( dx * dx + dy * dy <= distanceMin ) {
+                    distanceMin = dx * dx + dy * dy;
+                    plusProche = new int[] { i, j };
+                }
+            }
+        }
+        return plusProche;
+    }
+}
@@ -0,0 +1,283 @@
+package gloo.flowfree.ihm;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+import gloo.flowfree.control.Controleur;
+
+/**
+ * <b>Grille des niveaux de la fenêtre d'accueil, regroupés par taille de plateau.</b>
+ *
+ * <p> La grille ne contient aucun composant par niveau : elle ne dessine que les tuiles
+ * qui coupent la zone à repeindre. Sa disposition est calculée une fois par taille de
+ * plateau (position de l'en-tête, premier niveau, nombre de niveaux) ; la tuile sous un
+ * point ou le rectangle d'un niveau s'en déduisent par une recherche dichotomique sur
+ * les tailles, puis par division. Le coût de l'ouverture et du défilement ne dépend
+ * donc pas du nombre de niveaux.
+ *
+ * @see FenetreAccueil
+ * @see Miniatures
+ */
+@SuppressWarnings( "serial" )
+public class GrilleNiveaux extends JComponent implements Scrollable {
+
+    /**
+     * <b>Reçoit chaque tuile parcourue par pourTuiles(Rectangle, VisiteurTuile).</b>
+     */
+    private interface VisiteurTuile {
+        void tuile( int idNiveau, int rang, int x, int y );
+    }
+
+    private static final Font POLICE = new Font( "Courrier", Font.BOLD, 20 );
+
+    private final Controleur controleur;
+    private final Miniatures miniatures;
+    private final int cote;
+    private final int marge;
+    private final int espace;
+    private final int pas;
+
+    // Index de disposition, un élément par taille de plateau
+    private String[] libelles = new String[0];
+    private int[] yEntetes = new int[0];
+    private int[] premiersIds = new int[0];
+    private int[] nbNiveaux = new int[0];
+    private int[] premiersIdsTries = new int[0];	// Premiers niveaux dans l'ordre du fichier
+    private int[] blocsTries = new int[0];			// et blocs correspondants
+    private int tuilesParLigne = 1;
+    private int hauteur;
+
+    /**
+     * @param controleur Controleur de la session.
+     * @param miniatures Miniatures à afficher dans les tuiles.
+     * @param cote Côté d'une tuile en pixels.
+     * @param marge Marge à gauche, à droite et en bas de la grille.
+     * @param espace Espace entre deux tuiles.
+     */
+    public GrilleNiveaux( Controleur controleur, Miniatures miniatures, int cote, int marge, int espace ) {
+        this.controleur = controleur;
+        this.miniatures = miniatures;
+        this.cote = cote;
+        this.marge = marge;
+        this.espace = espace;
+        this.pas = cote + espace;
+        this.setOpaque( true );
+        this.setBackground( Color.WHITE );
+        this.addComponentListener( new ComponentAdapter() {
+            @Override
+            public void componentResized( ComponentEvent e ) {
+                if( calculerTuilesParLigne() != tuilesParLigne ) {
+                    disposer();
+                }
+            }
+        });
+    }
+
+    /**
+     * <b>Recalcule la disposition pour les niveaux donnés par le controleur.</b>
+     *
+     * @see Controleur#getNiveauxParTaille()
+     */
+    public void setNiveaux( TreeMap<int[], int[]> niveauxParTaille ) {
+        int n = niveauxParTaille.size();
+        libelles = new String[n];
+        premiersIds = new int[n];
+        nbNiveaux = new int[n];
+        yEntetes = new int[n];
+        int b = 0;
+        for( Map.Entry<int[], int[]> taille : niveauxParTaille.entrySet() ) {
+            libelles[b] = taille.getKey()[0] + "x" + taille.getKey()[1];
+            premiersIds[b] = taille.getValue()[0];
+            nbNiveaux[b] = taille.getValue()[1];
+            b++;
+        }
+        long[] ordre = new long[n];
+        for( b = 0; b < n; ++b ) {
+            ordre[b] = ( long ) premiersIds[b] << 32 | b;
+        }
+        Arrays.sort( ordre );
+        premiersIdsTries = new int[n];
+        blocsTries = new int[n];
+        for( int k = 0; k < n; ++k ) {
+            premiersIdsTries[k] = ( int ) ( ordre[k] >>> 32 );
+            blocsTries[k] = ( int ) ordre[k];
+        }
+        disposer();
+    }
+
+    private int calculerTuilesParLigne() {
+        int largeur = getWidth() > 0 ? getWidth() : getPreferredScrollableViewportSize().width;
+        return Math.max( 1, ( largeur - 2 * marge + espace ) / pas );
+    }
+
+    /**
+     * <b>Calcule la position de chaque en-tête de taille et la hauteur totale.</b>
+     *
+     * <p> Un bloc est formé d'un en-tête de la hauteur d'une tuile, puis des rangées
+     * de tuiles, chacune suivie de l'espace entre tuiles.
+     */
+    private void disposer() {
+        tuilesParLigne = calculerTuilesParLigne();
+        int y = 0;
+        for( int b = 0; b < yEntetes.length; ++b ) {
+            yEntetes[b] = y;
+            y += cote + nbRangees( b ) * pas;
+        }
+        hauteur = y + marge;
+        revalidate();
+        repaint();
+    }
+
+    private int nbRangees( int bloc ) {
+        return ( nbNiveaux[bloc] + tuilesParLigne - 1 ) / tuilesParLigne;
+    }
+
+    /**
+     * @return L'indice du dernier bloc dont l'en-tête commence avant y, 0 si aucun.
+     */
+    private int blocEn( int y ) {
+        int b = Arrays.binarySearch( yEntetes, y );
+        return b >= 0 ? b : Math.max( 0, -b - 2 );
+    }
+
+    /**
+     * <b>Niveau dont la tuile contient le point donné.</b>
+     *
+     * @return L'identifiant du niveau, -1 si le point n'est sur aucune tuile.
+     */
+    public int niveauEn( int x, int y ) {
+        if( yEntetes.length == 0 || x < marge ) return -1;
+        int b = blocEn( y );
+        int dy = y - yEntetes[b] - cote;
+        int dx = x - marge;
+        if( dy < 0 || dy % pas >= cote || dx % pas >= cote ) return -1;
+        int colonne = dx / pas;
+        int rang = dy / pas * tuilesParLigne + colonne;
+        if( colonne >= tuilesParLigne || rang >= nbNiveaux[b] ) return -1;
+        return premiersIds[b] + rang;
+    }
+
+    /**
+     * @return Le rectangle de la tuile du niveau, null si le niveau n'est pas affiché.
+     */
+    public Rectangle rectangleTuile( int idNiveau ) {
+        int k = Arrays.binarySearch( premiersIdsTries, idNiveau );
+        k = k >= 0 ? k : -k - 2;
+        if( k < 0 ) return null;
+        int b = blocsTries[k];
+        if( idNiveau - premiersIds[b] >= nbNiveaux[b] ) return null;
+        int rang = idNiveau - premiersIds[b];
+        return new Rectangle( marge + rang % tuilesParLigne * pas, yEntetes[b] + cote + rang / tuilesParLigne * pas, cote, cote );
+    }
+
+    /**
+     * @return Les identifiants des niveaux dont la tuile coupe la zone donnée.
+     */
+    public List<Integer> niveauxDans( Rectangle zone ) {
+        List<Integer> ids = new ArrayList<Integer>();
+        pourTuiles( zone, ( idNiveau, rang, x, y ) -> ids.add( idNiveau ) );
+        return ids;
+    }
+
+    /**
+     * <b>Parcourt les seules rangées de tuiles qui coupent la zone donnée.</b>
+     */
+    private void pourTuiles( Rectangle zone, VisiteurTuile visiteur ) {
+        if( yEntetes.length == 0 ) return;
+        int bas = zone.y + zone.height;
+        for( int b = blocEn( zone.y ); b < yEntetes.length && yEntetes[b] < bas; ++b ) {
+            int yRangees = yEntetes[b] + cote;
+            int premiere = Math.max( 0, ( zone.y - yRangees ) / pas );
+            int derniere = Math.min( nbRangees( b ) - 1, ( bas - yRangees ) / pas );
+            for( int r = premiere; r <= derniere; ++r ) {
+                for( int c = 0; c < tuilesParLigne; ++c ) {
+                    int rang = r * tuilesParLigne + c;
+                    if( rang >= nbNiveaux[b] ) break;
+                    visiteur.tuile( premiersIds[b] + rang, rang, marge + c * pas, yRangees + r * pas );
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent( Graphics g ) {
+        Rectangle zone = g.getClipBounds();
+        if( zone == null ) zone = new Rectangle( 0, 0, getWidth(), getHeight() );
+        g.setColor( getBackground() );
+        g.fillRect( zone.x, zone.y, zone.width, zone.height );
+        g.setFont( POLICE );
+        FontMetrics metriques = g.getFontMetrics();
+        int decalageTexte = ( cote - metriques.getHeight() ) / 2 + metriques.getAscent();
+
+        // En-têtes des tailles
+        g.setColor( Color.BLACK );
+        for( int b = blocEn( zone.y ); b < yEntetes.length && yEntetes[b] < zone.y + zone.height; ++b ) {
+            g.drawString( libelles[b], marge, yEntetes[b] + decalageTexte );
+        }
+
+        // Tuiles : état, miniature si elle est en mémoire, puis numéro dans la taille
+        pourTuiles( zone, ( idNiveau, rang, x, y ) -> {
+            boolean reussi = controleur.niveauReussi( idNiveau );
+            Color etat = reussi ? Color.GREEN : Color.RED;
+            BufferedImage miniature = miniatures.get( idNiveau, reussi );
+            if( miniature != null ) {
+                g.drawImage( miniature, x, y, cote, cote, null );
+            } else {
+                g.setColor( etat );
+                g.fillRect( x, y, cote, cote );
+            }
+            g.setColor( etat );
+            g.drawRect( x, y, cote - 1, cote - 1 );
+            g.drawRect( x + 1, y + 1, cote - 3, cote - 3 );
+            String numero = Integer.toString( rang + 1 );
+            g.setColor( Color.BLACK );
+            g.drawString( numero, x + ( cote - metriques.stringWidth( numero ) ) / 2, y + decalageTexte );
+        });
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension( getPreferredScrollableViewportSize().width, hauteur );
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension( 2 * marge + 4 * pas - espace, 8 * pas );
+    }
+
+    @Override
+    public int getScrollableUnitIncrement( Rectangle visible, int orientation, int sens ) {
+        return orientation == SwingConstants.VERTICAL ? pas / 2 : espace;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement( Rectangle visible, int orientation, int sens ) {
+        return orientation == SwingConstants.VERTICAL ? Math.max( pas, visible.height - pas ) : visible.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,306 @@
+package gloo.flowfree.ihm;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import gloo.flowfree.control.Controleur;
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Topologie;
+
+/**
+ * <b>Miniatures des niveaux affichées par la fenêtre d'accueil : grille, plots et,
+ * pour un niveau réussi, sa solution si elle est connue.</b>
+ *
+ * <p> Les miniatures sont dessinées en parallèle, hors du thread de l'IHM, puis
+ * gardées dans un cache LRU en mémoire borné en octets et dans un répertoire sur
+ * disque, sous une clé tirée de l'empreinte du contenu du niveau : une miniature
+ * reste valable si le niveau change de place dans le fichier.
+ *
+ * <p> Seules les miniatures des tuiles visibles sont demandées ; une demande dont la
+ * tuile a quitté la vue avant d'être traitée est abandonnée. Sur le thread de l'IHM,
+ * l'empreinte d'un niveau est lue dans l'index des niveaux, sans accès au disque ;
+ * seuls les dessinateurs lisent les niveaux et les fichiers du cache.
+ *
+ * @see Controleur#getEmpreinteNiveau(int)
+ * @see Controleur#getSolution(int)
+ */
+public class Miniatures {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final long OCTETS_MAX_EN_MEMOIRE = 16L * 1024 * 1024;
+
+    private final Controleur controleur;
+    private final Path repertoire;
+    private final int cote;
+    private final ExecutorService dessinateurs;
+
+    /**
+     * <b>Cache en mémoire, dans l'ordre des accès ; lu et modifié sur le thread de l'IHM
+     * uniquement.</b>
+     */
+    private final LinkedHashMap<Cle, BufferedImage> memoire = new LinkedHashMap<Cle, BufferedImage>( 64, 0.75f, true );
+    private long octetsEnMemoire;
+
+    /**
+     * <b>Clés en cours de dessin, et clés des tuiles actuellement visibles.</b>
+     */
+    private final Set<Cle> enCours = ConcurrentHashMap.newKeySet();
+    private volatile Set<Cle> visibles = Set.of();
+
+    /**
+     * <b>Clé d'une miniature : empreinte du contenu du niveau et état réussi, qui
+     * ajoute la solution au dessin.</b>
+     */
+    private static final class Cle {
+        final long empreinte;
+        final boolean reussi;
+
+        Cle( long empreinte, boolean reussi ) {
+            this.empreinte = empreinte;
+            this.reussi = reussi;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            return o instanceof Cle && ( ( Cle ) o ).empreinte == empreinte && ( ( Cle ) o ).reussi == reussi;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode( empreinte ) * 2 + ( reussi ? 1 : 0 );
+        }
+    }
+
+    /**
+     * @param controleur Controleur de la session, qui donne le contenu des niveaux.
+     * @param repertoire Répertoire du cache sur disque, null pour aucun cache sur disque.
+     * @param cote Côté des miniatures en pixels.
+     */
+    public Miniatures( Controleur controleur, Path repertoire, int cote ) {
+        this.controleur = controleur;
+        this.repertoire = repertoire;
+        this.cote = cote;
+        this.dessinateurs = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), tache -> {
+            Thread thread = new Thread( tache, "miniatures" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        });
+        if( repertoire != null ) {
+            try {
+                Files.createDirectories( repertoire );
+            } catch( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @param reussi État réussi du niveau, déjà lu par l'appelant.
+     * @return La miniature du niveau si elle est en mémoire, null sinon. Thread de l'IHM.
+     */
+    public BufferedImage get( int idNiveau, boolean reussi ) {
+        if( !controleur.niveauExiste( idNiveau ) ) return null;	// Catalogue rechargé, grille pas encore à jour
+        return memoire.get( new Cle( controleur.getEmpreinteNiveau( idNiveau ), reussi ) );
+    }
+
+    /**
+     * <b>Demande les miniatures des tuiles visibles, dans l'ordre donné. Thread de l'IHM.</b>
+     *
+     * <p> Les demandes précédentes pour des tuiles qui ne sont plus visibles sont
+     * abandonnées si leur dessin n'a pas commencé.
+     *
+     * @param idsVisibles Identifiants des niveaux dont la tuile est visible.
+     * @param pretes Appelée sur le thread de l'IHM avec l'identifiant de chaque niveau
+     *               dont la miniature vient d'entrer en mémoire.
+     */
+    public void demander( List<Integer> idsVisibles, IntConsumer pretes ) {
+        Map<Integer, Cle> cles = new LinkedHashMap<Integer, Cle>();
+        for( int id : idsVisibles ) {
+            if( controleur.niveauExiste( id ) ) {
+                cles.put( id, new Cle( controleur.getEmpreinteNiveau( id ), controleur.niveauReussi( id ) ) );
+            }
+        }
+        visibles = new HashSet<Cle>( cles.values() );
+        for( Map.Entry<Integer, Cle> demande : cles.entrySet() ) {
+            int id = demande.getKey();
+            Cle cle = demande.getValue();
+            if( memoire.containsKey( cle ) || !enCours.add( cle ) ) continue;
+            dessinateurs.execute( () -> {
+                try {
+                    if( !visibles.contains( cle ) ) return;		// Tuile sortie de la vue
+                    String nom = nomFichier( cle );
+                    BufferedImage miniature = lire( nom );
+                    if( miniature == null ) {
+                        miniature = dessiner( id, cle.reussi );
+                        if( !estToujours( id, cle ) ) return;	// Niveau déplacé par un rechargement pendant le dessin
+                        ecrire( nom, miniature );
+                    }
+                    BufferedImage prete = miniature;
+                    SwingUtilities.invokeLater( () -> {
+                        memoriser( cle, prete );
+                        pretes.accept( id );
+                    });
+                } finally {
+                    enCours.remove( cle );
+                }
+            });
+        }
+    }
+
+    /**
+     * @return Le nom du fichier de la miniature dans le cache sur disque, sans extension.
+     */
+    private String nomFichier( Cle cle ) {
+        return Long.toHexString( cle.empreinte ) + ( cle.reussi ? "-resolu-" : "-" ) + cote;
+    }
+
+    private boolean estToujours( int idNiveau, Cle cle ) {
+        return controleur.niveauExiste( idNiveau ) && controleur.getEmpreinteNiveau( idNiveau ) == cle.empreinte;
+    }
+
+    private void memoriser( Cle cle, BufferedImage miniature ) {
+        if( memoire.put( cle, miniature ) == null ) {
+            octetsEnMemoire += octets( miniature );
+        }
+        Iterator<Map.Entry<Cle, BufferedImage>> plusAncienne = memoire.entrySet().iterator();
+        while( octetsEnMemoire > OCTETS_MAX_EN_MEMOIRE && plusAncienne.hasNext() ) {
+            octetsEnMemoire -= octets( plusAncienne.next().getValue() );
+            plusAncienne.remove();
+        }
+    }
+
+    private static long octets( BufferedImage image ) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    private BufferedImage lire( String nom ) {
+        if( repertoire == null ) return null;
+        Path fichier = repertoire.resolve( nom + ".png" );
+        if( !Files.exists( fichier ) ) return null;
+        try {
+            return ImageIO.read( fichier.toFile() );
+        } catch( IOException e ) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void ecrire( String nom, BufferedImage miniature ) {
+        if( repertoire == null ) return;
+        try {
+            Path temporaire = Files.createTempFile( repertoire, nom, ".tmp" );
+            ImageIO.write( miniature, "png", temporaire.toFile() );
+            Files.move( temporaire, repertoire.resolve( nom + ".png" ), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+        } catch( IOException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * <b>Dessine la miniature d'un niveau : le fond de PanneauNiveau, puis la solution
+     * en traits épais si le niveau est réussi et sa solution connue.</b>
+     */
+    private BufferedImage dessiner( int idNiveau, boolean reussi ) {
+        BufferedImage miniature = PanneauNiveau.dessinerFond( controleur, idNiveau, cote, cote, Color.WHITE );
+        byte[][] solution = reussi ? controleur.getSolution( idNiveau ) : null;
+        if( solution == null ) return miniature;
+
+        int nbLignes = controleur.getNbLignesNiveau( idNiveau );
+        int nbColonnes = controleur.getNbColonnesNiveau( idNiveau );
+        Topologie topologie = controleur.getTopologieNiveau( idNiveau );
+        if( topologie.estHexagonale() ) {
+            dessinerHexagonale( miniature, idNiveau, solution, topologie, new GrilleHexagonale( nbLignes, nbColonnes, cote, cote ) );
+            return miniature;
+        }
+        int coteCase = Math.min( cote / nbLignes, cote / nbColonnes );
+        Graphics2D g = miniature.createGraphics();
+        g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+        g.setStroke( new BasicStroke( Math.max( 1, coteCase / 3 ), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND ) );
+        g.clipRect( 0, 0, nbColonnes * coteCase, nbLignes * coteCase );
+        for( int couleur : controleur.getCouleursNiveau( idNiveau ) ) {
+            byte[] chemin = solution[couleur];
+            int[] depart = controleur.getPositionPlots( idNiveau, couleur )[0];
+            int[] xs = new int[chemin.length + 1];
+            int[] ys = new int[chemin.length + 1];
+            g.setColor( new Color( controleur.getRgbCouleur( idNiveau, couleur ) ) );
+            int i = depart[0];
+            int j = depart[1];
+            int n = 0;
+            for( int k = 0; k <= chemin.length; ++k ) {
+                xs[n] = j * coteCase + coteCase / 2;
+                ys[n++] = i * coteCase + coteCase / 2;
+                if( i < 0 || j < 0 || i >= nbLignes || j >= nbColonnes ) {
+                    // Bord bouclé : la ligne brisée reprend, décalée, de l'autre côté du plateau
+                    int di = Math.floorMod( i, nbLignes ) - i;
+                    int dj = Math.floorMod( j, nbColonnes ) - j;
+                    g.drawPolyline( xs, ys, n );
+                    xs[0] = xs[n - 2] + dj * coteCase;
+                    ys[0] = ys[n - 2] + di * coteCase;
+                    xs[1] = xs[n - 1] + dj * coteCase;
+                    ys[1] = ys[n - 1] + di * coteCase;
+                    n = 2;
+                    i += di;
+                    j += dj;
+                }
+                if( k == chemin.length ) break;
+                switch( DIRECTIONS[chemin[k]] ) {
+                    case HAUT   : i--; break;
+                    case BAS    : i++; break;
+                    case DROITE : j++; break;
+                    case GAUCHE : j--; break;
+                }
+            }
+            g.drawPolyline( xs, ys, n );
+        }
+        g.dispose();
+        return miniature;
+    }
+
+    /**
+     * <b>Dessine la solution d'un plateau hexagonal, en ligne brisée de centre en
+     * centre : sans bord bouclé, chaque tuyau est d'un seul tenant.</b>
+     */
+    private void dessinerHexagonale( BufferedImage miniature, int idNiveau, byte[][] solution, Topologie topologie, GrilleHexagonale grille ) {
+        int nbColonnes = controleur.getNbColonnesNiveau( idNiveau );
+        Graphics2D g = miniature.createGraphics();
+        g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+        g.setStroke( new BasicStroke( Math.max( 1, grille.getPas() / 3 ), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND ) );
+        for( int couleur : controleur.getCouleursNiveau( idNiveau ) ) {
+            byte[] chemin = solution[couleur];
+            int[] depart = controleur.getPositionPlots( idNiveau, couleur )[0];
+            int[] xs = new int[chemin.length + 1];
+            int[] ys = new int[chemin.length + 1];
+            g.setColor( new Color( controleur.getRgbCouleur( idNiveau, couleur ) ) );
+            int cellule = depart[0] * nbColonnes + depart[1];
+            for( int k = 0; k <= chemin.length; ++k ) {
+                xs[k] = ( int ) Math.round( grille.x( cellule / nbColonnes, cellule % nbColonnes ) );
+                ys[k] = ( int ) Math.round( grille.y( cellule / nbColonnes ) );
+                if( k < chemin.length ) cellule = topologie.voisin( cellule, DIRECTIONS[chemin[k]] );
+            }
+            g.drawPolyline( xs, ys, xs.length );
+        }
+        g.dispose();
+    }
+}
@@ -1,28 +1,48 @@
 package gloo.flowfree.ihm;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Composite;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.Window;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.ArrayList;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import gloo.flowfree.control.Controleur;
-import gloo.flowfree.model.Couleur;
+import gloo.flowfree.control.Instantane;
+import gloo.flowfree.control.MoteurJeu;
+import gloo.flowfree.mesure.EvenementDessin;
+import gloo.flowfree.mesure.EvenementEntree;
+import gloo.flowfree.mesure.MetriquesMoteur;
 import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.InstantaneTuyau;
+import gloo.flowfree.model.Topologie;
 
 
 @SuppressWarnings( "serial" )
 public class PanneauNiveau extends JPanel implements MouseListener, KeyListener {
 
     private static final float EPAISSEUR = 4;
+    private static final Color COULEUR_TOPOLOGIE = new Color( 190, 190, 190 );
     private boolean premierAffichage = true;
     private Controleur controleur;
     private int nbLignes;
@@ -32,13 +52,206 @@ public class PanneauNiveau extends JPanel implements MouseListener, KeyListener
     private int demiRayon;
     private int largeurTuyau;
     private int arcRoundRect;
-    private int[] selection;
+    private Color[] couleursGraphiques;
+    private BufferedImage fond;
+
+    /**
+     * <b>Topologie du niveau, et position des cases d'un plateau hexagonal (null pour
+     * une grille rectangulaire), dont les tuyaux sont dessinés de centre en centre.</b>
+     */
+    private final Topologie topologie;
+    private GrilleHexagonale hexagones;
+
+    /**
+     * <b>Flèches appuyées depuis le dernier lot, appliquées ensemble au plus une fois
+     * par image : la répétition des touches ne crée pas de file de repaints.</b>
+     */
+    private Direction[] directionsEnAttente = new Direction[8];
+    private int nbEnAttente;
+    private int derniereTouche;
+    private long dernierLot;
+    private boolean lotPrevu;
+    private final Timer minuterieLot = new Timer( 0, e -> appliquerDirections() );
+
+    /**
+     * <b>Animations en cours, et longueur et complétude de chaque tuyau (par indice
+     * dans la palette) au dernier lot, pour détecter ce qui vient de changer.</b>
+     */
+    private AnimationsNiveau animations;
+    private int[] longueursConnues;
+    private boolean[] completesConnues;
+
+    /**
+     * <b>Moteur qui applique les entrées du joueur, et dernier instantané du plateau
+     * qu'il a publié, seul état dessiné par le panneau.</b>
+     */
+    private final MoteurJeu moteur;
+    private Instantane instantane;
+    private final AtomicBoolean publicationPrevue = new AtomicBoolean();
 
     public PanneauNiveau( Controleur controleur ) {
         this.controleur = controleur;
+        this.topologie = controleur.getTopologie();
+        this.moteur = new MoteurJeu( controleur, this::prevoirPublication );
+        this.instantane = moteur.getInstantane();
         this.addMouseListener( this );
         this.addKeyListener( this );
         this.setFocusable(true);
+        minuterieLot.setRepeats( false );
+    }
+
+    public MoteurJeu getMoteur() {
+        return moteur;
+    }
+
+    /**
+     * <b>Arrête le moteur du panneau : le controleur peut ensuite être utilisé par le
+     * thread de l'IHM.</b>
+     */
+    public void arreterMoteur() {
+        moteur.arreter();
+    }
+
+    /**
+     * <b>Appelée par le moteur à chaque instantané publié : une seule prise en compte
+     * est en file à la fois sur le thread de l'IHM, qui lit alors le dernier.</b>
+     */
+    private void prevoirPublication() {
+        if( publicationPrevue.compareAndSet( false, true ) ) {
+            SwingUtilities.invokeLater( this::nouvelInstantane );
+        }
+    }
+
+    private void nouvelInstantane() {
+        publicationPrevue.set( false );
+        Instantane precedent = instantane;
+        instantane = moteur.getInstantane();
+        if( instantane == precedent || !isDisplayable() ) return;
+        boolean victoire = instantane.getNbVictoires() > precedent.getNbVictoires();
+        suivreTuyaux( victoire );
+        repaint();
+        if( victoire ) {
+            afficherVictoire();
+        }
+    }
+
+    /**
+     * @return La durée d'une image de l'écran du panneau en nanosecondes, celle d'un
+     *         écran à 60 Hz si sa fréquence est inconnue.
+     */
+    private long dureeImage() {
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        int frequence = configuration == null ? DisplayMode.REFRESH_RATE_UNKNOWN
+                : configuration.getDevice().getDisplayMode().getRefreshRate();
+        return 1_000_000_000L / ( frequence > 0 ? frequence : 60 );
+    }
+
+    /**
+     * <b>Fond (grille et plots) déjà dessiné hors du thread de l'IHM, utilisé s'il a
+     * la taille du panneau au moment du dessin.</b>
+     */
+    public void setFond( BufferedImage fond ) {
+        this.fond = fond;
+    }
+
+    /**
+     * <b>Dessine la grille et les plots d'un niveau dans une image, sans toucher aux
+     * composants Swing : peut être appelée depuis n'importe quel thread.</b>
+     */
+    public static BufferedImage dessinerFond( Controleur controleur, int idNiveau, int largeur, int hauteur, Color arrierePlan ) {
+        int nbLignes = controleur.getNbLignesNiveau( idNiveau );
+        int nbColonnes = controleur.getNbColonnesNiveau( idNiveau );
+        int cote = Math.min( hauteur / nbLignes, largeur / nbColonnes );
+        int diametre = cote * 2 / 3;
+        int decalage = diametre / 4;
+        BufferedImage fond = new BufferedImage( Math.max( 1, largeur ), Math.max( 1, hauteur ), BufferedImage.TYPE_INT_RGB );
+        Graphics2D g = fond.createGraphics();
+        g.setColor( arrierePlan );
+        g.fillRect( 0, 0, largeur, hauteur );
+        Topologie topologie = controleur.getTopologieNiveau( idNiveau );
+        if( topologie.estHexagonale() ) {
+            dessinerHexagones( g, controleur, idNiveau, new GrilleHexagonale( nbLignes, nbColonnes, largeur, hauteur ) );
+            g.dispose();
+            return fond;
+        }
+        g.setColor( Color.BLACK );
+        for (int i=0 ; i <= nbLignes ; i++) {
+            g.drawLine(0, i * cote, nbColonnes * cote, i * cote);	// Lignes horizontales
+        }
+        for( int j = 0; j <= nbColonnes; ++j ) {
+            g.drawLine(j * cote, 0, j * cote, nbLignes * cote);	// Lignes verticales
+        }
+        if( !topologie.estRectangulaire() ) {
+            dessinerTopologie( g, topologie, cote, arrierePlan );
+        }
+        for( int couleur : controleur.getCouleursNiveau( idNiveau ) ) {
+            g.setColor( new Color( controleur.getRgbCouleur( idNiveau, couleur ) ) );
+            for (int[] coordOnePlot : controleur.getPositionPlots( idNiveau, couleur )) {
+                g.fillOval( coordOnePlot[1] * cote + decalage, coordOnePlot[0] * cote + decalage, diametre, diametre );
+            }
+        }
+        g.dispose();
+        return fond;
+    }
+
+    /**
+     * <b>Dessine le contour des cases d'un plateau hexagonal, puis ses plots.</b>
+     */
+    private static void dessinerHexagones( Graphics2D g, Controleur controleur, int idNiveau, GrilleHexagonale grille ) {
+        g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+        g.setColor( Color.BLACK );
+        for( int i = 0; i < controleur.getNbLignesNiveau( idNiveau ); ++i ) {
+            for( int j = 0; j < controleur.getNbColonnesNiveau( idNiveau ); ++j ) {
+                g.drawPolygon( grille.contour( i, j ) );
+            }
+        }
+        int diametre = grille.getPas() * 2 / 3;
+        for( int couleur : controleur.getCouleursNiveau( idNiveau ) ) {
+            g.setColor( new Color( controleur.getRgbCouleur( idNiveau, couleur ) ) );
+            for( int[] plot : controleur.getPositionPlots( idNiveau, couleur ) ) {
+                g.fillOval( ( int ) Math.round( grille.x( plot[0], plot[1] ) ) - diametre / 2,
+                        ( int ) Math.round( grille.y( plot[0] ) ) - diametre / 2, diametre, diametre );
+            }
+        }
+    }
+
+    /**
+     * <b>Dessine les ponts (case grisée que les deux tuyaux traversent) et les bords
+     * bouclés (bord ouvert marqué d'une flèche vers l'extérieur).</b>
+     */
+    private static void dessinerTopologie( Graphics2D g, Topologie topologie, int cote, Color arrierePlan ) {
+        int nbLignes = topologie.getNbLignes();
+        int nbColonnes = topologie.getNbColonnes();
+        int marge = cote / 8;
+        int pointe = cote / 5;
+        g.setColor( COULEUR_TOPOLOGIE );
+        for( int pont : topologie.getPonts() ) {
+            int x = pont % nbColonnes * cote;
+            int y = pont / nbColonnes * cote;
+            g.fillRect( x + marge, y + marge, cote - 2 * marge, cote - 2 * marge );
+        }
+        for( int i = 0; i < nbLignes; ++i ) {
+            if( !topologie.estLigneBouclee( i ) ) continue;
+            int y = i * cote + cote / 2;
+            int droite = nbColonnes * cote;
+            g.setColor( arrierePlan );
+            g.drawLine( 0, i * cote + marge, 0, ( i + 1 ) * cote - marge );
+            g.drawLine( droite, i * cote + marge, droite, ( i + 1 ) * cote - marge );
+            g.setColor( COULEUR_TOPOLOGIE );
+            g.fillPolygon( new int[] { 1, 1 + pointe, 1 + pointe }, new int[] { y, y - pointe, y + pointe }, 3 );
+            g.fillPolygon( new int[] { droite - 1, droite - 1 - pointe, droite - 1 - pointe }, new int[] { y, y - pointe, y + pointe }, 3 );
+        }
+        for( int j = 0; j < nbColonnes; ++j ) {
+            if( !topologie.estColonneBouclee( j ) ) continue;
+            int x = j * cote + cote / 2;
+            int bas = nbLignes * cote;
+            g.setColor( arrierePlan );
+            g.drawLine( j * cote + marge, 0, ( j + 1 ) * cote - marge, 0 );
+            g.drawLine( j * cote + marge, bas, ( j + 1 ) * cote - marge, bas );
+            g.setColor( COULEUR_TOPOLOGIE );
+            g.fillPolygon( new int[] { x, x - pointe, x + pointe }, new int[] { 1, 1 + pointe, 1 + pointe }, 3 );
+            g.fillPolygon( new int[] { x, x - pointe, x + pointe }, new int[] { bas - 1, bas - 1 - pointe, bas - 1 - pointe }, 3 );
+        }
     }
 
     private void calculeParametres() {
@@ -47,112 +260,382 @@ public class PanneauNiveau extends JPanel implements MouseListener, KeyListener
         nbColonnes = controleur.getNbColonnes();
         int cote_c = getSize().width / nbColonnes;
         coteCase = cote_l < cote_c ? cote_l : cote_c;
+        if( topologie.estHexagonale() ) {
+            hexagones = new GrilleHexagonale( nbLignes, nbColonnes, getSize().width, getSize().height );
+            coteCase = hexagones.getPas();
+        }
         diametrePlot = coteCase * 2 / 3;
         demiRayon = diametrePlot / 4;
         largeurTuyau = coteCase / 4;
         arcRoundRect = coteCase / 4;
         premierAffichage = false;
+        if( animations == null ) {
+            int nbCouleurs = controleur.getNbCouleursPalette();
+            animations = new AnimationsNiveau( nbCouleurs, ( int ) ( dureeImage() / 1_000_000 ), this::rafraichirAnimations );
+            longueursConnues = new int[nbCouleurs];
+            completesConnues = new boolean[nbCouleurs];
+            suivreTuyaux( false );
+        }
+    }
+
+    /**
+     * <b>Compare les tuyaux à leur état au dernier lot et lance les animations :
+     * croissance des tuyaux allongés, écoulement dans ceux qui viennent de relier
+     * leurs plots, victoire.</b>
+     */
+    private void suivreTuyaux( boolean victoire ) {
+        if( animations == null ) return;
+        for( int couleur : controleur.getCouleursNiveau() ) {
+            InstantaneTuyau tuyau = instantane.getTuyau( couleur );
+            int longueur = tuyau == null ? 0 : tuyau.size();
+            boolean complete = tuyau != null && tuyau.estComplet();
+            if( longueur > longueursConnues[couleur] ) {
+                animations.croissance( couleur, longueursConnues[couleur], longueur );
+            } else if( longueur < longueursConnues[couleur] ) {
+                animations.couper( couleur );
+            }
+            if( complete && !completesConnues[couleur] ) {
+                animations.ecoulement( couleur );
+            }
+            longueursConnues[couleur] = longueur;
+            completesConnues[couleur] = complete;
+        }
+        if( victoire ) {
+            animations.victoire();
+        }
+    }
+
+    /**
+     * <b>Redessine, à chaque image d'animation, la seule zone des tuyaux animés, ou
+     * tout le panneau pendant l'animation de victoire.</b>
+     */
+    private void rafraichirAnimations( boolean[] couleurs, boolean toutLePanneau ) {
+        if( !isDisplayable() ) {
+            animations.arreter();
+            return;
+        }
+        if( toutLePanneau ) {
+            repaint();
+            return;
+        }
+        for( int couleur = 0; couleur < couleurs.length; ++couleur ) {
+            if( couleurs[couleur] && instantane.getTuyau( couleur ) != null ) {
+                repaint( zoneTuyau( couleur ) );
+            }
+        }
+    }
+
+    /**
+     * @return Le rectangle englobant le tuyau d'une couleur et son plot de départ. Un
+     *         tuyau qui passe un bord bouclé est suivi de l'autre côté du plateau.
+     */
+    private Rectangle zoneTuyau( int couleur ) {
+        if( hexagones != null ) return zoneTuyauHexagonal( couleur );
+        int[] depart = instantane.getCoordDepart( couleur );
+        int iMin = depart[0], iMax = depart[0], jMin = depart[1], jMax = depart[1];
+        int i = depart[0];
+        int j = depart[1];
+        List<Direction> directions = instantane.getTuyau( couleur );
+        for( int k = 0; k < directions.size(); ++k ) {
+            switch( directions.get( k ) ) {
+                case HAUT   : i--; break;
+                case BAS    : i++; break;
+                case DROITE : j++; break;
+                case GAUCHE : j--; break;
+            }
+            i = Math.floorMod( i, nbLignes );
+            j = Math.floorMod( j, nbColonnes );
+            iMin = Math.min( iMin, i );
+            iMax = Math.max( iMax, i );
+            jMin = Math.min( jMin, j );
+            jMax = Math.max( jMax, j );
+        }
+        return new Rectangle( jMin * coteCase, iMin * coteCase, ( jMax - jMin + 1 ) * coteCase, ( iMax - iMin + 1 ) * coteCase );
+    }
+
+    /**
+     * @return Le rectangle englobant les cases d'un tuyau d'un plateau hexagonal,
+     *         suivies dans la table des voisines de la topologie.
+     */
+    private Rectangle zoneTuyauHexagonal( int couleur ) {
+        int[] depart = instantane.getCoordDepart( couleur );
+        int cellule = depart[0] * nbColonnes + depart[1];
+        Rectangle zone = new Rectangle( xCentre( cellule ), yCentre( cellule ), 0, 0 );
+        List<Direction> directions = instantane.getTuyau( couleur );
+        for( int k = 0; k < directions.size(); ++k ) {
+            cellule = topologie.voisin( cellule, directions.get( k ) );
+            zone.add( xCentre( cellule ), yCentre( cellule ) );
+        }
+        zone.grow( coteCase, coteCase );
+        return zone;
+    }
+
+    private int xCentre( int cellule ) {
+        return ( int ) Math.round( hexagones.x( cellule / nbColonnes, cellule % nbColonnes ) );
+    }
+
+    private int yCentre( int cellule ) {
+        return ( int ) Math.round( hexagones.y( cellule / nbColonnes ) );
     }
     
     public void paint(Graphics g) {
+    	long debut = System.nanoTime();
+    	EvenementDessin evenement = new EvenementDessin();
+    	evenement.begin();
     	if (premierAffichage) calculeParametres();
+    	Instantane etat = instantane;	// Un seul instantané pour toute l'image
+    	int longueurTuyaux = 0;
     	
-    	g.clearRect(0, 0, getSize().width, getSize().height);
-    	
-    	// Affichage des lignes de la grille de jeu
-    	g.setColor( Color.BLACK );
-    	for (int i=0 ; i <= nbLignes ; i++) {
-    		g.drawLine(0, i * coteCase, nbColonnes * coteCase, i * coteCase);	// Lignes horizontales
+    	// Grille et plots, dessinés une fois pour toutes dans l'image de fond
+    	if (fond == null || fond.getWidth() != getSize().width || fond.getHeight() != getSize().height) {
+    		fond = dessinerFond( controleur, controleur.getIdNiveau(), getSize().width, getSize().height, getBackground() );
     	}
-    	for( int j = 0; j <= nbColonnes; ++j ) {
-            g.drawLine(j * coteCase, 0, j * coteCase, nbLignes * coteCase);	// Lignes verticales
-        }
+    	g.drawImage( fond, 0, 0, null );
     	
-    	for( Couleur couleur : controleur.getCouleursNiveau() ) {
-            setCouleurGraphique( g, couleur );
-            // Affichage des plots
-            int[][] coordPlots = controleur.getPositionPlots( couleur );
-            for (int[] coordOnePlot : coordPlots) {
-            	g.fillOval( coordOnePlot[1] * coteCase + demiRayon,
-            			    coordOnePlot[0] * coteCase + demiRayon,
-                            diametrePlot, diametrePlot );
-            }
+    	for( int couleur : controleur.getCouleursNiveau() ) {
             // Affichage de l'éventuel tuyau
-            if (controleur.hasTuyau(couleur)) {
-            	paintDirections( g, controleur.getCoordDepart( couleur ), controleur.getDirections( couleur ));
+            InstantaneTuyau directions = etat.getTuyau( couleur );
+            if (directions != null) {
+            	setCouleurGraphique( g, couleur );
+            	double longueur = animations.longueurAffichee( couleur, directions.size() );
+            	if( hexagones != null ) {
+            		paintCheminHexagonal( g, etat.getCoordDepart( couleur ), directions, longueur, animations.phaseEcoulement( couleur ) );
+            	} else {
+            		paintDirections( g, etat.getCoordDepart( couleur ), directions, longueur, animations.phaseEcoulement( couleur ) );
+            	}
+            	longueurTuyaux += directions.size();
             }
+    	}
     	
-    	    // Dessin de l'éventuel plot sélectionné
-			if (selection != null) {
-				g.setColor( Color.BLACK );
-		        Graphics2D g2 = ( Graphics2D ) g;
-		        Stroke s = g2.getStroke();
-		        g2.setStroke( new BasicStroke( EPAISSEUR ));
-		        g.drawOval( selection[1] * coteCase + demiRayon,
-		        		selection[0] * coteCase + demiRayon,
-		                diametrePlot, diametrePlot );
-		        g2.setStroke( s );
-			}
+    	// Animation de victoire : un anneau clair qui part du centre du plateau et s'estompe
+    	double phaseVictoire = animations.phaseVictoire();
+    	if (phaseVictoire >= 0) {
+    		Graphics2D g2 = ( Graphics2D ) g;
+    		Composite composite = g2.getComposite();
+    		Stroke trait = g2.getStroke();
+    		int largeurPlateau = hexagones != null ? hexagones.getLargeur() : nbColonnes * coteCase;
+    		int hauteurPlateau = hexagones != null ? hexagones.getHauteur() : nbLignes * coteCase;
+    		int rayon = ( int ) ( phaseVictoire * Math.hypot( largeurPlateau, hauteurPlateau ) / 2 );
+    		g2.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, ( float ) ( 0.6 * ( 1 - phaseVictoire ) ) ) );
+    		g2.setStroke( new BasicStroke( coteCase / 2f ) );
+    		g.setColor( Color.WHITE );
+    		g.drawOval( largeurPlateau / 2 - rayon, hauteurPlateau / 2 - rayon, 2 * rayon, 2 * rayon );
+    		g2.setStroke( trait );
+    		g2.setComposite( composite );
+    	}
+    	
+	    // Dessin de l'éventuel plot sélectionné
+		int[] selection = etat.getSelection();
+		if (selection != null) {
+			g.setColor( Color.BLACK );
+	        Graphics2D g2 = ( Graphics2D ) g;
+	        Stroke s = g2.getStroke();
+	        g2.setStroke( new BasicStroke( EPAISSEUR ));
+	        if( hexagones != null ) {
+	        	int cellule = selection[0] * nbColonnes + selection[1];
+	        	g.drawOval( xCentre( cellule ) - diametrePlot / 2, yCentre( cellule ) - diametrePlot / 2,
+	        			diametrePlot, diametrePlot );
+	        } else {
+	        	g.drawOval( selection[1] * coteCase + demiRayon,
+	        			selection[0] * coteCase + demiRayon,
+	        			diametrePlot, diametrePlot );
+	        }
+	        g2.setStroke( s );
+		}
+    	
+    	MetriquesMoteur.get().dessin(System.nanoTime() - debut);
+    	if (evenement.shouldCommit()) {
+    		evenement.idNiveau = controleur.getIdNiveau();
+    		evenement.nbLignes = nbLignes;
+    		evenement.nbColonnes = nbColonnes;
+    		evenement.casesRedessinees = casesDansZone( g.getClipBounds() );
+    		evenement.longueurTuyaux = longueurTuyaux;
+    		evenement.commit();
     	}
     }
 
-    private void paintDirections( Graphics g, int[] coordDepart, ArrayList<Direction> directions ) {
+    private int casesDansZone( Rectangle zone ) {
+    	if (zone == null || coteCase == 0) return nbLignes * nbColonnes;
+    	if (hexagones != null) {
+    		int n = 0;
+    		for (int cellule = 0; cellule < nbLignes * nbColonnes; ++cellule) {
+    			if (zone.contains( xCentre( cellule ), yCentre( cellule ) )) n++;
+    		}
+    		return n;
+    	}
+    	int jMin = Math.max( 0, zone.x / coteCase );
+    	int iMin = Math.max( 0, zone.y / coteCase );
+    	int jMax = Math.min( nbColonnes, ( zone.x + zone.width + coteCase - 1 ) / coteCase );
+    	int iMax = Math.min( nbLignes, ( zone.y + zone.height + coteCase - 1 ) / coteCase );
+    	return Math.max( 0, iMax - iMin ) * Math.max( 0, jMax - jMin );
+    }
+
+    /**
+     * <b>Dessine un tuyau sur la longueur donnée, dont la dernière étape peut être
+     * partielle pendant sa croissance, puis la goutte qui s'écoule le long du tuyau
+     * s'il vient de relier ses plots.</b>
+     *
+     * <p> Une étape qui passe un bord bouclé est dessinée deux fois, de part et d'autre
+     * du plateau, sans déborder du plateau.
+     */
+    private void paintDirections( Graphics g, int[] coordDepart, List<Direction> directions, double longueur, double phaseEcoulement ) {
         int x0 = coordDepart[1] * coteCase + coteCase / 2 - largeurTuyau / 2;
         int y0 = coordDepart[0] * coteCase + coteCase / 2 - largeurTuyau / 2;
-        for( Direction dir : directions ) {
+        int largeurPlateau = nbColonnes * coteCase;
+        int hauteurPlateau = nbLignes * coteCase;
+        int nbEtapes = Math.min( directions.size(), ( int ) Math.ceil( longueur ) );
+        // Parcours indexé : la vue sur le tuyau est à accès direct, sans itérateur à allouer
+        for( int k = 0; k < nbEtapes; ++k ) {
+            Direction dir = directions.get( k );
+            int pas = ( int ) Math.round( coteCase * Math.min( 1, longueur - k ) );
             int w = largeurTuyau;
             int h = largeurTuyau;
             int x1 = x0;
             int y1 = y0;
             switch( dir ) {
             case HAUT:
-                y0 -= coteCase;
+                y0 -= pas;
                 y1 -= coteCase;
-                h += coteCase;
+                h += pas;
                 break;
             case BAS:
-                h += coteCase;
+                h += pas;
                 y1 += coteCase;
                 break;
             case GAUCHE:
-                x0 -= coteCase;
+                x0 -= pas;
                 x1 -= coteCase;
-                w += coteCase;
+                w += pas;
                 break;
             case DROITE:
-                w += coteCase;
+                w += pas;
                 x1 += coteCase;
                 break;
             }
-            g.fillRoundRect( x0, y0, w, h, arcRoundRect, arcRoundRect );
-            x0 = x1;
-            y0 = y1;
+            int dx = x1 < 0 ? largeurPlateau : x1 >= largeurPlateau ? -largeurPlateau : 0;
+            int dy = y1 < 0 ? hauteurPlateau : y1 >= hauteurPlateau ? -hauteurPlateau : 0;
+            if( dx == 0 && dy == 0 ) {
+                g.fillRoundRect( x0, y0, w, h, arcRoundRect, arcRoundRect );
+            } else {
+                Shape zone = g.getClip();
+                g.clipRect( 0, 0, largeurPlateau, hauteurPlateau );
+                g.fillRoundRect( x0, y0, w, h, arcRoundRect, arcRoundRect );
+                g.fillRoundRect( x0 + dx, y0 + dy, w, h, arcRoundRect, arcRoundRect );
+                g.setClip( zone );
+            }
+            x0 = x1 + dx;
+            y0 = y1 + dy;
+        }
+        if( phaseEcoulement >= 0 && !directions.isEmpty() ) {
+            paintEcoulement( g, coordDepart, directions, phaseEcoulement );
         }
     }
 
-    private void setCouleurGraphique( Graphics g, Couleur c ) {
-    	Color couleurPanneau = Color.WHITE;
-        switch( c ) {
-            case ROUGE : couleurPanneau = Color.RED; break;
-            case ORANGE : couleurPanneau = Color.ORANGE; break;
-            case BLEU : couleurPanneau = Color.BLUE; break;
-            case VERT : couleurPanneau = Color.GREEN; break;
-            case JAUNE : couleurPanneau = Color.YELLOW; break;
-            case TURQUOISE : couleurPanneau = Color.CYAN; break;
-            case ROSE : couleurPanneau = Color.PINK; break;
-            case VIOLET : couleurPanneau = Color.MAGENTA; break;
-            case BORDEAUX : couleurPanneau = new Color(157, 8, 8); break;
-        };
-        g.setColor(couleurPanneau);
+    private void paintEcoulement( Graphics g, int[] coordDepart, List<Direction> directions, double phase ) {
+        double position = phase * directions.size();
+        int etape = Math.min( directions.size() - 1, ( int ) position );
+        double fraction = position - etape;
+        int i = coordDepart[0];
+        int j = coordDepart[1];
+        for( int k = 0; k < etape; ++k ) {
+            switch( directions.get( k ) ) {
+                case HAUT   : i--; break;
+                case BAS    : i++; break;
+                case DROITE : j++; break;
+                case GAUCHE : j--; break;
+            }
+            i = Math.floorMod( i, nbLignes );
+            j = Math.floorMod( j, nbColonnes );
+        }
+        double x = j + 0.5;
+        double y = i + 0.5;
+        switch( directions.get( etape ) ) {
+            case HAUT   : y -= fraction; break;
+            case BAS    : y += fraction; break;
+            case DROITE : x += fraction; break;
+            case GAUCHE : x -= fraction; break;
+        }
+        x = x < 0 ? x + nbColonnes : x >= nbColonnes ? x - nbColonnes : x;
+        y = y < 0 ? y + nbLignes : y >= nbLignes ? y - nbLignes : y;
+        int diametre = largeurTuyau * 3 / 2;
+        Color couleur = g.getColor();
+        g.setColor( couleur.brighter() );
+        g.fillOval( ( int ) ( x * coteCase ) - diametre / 2, ( int ) ( y * coteCase ) - diametre / 2, diametre, diametre );
+        g.setColor( couleur );
+    }
+
+    /**
+     * <b>Dessine un tuyau d'un plateau hexagonal en trait épais de centre en centre, sur
+     * la longueur donnée, puis la goutte qui s'écoule s'il vient de relier ses plots.</b>
+     */
+    private void paintCheminHexagonal( Graphics g, int[] coordDepart, List<Direction> directions, double longueur, double phaseEcoulement ) {
+        Graphics2D g2 = ( Graphics2D ) g;
+        Stroke trait = g2.getStroke();
+        Object lissage = g2.getRenderingHint( RenderingHints.KEY_ANTIALIASING );
+        g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+        g2.setStroke( new BasicStroke( largeurTuyau, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND ) );
+        int nbEtapes = Math.min( directions.size(), ( int ) Math.ceil( longueur ) );
+        int depart = coordDepart[0] * nbColonnes + coordDepart[1];
+        int cellule = depart;
+        for( int k = 0; k < nbEtapes; ++k ) {
+            int suivante = topologie.voisin( cellule, directions.get( k ) );
+            double fraction = Math.min( 1, longueur - k );
+            int x0 = xCentre( cellule );
+            int y0 = yCentre( cellule );
+            g.drawLine( x0, y0, x0 + ( int ) Math.round( ( xCentre( suivante ) - x0 ) * fraction ),
+                    y0 + ( int ) Math.round( ( yCentre( suivante ) - y0 ) * fraction ) );
+            cellule = suivante;
+        }
+        if( phaseEcoulement >= 0 && !directions.isEmpty() ) {
+            double position = phaseEcoulement * directions.size();
+            int etape = Math.min( directions.size() - 1, ( int ) position );
+            double fraction = position - etape;
+            cellule = depart;
+            for( int k = 0; k < etape; ++k ) {
+                cellule = topologie.voisin( cellule, directions.get( k ) );
+            }
+            int suivante = topologie.voisin( cellule, directions.get( etape ) );
+            double x = xCentre( cellule ) + ( xCentre( suivante ) - xCentre( cellule ) ) * fraction;
+            double y = yCentre( cellule ) + ( yCentre( suivante ) - yCentre( cellule ) ) * fraction;
+            int diametre = largeurTuyau * 3 / 2;
+            Color couleur = g.getColor();
+            g.setColor( couleur.brighter() );
+            g.fillOval( ( int ) x - diametre / 2, ( int ) y - diametre / 2, diametre, diametre );
+            g.setColor( couleur );
+        }
+        g2.setStroke( trait );
+        g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, lissage );
+    }
+
+    private void setCouleurGraphique( Graphics g, int c ) {
+        int nbCouleurs = controleur.getNbCouleursPalette();
+        if( couleursGraphiques == null || couleursGraphiques.length != nbCouleurs ) {
+            // Les Color de la palette ne sont créées qu'une fois, pas à chaque repaint
+            couleursGraphiques = new Color[nbCouleurs];
+            for( int k = 0; k < nbCouleurs; ++k ) {
+                couleursGraphiques[k] = new Color( controleur.getRgbCouleur( k ) );
+            }
+        }
+        g.setColor( couleursGraphiques[c] );
     }
 
     @Override
     public void mouseClicked( MouseEvent e ) {
-        if( controleur.selectionCase( e.getPoint().y / coteCase, e.getPoint().x / coteCase )) {
-            selection = new int[] { e.getPoint().y / coteCase, e.getPoint().x / coteCase };
-        }
+        appliquerDirections();	// Les flèches déjà appuyées passent avant le clic
         this.requestFocusInWindow();
-        repaint();
+        int[] position = hexagones != null ? hexagones.caseSous( e.getPoint().x, e.getPoint().y )
+                : new int[] { e.getPoint().y / coteCase, e.getPoint().x / coteCase };
+        if( position == null || position[0] >= nbLignes || position[1] >= nbColonnes ) return;	// Hors du plateau
+        EvenementEntree evenement = new EvenementEntree();
+        evenement.begin();
+        moteur.selection( position[0], position[1] );
+        if( evenement.shouldCommit() ) {
+            evenement.type = "souris";
+            evenement.ligne = position[0];
+            evenement.colonne = position[1];
+            evenement.idNiveau = controleur.getIdNiveau();
+            evenement.commit();
+        }
     }
 
     @Override
@@ -182,20 +665,98 @@ public class PanneauNiveau extends JPanel implements MouseListener, KeyListener
 
     @Override
     public void keyPressed( KeyEvent e ) {
-        Direction direction;
-        switch( e.getKeyCode() ) {
-            case KeyEvent.VK_UP    : direction = Direction.HAUT; break;
-            case KeyEvent.VK_DOWN  : direction = Direction.BAS; break;
-            case KeyEvent.VK_LEFT  : direction = Direction.GAUCHE; break;
-            case KeyEvent.VK_RIGHT : direction = Direction.DROITE; break;
-            default                : direction = null; break;
-        };
+        Direction direction = topologie.estHexagonale() ? directionHexagonale( e.getKeyCode() ) : directionRectangulaire( e.getKeyCode() );
         if( direction == null ) return;
-        boolean jeuFini = controleur.action( direction );
-        if(jeuFini) {
-            repaint();
+        if( nbEnAttente == directionsEnAttente.length ) {
+            directionsEnAttente = Arrays.copyOf( directionsEnAttente, 2 * nbEnAttente );
+        }
+        directionsEnAttente[nbEnAttente++] = direction;
+        derniereTouche = e.getKeyCode();
+        if( lotPrevu ) return;
+        // Un lot par image : tout de suite après les événements déjà en file si la
+        // dernière image est passée, sinon au début de la suivante
+        lotPrevu = true;
+        long attente = dernierLot + dureeImage() - System.nanoTime();
+        if( attente <= 0 ) {
+            SwingUtilities.invokeLater( this::appliquerDirections );
+        } else {
+            minuterieLot.setInitialDelay( ( int ) Math.max( 1, attente / 1_000_000 ) );
+            minuterieLot.restart();
+        }
+    }
+
+    private static Direction directionRectangulaire( int codeTouche ) {
+        switch( codeTouche ) {
+            case KeyEvent.VK_UP    : return Direction.HAUT;
+            case KeyEvent.VK_DOWN  : return Direction.BAS;
+            case KeyEvent.VK_LEFT  : return Direction.GAUCHE;
+            case KeyEvent.VK_RIGHT : return Direction.DROITE;
+            default                : return null;
+        }
+    }
+
+    /**
+     * <b>Touches d'un plateau hexagonal : flèches gauche et droite, et diagonales
+     * au pavé numérique (7, 9, 1, 3) ou par Début, Page précédente, Fin et Page
+     * suivante, qui occupent les mêmes places.</b>
+     */
+    private static Direction directionHexagonale( int codeTouche ) {
+        switch( codeTouche ) {
+            case KeyEvent.VK_LEFT      : case KeyEvent.VK_NUMPAD4 : return Direction.GAUCHE;
+            case KeyEvent.VK_RIGHT     : case KeyEvent.VK_NUMPAD6 : return Direction.DROITE;
+            case KeyEvent.VK_HOME      : case KeyEvent.VK_NUMPAD7 : return Direction.HAUT_GAUCHE;
+            case KeyEvent.VK_PAGE_UP   : case KeyEvent.VK_NUMPAD9 : return Direction.HAUT_DROITE;
+            case KeyEvent.VK_END       : case KeyEvent.VK_NUMPAD1 : return Direction.BAS_GAUCHE;
+            case KeyEvent.VK_PAGE_DOWN : case KeyEvent.VK_NUMPAD3 : return Direction.BAS_DROITE;
+            default                    : return null;
+        }
+    }
+
+    /**
+     * <b>Envoie en un lot les flèches en attente au moteur, qui publiera un seul
+     * instantané pour tout le lot.</b>
+     *
+     * @see MoteurJeu#directions(Direction[], int)
+     */
+    private void appliquerDirections() {
+        lotPrevu = false;
+        minuterieLot.stop();
+        if( nbEnAttente == 0 ) return;
+        if( !isDisplayable() ) {	// Fenêtre fermée entre l'appui et le lot
+            nbEnAttente = 0;
+            return;
+        }
+        dernierLot = System.nanoTime();
+        int nb = nbEnAttente;
+        nbEnAttente = 0;
+        EvenementEntree evenement = new EvenementEntree();
+        evenement.begin();
+        moteur.directions( directionsEnAttente, nb );
+        if( evenement.shouldCommit() ) {
+            evenement.type = "clavier";
+            evenement.codeTouche = derniereTouche;
+            evenement.nbTouches = nb;
+            evenement.idNiveau = controleur.getIdNiveau();
+            evenement.commit();
+        }
+    }
+
+    /**
+     * <b>Annonce la victoire publiée par le moteur, et propose le niveau suivant.</b>
+     */
+    private void afficherVictoire() {
+        Window fenetre = SwingUtilities.getWindowAncestor( this );
+        if( fenetre instanceof FenetreNiveau && ( ( FenetreNiveau ) fenetre ).aUnNiveauSuivant() ) {
+            int choix = JOptionPane.showConfirmDialog( this, "Vous avez gagné !\nPasser au niveau suivant ?",
+                    "Bravo", JOptionPane.YES_NO_OPTION );
+            if( choix == JOptionPane.YES_OPTION ) {
+                ( ( FenetreNiveau ) fenetre ).niveauSuivant();
+                return;
+            }
+        } else {
             JOptionPane.showMessageDialog( this, "Vous avez gagné !" );
         }
+        nbEnAttente = 0;	// Touches appuyées pendant la boîte de dialogue
         repaint();
     }
 
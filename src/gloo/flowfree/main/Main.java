@@ -1,9 +1,14 @@
 package gloo.flowfree.main;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
 import javax.swing.SwingUtilities;
 
 import gloo.flowfree.control.Controleur;
 import gloo.flowfree.ihm.FenetreAccueil;
+import gloo.flowfree.mesure.MetriquesMoteur;
+import gloo.flowfree.model.TousNiveaux;
 
 /**
  * <b>Classe implémentant l'interface Runnable et contenant une 
@@ -14,7 +19,14 @@ import gloo.flowfree.ihm.FenetreAccueil;
  */
 public class Main implements Runnable {
 
+	/**
+	 * <b>Instant de lancement du jeu, pour mesurer le délai d'affichage de la
+	 * fenêtre d'accueil.</b>
+	 */
+	private static long instantLancement;
+
 	public static void main( String[] args ) {
+		instantLancement = System.nanoTime();
         SwingUtilities.invokeLater( new Main() );
 	}
 	
@@ -25,13 +37,25 @@ public class Main implements Runnable {
 	 * de jeu) et d'une fenêtre d'accueil présentant les niveaux
 	 * disponibles.
 	 * 
+	 * <p>Le fichier des niveaux est lu en arrière-plan : la fenêtre d'accueil
+	 * s'affiche sans attendre et se complète au fil du chargement. Le délai entre
+	 * le lancement et l'ouverture de la fenêtre est relevé dans les métriques.
+	 * 
 	 * @see Controleur
-	 * @see Controleur#Controleur()
+	 * @see Controleur#Controleur(TousNiveaux)
+	 * @see TousNiveaux#chargerEnArrierePlan()
 	 * @see FenetreAccueil
-	 * @see FenetreAccueil#FenetreAccueil(Controleur)
+	 * @see FenetreAccueil#afficher(Controleur)
+	 * @see MetriquesMoteur#premiereImage(long)
 	 */
     @Override
     public void run() {
-        new FenetreAccueil( new Controleur() );
+        FenetreAccueil fenetreAccueil = FenetreAccueil.afficher( new Controleur( TousNiveaux.chargerEnArrierePlan() ) );
+        fenetreAccueil.addWindowListener( new WindowAdapter() {
+            @Override
+            public void windowOpened( WindowEvent e ) {
+                MetriquesMoteur.get().premiereImage( System.nanoTime() - instantLancement );
+            }
+        });
     }
 }
@@ -0,0 +1,44 @@
+package gloo.flowfree.mesure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <b>Evénement JFR couvrant l'appel Controleur.action(Direction) ou
+ * Controleur.actions(Direction[], int) : progression du tuyau courant, affichage
+ * console et test de victoire.</b>
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+@Name("gloo.flowfree.Action")
+@Label("Action du controleur")
+@Category({"FlowFree", "Controleur"})
+@StackTrace(false)
+public class EvenementAction extends jdk.jfr.Event {
+	
+	@Label("Identifiant du niveau")
+	public int idNiveau;
+	
+	@Label("Nombre de lignes")
+	public int nbLignes;
+	
+	@Label("Nombre de colonnes")
+	public int nbColonnes;
+	
+	@Label("Direction")
+	@Description("Directions séparées par des virgules pour un lot")
+	public String direction;
+	
+	@Label("Nombre de directions")
+	public int nbDirections;
+	
+	@Label("Tuyau courant présent")
+	public boolean tuyauCourant;
+	
+	@Label("Niveau réussi")
+	public boolean niveauReussi;
+}
@@ -0,0 +1,31 @@
+package gloo.flowfree.mesure;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <b>Evénement JFR couvrant la lecture et l'analyse du fichier de niveaux
+ * par TousNiveaux.</b>
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+@Name("gloo.flowfree.ChargementNiveaux")
+@Label("Chargement des niveaux")
+@Category({"FlowFree", "Modele"})
+@StackTrace(false)
+public class EvenementChargementNiveaux extends jdk.jfr.Event {
+	
+	@Label("Fichier")
+	public String fichier;
+	
+	@Label("Taille du fichier")
+	@DataAmount
+	public long octets;
+	
+	@Label("Nombre de niveaux")
+	public int nbNiveaux;
+}
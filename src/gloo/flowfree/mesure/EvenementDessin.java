@@ -0,0 +1,37 @@
+package gloo.flowfree.mesure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <b>Evénement JFR couvrant un appel à PanneauNiveau.paint(Graphics).</b>
+ * 
+ * <p> Le nombre de cases redessinées est calculé à partir de la zone de
+ * clipping fournie par Swing.
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+@Name("gloo.flowfree.Dessin")
+@Label("Dessin du niveau")
+@Category({"FlowFree", "IHM"})
+@StackTrace(false)
+public class EvenementDessin extends jdk.jfr.Event {
+	
+	@Label("Identifiant du niveau")
+	public int idNiveau;
+	
+	@Label("Nombre de lignes")
+	public int nbLignes;
+	
+	@Label("Nombre de colonnes")
+	public int nbColonnes;
+	
+	@Label("Cases redessinées")
+	public int casesRedessinees;
+	
+	@Label("Longueur totale des tuyaux")
+	public int longueurTuyaux;
+}
@@ -0,0 +1,47 @@
+package gloo.flowfree.mesure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <b>Evénement JFR couvrant le traitement complet d'une entrée du joueur
+ * (appui sur une touche ou clic souris) par le PanneauNiveau.</b>
+ * 
+ * <p> La durée de l'événement va de la réception de l'entrée par l'IHM jusqu'à
+ * l'envoi de la commande au moteur de jeu, qui l'applique sur son propre thread.
+ * Les appuis sur les flèches sont traités par lots, au plus un par image :
+ * l'événement couvre alors le lot.
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+@Name("gloo.flowfree.Entree")
+@Label("Entrée joueur")
+@Category({"FlowFree", "IHM"})
+@Description("Traitement d'un appui clavier ou d'un clic souris par le panneau du niveau")
+@StackTrace(false)
+public class EvenementEntree extends jdk.jfr.Event {
+	
+	@Label("Type d'entrée")
+	@Description("\"clavier\" ou \"souris\"")
+	public String type;
+	
+	@Label("Code touche")
+	@Description("Dernière touche du lot")
+	public int codeTouche;
+	
+	@Label("Nombre de touches")
+	public int nbTouches;
+	
+	@Label("Ligne")
+	public int ligne;
+	
+	@Label("Colonne")
+	public int colonne;
+	
+	@Label("Identifiant du niveau")
+	public int idNiveau;
+}
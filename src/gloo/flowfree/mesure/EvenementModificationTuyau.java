@@ -0,0 +1,34 @@
+package gloo.flowfree.mesure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <b>Evénement JFR couvrant l'appel Tuyau.modifier(Direction).</b>
+ * 
+ * <p> Les longueurs avant et après la modification permettent de distinguer
+ * une progression, un retour en arrière et un mouvement refusé.
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+@Name("gloo.flowfree.ModificationTuyau")
+@Label("Modification d'un tuyau")
+@Category({"FlowFree", "Modele"})
+@StackTrace(false)
+public class EvenementModificationTuyau extends jdk.jfr.Event {
+	
+	@Label("Indice de couleur")
+	public int couleur;
+	
+	@Label("Direction")
+	public String direction;
+	
+	@Label("Longueur avant")
+	public int longueurAvant;
+	
+	@Label("Longueur après")
+	public int longueurApres;
+}
@@ -0,0 +1,32 @@
+package gloo.flowfree.mesure;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <b>Evénement JFR couvrant le test de victoire réalisé par le controleur
+ * après chaque action (couleurs complètes puis plateau complet).</b>
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+@Name("gloo.flowfree.VerificationVictoire")
+@Label("Vérification de victoire")
+@Category({"FlowFree", "Controleur"})
+@StackTrace(false)
+public class EvenementVerificationVictoire extends jdk.jfr.Event {
+	
+	@Label("Identifiant du niveau")
+	public int idNiveau;
+	
+	@Label("Nombre de cases")
+	public int nbCases;
+	
+	@Label("Nombre de couleurs")
+	public int nbCouleurs;
+	
+	@Label("Niveau réussi")
+	public boolean niveauReussi;
+}
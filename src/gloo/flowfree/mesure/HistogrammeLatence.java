@@ -0,0 +1,116 @@
+package gloo.flowfree.mesure;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <b>Histogramme de durées à seaux fixes, sans verrou et sans allocation
+ * lors de l'enregistrement.</b>
+ * 
+ * <p> Le seau d'indice k contient les durées d comprises entre 2^(k-1) et 2^k - 1
+ * nanosecondes (le seau 0 contient les durées nulles). Les centiles sont donc
+ * estimés par excès, à un facteur 2 près au pire, ce qui suffit pour suivre
+ * l'évolution des temps de dessin ou de chargement.
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class HistogrammeLatence {
+	
+	/**
+	 * <b>Nombre de seaux : un par puissance de 2 d'un long positif.</b>
+	 */
+	private static final int NB_SEAUX = 64;
+	
+	/**
+	 * <b>Nombre de durées enregistrées dans chaque seau.</b>
+	 */
+	private final AtomicLongArray seaux = new AtomicLongArray(NB_SEAUX);
+	
+	/**
+	 * <b>Nombre total de durées enregistrées.</b>
+	 */
+	private final LongAdder nombre = new LongAdder();
+	
+	/**
+	 * <b>Somme des durées enregistrées, en nanosecondes.</b>
+	 */
+	private final LongAdder somme = new LongAdder();
+	
+	/**
+	 * <b>Plus grande durée enregistrée, en nanosecondes.</b>
+	 */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * <b>Enregistre une durée.</b>
+	 * 
+	 * @param nanos Durée en nanosecondes (les valeurs négatives sont ramenées à 0).
+	 */
+	public void enregistrer(long nanos) {
+		if (nanos < 0) nanos = 0;
+		seaux.incrementAndGet(NB_SEAUX - Long.numberOfLeadingZeros(nanos));
+		nombre.increment();
+		somme.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	public long getNombre() {
+		return nombre.sum();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * @return La durée moyenne en nanosecondes, 0 si aucune durée n'a été enregistrée.
+	 */
+	public long getMoyenne() {
+		long n = nombre.sum();
+		return n == 0 ? 0 : somme.sum() / n;
+	}
+	
+	/**
+	 * <b>Estime un centile des durées enregistrées.</b>
+	 * 
+	 * @param centile Centile voulu, entre 0 et 100.
+	 * 
+	 * @return La borne supérieure du seau contenant ce centile, en nanosecondes,
+	 *         0 si aucune durée n'a été enregistrée.
+	 */
+	public long getCentile(double centile) {
+		long[] copie = new long[NB_SEAUX];
+		long total = 0;
+		for (int k=0 ; k < NB_SEAUX ; k++) {
+			copie[k] = seaux.get(k);
+			total += copie[k];
+		}
+		if (total == 0) return 0;
+		long rang = (long) Math.ceil(total * centile / 100.0);
+		long cumul = 0;
+		for (int k=0 ; k < NB_SEAUX ; k++) {
+			cumul += copie[k];
+			if (cumul >= rang) {
+				return k == 0 ? 0 : Math.min((1L << k) - 1, max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	/**
+	 * <b>Remet l'histogramme à zéro.</b>
+	 * 
+	 * <p> Les enregistrements concurrents à la remise à zéro peuvent être
+	 * partiellement perdus.
+	 */
+	public void reinitialiser() {
+		for (int k=0 ; k < NB_SEAUX ; k++) {
+			seaux.set(k, 0);
+		}
+		nombre.reset();
+		somme.reset();
+		max.reset();
+	}
+}
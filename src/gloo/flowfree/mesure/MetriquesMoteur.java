@@ -0,0 +1,242 @@
+package gloo.flowfree.mesure;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <b>Compteurs et histogrammes du moteur de jeu, exposés en JMX.</b>
+ * 
+ * <p> Une seule instance existe, enregistrée auprès du serveur MBean de la
+ * plateforme au premier appel de {@link MetriquesMoteur#get()}.
+ * 
+ * <p> Les méthodes d'enregistrement, appelées par le controleur, le modèle et 
+ * l'IHM sur le chemin des entrées du joueur, n'utilisent que des LongAdder et
+ * des histogrammes à seaux fixes : elles ne prennent aucun verrou et n'allouent
+ * rien.
+ * 
+ * @see MetriquesMoteurMBean
+ * @see HistogrammeLatence
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class MetriquesMoteur implements MetriquesMoteurMBean {
+	
+	/**
+	 * <b>Nom JMX sous lequel l'instance est enregistrée.</b>
+	 */
+	public static final String NOM_JMX = "gloo.flowfree:type=MetriquesMoteur";
+	
+	private static final MetriquesMoteur INSTANCE = enregistrer(new MetriquesMoteur());
+	
+	private final LongAdder mouvements = new LongAdder();
+	private final LongAdder mouvementsRefuses = new LongAdder();
+	private final LongAdder reinitialisationsTuyau = new LongAdder();
+	private final LongAdder niveauxDemarres = new LongAdder();
+	private final LongAdder niveauxReussis = new LongAdder();
+	private final LongAdder niveauxEnCache = new LongAdder();
+	private final LongAdder niveauxRelus = new LongAdder();
+	private volatile long chargementPackNanos;
+	private volatile long premiereImageNanos;
+	private final HistogrammeLatence chargementNiveau = new HistogrammeLatence();
+	private final HistogrammeLatence dessin = new HistogrammeLatence();
+	
+	/**
+	 * <b>Dernier relevé (instant, nombre de mouvements) utilisé pour calculer le
+	 * débit de mouvements entre deux consultations JMX.</b>
+	 */
+	private long instantDernierReleve = System.nanoTime();
+	private long mouvementsDernierReleve;
+	private double dernierDebit;
+	
+	private MetriquesMoteur() {
+	}
+	
+	private static MetriquesMoteur enregistrer(MetriquesMoteur metriques) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metriques, new ObjectName(NOM_JMX));
+		} catch (JMException | SecurityException e) {
+			e.printStackTrace();	// Les métriques restent utilisables sans JMX
+		}
+		return metriques;
+	}
+	
+	/**
+	 * @return L'unique instance des métriques du moteur.
+	 */
+	public static MetriquesMoteur get() {
+		return INSTANCE;
+	}
+	
+	// Enregistrement
+	public void mouvement() {
+		mouvements.increment();
+	}
+	
+	public void mouvementRefuse() {
+		mouvementsRefuses.increment();
+	}
+	
+	public void reinitialisationTuyau() {
+		reinitialisationsTuyau.increment();
+	}
+	
+	public void niveauDemarre(long dureeChargementNanos) {
+		niveauxDemarres.increment();
+		chargementNiveau.enregistrer(dureeChargementNanos);
+	}
+	
+	public void niveauReussi() {
+		niveauxReussis.increment();
+	}
+	
+	/**
+	 * <b>Niveau demandé trouvé dans le cache des niveaux construits.</b>
+	 */
+	public void niveauEnCache() {
+		niveauxEnCache.increment();
+	}
+	
+	/**
+	 * <b>Niveau demandé absent du cache, relu dans son fichier.</b>
+	 */
+	public void niveauRelu() {
+		niveauxRelus.increment();
+	}
+	
+	public void chargementPack(long dureeNanos) {
+		chargementPackNanos = dureeNanos;
+	}
+	
+	/**
+	 * @param dureeNanos Délai entre le lancement du jeu et l'ouverture de la fenêtre d'accueil.
+	 */
+	public void premiereImage(long dureeNanos) {
+		premiereImageNanos = dureeNanos;
+	}
+	
+	public void dessin(long dureeNanos) {
+		dessin.enregistrer(dureeNanos);
+	}
+	
+	// Consultation JMX
+	@Override
+	public long getMouvements() {
+		return mouvements.sum();
+	}
+	
+	/**
+	 * <b>Débit de mouvements depuis la consultation précédente.</b>
+	 * 
+	 * <p> Si deux consultations sont trop rapprochées (moins de 100 ms), le dernier
+	 * débit calculé est renvoyé.
+	 */
+	@Override
+	public synchronized double getMouvementsParSeconde() {
+		long maintenant = System.nanoTime();
+		long ecoule = maintenant - instantDernierReleve;
+		if (ecoule >= 100_000_000L) {
+			long total = mouvements.sum();
+			dernierDebit = (total - mouvementsDernierReleve) * 1e9 / ecoule;
+			mouvementsDernierReleve = total;
+			instantDernierReleve = maintenant;
+		}
+		return dernierDebit;
+	}
+	
+	@Override
+	public long getMouvementsRefuses() {
+		return mouvementsRefuses.sum();
+	}
+	
+	@Override
+	public long getReinitialisationsTuyau() {
+		return reinitialisationsTuyau.sum();
+	}
+	
+	@Override
+	public long getNiveauxDemarres() {
+		return niveauxDemarres.sum();
+	}
+	
+	@Override
+	public long getNiveauxReussis() {
+		return niveauxReussis.sum();
+	}
+	
+	@Override
+	public long getNiveauxEnCache() {
+		return niveauxEnCache.sum();
+	}
+	
+	@Override
+	public long getNiveauxRelus() {
+		return niveauxRelus.sum();
+	}
+	
+	@Override
+	public long getChargementPackMicros() {
+		return chargementPackNanos / 1000;
+	}
+	
+	@Override
+	public long getPremiereImageMicros() {
+		return premiereImageNanos / 1000;
+	}
+	
+	@Override
+	public long getChargementNiveauMoyenMicros() {
+		return chargementNiveau.getMoyenne() / 1000;
+	}
+	
+	@Override
+	public long getChargementNiveauMaxMicros() {
+		return chargementNiveau.getMax() / 1000;
+	}
+	
+	@Override
+	public long getDessins() {
+		return dessin.getNombre();
+	}
+	
+	@Override
+	public long getDessinP50Micros() {
+		return dessin.getCentile(50) / 1000;
+	}
+	
+	@Override
+	public long getDessinP90Micros() {
+		return dessin.getCentile(90) / 1000;
+	}
+	
+	@Override
+	public long getDessinP99Micros() {
+		return dessin.getCentile(99) / 1000;
+	}
+	
+	@Override
+	public long getDessinMaxMicros() {
+		return dessin.getMax() / 1000;
+	}
+	
+	@Override
+	public void reinitialiser() {
+		mouvements.reset();
+		mouvementsRefuses.reset();
+		reinitialisationsTuyau.reset();
+		niveauxDemarres.reset();
+		niveauxReussis.reset();
+		niveauxEnCache.reset();
+		niveauxRelus.reset();
+		chargementNiveau.reinitialiser();
+		dessin.reinitialiser();
+		synchronized (this) {
+			mouvementsDernierReleve = 0;
+			instantDernierReleve = System.nanoTime();
+			dernierDebit = 0;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package gloo.flowfree.mesure;
+
+/**
+ * <b>Interface JMX des métriques du moteur de jeu, consultable dans JConsole
+ * sous le nom gloo.flowfree:type=MetriquesMoteur.</b>
+ * 
+ * <p> Les durées sont exprimées en microsecondes.
+ * 
+ * @see MetriquesMoteur
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public interface MetriquesMoteurMBean {
+	
+	long getMouvements();
+	
+	double getMouvementsParSeconde();
+	
+	long getMouvementsRefuses();
+	
+	long getReinitialisationsTuyau();
+	
+	long getNiveauxDemarres();
+	
+	long getNiveauxReussis();
+	long getNiveauxEnCache();
+	long getNiveauxRelus();
+	
+	long getChargementPackMicros();
+	
+	long getPremiereImageMicros();
+	
+	long getChargementNiveauMoyenMicros();
+	
+	long getChargementNiveauMaxMicros();
+	
+	long getDessins();
+	
+	long getDessinP50Micros();
+	
+	long getDessinP90Micros();
+	
+	long getDessinP99Micros();
+	
+	long getDessinMaxMicros();
+	
+	void reinitialiser();
+}
@@ -14,9 +14,9 @@ package gloo.flowfree.model;
  * 
  * La case connait :
  * <ul>
- *     <li> Le plateau qui la contient
+ *     <li> Le plateau qui la contient, qui range pour chaque case le tuyau
+ *          éventuel qui l'occupe
  *     <li> Le plot éventuel qu'elle contient
- *     <li> Le tuyau éventuel qu'elle contient
  * </ul>
  * 
  * La case est connue :
@@ -36,6 +36,19 @@ public class Case {
 	 */
 	private Plateau plateau;
 	
+	/**
+	 * <b>Indice de cette case dans le plateau : indiceLigne * nbColonnes + indiceColonne.</b>
+	 * 
+	 * <p> La voie horizontale d'un pont est une case d'indice nbCases + rang du pont.
+	 * 
+	 * <p> Non modifié après la construction. Permet aux tuyaux de ranger leurs cases
+	 * dans des tableaux d'entiers.
+	 * 
+	 * @see Topologie
+	 * @see Case#getIndice()
+	 */
+	private int indice;
+	
 	/**
 	 * <b>Plot éventuel que contient cette case, null sinon.</b>
 	 * 
@@ -47,31 +60,30 @@ public class Case {
 	 */
 	private Plot plot;
 	
-	/**
-	 * <b>Tuyau éventuel que contient cette case, null sinon.</b>
-	 * 
-	 * <p> Modifiable au cours de la partie.
-	 * 
-	 * @see Case#setTuyau(Tuyau)
-	 * @see Case#accepteTuyau(Tuyau)
-	 * @see Case#retirerTuyau()
-	 */
-	private Tuyau tuyau;
-	
 	// Constructeur
 	/**
 	 * <b>Constructeur appelé par le plateau pour initaliser ses éléments.</b>
 	 * 
-	 * <p>Initialise uniquement l'attribut plateau, seul attribut nécessairement
-	 * non null.
+	 * <p>Initialise uniquement les attributs plateau et indice, les plot et
+	 * tuyau éventuels étant ajoutés plus tard.
 	 * 
 	 * @param plateau Plateau qui contient cette case.
+	 * @param indice Indice de cette case dans le plateau.
 	 */
-	public Case(Plateau plateau) {
+	public Case(Plateau plateau, int indice) {
 		this.plateau = plateau;
+		this.indice = indice;
 	}
 	
 	// Getters et setters
+	public Plateau getPlateau() {
+		return plateau;
+	}
+	
+	public int getIndice() {
+		return indice;
+	}
+	
 	/**
 	 * <b>Méthode appelée par le controleur lorsque le joueur clique sur une case.</b>
 	 * 
@@ -87,18 +99,16 @@ public class Case {
 	}
 	
 	/**
-	 * <b>Setter de l'attribut tuyau de cette case.</b>
+	 * <b>Méthode donnant le tuyau éventuel qui occupe cette case.</b>
 	 * 
-	 * <p>Il n'y a pas besoin de faire de vérifications sur la disponibilité de cette case
-	 * car cette méthode n'est appelée que lors de la création d'un tuyau initiée par le plot
-	 * contenu dans cette case.
+	 * <p>Demande au plateau l'occupant de la case de cet indice.
 	 * 
-	 * @see Case#tuyau
+	 * @see Plateau#getOccupant(int)
 	 * 
-	 * @param tuyau Tuyau nouvellement formé et ne contenant que cette case.
+	 * @return Le tuyau passant par cette case, null sinon.
 	 */
-	public void setTuyau(Tuyau tuyau) {
-		this.tuyau = tuyau;
+	public Tuyau getTuyau() {
+		return plateau.getOccupant(indice);
 	}
 	
 	// Autres méthodes
@@ -131,39 +141,62 @@ public class Case {
 		return plateau.getMaCaseVoisine(this, dir);
 	}
 	
+	/**
+	 * <b>Méthode appelée par le plot de cette case pour démarrer un nouveau tuyau
+	 * de sa couleur.</b>
+	 * 
+	 * <p>Demande au plateau de créer le tuyau à partir de cette case.
+	 * 
+	 * @see Plateau#nouveauTuyau(int, Case)
+	 * 
+	 * @param couleur Indice de la couleur du plot contenu dans cette case.
+	 * @return Le nouveau tuyau de cette couleur démarrant à cette case.
+	 */
+	public Tuyau nouveauTuyau(int couleur) {
+		return plateau.nouveauTuyau(couleur, this);
+	}
+	
 	/**
 	 * <b>Méthode appelée par le tuyau lui-même lors de sa progression pour demander à la 
 	 * case si elle accepte d'être la prochaine case de ce tuyau.</b>
 	 * 
 	 * <p>Cette case accepte de participer au tuyau si :
 	 * <ul>
-	 *     <li> Elle est innocupée, c'est-à-dire qu'elle n'a ni plot ni tuyau.
+	 *     <li> Elle n'a pas de plot. Si un autre tuyau l'occupe, cet autre tuyau est coupé
+	 *          à cette case : il ne garde que les cases qui la précèdent.
 	 *     <li> OU
 	 *     <li> Elle contient le second plot (donc l'arrivée) de ce tuyau. Dans ce cas, il
 	 *          faut vérifier que la case contient un plot, que ce plot est de la même couleur
 	 *          que le tuyau courant et que ce plot ne débute pas le tuyau (ce n'est pas le
 	 *          premier plot).
 	 * </ul>
-	 * <p> Dans ce cas, ce tuyau est enregistré dans l'attribut tuyau de la case et la méthode
-	 * renvoie true.
+	 * <p> Dans ce cas la méthode renvoie true, et le tuyau s'enregistre comme occupant de
+	 * la case.
 	 * 
-	 * <p> Dans le cas contraire, la méthode renvoie false.
+	 * <p> Dans le cas contraire (plot d'une autre couleur, premier plot du tuyau ou case
+	 * déjà occupée par ce tuyau), la méthode renvoie false.
 	 * 
 	 * @see Plot#getCouleur()
 	 * @see Tuyau#getCouleur()
 	 * @see Tuyau#debuteTuyau(Case)
+	 * @see Plateau#getRang(int)
+	 * @see Tuyau#couper(int)
 	 * 
 	 * @param tuyau Le tuyau courant demandant à cette case de participer à sa construction.
 	 * @return Vrai si la case accepte d'être la prochaine case du tuyau, faux sinon.
 	 */
 	public boolean accepteTuyau(Tuyau tuyau) {
-		boolean isInoccupee = this.plot == null && this.tuyau == null;
-		boolean isSecondPlot = this.plot != null && this.plot.getCouleur() == tuyau.getCouleur() && !tuyau.debuteTuyau(this);
-		if (isInoccupee || isSecondPlot) {
-			this.tuyau = tuyau;
-			return true;
+		if (this.plot != null) {
+			return this.plot.getCouleur() == tuyau.getCouleur() && !tuyau.debuteTuyau(this);
+		}
+		Tuyau occupant = getTuyau();
+		if (occupant == tuyau) {
+			return false;
 		}
-		return false;
+		if (occupant != null) {	// Coupure de l'autre tuyau à cette case
+			occupant.couper(plateau.getRang(indice));
+		}
+		return true;
 	}
 	
 	/**
@@ -172,23 +205,17 @@ public class Case {
 	 * @return Vrai si la case est utilisée par un plot ou un tuyau, faux sinon.
 	 */
 	public boolean estOccupee() {
-		return plot != null || tuyau != null;
+		return plot != null || getTuyau() != null;
 	}
 	
 	/**
-	 * <b>Méthode permettant à la case d'oublier son tuyau et d'être à nouveau disponible
-	 * pour accepter un nouveau tuyau.</b>
-	 * 
-	 * <p> Setter du tuyau à null.
-	 * 
-	 * <p> Méthode appelée par le tuyau lui-même lorsque le joueur retire la dernière
-	 * case du tuyau en revenant en arrière ou lorsque le joueur supprime ce tuyau en
-	 * cliquant sur un des plots de la couleur.
+	 * <b>Méthode appelée par le plateau lors de sa réinitialisation pour que la case
+	 * oublie son plot.</b>
 	 * 
-	 * @see Case#tuyau
+	 * @see Plateau#reinitialiser(Niveau)
 	 */
-	public void retirerTuyau() {
-		this.tuyau = null;
+	public void vider() {
+		this.plot = null;
 	}
 	
 	// Affichage
@@ -206,17 +233,19 @@ public class Case {
 	 *     <li> 2 espaces sinon
 	 * </ul>
 	 * 
-	 * @see Plot#display()
-	 * @see Tuyau#display()
+	 * @see Plateau#getPalette()
+	 * @see Plot#display(Palette)
+	 * @see Tuyau#display(Palette)
 	 * 
 	 * @return Chaîne de caractère représentant la couleur éventuelle contenue dans la case, 
 	 *         2 espaces sinon.
 	 */
 	public String display() {
+		Tuyau tuyau = getTuyau();
 		if (plot != null) {
-			return plot.display();
+			return plot.display(plateau.getPalette());
 		} else if (tuyau != null) {
-			return tuyau.display();
+			return tuyau.display(plateau.getPalette());
 		} else {
 			return "  ";
 		}
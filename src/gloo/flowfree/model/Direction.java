@@ -1,8 +1,14 @@
 package gloo.flowfree.model;
 
 /**
- * Enumeration des directions cardinales possibles pour faire progresser les tuyaux.
- * 
+ * Enumeration des directions possibles pour faire progresser les tuyaux.
+ *
+ * <p> Un plateau rectangulaire utilise les quatre directions cardinales, un plateau
+ * hexagonal DROITE, GAUCHE et les quatre diagonales : les directions de chaque forme
+ * de plateau se suivent dans l'ordre des ordinaux, qui tiennent sur 3 bits.
+ *
+ * @see Topologie#getDirections()
+ *
  * @author Maëlle Renaud
  */
 public enum Direction {
@@ -10,4 +16,24 @@ public enum Direction {
 	BAS,
 	DROITE,
 	GAUCHE,
+	HAUT_DROITE,
+	HAUT_GAUCHE,
+	BAS_DROITE,
+	BAS_GAUCHE;
+	
+	/**
+	 * @return La direction qui ramène à la case de départ.
+	 */
+	public Direction getOpposee() {
+		switch (this) {
+		case HAUT: return BAS;
+		case BAS: return HAUT;
+		case DROITE: return GAUCHE;
+		case GAUCHE: return DROITE;
+		case HAUT_DROITE: return BAS_GAUCHE;
+		case HAUT_GAUCHE: return BAS_DROITE;
+		case BAS_DROITE: return HAUT_GAUCHE;
+		default: return HAUT_DROITE;
+		}
+	}
 }
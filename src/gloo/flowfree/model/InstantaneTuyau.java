@@ -0,0 +1,86 @@
+package gloo.flowfree.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * <b>Classe représentant l'état d'un tuyau à un instant donné : liste non modifiable
+ * de ses directions, avec sa case de départ et sa complétude.</b>
+ * 
+ * <p> Un instantané n'est plus modifié après sa construction et peut être lu depuis
+ * n'importe quel thread, pendant que le tuyau continue d'évoluer sur le thread qui
+ * le modifie.
+ * 
+ * <p> Les directions sont rangées par blocs de TAILLE_BLOC ordinaux. Un bloc plein
+ * n'est jamais modifié : l'instantané suivant du même tuyau reprend tels quels les
+ * blocs que le tuyau n'a pas touchés depuis, et ne copie que les derniers. Un tuyau
+ * qui ne change pas garde le même instantané.
+ * 
+ * @see Tuyau#instantane(InstantaneTuyau)
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public final class InstantaneTuyau extends AbstractList<Direction> implements RandomAccess {
+	
+	/**
+	 * <b>Nombre de directions par bloc.</b>
+	 */
+	private static final int DECALAGE_BLOC = 6;
+	static final int TAILLE_BLOC = 1 << DECALAGE_BLOC;
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final int celluleDepart;
+	private final byte[][] blocs;
+	private final int nbDirections;
+	private final boolean complet;
+	
+	// Constructeur
+	/**
+	 * <b>Constructeur appelé par le tuyau, qui lui confie des blocs qu'il ne modifiera plus.</b>
+	 * 
+	 * @param celluleDepart Indice dans le plateau de la case de départ du tuyau.
+	 * @param blocs Blocs des ordinaux des directions, le dernier éventuellement incomplet.
+	 * @param nbDirections Nombre de directions du tuyau.
+	 * @param complet Vrai si le tuyau relie ses deux plots.
+	 */
+	InstantaneTuyau(int celluleDepart, byte[][] blocs, int nbDirections, boolean complet) {
+		this.celluleDepart = celluleDepart;
+		this.blocs = blocs;
+		this.nbDirections = nbDirections;
+		this.complet = complet;
+	}
+	
+	// Getters
+	/**
+	 * @return L'indice dans le plateau de la case de départ du tuyau.
+	 */
+	public int getCelluleDepart() {
+		return celluleDepart;
+	}
+	
+	public boolean estComplet() {
+		return complet;
+	}
+	
+	/**
+	 * @return Le bloc d'indice b, partagé avec les instantanés voisins.
+	 */
+	byte[] getBloc(int b) {
+		return blocs[b];
+	}
+	
+	@Override
+	public Direction get(int index) {
+		if (index < 0 || index >= nbDirections) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return DIRECTIONS[blocs[index >> DECALAGE_BLOC][index & (TAILLE_BLOC - 1)]];
+	}
+	
+	@Override
+	public int size() {
+		return nbDirections;
+	}
+}
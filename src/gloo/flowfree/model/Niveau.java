@@ -1,14 +1,13 @@
 package gloo.flowfree.model;
 
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * <b> Classe représentant un niveau et toutes les caractéristiques de
  * la grille de départ</b>
  * 
  * <p>Ce niveau sert au controleur à récupérer les ressources brutes du 
- * fichier niveau.txt. Il ne connaît pas d'instances de classes.
+ * fichier niveau.txt. Il ne connaît que la palette du fichier.
  * 
  * <p>Ce niveau est connu :
  * <ul>
@@ -17,15 +16,19 @@ import java.util.Set;
  * </ul>
  * 
  * @author Maëlle Renaud
- *
+ * 
  */
 public class Niveau {
 	
 	/**
-	 * <b>Identifiant du niveau = position dans l'attribut listeNiveaux = position 
-	 * dans le fichier niveaux.txt.</b>
+	 * <b>Identifiant du niveau = position du niveau dans les fichiers de niveaux,
+	 * lus à la suite (niveaux.txt d'abord, puis les autres par nom), à partir de 1.</b>
+	 * 
+	 * <p> Un fichier ajouté, modifié ou retiré avant celui du niveau décale cet
+	 * identifiant : l'empreinte identifie le niveau de manière stable.
 	 * 
 	 * @see Niveau#getId()
+	 * @see Niveau#getEmpreinte()
 	 */
 	private int id;
 	
@@ -44,30 +47,51 @@ public class Niveau {
 	private int nbColonnes;
 	
 	/**
-	 * <b>Dictionnaire dont les clés sont les couleurs utilisées dans ce niveau
-	 * et les valeues sont les coordonées des 2 plots de chaque couleur.</b>
+	 * <b>Palette du fichier de niveaux, qui donne l'indice de chaque couleur.</b>
+	 * 
+	 * @see Niveau#getPalette()
+	 */
+	private Palette palette;
+	
+	/**
+	 * <b>Indices des couleurs utilisées dans ce niveau, dans l'ordre du fichier.</b>
+	 * 
+	 * @see Niveau#getCouleursNiveau()
+	 */
+	private int[] couleursNiveau;
+	
+	/**
+	 * <b>Tableau indexé par l'indice de couleur donnant les coordonnées des 2 plots
+	 * de chaque couleur utilisée dans ce niveau, null pour les autres couleurs.</b>
 	 * 
 	 * <p> Les valeurs sont présentées sous la forme [ [i1,j1], [i2,j2] ] = 
 	 * [ coord plot 1 , coord plot 2 ].
 	 * 
-	 * @see Niveau#getCouleursNiveau()
-	 * @see Niveau#getPlotsCouleur(Couleur)
+	 * @see Niveau#getPlotsCouleur(int)
 	 */
-	private HashMap<Couleur,int[][]> positionPlots;
+	private int[][][] positionPlots;
 	
 	/**
-	 * <b>Booléen indiquant si le niveau a été réussi par l'utilisateur
-	 * à un moment durant la session de jeu.</b>
+	 * <b>Topologie du plateau si le niveau est hexagonal ou a des lignes ou colonnes
+	 * bouclées ou des ponts, null pour une grille rectangulaire.</b>
 	 * 
-	 * <p> Attribut passant à true dès que le niveau a été dans une position 
-	 * gagnante. Il ne peut pas repasser à false.
+	 * <p> Les topologies rectangulaires sont partagées par taille plutôt que gardées
+	 * par chaque niveau ; les topologies hexagonales sont aussi partagées par taille.
 	 * 
-	 * <p> Sert à différencier les niveaux réussis des autres dans la fenêtre
-	 * d'accueil.
+	 * @see Niveau#getTopologie()
+	 */
+	private Topologie topologie;
+	
+	/**
+	 * <b>Empreinte 64 bits du contenu du niveau (taille de grille, puis positions des
+	 * plots de chaque couleur dans l'ordre du fichier).</b>
+	 * 
+	 * <p> Ne dépend ni de l'identifiant ni des noms de couleurs : elle sert de clé aux
+	 * caches sur disque, qui restent valables si le niveau est déplacé dans le fichier.
 	 * 
-	 * @see Niveau#getReussi()
+	 * @see Niveau#getEmpreinte()
 	 */
-	private boolean reussi;
+	private long empreinte;
 	
 	// Constructeur
 	/**
@@ -78,23 +102,37 @@ public class Niveau {
 	 * <p> La chaîne de caractères se présente de la manière suivante :
 	 * <br>&emsp; Niveau
      * <br>&emsp; 5,5				&emsp; (nombre de lignes, nombre de colonnes)
-	 * <br>&emsp; ROUGE;0,0;4,1	    &emsp; (Couleur ; coordonnées 1er plot ; coordonnées 2ème plot)
+	 * <br>&emsp; ROUGE;0,0;4,1	    &emsp; (nom de couleur ; coordonnées 1er plot ; coordonnées 2ème plot)
      * <br>&emsp; VERT;0,2;3,1
      * <br>&emsp; BLEU;1,2;4,2
      * <br>&emsp; JAUNE;0,4;3,3
      * <br>&emsp; ORANGE;1,4;4,3
      * 
+     * <p> Des lignes de topologie peuvent s'ajouter aux lignes de couleur :
+	 * <br>&emsp; TORE				&emsp; (toutes les lignes et colonnes sont bouclées)
+	 * <br>&emsp; PASSAGE;LIGNE;2		&emsp; (bords gauche et droit de la ligne 2 reliés)
+	 * <br>&emsp; PASSAGE;COLONNE;0	&emsp; (bords haut et bas de la colonne 0 reliés)
+	 * <br>&emsp; PONT;2,2			&emsp; (la case 2,2 est un pont)
+	 * <br>&emsp; HEXAGONAL			&emsp; (cases hexagonales, sans boucle ni pont)
+     * 
      * <p> Les nombres de lignes et colonnes et les positions des plots sont
      * extraites de cette chaîne et sauvegardés dans les attributs de ce Niveau.
+     * Les noms de couleurs sont traduits en indices grâce à la palette.
      * 
+	 * @see Palette#indice(String)
+	 * @see Topologie
+	 * 
 	 * @param strNiveau Chaîne de caractères représentant le niveau dans le
-	 *                  fichier niveaux.txt.
+	 *                  fichier niveaux.txt, validée au préalable.
 	 *                  
-	 * @param id Identifiant du niveau (position du niveau dans le fichier
-	 *           niveaux.txt)
+	 * @param id Identifiant du niveau (position du niveau dans les fichiers de
+	 *           niveaux, lus à la suite)
+	 *           
+	 * @param palette Palette du fichier de niveaux.
 	 */
-	public Niveau(String strNiveau, int id) {
+	public Niveau(String strNiveau, int id, Palette palette) {
 		this.id = id;
+		this.palette = palette;
 		
 		String[] strLignes = strNiveau.split("\n");
 		String[] infoGenerales = strLignes[0].split(",");
@@ -102,40 +140,76 @@ public class Niveau {
 		this.nbLignes = Integer.parseInt(infoGenerales[0]);
 		this.nbColonnes = Integer.parseInt(infoGenerales[1]);
 		
-		this.positionPlots = new HashMap<Couleur,int[][]>();
+		int[] couleurs = new int[strLignes.length - 1];
+		int nbCouleurs = 0;
+		this.positionPlots = new int[palette.getNbCouleurs()][][];
+		boolean[] lignesBouclees = null;
+		boolean[] colonnesBouclees = null;
+		int[] ponts = new int[0];
+		boolean hexagonal = false;
 		for (int i=1 ; i < strLignes.length ; i++) {
 			String[] ligne = strLignes[i].split(";");
-			Couleur couleur = strToCouleur(ligne[0]);
-			int[] premierPlot = getCoordonnees(ligne[1]);
-			int[] deuxiemePlot = getCoordonnees(ligne[2]);
-			this.positionPlots.put( couleur, new int[][] {premierPlot , deuxiemePlot} );
+			switch (ligne[0]) {
+			case Topologie.HEXAGONAL:
+				hexagonal = true;
+				break;
+			case Topologie.TORE:
+				lignesBouclees = new boolean[nbLignes];
+				colonnesBouclees = new boolean[nbColonnes];
+				Arrays.fill(lignesBouclees, true);
+				Arrays.fill(colonnesBouclees, true);
+				break;
+			case Topologie.PASSAGE:
+				if (lignesBouclees == null) lignesBouclees = new boolean[nbLignes];
+				if (colonnesBouclees == null) colonnesBouclees = new boolean[nbColonnes];
+				(ligne[1].equals(Topologie.LIGNE) ? lignesBouclees : colonnesBouclees)[Integer.parseInt(ligne[2].trim())] = true;
+				break;
+			case Topologie.PONT:
+				int[] pont = getCoordonnees(ligne[1]);
+				ponts = Arrays.copyOf(ponts, ponts.length + 1);
+				ponts[ponts.length - 1] = pont[0] * nbColonnes + pont[1];
+				break;
+			default:
+				int couleur = palette.indice(ligne[0]);
+				int[] premierPlot = getCoordonnees(ligne[1]);
+				int[] deuxiemePlot = getCoordonnees(ligne[2]);
+				couleurs[nbCouleurs++] = couleur;
+				this.positionPlots[couleur] = new int[][] {premierPlot , deuxiemePlot};
+			}
+		}
+		this.couleursNiveau = nbCouleurs == couleurs.length ? couleurs : Arrays.copyOf(couleurs, nbCouleurs);
+		if (hexagonal) {
+			this.topologie = Topologie.hexagonale(nbLignes, nbColonnes);
+		} else if (lignesBouclees != null || ponts.length > 0) {
+			this.topologie = new Topologie(nbLignes, nbColonnes, lignesBouclees, colonnesBouclees, ponts);
 		}
 		
-		this.reussi = false;
+		this.empreinte = calculerEmpreinte();
 	}
+	
 	/**
-	 * <b>Méthode peremttant de passer du nom de la couleur à l'instance
-	 * de la classe Couleur corresondante.</b>
-	 * 
-	 * @param str Nom de la couleur.
-	 * @return Instance de la classe Couleur correpsondante, default si 
-	 *        l'instance n'existe pas.
-	 */
-	private Couleur strToCouleur(String str) {
-		switch(str) {
-		case "ROUGE": return Couleur.ROUGE;
-		case "ORANGE": return Couleur.ORANGE;
-		case "BLEU": return Couleur.BLEU;
-		case "VERT": return Couleur.VERT;
-		case "JAUNE": return Couleur.JAUNE;
-		case "TURQUOISE": return Couleur.TURQUOISE;
-		case "VIOLET": return Couleur.VIOLET;
-		case "BORDEAUX": return Couleur.BORDEAUX;
-		case "ROSE": return Couleur.ROSE;
-		default: return null;
-		}
+	 * <b>Constructeur copiant un niveau sous un autre identifiant, sans relire sa
+	 * chaîne de caractères.</b>
+	 * 
+	 * <p> Appelé par TousNiveaux quand un rechargement a décalé les niveaux en cache
+	 * d'un fichier qui n'a pas changé. Les tableaux du modèle, jamais modifiés, sont
+	 * partagés.
+	 * 
+	 * @see TousNiveaux#getNiveau(int)
+	 * 
+	 * @param modele Niveau à copier.
+	 * @param id Nouvel identifiant du niveau.
+	 */
+	Niveau(Niveau modele, int id) {
+		this.id = id;
+		this.palette = modele.palette;
+		this.nbLignes = modele.nbLignes;
+		this.nbColonnes = modele.nbColonnes;
+		this.couleursNiveau = modele.couleursNiveau;
+		this.positionPlots = modele.positionPlots;
+		this.topologie = modele.topologie;
+		this.empreinte = modele.empreinte;
 	}
-	
 	/**
 	 * <b>Méthode pour passer de la chaîne de caractères des coordonnées
 	 * d'un plot au tableau des coordonnées entières.</b>
@@ -149,6 +223,40 @@ public class Niveau {
 		return new int[] { Integer.parseInt(coordStr[0]) , Integer.parseInt(coordStr[1]) };
 	}
 	
+	/**
+	 * <b>Méthode calculant l'empreinte du niveau par hachage FNV-1a de ses entiers.</b>
+	 * 
+	 * <p> La topologie n'entre dans l'empreinte que si elle n'est pas rectangulaire :
+	 * l'empreinte d'un niveau rectangulaire sans boucle ni pont est inchangée.
+	 * 
+	 * @see Niveau#empreinte
+	 */
+	private long calculerEmpreinte() {
+		long h = 0xcbf29ce484222325L;
+		h = (h ^ nbLignes) * 0x100000001b3L;
+		h = (h ^ nbColonnes) * 0x100000001b3L;
+		h = (h ^ couleursNiveau.length) * 0x100000001b3L;
+		for (int c : couleursNiveau) {
+			for (int[] plot : positionPlots[c]) {
+				h = (h ^ plot[0]) * 0x100000001b3L;
+				h = (h ^ plot[1]) * 0x100000001b3L;
+			}
+		}
+		if (topologie != null) {
+			for (int i=0 ; i < nbLignes ; i++) {
+				if (topologie.estLigneBouclee(i)) h = (h ^ (i | 1 << 20)) * 0x100000001b3L;
+			}
+			for (int j=0 ; j < nbColonnes ; j++) {
+				if (topologie.estColonneBouclee(j)) h = (h ^ (j | 2 << 20)) * 0x100000001b3L;
+			}
+			for (int pont : topologie.getPonts()) {
+				h = (h ^ (pont | 3 << 28)) * 0x100000001b3L;
+			}
+			if (topologie.estHexagonale()) h = (h ^ 4 << 28) * 0x100000001b3L;
+		}
+		return h;
+	}
+	
 	// Getters
 	public int getId() {
 		return id;
@@ -162,21 +270,55 @@ public class Niveau {
 		return nbColonnes;
 	}
 	
-	public boolean getReussi() {
-		return reussi;
+	public Palette getPalette() {
+		return palette;
+	}
+	
+	public long getEmpreinte() {
+		return empreinte;
 	}
 	
-	public void setReussi(boolean b) {
-		this.reussi = b;
+	/**
+	 * @return La topologie du plateau de ce niveau, rectangulaire s'il n'est pas
+	 *         hexagonal et n'a ni boucle ni pont.
+	 */
+	public Topologie getTopologie() {
+		return topologie != null ? topologie : Topologie.rectangulaire(nbLignes, nbColonnes);
 	}
 	
 	// Autres méthodes
-	public int[][] getPlotsCouleur(Couleur c) {
-		return positionPlots.get(c);
+	/**
+	 * @param c Indice de la couleur.
+	 * @return Les coordonnées [ [i1,j1], [i2,j2] ] des plots de cette couleur, null si
+	 *         la couleur n'est pas utilisée dans ce niveau.
+	 */
+	public int[][] getPlotsCouleur(int c) {
+		return c < positionPlots.length ? positionPlots[c] : null;
 	}
 	
-	public Set<Couleur> getCouleursNiveau() {
-		return positionPlots.keySet();
+	/**
+	 * @return Les indices des couleurs utilisées dans ce niveau, dans l'ordre du fichier.
+	 *         Le tableau ne doit pas être modifié.
+	 */
+	public int[] getCouleursNiveau() {
+		return couleursNiveau;
 	}
 	
+	/**
+	 * <b>Estimation de la place occupée en mémoire par ce niveau : ses tableaux, et sa
+	 * topologie si elle n'est pas partagée. La palette, partagée par tout le fichier,
+	 * n'est pas comptée.</b>
+	 * 
+	 * @see TousNiveaux#getNiveau(int)
+	 * 
+	 * @return Le nombre d'octets estimé.
+	 */
+	long getTailleMemoire() {
+		long taille = 48;
+		taille += 16 + 4L * couleursNiveau.length;
+		taille += 16 + 4L * positionPlots.length + 72L * couleursNiveau.length;	// [ [i1,j1], [i2,j2] ] par couleur
+		if (topologie != null && !topologie.estHexagonale()) taille += topologie.getTailleMemoire();
+		return taille;
+	}
+
 }
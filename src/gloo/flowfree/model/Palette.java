@@ -0,0 +1,170 @@
+package gloo.flowfree.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * <b>Classe représentant la table des couleurs d'un fichier de niveaux.</b>
+ * 
+ * <p>Une couleur est désignée par un petit entier, son indice dans cette table.
+ * Toutes les informations d'une couleur (nom, représentation console, couleur
+ * d'affichage) sont rangées dans des tableaux indexés par cet indice, de même
+ * que l'état propre à chaque couleur dans les autres classes (plots d'un niveau,
+ * tuyaux d'un plateau) : le nombre de couleurs d'un niveau n'est limité que par
+ * la taille de la palette.
+ * 
+ * <p>La palette est lue dans l'en-tête du fichier de niveaux, avant le premier
+ * niveau :
+ * <br>&emsp; Palette
+ * <br>&emsp; ROUGE;255,0,0;R 	&emsp; (nom ; composantes rouge, vert, bleu ; représentation console)
+ * <br>&emsp; ORANGE;255,200,0;O
+ * <br>&emsp; ...
+ * 
+ * <p>Un fichier sans en-tête utilise la palette par défaut, qui contient les 9
+ * couleurs historiques du jeu.
+ * 
+ * <p>La palette est connue :
+ * <ul>
+ *     <li> De TousNiveaux, qui la lit
+ *     <li> De chaque niveau et de chaque plateau
+ * </ul>
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class Palette {
+	
+	/**
+	 * <b>Ligne annonçant la palette dans l'en-tête du fichier de niveaux.</b>
+	 */
+	public static final String DEBUT_PALETTE = "Palette";
+	
+	/**
+	 * <b>Palette utilisée par les fichiers de niveaux sans en-tête : les 9 couleurs
+	 * historiques du jeu, dans leur ordre historique.</b>
+	 */
+	public static final Palette DEFAUT = new Palette(
+			new String[] { "ROUGE", "ORANGE", "BLEU", "VERT", "JAUNE", "TURQUOISE", "ROSE", "VIOLET", "BORDEAUX" },
+			new int[] { 0xFF0000, 0xFFC800, 0x0000FF, 0x00FF00, 0xFFFF00, 0x00FFFF, 0xFFAFAF, 0xFF00FF, 0x9D0808 },
+			new String[] { "R ", "O ", "Bl", "Ve", "J ", "T ", "Rose", "Vi", "Bo" });
+	
+	/**
+	 * <b>Nom de chaque couleur, tel qu'il apparaît dans le fichier de niveaux.</b>
+	 */
+	private String[] noms;
+	
+	/**
+	 * <b>Couleur d'affichage de chaque couleur, au format 0xRRGGBB.</b>
+	 */
+	private int[] rgb;
+	
+	/**
+	 * <b>Représentation de chaque couleur dans la console (premières lettres de son nom).</b>
+	 */
+	private String[] abreviations;
+	
+	/**
+	 * <b>Indice de chaque couleur à partir de son nom, utilisé uniquement lors de la
+	 * lecture des niveaux.</b>
+	 */
+	private HashMap<String, Integer> indices;
+	
+	// Constructeur
+	public Palette(String[] noms, int[] rgb, String[] abreviations) {
+		this.noms = noms;
+		this.rgb = rgb;
+		this.abreviations = abreviations;
+		this.indices = new HashMap<String, Integer>();
+		for (int c=0 ; c < noms.length ; c++) {
+			indices.put(noms[c], c);
+		}
+	}
+	
+	/**
+	 * <b>Méthode lisant la palette dans l'en-tête d'un fichier de niveaux.</b>
+	 * 
+	 * @param lignes Lignes du fichier de niveaux.
+	 * @param fin Indice de la première ligne après l'en-tête (première ligne "Niveau").
+	 * 
+	 * @return La palette déclarée dans l'en-tête, la palette par défaut si l'en-tête
+	 *         n'en déclare pas.
+	 * 
+	 * @throws IllegalArgumentException Si une ligne de la palette est invalide ou si
+	 *         un nom de couleur est en double.
+	 */
+	public static Palette lire(List<String> lignes, int fin) {
+		int debut = 0;
+		while (debut < fin && !lignes.get(debut).trim().equals(DEBUT_PALETTE)) debut++;
+		if (debut == fin) return DEFAUT;
+		
+		String[] noms = new String[fin - debut];
+		int[] rgb = new int[fin - debut];
+		String[] abreviations = new String[fin - debut];
+		HashMap<String, Integer> vus = new HashMap<String, Integer>();
+		int nb = 0;
+		for (int k = debut + 1 ; k < fin ; k++) {
+			String ligne = lignes.get(k).trim();
+			if (ligne.isEmpty()) continue;
+			String[] champs = lignes.get(k).split(";");
+			String[] composantes = champs.length == 3 ? champs[1].split(",") : new String[0];
+			if (composantes.length != 3) {
+				throw new IllegalArgumentException("Palette (ligne " + (k + 1) + ") : \"" + ligne 
+						+ "\" n'a pas la forme NOM;r,g,b;abréviation");
+			}
+			int valeur = 0;
+			try {
+				for (String composante : composantes) {
+					int v = Integer.parseInt(composante.trim());
+					if (v < 0 || v > 255) throw new NumberFormatException();
+					valeur = valeur << 8 | v;
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Palette (ligne " + (k + 1) + ") : composantes invalides \"" + champs[1] + "\"");
+			}
+			if (vus.put(champs[0].trim(), nb) != null) {
+				throw new IllegalArgumentException("Palette (ligne " + (k + 1) + ") : couleur " + champs[0].trim() + " en double");
+			}
+			noms[nb] = champs[0].trim();
+			rgb[nb] = valeur;
+			abreviations[nb] = String.format("%-2s", champs[2].trim());	// Alignement des colonnes dans la console
+			nb++;
+		}
+		return new Palette(Arrays.copyOf(noms, nb), Arrays.copyOf(rgb, nb), Arrays.copyOf(abreviations, nb));
+	}
+	
+	// Getters
+	public int getNbCouleurs() {
+		return noms.length;
+	}
+	
+	public String getNom(int couleur) {
+		return noms[couleur];
+	}
+	
+	public int getRgb(int couleur) {
+		return rgb[couleur];
+	}
+	
+	/**
+	 * <b>Méthode appelée par les plots et les tuyaux pour afficher dans la console
+	 * l'état actuel du plateau.</b>
+	 * 
+	 * @param couleur Indice de la couleur.
+	 * @return Chaîne de caractère représentant cette couleur dans la console.
+	 */
+	public String getAbreviation(int couleur) {
+		return abreviations[couleur];
+	}
+	
+	/**
+	 * <b>Méthode permettant de passer du nom d'une couleur à son indice.</b>
+	 * 
+	 * @param nom Nom de la couleur.
+	 * @return Indice de la couleur, -1 si la palette ne contient pas cette couleur.
+	 */
+	public int indice(String nom) {
+		Integer c = indices.get(nom);
+		return c == null ? -1 : c;
+	}
+}
@@ -1,5 +1,12 @@
 package gloo.flowfree.model;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import gloo.flowfree.mesure.MetriquesMoteur;
+
 /**
  * <b>Classe permettant de stocker l'ensemble des cases avec leurs coordonnées.</b>
  * 
@@ -9,6 +16,7 @@ package gloo.flowfree.model;
  * <p>Ce plateau connaît :
  * <ul>
  *     <li> Toutes ses cases
+ *     <li> Le tuyau courant de chaque couleur
  * </ul>
  * 
  * <p>Ce plateau est connu :
@@ -18,7 +26,7 @@ package gloo.flowfree.model;
  * </ul>
  * 
  * @author Maëlle Renaud
- *
+ * 
  */
 public class Plateau {
 	
@@ -43,9 +51,82 @@ public class Plateau {
 	private int nbColonnes;
 	
 	/**
-	 * Matrice des cases représentant le tableau de taille [nbLignes][nbColonnes].
+	 * <b>Forme du plateau, qui donne la voisine de chaque case dans chaque direction.</b>
+	 * 
+	 * @see Niveau#getTopologie()
+	 * @see Plateau#getMaCaseVoisine(Case, Direction)
+	 */
+	private Topologie topologie;
+	
+	/**
+	 * <b>Cases du plateau indexées par leur indice (indiceLigne * nbColonnes + indiceColonne),
+	 * suivies des voies horizontales des ponts.</b>
+	 * 
+	 * <p> Une voie horizontale de pont est une case à part entière : un tuyau peut
+	 * l'occuper indépendamment de la case du pont, qui porte la voie verticale.
+	 * 
+	 * @see Topologie
+	 */
+	private Case[] cases;
+	
+	/**
+	 * <b>Tuyau occupant chaque case (ou voie de pont), indexé par l'indice de la case, null si aucun
+	 * tuyau ne passe par la case.</b>
+	 * 
+	 * <p>Avec l'attribut rangs, forme la table (tuyau, rang dans le chemin) de chaque
+	 * case : lorsqu'un tuyau entre dans une case occupée, le point de coupure est
+	 * connu en temps constant.
+	 * 
+	 * @see Plateau#getOccupant(int)
+	 * @see Tuyau#couper(int)
+	 */
+	private Tuyau[] occupants;
+	
+	/**
+	 * <b>Rang de chaque case occupée dans le chemin de son tuyau (0 pour la case
+	 * départ), indexé par l'indice de la case.</b>
+	 * 
+	 * <p>Significatif uniquement si la case a un occupant.
+	 * 
+	 * @see Plateau#getRang(int)
 	 */
-	private Case[][] cases;
+	private int[] rangs;
+	
+	/**
+	 * <b>Palette du pack dont est issu le niveau joué sur ce plateau.</b>
+	 * 
+	 * @see Niveau#getPalette()
+	 */
+	private Palette palette;
+	
+	/**
+	 * <b>Tuyau courant de chaque couleur (démarrant d'un plot de cette couleur),
+	 * indexé par l'indice de la couleur dans la palette.</b>
+	 * 
+	 * <p>Une couleur dont la case vaut null n'a pas de tuyau. Les tuyaux sont propres
+	 * à ce plateau : deux parties jouées en même temps ne partagent aucun état.
+	 * 
+	 * @see Plateau#nouveauTuyau(int, Case)
+	 * @see Plateau#hasTuyau(int)
+	 * @see Plateau#getTuyau(int)
+	 */
+	private Tuyau[] tuyaux;
+	
+	/**
+	 * <b>Tuyaux des parties précédentes jouées sur ce plateau, vidés et prêts à
+	 * être réutilisés par la couleur correspondante.</b>
+	 * 
+	 * @see Plateau#reinitialiser(Niveau)
+	 * @see Plateau#nouveauTuyau(int, Case)
+	 */
+	private Tuyau[] tuyauxLibres;
+	
+	/**
+	 * <b>Plots placés sur ce plateau, réutilisés lors d'une réinitialisation.</b>
+	 * 
+	 * @see Plateau#reinitialiser(Niveau)
+	 */
+	private ArrayList<Plot> plots;
 	
 	// Constructeur
 	/**
@@ -59,8 +140,8 @@ public class Plateau {
 	 *          passé en paramètre.
      *     <li> Initialisation de nbColonnes à partir du nombre de colonnes du niveau
 	 *          passé en paramètre.
-	 *     <li> Initialisation de la matrices cases
-	 *     <li> Construction de tous les élements de la matrice cases
+	 *     <li> Récupération de la topologie du niveau
+	 *     <li> Construction d'une case par case du plateau et par voie horizontale de pont
 	 *     <li> Récupération des couleurs utilisées dans le niveau et des positions des
 	 *          plots associés à chacun de ces couleurs.
 	 *     <li> Construction de chaque plot
@@ -68,35 +149,278 @@ public class Plateau {
 	 * 
 	 * @see Niveau#getNbLignes()
 	 * @see Niveau#getNbColonnes()
-	 * @see Case#Case(Plateau)
+	 * @see Niveau#getTopologie()
+	 * @see Case#Case(Plateau, int)
 	 * @see Niveau#getCouleursNiveau()
-	 * @see Niveau#getPlotsCouleur(Couleur)
-	 * @see Plot#Plot(Couleur, Case)
+	 * @see Niveau#getPlotsCouleur(int)
+	 * @see Plot#Plot(int, Case)
 	 * 
 	 * @param niveau Niveau à dessiner et jouer sur ce plateau
 	 */
 	public Plateau(Niveau niveau) {
 		this.nbLignes = niveau.getNbLignes();
 		this.nbColonnes = niveau.getNbColonnes();
-		this.cases = new Case[nbLignes][nbColonnes];
+		this.topologie = niveau.getTopologie();
+		this.cases = new Case[topologie.getNbVoies()];
+		this.occupants = new Tuyau[cases.length];
+		this.rangs = new int[cases.length];
+		this.palette = niveau.getPalette();
+		this.tuyaux = new Tuyau[palette.getNbCouleurs()];
+		this.tuyauxLibres = new Tuyau[palette.getNbCouleurs()];
+		this.plots = new ArrayList<Plot>();
 		
 		// Créer les cases
-		for (int i=0 ; i<nbLignes ; i++) {
-			for (int j=0 ; j<nbColonnes ; j++) {
-				cases[i][j] = new Case(this);
-			}
+		for (int c=0 ; c < cases.length ; c++) {
+			cases[c] = new Case(this, c);
 		}
 		
-		// Placer les plots
-		for (Couleur c : niveau.getCouleursNiveau()) {
+		placerPlots(niveau);
+	}
+	
+	/**
+	 * <b>Méthode remettant ce plateau dans l'état initial d'un autre niveau de même
+	 * taille, sans réallouer ses cases, ses plots ni ses tuyaux.</b>
+	 * 
+	 * <p> Si le niveau n'a pas la même topologie, seules les voies de ses ponts sont
+	 * à créer ou à retirer.
+	 * 
+	 * <ul>
+	 *     <li> Chaque case oublie son plot et plus aucune case n'est occupée par un tuyau.
+	 *     <li> Les tuyaux courants sont vidés et mis de côté pour être réutilisés.
+	 *     <li> Les plots du niveau sont placés en réutilisant les plots existants.
+	 * </ul>
+	 * 
+	 * @see PoolPlateaux#obtenir(Niveau)
+	 * @see Case#vider()
+	 * @see Tuyau#vider()
+	 * 
+	 * @param niveau Niveau à jouer, de même taille que ce plateau.
+	 */
+	public void reinitialiser(Niveau niveau) {
+		if (niveau.getNbLignes() != nbLignes || niveau.getNbColonnes() != nbColonnes) {
+			throw new IllegalArgumentException("Le niveau " + niveau.getId() + " n'a pas la taille de ce plateau");
+		}
+		for (Case c : cases) {
+			c.vider();
+		}
+		if (!topologie.equals(niveau.getTopologie())) {
+			this.topologie = niveau.getTopologie();
+			int nbAvant = cases.length;
+			if (topologie.getNbVoies() != nbAvant) {
+				cases = Arrays.copyOf(cases, topologie.getNbVoies());
+				occupants = new Tuyau[cases.length];
+				rangs = new int[cases.length];
+				for (int c=nbAvant ; c < cases.length ; c++) {
+					cases[c] = new Case(this, c);
+				}
+			}
+		}
+		Arrays.fill(occupants, null);
+		for (int c=0 ; c<tuyaux.length ; c++) {
+			if (tuyaux[c] != null) {
+				tuyaux[c].vider();
+				tuyauxLibres[c] = tuyaux[c];
+				tuyaux[c] = null;
+			}
+		}
+		this.palette = niveau.getPalette();
+		if (palette.getNbCouleurs() > tuyaux.length) {
+			tuyaux = new Tuyau[palette.getNbCouleurs()];
+			tuyauxLibres = Arrays.copyOf(tuyauxLibres, palette.getNbCouleurs());
+		}
+		placerPlots(niveau);
+	}
+	
+	/**
+	 * <b>Méthode plaçant les plots du niveau sur les cases, en réutilisant les plots
+	 * déjà construits par ce plateau.</b>
+	 * 
+	 * @see Niveau#getCouleursNiveau()
+	 * @see Niveau#getPlotsCouleur(int)
+	 * @see Plot#Plot(int, Case)
+	 * @see Plot#placer(int, Case)
+	 * 
+	 * @param niveau Niveau dont les plots sont à placer.
+	 */
+	private void placerPlots(Niveau niveau) {
+		int k = 0;
+		for (int c : niveau.getCouleursNiveau()) {
 			int[][] coordPlots = niveau.getPlotsCouleur(c);
 			for (int[] coordOnePlot : coordPlots) {
-				new Plot(c, cases[coordOnePlot[0]][coordOnePlot[1]]);
+				Case emplacement = cases[coordOnePlot[0] * nbColonnes + coordOnePlot[1]];
+				if (k < plots.size()) {
+					plots.get(k).placer(c, emplacement);
+				} else {
+					plots.add(new Plot(c, emplacement));
+				}
+				k++;
 			} 
 		}
 	}
 	
+	public int getNbLignes() {
+		return nbLignes;
+	}
+	
+	public int getNbColonnes() {
+		return nbColonnes;
+	}
+	
+	public Palette getPalette() {
+		return palette;
+	}
+	
+	public Topologie getTopologie() {
+		return topologie;
+	}
+	
+	/**
+	 * @param cellule Indice de la case.
+	 * @return Le tuyau passant par cette case, null si la case n'est occupée par aucun tuyau.
+	 */
+	Tuyau getOccupant(int cellule) {
+		return occupants[cellule];
+	}
+	
+	/**
+	 * @param cellule Indice d'une case occupée par un tuyau.
+	 * @return Le rang de cette case dans le chemin de son tuyau (0 pour la case départ).
+	 */
+	int getRang(int cellule) {
+		return rangs[cellule];
+	}
+	
+	/**
+	 * <b>Méthode appelée par un tuyau lorsqu'il ajoute une case à son chemin.</b>
+	 * 
+	 * @param cellule Indice de la case ajoutée.
+	 * @param tuyau Tuyau occupant désormais la case.
+	 * @param rang Rang de la case dans le chemin du tuyau.
+	 */
+	void occuper(int cellule, Tuyau tuyau, int rang) {
+		occupants[cellule] = tuyau;
+		rangs[cellule] = rang;
+	}
+	
+	/**
+	 * <b>Méthode appelée par un tuyau lorsqu'il retire une case de son chemin.</b>
+	 * 
+	 * @param cellule Indice de la case libérée.
+	 */
+	void liberer(int cellule) {
+		occupants[cellule] = null;
+	}
+	
 	// Autres méthodes
+	/**
+	 * <b>Méthode appelée par une case contenant un plot pour construire un nouveau
+	 * tuyau de la couleur de ce plot à partir de cette case.</b>
+	 * 
+	 * <p> Si la couleur possédait déjà un tuyau, celui-ci est détruit, 
+	 * c'est-à-dire que les cases le constituant l'oublient, puis il repart
+	 * de la case départ donnée en paramètre : ses listes sont vidées et non
+	 * réallouées. Sinon, un tuyau libre de cette couleur est réutilisé, ou à
+	 * défaut un nouveau tuyau est créé. Ce tuyau devient le tuyau courant de
+	 * cette couleur et est retourné par la méthode.
+	 * 
+	 * @see Tuyau#detruireTuyau()
+	 * @see Tuyau#repartir(Case)
+	 * @see Tuyau#Tuyau(Case, int)
+	 * 
+	 * @param couleur Indice de la couleur du tuyau à créer.
+	 * @param emplacement Case départ du tuyau à créer.
+	 * @return Le nouveau tuyau, nouveau tuyau courant de cette couleur.
+	 */
+	public Tuyau nouveauTuyau(int couleur, Case emplacement) {
+		Tuyau tuyau = tuyaux[couleur];
+		if (tuyau != null) {
+			tuyau.detruireTuyau();
+			MetriquesMoteur.get().reinitialisationTuyau();
+		} else {
+			tuyau = tuyauxLibres[couleur];
+			tuyauxLibres[couleur] = null;
+		}
+		if (tuyau == null) {
+			tuyau = new Tuyau(emplacement, couleur);
+		} else {
+			tuyau.repartir(emplacement);
+		}
+		tuyaux[couleur] = tuyau;
+		return tuyau;
+	}
+	
+	/**
+	 * <b>Méthode remettant les tuyaux dans un état antérieur du plateau, en ne
+	 * touchant qu'aux cases qui diffèrent.</b>
+	 * 
+	 * <p> Chaque tuyau dont l'état a changé est d'abord raccourci à son début commun
+	 * avec l'état visé (ou retiré s'il n'existait pas ou partait d'une autre case),
+	 * puis les tuyaux sont prolongés jusqu'à leur état : les cases qu'ils reprennent
+	 * ont été libérées à la première étape. Le coût est proportionnel aux tuyaux
+	 * modifiés, pas au nombre de coups joués depuis l'état visé.
+	 * 
+	 * @see Tuyau#instantane(InstantaneTuyau)
+	 * @see Tuyau#prefixeCommun(InstantaneTuyau)
+	 * @see Tuyau#prolonger(InstantaneTuyau)
+	 * 
+	 * @param cibles Etat visé des tuyaux, par indice dans la palette (null pour une
+	 *               couleur sans tuyau).
+	 * @param actuels Instantanés de l'état actuel des tuyaux : une couleur dont
+	 *                l'instantané actuel est celui visé n'est pas examinée.
+	 */
+	public void restaurer(InstantaneTuyau[] cibles, InstantaneTuyau[] actuels) {
+		for (int c=0 ; c < tuyaux.length ; c++) {
+			InstantaneTuyau cible = c < cibles.length ? cibles[c] : null;
+			if (tuyaux[c] == null || c < cibles.length && cible == actuels[c]) continue;
+			if (cible == null || cible.getCelluleDepart() != tuyaux[c].getCelluleDepart()) {
+				tuyaux[c].detruireTuyau();
+				tuyaux[c].vider();
+				tuyauxLibres[c] = tuyaux[c];
+				tuyaux[c] = null;
+			} else {
+				tuyaux[c].couper(1 + tuyaux[c].prefixeCommun(cible));
+			}
+		}
+		for (int c=0 ; c < cibles.length ; c++) {
+			if (cibles[c] == null || cibles[c] == actuels[c]) continue;
+			Tuyau tuyau = tuyaux[c] != null ? tuyaux[c] : nouveauTuyau(c, cases[cibles[c].getCelluleDepart()]);
+			tuyau.prolonger(cibles[c]);
+		}
+	}
+	
+	/**
+	 * <b>Méthode appelée par le controleur lors de chaque repaint de l'IHM pour
+	 * déterminer si une couleur a un tuyau à dessiner.</b>
+	 * 
+	 * @param couleur Indice de la couleur dont on veut savoir si elle a un tuyau.
+	 * @return Vrai si la couleur a un tuyau sur ce plateau, faux sinon.
+	 */
+	public boolean hasTuyau(int couleur) {
+		return couleur >= 0 && couleur < tuyaux.length && tuyaux[couleur] != null;
+	}
+	
+	/**
+	 * @param couleur Indice de la couleur dont on veut le tuyau.
+	 * @return Le tuyau courant de la couleur sur ce plateau, null si elle n'en a pas.
+	 */
+	public Tuyau getTuyau(int couleur) {
+		return hasTuyau(couleur) ? tuyaux[couleur] : null;
+	}
+	
+	/**
+	 * <b>Méthode appelée par le controleur à la fin de chaque action pour vérifier si
+	 * les deux plots d'une couleur sont reliés.</b>
+	 * 
+	 * @see Tuyau#estComplet()
+	 * 
+	 * @param couleur Indice de la couleur à tester.
+	 * @return Vrai si la couleur a un tuyau et qu'il est complet, faux sinon.
+	 */
+	public boolean couleurComplete(int couleur) {
+		Tuyau tuyau = getTuyau(couleur);
+		return tuyau != null && tuyau.estComplet();
+	}
+	
 	/**
 	 * <b>Méthode appelée par le controleur pour sélectionner une case si elle contient
 	 * un plot.</b>
@@ -108,9 +432,27 @@ public class Plateau {
 	 * @param i Indice de ligne de la case demandée.
 	 * @param j Indice de colonne de la case demandée.
 	 * @return Le plot présent dans la case s'il existe, null sinon.
+	 * @throws IllegalArgumentException Si la case est hors du plateau : sans ce contrôle,
+	 *         une colonne trop grande désignerait une case de la ligne suivante.
 	 */
 	public Plot getPlot(int i, int j) {
-		return cases[i][j].getPlot();
+		if (i < 0 || j < 0 || i >= nbLignes || j >= nbColonnes) {
+			throw new IllegalArgumentException("Case (" + i + "," + j + ") hors du plateau");
+		}
+		return cases[i * nbColonnes + j].getPlot();
+	}
+	
+	/**
+	 * <b>Méthode appelée par les tuyaux pour retrouver une case à partir de son indice.</b>
+	 * 
+	 * @see Case#getIndice()
+	 * 
+	 * @param indice Indice de la case (indiceLigne * nbColonnes + indiceColonne), ou
+	 *               de la voie horizontale d'un pont.
+	 * @return La case de cet indice.
+	 */
+	public Case getCase(int indice) {
+		return cases[indice];
 	}
 	
 	/**
@@ -124,32 +466,32 @@ public class Plateau {
 	 *     <li> le plateau pour trouver les cases voisines d'une case.
 	 * </ul>
 	 * 
-	 * <p>Cette méthode compare la référence de la case passée en paramètre avec chacune
-	 * des références des cases du plateau.
+	 * <p>Les coordonnées se déduisent de l'indice de la case, sans parcourir le plateau.
+	 * La voie horizontale d'un pont a les coordonnées de la case du pont.
+	 * 
+	 * @see Case#getIndice()
+	 * @see Topologie#cellule(int)
 	 * 
 	 * @param emplacement Case à trouver dans le plateau.
 	 * @return Coordonnées [indiceLigne, indiceColonne] de la case dans le plateau si
 	 *         la case passée en paramètre référence un objet du plateau, null sinon.
 	 */
 	public int[] findPositionCase(Case emplacement) {
-		for (int i=0 ; i<nbLignes ; i++) {
-			for (int j=0 ; j<nbColonnes ; j++) {
-				if (emplacement == cases[i][j]) {
-					return new int[] {i, j};
-				}
-			}
-		}
-		return null;
+		if (emplacement.getPlateau() != this) return null;
+		int indice = topologie.cellule(emplacement.getIndice());
+		return new int[] {indice / nbColonnes, indice % nbColonnes};
 	}
 	
 	/**
 	 * <b>Méthode appelée par la case elle-même lors de la propagation d'un tuyau pour
 	 * déterminer sa case voisine dans la direction demandée par le joueur.</b>
 	 * 
-	 * <p>Demande les coordonnées de la case passée en paramètre et si elle n'est pas 
-	 * sur le bord, renvoie la case voisine suivant la direction demandée.
+	 * <p>Lit l'indice de la voisine dans la table de la topologie, en une seule lecture
+	 * de tableau : la voisine peut être de l'autre côté du plateau (ligne ou colonne
+	 * bouclée) ou la voie d'un pont correspondant à la direction.
 	 * 
-	 * @see Plateau#findPositionCase(Case)
+	 * @see Case#getIndice()
+	 * @see Topologie#voisin(int, Direction)
 	 * 
 	 * @param emplacement Case dont on veut la voisine (dernière case actuelle du 
 	 *        tuyau courant)
@@ -158,16 +500,8 @@ public class Plateau {
 	 * @return La case voisine dans la direction demandée si elle existe, null sinon.
 	 */
 	public Case getMaCaseVoisine(Case emplacement, Direction dir) {
-		int[] coord = findPositionCase(emplacement);
-		int i = coord[0];
-		int j = coord[1];
-		switch(dir) {
-		case HAUT: if (i != 0) return cases[i-1][j]; break;
-		case BAS: if (i < nbLignes - 1) return cases[i+1][j]; break;
-		case DROITE: if (j < nbColonnes - 1) return cases[i][j+1]; break;
-		case GAUCHE: if (j != 0) return cases[i][j-1]; break;
-		}
-		return null;
+		int voisine = topologie.voisin(emplacement.getIndice(), dir);
+		return voisine < 0 ? null : cases[voisine];
 	}
 	
 	/**
@@ -175,7 +509,8 @@ public class Plateau {
 	 * cases sont utilisées soit par un plot, soit par un tuyau, une des conditions pour réussir 
 	 * le niveau.</b>
 	 * 
-	 * <p>Demande à chaque case si elle est occupée.
+	 * <p>Demande à chaque case si elle est occupée. Les deux voies d'un pont doivent être
+	 * occupées.
 	 * 
 	 * @see Case#estOccupee()
 	 * 
@@ -183,11 +518,9 @@ public class Plateau {
 	 *         sinon.
 	 */
 	public boolean plateauComplet() {
-		for (int i=0 ; i<nbLignes ; i++) {
-			for (int j=0 ; j<nbColonnes ; j++) {
-				if (!cases[i][j].estOccupee()) {
-					return false;
-				}
+		for (Case c : cases) {
+			if (!c.estOccupee()) {
+				return false;
 			}
 		}
 		return true;
@@ -202,6 +535,8 @@ public class Plateau {
 	 * couleur contenue dans la case.
 	 * <p>La représentation des cases est visuellement organisée sous forme de matrice.
 	 * Les représentations des cases d'une même ligne sont séparées par des virgules.
+	 * <p>Une case de pont montre sa voie verticale ; les voies horizontales des ponts
+	 * suivent sur une dernière ligne.
 	 * 
 	 * @see Case#display()
 	 * 
@@ -212,13 +547,39 @@ public class Plateau {
 		String strPlateau = "";
 		for (int i=0 ; i<nbLignes ; i++) {
 			for (int j=0 ; j<nbColonnes ; j++) {
-				strPlateau += cases[i][j].display() + ",";	// Chaque ligne se termine par une virgule par soucis de simplicité
+				strPlateau += cases[i * nbColonnes + j].display() + ",";	// Chaque ligne se termine par une virgule par soucis de simplicité
+			}
+			strPlateau += "\n";
+		}
+		if (cases.length > nbLignes * nbColonnes) {
+			strPlateau += "Ponts : ";
+			for (int c = nbLignes * nbColonnes ; c < cases.length ; c++) {
+				strPlateau += cases[c].display() + ",";
 			}
 			strPlateau += "\n";
 		}
 		return strPlateau;
 	}
 	
+	/**
+	 * <b>Méthode calculant une signature de l'état actuel du plateau.</b>
+	 * 
+	 * <p>La signature est le CRC32 de la représentation console du plateau : deux plateaux
+	 * dont chaque case contient la même couleur ont la même signature.
+	 * 
+	 * <p>Méthode appelée pour vérifier qu'une partie rejouée aboutit au même plateau que
+	 * la partie enregistrée.
+	 * 
+	 * @see Plateau#display()
+	 * 
+	 * @return Signature du plateau.
+	 */
+	public int signature() {
+		CRC32 crc = new CRC32();
+		crc.update(display().getBytes(StandardCharsets.UTF_8));
+		return (int) crc.getValue();
+	}
+
 }
 
 
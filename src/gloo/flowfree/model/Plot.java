@@ -23,20 +23,38 @@ public class Plot {
 	/**
 	 * <b>Case contenant le plot, donc emplacement du plot sur le 
 	 * plateau.</b>
-	 * <p>Cet attribut n'est pas modifié.
+	 * <p>Cet attribut n'est modifié que lorsque le plateau est réinitialisé
+	 * pour un autre niveau.
+	 * 
+	 * @see Plot#placer(int, Case)
 	 */
 	private Case emplacement;
 	
 	/**
-	 * <b>Couleur du plot</b>
-	 * <p>Cet attribut n'est pas modifié.
+	 * <b>Indice de la couleur du plot dans la palette</b>
+	 * <p>Cet attribut n'est modifié que lorsque le plateau est réinitialisé
+	 * pour un autre niveau.
 	 * 
 	 * @see Plot#getCouleur()
 	 */
-	private Couleur couleur;
+	private int couleur;
 	
 	// Constructeur
-	public Plot(Couleur couleur, Case emplacement) {
+	public Plot(int couleur, Case emplacement) {
+		placer(couleur, emplacement);
+	}
+	
+	/**
+	 * <b>Méthode plaçant ce plot sur une case, appelée à la construction et lors de
+	 * la réinitialisation du plateau pour réutiliser ce plot.</b>
+	 * 
+	 * @see Case#addPlot(Plot)
+	 * @see Plateau#reinitialiser(Niveau)
+	 * 
+	 * @param couleur Indice de la couleur du plot.
+	 * @param emplacement Case contenant le plot.
+	 */
+	public void placer(int couleur, Case emplacement) {
 		this.couleur = couleur;
 		this.emplacement = emplacement;
 		this.emplacement.addPlot(this);
@@ -47,9 +65,9 @@ public class Plot {
 	 * <b>Méthode appelée par la case pour connaître la couleur 
 	 * de ce plot.</b>
 	 * 
-	 * @return La couleur de ce plot.
+	 * @return L'indice de la couleur de ce plot.
 	 */
-	public Couleur getCouleur() {
+	public int getCouleur() {
 		return couleur;
 	}
 	
@@ -58,16 +76,16 @@ public class Plot {
 	 * <b>Méthode appelée lors de sélection de ce plot par le
 	 * joueur pour créer un nouveau tuyau à partir de ce plot</b>
 	 * 
-	 * Demande à la couleur du plot de créer son nouveau tuyau 
-	 * à partir de l'emplacement (la case) du plot.
+	 * Demande à l'emplacement (la case) du plot de créer un nouveau 
+	 * tuyau de la couleur du plot.
 	 * 
-	 * @see Couleur#nouveauTuyau(Case)
+	 * @see Case#nouveauTuyau(int)
 	 * 
 	 * @return Le nouveau tuyau de la couleur du plot démarrant à
 	 *         l'emplacement du plot
 	 */
 	public Tuyau nouveauTuyau() {
-		return couleur.nouveauTuyau(emplacement);
+		return emplacement.nouveauTuyau(couleur);
 	}
 	
 	// Affichage
@@ -77,13 +95,15 @@ public class Plot {
 	 * <p> Un case contenant un plot est représentée par les premières lettres de la 
 	 * couleur de ce plot.
 	 * 
-	 * <p> Demande sa représentation (ses premières lettres) à la couleur de ce plot.
+	 * <p> Demande la représentation (les premières lettres) de la couleur de ce plot
+	 * à la palette.
 	 * 
-	 * @see Couleur#display()
+	 * @see Palette#getAbreviation(int)
 	 * 
+	 * @param palette Palette du plateau contenant ce plot.
 	 * @return Chaîne de caractère représentant la couleur du plot.
 	 */
-	public String display() {
-		return couleur.display();
+	public String display(Palette palette) {
+		return palette.getAbreviation(couleur);
 	}
 }
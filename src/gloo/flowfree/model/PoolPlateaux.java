@@ -0,0 +1,86 @@
+package gloo.flowfree.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <b>Réserve de plateaux libres, rangés par taille de grille, pour lancer
+ * un niveau sans réallouer de cases, de plots ni de tuyaux.</b>
+ * 
+ * <p>Un plateau rendu à la réserve peut être réutilisé par n'importe quel
+ * controleur (une session du serveur, un robot, un outil par lots) pour un
+ * niveau de même taille. La réserve est partagée entre threads ; un plateau
+ * obtenu n'appartient qu'à celui qui l'a obtenu jusqu'à ce qu'il le rende.
+ * 
+ * <p>Le nombre de plateaux libres conservés par taille est borné pour ne pas
+ * garder indéfiniment des plateaux inutilisés.
+ * 
+ * @see Plateau#reinitialiser(Niveau)
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class PoolPlateaux {
+	
+	/**
+	 * <b>Nombre maximal de plateaux libres conservés pour chaque taille.</b>
+	 */
+	private static final int MAX_LIBRES_PAR_TAILLE = 64;
+	
+	/**
+	 * <b>Plateaux libres et nombre de plateaux libres pour chaque taille,
+	 * la clé étant nbLignes &lt;&lt; 32 | nbColonnes.</b>
+	 */
+	private static final ConcurrentHashMap<Long, Reserve> RESERVES = new ConcurrentHashMap<Long, Reserve>();
+	
+	private static class Reserve {
+		final ConcurrentLinkedQueue<Plateau> libres = new ConcurrentLinkedQueue<Plateau>();
+		final AtomicInteger nbLibres = new AtomicInteger();
+	}
+	
+	private PoolPlateaux() {
+	}
+	
+	/**
+	 * <b>Fournit un plateau prêt à jouer le niveau demandé.</b>
+	 * 
+	 * <p>Un plateau libre de même taille est réinitialisé s'il en existe un, sinon
+	 * un nouveau plateau est construit.
+	 * 
+	 * @see Plateau#reinitialiser(Niveau)
+	 * @see Plateau#Plateau(Niveau)
+	 * 
+	 * @param niveau Niveau à jouer.
+	 * @return Un plateau dans l'état initial du niveau.
+	 */
+	public static Plateau obtenir(Niveau niveau) {
+		Reserve reserve = RESERVES.get(cle(niveau.getNbLignes(), niveau.getNbColonnes()));
+		Plateau plateau = reserve == null ? null : reserve.libres.poll();
+		if (plateau == null) {
+			return new Plateau(niveau);
+		}
+		reserve.nbLibres.decrementAndGet();
+		plateau.reinitialiser(niveau);
+		return plateau;
+	}
+	
+	/**
+	 * <b>Rend un plateau qui ne sera plus utilisé par son détenteur.</b>
+	 * 
+	 * @param plateau Plateau à rendre, qui ne doit plus être modifié ni lu ensuite.
+	 */
+	public static void rendre(Plateau plateau) {
+		Reserve reserve = RESERVES.computeIfAbsent(cle(plateau.getNbLignes(), plateau.getNbColonnes()),
+				k -> new Reserve());
+		if (reserve.nbLibres.incrementAndGet() <= MAX_LIBRES_PAR_TAILLE) {
+			reserve.libres.offer(plateau);
+		} else {
+			reserve.nbLibres.decrementAndGet();
+		}
+	}
+	
+	private static long cle(int nbLignes, int nbColonnes) {
+		return (long) nbLignes << 32 | nbColonnes;
+	}
+}
@@ -0,0 +1,348 @@
+package gloo.flowfree.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>Classe décrivant la forme d'un plateau : quelle voie est voisine de quelle autre,
+ * dans chaque direction.</b>
+ * 
+ * <p>Un plateau est une grille de nbLignes x nbColonnes cases, que sa topologie peut
+ * enrichir :
+ * <ul>
+ *     <li> Une ligne bouclée relie son bord gauche à son bord droit, une colonne bouclée
+ *          son bord haut à son bord bas : un tuyau qui sort d'un côté rentre de l'autre
+ *          en gardant sa direction.
+ *     <li> Un pont est une case traversée par deux voies indépendantes, l'une verticale
+ *          et l'autre horizontale, qui peuvent porter deux tuyaux différents.
+ * </ul>
+ * 
+ * <p>Un plateau hexagonal a des cases à six côtés, pointe en haut : les lignes impaires
+ * sont décalées d'une demi-case vers la droite, et une case a pour voisines ses deux
+ * voisines de ligne (DROITE, GAUCHE) et deux cases de chacune des lignes voisines
+ * (HAUT_DROITE, HAUT_GAUCHE, BAS_DROITE, BAS_GAUCHE). Il n'a ni boucle ni pont.
+ * 
+ * <p>Les voies sont les nœuds du plateau. Une case ordinaire a une seule voie, d'indice
+ * celui de la case (indiceLigne * nbColonnes + indiceColonne) ; la voie verticale d'un
+ * pont a aussi l'indice de sa case, et la voie horizontale du k-ième pont (dans l'ordre
+ * des indices) a l'indice nbCases + k. Un tuyau entre dans un pont par la voie de sa
+ * direction.
+ * 
+ * <p>Les voisines de chaque voie sont calculées à la construction dans une table
+ * d'entiers, qui a une entrée par direction de la forme du plateau (quatre, ou six
+ * pour un plateau hexagonal) : trouver la voisine d'une voie est une seule lecture de
+ * tableau. Une topologie n'est plus modifiée ensuite et peut être partagée entre
+ * threads ; les topologies rectangulaires (sans boucle ni pont) et hexagonales sont
+ * partagées par taille.
+ * 
+ * @see Niveau#getTopologie()
+ * @see Plateau#getMaCaseVoisine(Case, Direction)
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public final class Topologie {
+	
+	/**
+	 * <b>Mots-clés des lignes de topologie d'un niveau dans le fichier de niveaux.</b>
+	 * 
+	 * @see Niveau#Niveau(String, int, Palette)
+	 */
+	public static final String TORE = "TORE";
+	public static final String HEXAGONAL = "HEXAGONAL";
+	public static final String PASSAGE = "PASSAGE";
+	public static final String PONT = "PONT";
+	public static final String LIGNE = "LIGNE";
+	public static final String COLONNE = "COLONNE";
+	
+	private static final ConcurrentHashMap<Long, Topologie> RECTANGULAIRES = new ConcurrentHashMap<Long, Topologie>();
+	private static final ConcurrentHashMap<Long, Topologie> HEXAGONALES = new ConcurrentHashMap<Long, Topologie>();
+	
+	private static final Direction[] DIRECTIONS_RECTANGULAIRES = {
+			Direction.HAUT, Direction.BAS, Direction.DROITE, Direction.GAUCHE };
+	private static final Direction[] DIRECTIONS_HEXAGONALES = {
+			Direction.DROITE, Direction.GAUCHE, Direction.HAUT_DROITE, Direction.HAUT_GAUCHE,
+			Direction.BAS_DROITE, Direction.BAS_GAUCHE };
+	
+	private final int nbLignes;
+	private final int nbColonnes;
+	private final int nbCases;
+	private final boolean[] lignesBouclees;
+	private final boolean[] colonnesBouclees;
+	private final boolean hexagonale;
+	
+	/**
+	 * <b>Directions de la forme du plateau, d'ordinaux consécutifs à partir de celui de
+	 * la première.</b>
+	 */
+	private final Direction[] directions;
+	private final int premiereDirection;
+	
+	/**
+	 * <b>Indices des cases qui sont des ponts, par ordre croissant.</b>
+	 */
+	private final int[] ponts;
+	
+	/**
+	 * <b>Voisine de chaque voie dans chaque direction, à l'indice
+	 * directions.length * voie + ordinal de la direction - premiereDirection, -1 si la
+	 * voie n'a pas de voisine dans cette direction.</b>
+	 */
+	private final int[] voisins;
+	
+	// Constructeurs
+	/**
+	 * <b>Constructeur calculant la table des voisines d'un plateau rectangulaire.</b>
+	 * 
+	 * @param nbLignes Nombre de lignes du plateau.
+	 * @param nbColonnes Nombre de colonnes du plateau.
+	 * @param lignesBouclees Lignes dont les bords gauche et droit sont reliés, null pour aucune.
+	 * @param colonnesBouclees Colonnes dont les bords haut et bas sont reliés, null pour aucune.
+	 * @param ponts Indices des cases qui sont des ponts, sans doublon.
+	 */
+	Topologie(int nbLignes, int nbColonnes, boolean[] lignesBouclees, boolean[] colonnesBouclees, int[] ponts) {
+		this.nbLignes = nbLignes;
+		this.nbColonnes = nbColonnes;
+		this.nbCases = nbLignes * nbColonnes;
+		this.lignesBouclees = lignesBouclees != null ? lignesBouclees.clone() : new boolean[nbLignes];
+		this.colonnesBouclees = colonnesBouclees != null ? colonnesBouclees.clone() : new boolean[nbColonnes];
+		this.ponts = ponts.clone();
+		Arrays.sort(this.ponts);
+		this.hexagonale = false;
+		this.directions = DIRECTIONS_RECTANGULAIRES;
+		this.premiereDirection = 0;
+		
+		// Voie horizontale de chaque case : elle-même, sauf pour un pont
+		int[] horizontales = new int[nbCases];
+		for (int c=0 ; c < nbCases ; c++) {
+			horizontales[c] = c;
+		}
+		for (int k=0 ; k < this.ponts.length ; k++) {
+			horizontales[this.ponts[k]] = nbCases + k;
+		}
+		
+		this.voisins = new int[4 * (nbCases + this.ponts.length)];
+		Arrays.fill(voisins, -1);
+		for (int i=0 ; i < nbLignes ; i++) {
+			for (int j=0 ; j < nbColonnes ; j++) {
+				int c = i * nbColonnes + j;
+				int haut = i > 0 ? c - nbColonnes : this.colonnesBouclees[j] ? c + nbCases - nbColonnes : -1;
+				int bas = i + 1 < nbLignes ? c + nbColonnes : this.colonnesBouclees[j] ? j : -1;
+				int gauche = j > 0 ? c - 1 : this.lignesBouclees[i] ? c + nbColonnes - 1 : -1;
+				int droite = j + 1 < nbColonnes ? c + 1 : this.lignesBouclees[i] ? c - j : -1;
+				voisins[4 * c + Direction.HAUT.ordinal()] = haut;
+				voisins[4 * c + Direction.BAS.ordinal()] = bas;
+				voisins[4 * horizontales[c] + Direction.GAUCHE.ordinal()] = gauche < 0 ? -1 : horizontales[gauche];
+				voisins[4 * horizontales[c] + Direction.DROITE.ordinal()] = droite < 0 ? -1 : horizontales[droite];
+			}
+		}
+	}
+	
+	/**
+	 * <b>Constructeur calculant la table des six voisines de chaque case d'un plateau
+	 * hexagonal.</b>
+	 * 
+	 * @param nbLignes Nombre de lignes du plateau.
+	 * @param nbColonnes Nombre de colonnes du plateau.
+	 */
+	private Topologie(int nbLignes, int nbColonnes) {
+		this.nbLignes = nbLignes;
+		this.nbColonnes = nbColonnes;
+		this.nbCases = nbLignes * nbColonnes;
+		this.lignesBouclees = new boolean[nbLignes];
+		this.colonnesBouclees = new boolean[nbColonnes];
+		this.ponts = new int[0];
+		this.hexagonale = true;
+		this.directions = DIRECTIONS_HEXAGONALES;
+		this.premiereDirection = Direction.DROITE.ordinal();
+		
+		this.voisins = new int[6 * nbCases];
+		Arrays.fill(voisins, -1);
+		for (int i=0 ; i < nbLignes ; i++) {
+			int decalage = i & 1;	// Une ligne impaire est décalée d'une demi-case vers la droite
+			for (int j=0 ; j < nbColonnes ; j++) {
+				int c = i * nbColonnes + j;
+				relier(c, Direction.DROITE, i, j + 1);
+				relier(c, Direction.GAUCHE, i, j - 1);
+				relier(c, Direction.HAUT_DROITE, i - 1, j + decalage);
+				relier(c, Direction.HAUT_GAUCHE, i - 1, j + decalage - 1);
+				relier(c, Direction.BAS_DROITE, i + 1, j + decalage);
+				relier(c, Direction.BAS_GAUCHE, i + 1, j + decalage - 1);
+			}
+		}
+	}
+	
+	/**
+	 * <b>Note la case (i, j), si elle est dans le plateau, comme voisine de la case c
+	 * dans la direction donnée.</b>
+	 */
+	private void relier(int c, Direction dir, int i, int j) {
+		if (i >= 0 && j >= 0 && i < nbLignes && j < nbColonnes) {
+			voisins[directions.length * c + dir.ordinal() - premiereDirection] = i * nbColonnes + j;
+		}
+	}
+	
+	/**
+	 * <b>Topologie d'une grille rectangulaire sans boucle ni pont, partagée par tous
+	 * les niveaux de cette taille.</b>
+	 * 
+	 * @param nbLignes Nombre de lignes du plateau.
+	 * @param nbColonnes Nombre de colonnes du plateau.
+	 * @return La topologie rectangulaire de cette taille.
+	 */
+	public static Topologie rectangulaire(int nbLignes, int nbColonnes) {
+		return RECTANGULAIRES.computeIfAbsent((long) nbLignes << 32 | nbColonnes,
+				k -> new Topologie(nbLignes, nbColonnes, null, null, new int[0]));
+	}
+	
+	/**
+	 * <b>Topologie d'un plateau hexagonal, partagée par tous les niveaux de cette
+	 * taille.</b>
+	 * 
+	 * @param nbLignes Nombre de lignes du plateau.
+	 * @param nbColonnes Nombre de colonnes du plateau.
+	 * @return La topologie hexagonale de cette taille.
+	 */
+	public static Topologie hexagonale(int nbLignes, int nbColonnes) {
+		return HEXAGONALES.computeIfAbsent((long) nbLignes << 32 | nbColonnes,
+				k -> new Topologie(nbLignes, nbColonnes));
+	}
+	
+	// Getters
+	public int getNbLignes() {
+		return nbLignes;
+	}
+	
+	public int getNbColonnes() {
+		return nbColonnes;
+	}
+	
+	public int getNbCases() {
+		return nbCases;
+	}
+	
+	/**
+	 * @return Le nombre de voies : une par case, plus une par pont.
+	 */
+	public int getNbVoies() {
+		return nbCases + ponts.length;
+	}
+	
+	/**
+	 * @return Les indices des cases qui sont des ponts, par ordre croissant. Le tableau
+	 *         ne doit pas être modifié.
+	 */
+	public int[] getPonts() {
+		return ponts;
+	}
+	
+	public boolean estLigneBouclee(int i) {
+		return lignesBouclees[i];
+	}
+	
+	public boolean estColonneBouclee(int j) {
+		return colonnesBouclees[j];
+	}
+	
+	public boolean estHexagonale() {
+		return hexagonale;
+	}
+	
+	/**
+	 * @return Les directions dans lesquelles un tuyau peut progresser sur ce plateau,
+	 *         par ordinal croissant. Le tableau ne doit pas être modifié.
+	 */
+	public Direction[] getDirections() {
+		return directions;
+	}
+	
+	/**
+	 * @return L'ordinal de la première direction de ce plateau ; les suivantes ont les
+	 *         ordinaux consécutifs.
+	 * 
+	 * @see Topologie#getDirections()
+	 */
+	public int getPremiereDirection() {
+		return premiereDirection;
+	}
+	
+	/**
+	 * @return La place estimée en mémoire de cette topologie, en octets.
+	 * 
+	 * @see Niveau#getTailleMemoire()
+	 */
+	long getTailleMemoire() {
+		return 40 + 16 + nbLignes + 16 + nbColonnes + 16 + 4L * ponts.length + 16 + 4L * voisins.length;
+	}
+	
+	/**
+	 * @return Vrai si le plateau est une grille rectangulaire sans ligne ou colonne
+	 *         bouclée, ni pont.
+	 */
+	public boolean estRectangulaire() {
+		if (hexagonale || ponts.length > 0) return false;
+		for (boolean bouclee : lignesBouclees) {
+			if (bouclee) return false;
+		}
+		for (boolean bouclee : colonnesBouclees) {
+			if (bouclee) return false;
+		}
+		return true;
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Méthode appelée à chaque progression d'un tuyau pour trouver la voie suivante.</b>
+	 * 
+	 * @param voie Indice de la voie de départ.
+	 * @param dir Direction de progression.
+	 * @return L'indice de la voie voisine dans cette direction, -1 s'il n'y en a pas
+	 *         ou si la direction n'est pas une direction de ce plateau.
+	 */
+	public int voisin(int voie, Direction dir) {
+		return voisin(voie, dir.ordinal());
+	}
+	
+	/**
+	 * @param voie Indice de la voie de départ.
+	 * @param ordinal Ordinal de la direction de progression.
+	 * @return L'indice de la voie voisine dans cette direction, -1 s'il n'y en a pas
+	 *         ou si la direction n'est pas une direction de ce plateau.
+	 */
+	public int voisin(int voie, int ordinal) {
+		int rang = ordinal - premiereDirection;
+		return rang >= 0 && rang < directions.length ? voisins[directions.length * voie + rang] : -1;
+	}
+	
+	/**
+	 * @param voie Indice d'une voie.
+	 * @return L'indice de la case qui porte cette voie.
+	 */
+	public int cellule(int voie) {
+		return voie < nbCases ? voie : ponts[voie - nbCases];
+	}
+	
+	/**
+	 * @param cellule Indice d'une case.
+	 * @return Vrai si la case est un pont.
+	 */
+	public boolean estPont(int cellule) {
+		return ponts.length > 0 && Arrays.binarySearch(ponts, cellule) >= 0;
+	}
+	
+	@Override
+	public boolean equals(Object autre) {
+		if (this == autre) return true;
+		if (!(autre instanceof Topologie)) return false;
+		Topologie t = (Topologie) autre;
+		return nbLignes == t.nbLignes && nbColonnes == t.nbColonnes && hexagonale == t.hexagonale
+				&& Arrays.equals(ponts, t.ponts)
+				&& Arrays.equals(lignesBouclees, t.lignesBouclees) && Arrays.equals(colonnesBouclees, t.colonnesBouclees);
+	}
+	
+	@Override
+	public int hashCode() {
+		return ((nbLignes * 31 + nbColonnes) * 31 + Arrays.hashCode(ponts)) * 31 + (hexagonale ? 7 : 0)
+				+ Arrays.hashCode(lignesBouclees) * 17 + Arrays.hashCode(colonnesBouclees);
+	}
+}
@@ -1,27 +1,75 @@
 package gloo.flowfree.model;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import gloo.flowfree.mesure.EvenementChargementNiveaux;
+import gloo.flowfree.mesure.MetriquesMoteur;
 
 /**
  * <b>Classe permettant de récupérer et de stocker tous les niveaux.</b>
  * 
  * <p>Permet d'afficher les informations sur tous les niveaux dans la
- * fenêtre d'accueil (avant qu'un niveau ne soit choisi) et de lancer 
+ * fenêtre d'accueil (avant qu'un niveau ne soit choisi) et de lancer
  * un niveau.
  * 
- * <p>Les informations sur les niveaux sont stockées dans le fichier
- * texte ressources/niveaux.txt.
+ * <p>Les informations sur les niveaux sont stockées dans les fichiers texte
+ * (*.txt) du répertoire ressources, ou du répertoire donné par la propriété
+ * flowfree.niveaux : niveaux.txt d'abord, puis les autres fichiers par ordre
+ * de nom. Les identifiants des niveaux se suivent d'un fichier à l'autre.
  * 
  * <p> On a une seule instance de TousNiveaux durant toute la session de
- * jeu.
+ * jeu. Pour le jeu, elle est chargée en arrière-plan : la fenêtre d'accueil
+ * s'affiche aussitôt et se complète à mesure que les niveaux sont lus. Le
+ * répertoire est ensuite surveillé : un fichier ajouté, modifié ou supprimé
+ * est pris en compte sans redémarrer le jeu.
+ * 
+ * <p> Les niveaux ne sont pas tous gardés en mémoire : chaque fichier n'est lu
+ * qu'une fois en entier, pour valider ses niveaux et noter la position en octets
+ * de chacun. Un niveau demandé est ensuite relu dans le fichier à cette position
+ * et construit, puis gardé dans un cache des niveaux les plus récemment demandés,
+ * borné en octets par la propriété flowfree.niveaux.memoire. La mémoire occupée
+ * est ainsi celle de l'index (20 octets par niveau : position, somme de contrôle
+ * et empreinte) plus ce budget, quelle que soit la taille des fichiers. Les niveaux
+ * réussis sont notés à part, dans un tableau de bits indexé par identifiant.
  * 
  * <p>Cette instance connaît :
  * <ul>
- *     <li> Tous les niveaux disponibles.
+ *     <li> La position de tous les niveaux disponibles dans leur fichier.
+ *     <li> Les niveaux construits les plus récemment demandés.
+ *     <li> Les niveaux réussis durant la session de jeu.
  * </ul>
  * 
  * <p>Cette instance est connue :
@@ -32,49 +80,327 @@ import java.util.TreeMap;
  * @see Niveau
  * 
  * @author Maëlle Renaud
- *
+ * 
  */
 public class TousNiveaux {
 	
 	/**
-	 * <b>Attribut regroupant la liste de l'ensemble des niveaux,
-	 * rangés dans l'ordre dans lequel ils apparaissent dans le fichier
-	 * niveaux.txt.</b>
+	 * <b>Interface des objets prévenus de l'avancement d'un chargement en arrière-plan.</b>
 	 * 
-	 * <p> Le niveau d'indice 0 est null (fichier commençent par une 
-	 * ligne vide).
+	 * @see TousNiveaux#chargerEnArrierePlan()
+	 */
+	public interface EcouteurChargement {
+		
+		/**
+		 * <b>Méthode appelée, sur le thread de chargement, chaque fois que de nouveaux
+		 * niveaux sont disponibles, puis à la fin (ou à l'échec) du chargement.</b>
+		 * 
+		 * @see TousNiveaux#chargementTermine()
+		 * @see TousNiveaux#getErreurChargement()
+		 */
+		void niveauxCharges();
+	}
+	
+	/**
+	 * <b>Propriété système donnant le répertoire des fichiers de niveaux.</b>
+	 */
+	public static final String PROPRIETE_REPERTOIRE = "flowfree.niveaux";
+	
+	/**
+	 * <b>Propriété système donnant, en octets, la mémoire que peuvent occuper les
+	 * niveaux construits gardés en cache.</b>
 	 * 
-	 * @see TousNiveaux#TousNiveaux()
+	 * @see TousNiveaux#getNiveau(int)
+	 */
+	public static final String PROPRIETE_MEMOIRE = "flowfree.niveaux.memoire";
+	
+	/**
+	 * <b>Budget par défaut du cache de niveaux construits : 16 Mo, soit quelques
+	 * dizaines de milliers de niveaux de taille courante.</b>
+	 */
+	public static final long MEMOIRE_DEFAUT = 16L << 20;
+	
+	/**
+	 * <b>Fichier de niveaux principal, toujours lu en premier : ses niveaux gardent
+	 * les identifiants qu'ils avaient quand il était le seul fichier lu.</b>
 	 */
-	private Niveau[] listeNiveaux;
+	public static final String FICHIER_PRINCIPAL = "niveaux.txt";
 	
 	/**
-	 * <b>Dictionnaire dont les clés sont les différentes tailles de grille
-	 * [nombre de lignes, nombre de colonnes] et les valeurs sont [identifiant 
-	 * premier niveau de cette taille, nombre de niveaux de cette taille]</b>
+	 * <b>Intervalle minimal entre deux publications de niveaux pendant un chargement
+	 * en arrière-plan.</b>
+	 */
+	private static final long INTERVALLE_PUBLICATION_NANOS = 50_000_000L;
+	
+	/**
+	 * <b>Délai sans nouvel événement du répertoire surveillé avant de recharger : un
+	 * éditeur enregistre souvent un fichier en plusieurs écritures.</b>
+	 */
+	private static final long DELAI_REGROUPEMENT_MS = 200;
+	
+	/**
+	 * <b>Nombre de niveaux dont les lignes sont gardées ensemble pendant la lecture
+	 * d'un fichier, puis validées en parallèle.</b>
 	 * 
-	 * <p> Grâce à la classe TreeMap, les niveaux sont rangées par ordre de taille
-	 * de grille (comparaison du nombre de lignes, puis du nombre de colonnes).
+	 * @see ValidateurNiveaux#valider(List, int[], Palette, int)
+	 */
+	private static final int TAILLE_LOT = 16384;
+	
+	/**
+	 * <b>Place occupée par une entrée du cache en plus du niveau lui-même (entrée
+	 * du dictionnaire et clé).</b>
+	 */
+	private static final int TAILLE_ENTREE_CACHE = 80;
+	
+	/**
+	 * <b>Catalogue des niveaux, publié d'un bloc : l'index des niveaux et le
+	 * dictionnaire des tailles sont toujours lus ensemble, même pendant un
+	 * rechargement.</b>
+	 */
+	private static final class Catalogue {
+		
+		/**
+		 * <b>Fichiers lus, dans l'ordre des identifiants, avec pour chacun ses positions
+		 * et ses sommes de contrôle telles qu'elles étaient à la publication.</b>
+		 * 
+		 * <p> Les tableaux d'un fichier en cours de lecture peuvent être remplacés
+		 * par des tableaux plus grands, mais leurs cases déjà publiées ne changent plus.
+		 * 
+		 * @see Fichier#positions
+		 * @see Fichier#crcs
+		 * @see Fichier#empreintes
+		 */
+		final Fichier[] fichiers;
+		final long[][] positions;
+		final int[][] crcs;
+		final long[][] empreintes;
+		
+		/**
+		 * <b>Identifiant du premier niveau de chaque fichier, suivi de l'identifiant
+		 * suivant le dernier niveau.</b>
+		 * 
+		 * <p> L'identifiant 0 ne désigne aucun niveau : le premier fichier commence à 1.
+		 */
+		final int[] premiersIds;
+		
+		/**
+		 * <b>Dictionnaire dont les clés sont [nombre de lignes, nombre de colonnes,
+		 * rang du fichier] et les valeurs sont [identifiant premier niveau de cette
+		 * taille dans ce fichier, nombre de niveaux de cette taille dans ce fichier]</b>
+		 * 
+		 * <p> Grâce à la classe TreeMap, les niveaux sont rangées par ordre de taille
+		 * de grille (comparaison du nombre de lignes, puis du nombre de colonnes), puis
+		 * par fichier.
+		 */
+		final TreeMap<int[],int[]> niveauxParTaille;
+		
+		Catalogue(List<Fichier> fichiers, TreeMap<int[],int[]> niveauxParTaille) {
+			int nb = fichiers.size();
+			this.fichiers = fichiers.toArray(new Fichier[nb]);
+			this.positions = new long[nb][];
+			this.crcs = new int[nb][];
+			this.empreintes = new long[nb][];
+			this.premiersIds = new int[nb + 1];
+			this.premiersIds[0] = 1;
+			for (int f=0 ; f < nb ; f++) {
+				positions[f] = this.fichiers[f].positions;
+				crcs[f] = this.fichiers[f].crcs;
+				empreintes[f] = this.fichiers[f].empreintes;
+				premiersIds[f + 1] = premiersIds[f] + this.fichiers[f].nbNiveaux;
+			}
+			this.niveauxParTaille = niveauxParTaille;
+		}
+		
+		/**
+		 * @return L'identifiant suivant le dernier niveau publié.
+		 */
+		int fin() {
+			return premiersIds[fichiers.length];
+		}
+		
+		/**
+		 * @return Le rang du fichier contenant le niveau, par recherche dichotomique.
+		 */
+		int rangFichier(int idNiveau) {
+			int f = Arrays.binarySearch(premiersIds, idNiveau);
+			if (f < 0) return -f - 2;
+			while (f + 1 < fichiers.length && premiersIds[f + 1] == idNiveau) f++;	// Fichiers vides
+			return f;
+		}
+	}
+	
+	/**
+	 * <b>Index d'un fichier de niveaux : position en octets et somme de contrôle de
+	 * chaque niveau, tailles de grille, et date et taille du fichier lors de sa lecture
+	 * pour savoir s'il a changé depuis.</b>
 	 * 
-	 * <p> L'identifiant du niveau est sa position dans l'attribut listeNiveaux,
-	 * ou de manière équivalente dans le fichier niveaux.txt.
+	 * <p> Rempli par le seul thread qui lit le fichier, puis plus modifié.
+	 */
+	private static final class Fichier {
+		final Path chemin;
+		final long date;
+		final long taille;
+		
+		/**
+		 * <b>Numéro de lecture, différent à chaque lecture d'un fichier : les niveaux
+		 * d'un fichier relu ne sont jamais confondus dans le cache avec les précédents.</b>
+		 */
+		final int numero;
+		Palette palette;
+		
+		/**
+		 * <b>Position en octets de la ligne "Niveau" de chaque niveau, suivie de la
+		 * position de fin du dernier niveau : le niveau k occupe les octets
+		 * [positions[k], positions[k + 1]).</b>
+		 */
+		long[] positions = new long[64];
+		
+		/**
+		 * <b>CRC32 des octets de chaque niveau, pour détecter un fichier modifié
+		 * avant que son rechargement ne soit publié.</b>
+		 */
+		int[] crcs = new int[64];
+		
+		/**
+		 * <b>Empreinte de chaque niveau, connue sans relire le fichier même s'il a changé
+		 * depuis sa lecture.</b>
+		 * 
+		 * @see Niveau#getEmpreinte()
+		 */
+		long[] empreintes = new long[64];
+		int nbNiveaux;
+		
+		/**
+		 * <b>Pour chaque taille de grille (nbLignes << 32 | nbColonnes) dans l'ordre du
+		 * fichier : [indice dans le fichier du premier niveau de cette taille, nombre
+		 * de niveaux de cette taille].</b>
+		 * 
+		 * @see Catalogue#niveauxParTaille
+		 */
+		final LinkedHashMap<Long, int[]> tailles = new LinkedHashMap<Long, int[]>();
+		
+		Fichier(Path chemin, BasicFileAttributes attributs, int numero) {
+			this.chemin = chemin;
+			this.date = attributs.lastModifiedTime().toMillis();
+			this.taille = attributs.size();
+			this.numero = numero;
+		}
+		
+		boolean aChange(BasicFileAttributes attributs) {
+			return attributs.lastModifiedTime().toMillis() != date || attributs.size() != taille;
+		}
+		
+		void ajouter(Niveau niveau, long debut, long fin, int crc) {
+			if (nbNiveaux + 1 == positions.length) {
+				positions = Arrays.copyOf(positions, positions.length * 2);
+				crcs = Arrays.copyOf(crcs, crcs.length * 2);
+				empreintes = Arrays.copyOf(empreintes, empreintes.length * 2);
+			}
+			positions[nbNiveaux] = debut;
+			positions[nbNiveaux + 1] = fin;
+			crcs[nbNiveaux] = crc;
+			empreintes[nbNiveaux] = niveau.getEmpreinte();
+			long taille = (long) niveau.getNbLignes() << 32 | niveau.getNbColonnes();
+			int[] infos = tailles.get(taille);
+			tailles.put(taille, infos == null ? new int[] {nbNiveaux, 1} : new int[] {infos[0], infos[1] + 1});
+			nbNiveaux++;
+		}
+		
+		/**
+		 * <b>Méthode relisant un niveau dans le fichier et le construisant.</b>
+		 * 
+		 * @param positions Positions publiées des niveaux du fichier.
+		 * @param crcs Sommes de contrôle publiées des niveaux du fichier.
+		 * @param k Indice du niveau dans le fichier.
+		 * @param idNiveau Identifiant à donner au niveau.
+		 * 
+		 * @throws IllegalStateException Si le fichier ne peut plus être lu ou s'il a
+		 *         changé depuis sa lecture.
+		 */
+		Niveau lireNiveau(long[] positions, int[] crcs, int k, int idNiveau) {
+			ByteBuffer octets = ByteBuffer.allocate((int) (positions[k + 1] - positions[k]));
+			try (FileChannel canal = FileChannel.open(chemin, StandardOpenOption.READ)) {
+				while (octets.hasRemaining() && canal.read(octets, positions[k] + octets.position()) >= 0);
+			} catch (IOException e) {
+				throw new IllegalStateException(chemin + " illisible : " + e.getMessage(), e);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(octets.array(), 0, octets.position());
+			if (octets.hasRemaining() || (int) crc.getValue() != crcs[k]) {
+				throw new IllegalStateException(chemin + " a changé depuis sa lecture : niveau " + idNiveau
+						+ " introuvable avant son rechargement");
+			}
+			List<String> lignes = Arrays.asList(new String(octets.array(), StandardCharsets.UTF_8).split("\n"));
+			return new Niveau(chaineNiveau(lignes, 0, lignes.size()), idNiveau, palette);
+		}
+	}
+	
+	/**
+	 * <b>Catalogue courant.</b>
 	 * 
-	 * <p> Attribut servant à organiser la page d'accueil pour choisir un niveau
-	 * en fonction des tailles de grille disponibles.
+	 * <p> Pendant un chargement en arrière-plan ou un rechargement, il est remplacé
+	 * par un nouveau catalogue à chaque publication, jamais modifié après avoir été
+	 * publié.
 	 * 
+	 * @see TousNiveaux#getNiveau(int)
 	 * @see TousNiveaux#getNiveauxParTaille()
 	 */
-	private TreeMap<int[],int[]> niveauxParTaille;
+	private volatile Catalogue catalogue;
+	
+	/**
+	 * <b>Niveaux réussis durant la session de jeu, indexés par identifiant.</b>
+	 * 
+	 * <p> Remplacé par une copie à chaque niveau réussi et à chaque rechargement,
+	 * jamais modifié après avoir été publié.
+	 * 
+	 * @see TousNiveaux#getReussi(int)
+	 * @see TousNiveaux#setReussi(Niveau)
+	 */
+	private volatile BitSet reussis = new BitSet();
 	
 	/**
-	 * <b>Constructeur permettant de lire le fichier niveaux.txt, générer
-	 * tous les niveaux et initialiser les attributs de cette instance.</b>
+	 * <b>Empreintes des niveaux réussis, qui gardent leur état réussi quand leur
+	 * fichier est relu.</b>
+	 * 
+	 * @see TousNiveaux#recharger()
+	 */
+	private final Set<Long> empreintesReussies = new HashSet<Long>();
+	
+	private final Path repertoire;
+	
+	/**
+	 * <b>Index de chaque fichier déjà lu, pour ne relire que les fichiers modifiés.
+	 * Utilisé par le seul thread de chargement.</b>
+	 */
+	private final Map<Path, Fichier> fichiersLus = new HashMap<Path, Fichier>();
+	private int nbLectures;
+	
+	/**
+	 * <b>Cache des niveaux construits, du moins au plus récemment demandé, par
+	 * numéro de lecture de leur fichier << 32 | indice dans le fichier.</b>
+	 * 
+	 * @see Fichier#numero
+	 */
+	private final LinkedHashMap<Long, Niveau> cache = new LinkedHashMap<Long, Niveau>(256, 0.75f, true);
+	private final long budgetCache = Long.getLong(PROPRIETE_MEMOIRE, MEMOIRE_DEFAUT);
+	private long octetsCache;
+	private final LongAdder succesCache = new LongAdder();
+	private final LongAdder echecsCache = new LongAdder();
+	
+	private volatile boolean chargementTermine;
+	private volatile String erreurChargement;
+	private final List<EcouteurChargement> ecouteurs = new CopyOnWriteArrayList<EcouteurChargement>();
+	
+	/**
+	 * <b>Constructeur permettant de lire les fichiers de niveaux, d'indexer
+	 * tous les niveaux et d'initialiser les attributs de cette instance.</b>
 	 * 
 	 * <p> Méthode appelée une seule fois durant le jeu, lors de la construction
-	 * du controleur. La lecture dans le fichier texte, assez coûteuse en temps, 
-	 * n'est donc réalisée qu'une seule fois.
+	 * du controleur. La lecture complète des fichiers texte, assez coûteuse en
+	 * temps, n'est donc réalisée qu'une seule fois.
 	 * 
-	 * <p> Le fichier niveaux.txt présente tous les niveaux de la manière suivante :
+	 * <p> Chaque fichier de niveaux commence éventuellement par la palette des couleurs
+	 * utilisables (voir Palette), puis présente tous les niveaux de la manière suivante :
 	 * <br>&emsp; Niveau
      * <br>&emsp; 5,5				&emsp; (nombre de lignes, nombre de colonnes)
 	 * <br>&emsp; ROUGE;0,0;4,1	    &emsp; (Couleur ; coordonnées 1er plot ; coordonnées 2ème plot)
@@ -82,94 +408,727 @@ public class TousNiveaux {
      * <br>&emsp; BLEU;1,2;4,2
      * <br>&emsp; JAUNE;0,4;3,3
      * <br>&emsp; ORANGE;1,4;4,3
-     * 
-	 * <p> Les niveaux de même taille de grille sont les uns à la suite des autres.
+     *
+	 * <p> Dans un fichier, les niveaux de même taille de grille sont les uns à la
+	 * suite des autres.
 	 * 
-	 * <p> Etapes :
+	 * <p> Etapes, pour chaque fichier :
 	 * <ul>
-	 *     <li> Lecture du fichier niveaux.txt.
-	 *     <li> Découpage de la chaîne de caractères par niveau.
-	 *     <li> Pour chaque niveau, construction du niveau qui récupère les
-	 *          informations de sa chaîne de caractères et demande de sa taille
-	 *          de grille.
-	 *     <li> Enregistrement du niveaux dans l'attribut listeNiveaux.
-	 *     <li> Tous les tailles de grilles sont enregistrées comme clés
-	 *          de l'attribut Treemap niveauxParTaille.
-	 *     <li> La valeur correspondante est le couple (identifiant premier niveau de 
+	 *     <li> Lecture des lignes du fichier, en notant la position en octets de chacune.
+	 *     <li> Lecture de la palette dans l'en-tête, avant le premier niveau.
+	 *     <li> Validation en parallèle des niveaux, par lots : si un niveau est invalide,
+	 *          une IllegalArgumentException listant toutes les erreurs du lot est levée.
+	 *     <li> Pour chaque niveau, construction du niveau pour connaître sa taille de
+	 *          grille, puis enregistrement de sa position et de sa somme de contrôle
+	 *          dans l'index du fichier. Le niveau construit n'est pas gardé.
+	 *     <li> Tous les tailles de grilles sont enregistrées, avec le rang du fichier,
+	 *          comme clés du dictionnaire des tailles du catalogue.
+	 *     <li> La valeur correspondante est le couple (identifiant premier niveau de
 	 *          cette taille, nombre de niveaux de cette taille).
 	 * </ul>
 	 * 
-	 * @see TousNiveaux#listeNiveaux
-	 * @see TousNiveaux#niveauxParTaille
-	 * @see Niveau#Niveau(String, int)
-	 * @see Niveau#getNbLignes()
-	 * @see Niveau#getNbColonnes()
+	 * @see TousNiveaux#catalogue
+	 * @see TousNiveaux#lireFichier(Fichier, int, Consumer)
+	 * @see Palette#lire(List, int)
+	 * @see ValidateurNiveaux#valider(List, int[], Palette, int)
+	 * @see Niveau#Niveau(String, int, Palette)
 	 */
-	@SuppressWarnings("resource")
 	public TousNiveaux() {
-		// Lire tous les niveaux
-		String strTousNiveaux = "";
-		String workingDirectory = System.getProperty("user.dir");
-		String absoluteFilePath = String.join(File.separator, workingDirectory, "ressources", "niveaux.txt");
-		File niveaux = new File(absoluteFilePath);
-		try {
-			Scanner scan = new Scanner(niveaux);
-			while (scan.hasNextLine()) {
-		    	strTousNiveaux += scan.nextLine() + "\n";
-		    }
-		} catch (FileNotFoundException e) {
+		long debut = System.nanoTime();
+		EvenementChargementNiveaux evenement = new EvenementChargementNiveaux();
+		evenement.begin();
+		
+		this.repertoire = repertoireNiveaux();
+		List<Path> chemins = listerFichiers(repertoire);
+		List<Fichier> fichiers = new ArrayList<Fichier>();
+		TreeMap<int[],int[]> parTaille = new TreeMap<int[], int[]>(Arrays::compare);
+		int nbNiveaux = 1;	// L'identifiant 0 ne désigne aucun niveau.
+		long octets = 0;
+		for (int rang=0 ; rang < chemins.size() ; rang++) {
+			Fichier fichier;
+			try {
+				fichier = nouveauFichier(chemins.get(rang));
+				lireFichier(fichier, nbNiveaux, null);
+			} catch (IOException e) {
+				throw new IllegalArgumentException(chemins.get(rang) + " illisible : " + e.getMessage(), e);
+			}
+			compterTailles(parTaille, fichier, nbNiveaux, rang);
+			fichiers.add(fichier);
+			fichiersLus.put(fichier.chemin, fichier);
+			nbNiveaux += fichier.nbNiveaux;
+			octets += fichier.taille;
+		}
+		this.catalogue = new Catalogue(fichiers, parTaille);
+		this.chargementTermine = true;
+		
+		MetriquesMoteur.get().chargementPack(System.nanoTime() - debut);
+		if (evenement.shouldCommit()) {
+			evenement.fichier = repertoire.toString();
+			evenement.octets = octets;
+			evenement.nbNiveaux = nbNiveaux - 1;
+			evenement.commit();
+		}
+	}
+	
+	/**
+	 * @return Un index encore vide du fichier, avec sa date et sa taille actuelles.
+	 */
+	private Fichier nouveauFichier(Path chemin) throws IOException {
+		return new Fichier(chemin, Files.readAttributes(chemin, BasicFileAttributes.class), ++nbLectures);
+	}
+	
+	/**
+	 * <b>Méthode lisant un fichier en entier, validant ses niveaux et remplissant
+	 * son index.</b>
+	 * 
+	 * <p> Seules les lignes d'un lot de niveaux sont gardées en même temps : la
+	 * mémoire utilisée ne dépend pas de la taille du fichier. Chaque niveau validé
+	 * est construit pour connaître sa taille et son empreinte, passé à parNiveau,
+	 * puis oublié.
+	 * 
+	 * @param fichier Index vide du fichier, rempli au fil de la lecture : les niveaux
+	 *        des lots déjà validés y restent si une erreur interrompt la lecture.
+	 * @param premierId Identifiant du premier niveau du fichier.
+	 * @param parNiveau Action appelée pour chaque niveau ajouté à l'index, null pour aucune.
+	 * 
+	 * @throws IllegalArgumentException Si un niveau est invalide, avec la liste de toutes
+	 *         les erreurs de son lot.
+	 */
+	private static void lireFichier(Fichier fichier, int premierId, Consumer<Niveau> parNiveau) throws IOException {
+		FenetreLignes lignes = new FenetreLignes();
+		int[] debuts = new int[TAILLE_LOT];			// Indices des lignes "Niveau" du lot
+		long[] positions = new long[TAILLE_LOT];	// Positions en octets de ces lignes
+		int[] crcs = new int[TAILLE_LOT];
+		int nbLot = 0;
+		CRC32 crc = new CRC32();
+		try (LecteurLignes lecteur = new LecteurLignes(Files.newInputStream(fichier.chemin))) {
+			String ligne;
+			do {
+				ligne = lecteur.lireLigne();
+				boolean debutNiveau = ligne != null && ligne.trim().equals(ValidateurNiveaux.DEBUT_NIVEAU);
+				if (ligne == null || debutNiveau) {
+					if (fichier.palette == null) {
+						fichier.palette = Palette.lire(lignes, lignes.size());
+					}
+					if (nbLot > 0) {	// Le niveau précédent est complet
+						crcs[nbLot - 1] = (int) crc.getValue();
+					}
+					if (nbLot == TAILLE_LOT || ligne == null && nbLot > 0) {
+						ajouterLot(fichier, lignes, Arrays.copyOf(debuts, nbLot), positions, crcs,
+								lecteur.getDebutLigne(), premierId, parNiveau);
+						lignes.oublier();
+						nbLot = 0;
+					}
+					if (debutNiveau) {
+						debuts[nbLot] = lignes.size();
+						positions[nbLot++] = lecteur.getDebutLigne();
+						crc.reset();
+					}
+				}
+				if (ligne != null) {
+					lignes.add(ligne);
+					crc.update(lecteur.getOctets(), 0, lecteur.getLongueur());
+				}
+			} while (ligne != null);
+		}
+	}
+	
+	/**
+	 * <b>Méthode validant en parallèle un lot de niveaux complets, puis les ajoutant
+	 * à l'index de leur fichier.</b>
+	 * 
+	 * @param fin Position en octets de la fin du dernier niveau du lot.
+	 */
+	private static void ajouterLot(Fichier fichier, List<String> lignes, int[] debuts, long[] positions, int[] crcs,
+			long fin, int premierId, Consumer<Niveau> parNiveau) {
+		List<String> erreurs = ValidateurNiveaux.valider(lignes, debuts, fichier.palette, fichier.nbNiveaux + 1);
+		if (!erreurs.isEmpty()) {
+			throw new IllegalArgumentException(fichier.chemin + " contient " + erreurs.size()
+					+ " erreur(s) :\n" + String.join("\n", erreurs));
+		}
+		for (int k=0 ; k < debuts.length ; k++) {
+			int finNiveau = k + 1 < debuts.length ? debuts[k + 1] : lignes.size();
+			Niveau niveau = new Niveau(chaineNiveau(lignes, debuts[k], finNiveau), premierId + fichier.nbNiveaux, fichier.palette);
+			fichier.ajouter(niveau, positions[k], k + 1 < debuts.length ? positions[k + 1] : fin, crcs[k]);
+			if (parNiveau != null) parNiveau.accept(niveau);
+		}
+	}
+	
+	/**
+	 * <b>Lignes d'un fichier en cours de lecture, dont seules les dernières sont
+	 * gardées : les indices restent ceux du fichier entier.</b>
+	 */
+	private static final class FenetreLignes extends AbstractList<String> {
+		private final ArrayList<String> contenu = new ArrayList<String>();
+		private int oubliees;
+		
+		@Override
+		public String get(int indice) {
+			return contenu.get(indice - oubliees);
+		}
+		
+		@Override
+		public int size() {
+			return oubliees + contenu.size();
+		}
+		
+		@Override
+		public boolean add(String ligne) {
+			return contenu.add(ligne);
+		}
+		
+		void oublier() {
+			oubliees += contenu.size();
+			contenu.clear();
+		}
+	}
+	
+	/**
+	 * <b>Lecteur de lignes UTF-8 donnant la position en octets et les octets de
+	 * chaque ligne lue.</b>
+	 * 
+	 * <p> Les lignes se terminent par "\n" ou "\r\n", comme pour Files.readAllLines().
+	 */
+	private static final class LecteurLignes implements Closeable {
+		private final InputStream flux;
+		private final byte[] tampon = new byte[1 << 16];
+		private int debut;
+		private int fin;
+		private byte[] octets = new byte[256];
+		private int longueur;
+		private long position;
+		private long debutLigne;
+		
+		LecteurLignes(InputStream flux) {
+			this.flux = flux;
+		}
+		
+		/**
+		 * @return La ligne suivante sans son retour à la ligne, null à la fin du fichier.
+		 */
+		String lireLigne() throws IOException {
+			debutLigne = position;
+			longueur = 0;
+			boolean complete = false;
+			while (!complete) {
+				if (debut == fin) {
+					fin = Math.max(0, flux.read(tampon));
+					debut = 0;
+					if (fin == 0) break;
+				}
+				int k = debut;
+				while (k < fin && tampon[k] != '\n') k++;
+				complete = k < fin;
+				if (complete) k++;
+				if (longueur + k - debut > octets.length) {
+					octets = Arrays.copyOf(octets, Math.max(octets.length * 2, longueur + k - debut));
+				}
+				System.arraycopy(tampon, debut, octets, longueur, k - debut);
+				longueur += k - debut;
+				position += k - debut;
+				debut = k;
+			}
+			if (longueur == 0) return null;
+			int n = longueur;
+			if (octets[n - 1] == '\n') n--;
+			if (n > 0 && octets[n - 1] == '\r') n--;
+			return new String(octets, 0, n, StandardCharsets.UTF_8);
+		}
+		
+		/**
+		 * @return La position en octets de la dernière ligne lue, la taille du fichier
+		 *         à la fin du fichier.
+		 */
+		long getDebutLigne() {
+			return debutLigne;
+		}
+		
+		/**
+		 * @return Les octets de la dernière ligne lue, retour à la ligne compris, dans
+		 *         les getLongueur() premières cases.
+		 */
+		byte[] getOctets() {
+			return octets;
+		}
+		
+		int getLongueur() {
+			return longueur;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			flux.close();
+		}
+	}
+	
+	/**
+	 * @return Le répertoire des fichiers de niveaux : propriété flowfree.niveaux, ou
+	 *         répertoire ressources du répertoire de travail.
+	 */
+	public static Path repertoireNiveaux() {
+		String repertoire = System.getProperty(PROPRIETE_REPERTOIRE);
+		return repertoire != null ? Path.of(repertoire) : Path.of(System.getProperty("user.dir"), "ressources");
+	}
+	
+	/**
+	 * @return Les fichiers de niveaux du répertoire, dans l'ordre de lecture :
+	 *         niveaux.txt d'abord, puis les autres par ordre de nom.
+	 */
+	private static List<Path> listerFichiers(Path repertoire) {
+		try (Stream<Path> contenu = Files.list(repertoire)) {
+			return contenu.filter(f -> estFichierNiveaux(f.getFileName()) && Files.isRegularFile(f))
+					.sorted(Comparator.comparing((Path f) -> !f.getFileName().toString().equals(FICHIER_PRINCIPAL))
+							.thenComparing(f -> f.getFileName().toString()))
+					.collect(Collectors.toList());
+		} catch (IOException e) {
 			e.printStackTrace();
+			return new ArrayList<Path>();
 		}
-
-		String[] listeStr = strTousNiveaux.split("\nNiveau\n");  // Le premier élément contient le String vide.
-		int nbNiveaux = listeStr.length;
-		
-		// Générer les niveaux et calculer le nombre de niveaux de chaque taille (nbLignes, nbColonnes)
-		this.niveauxParTaille = new TreeMap<int[], int[]>(Arrays::compare);
-		this.listeNiveaux = new Niveau[nbNiveaux];
-		
-		for (int id=1 ; id < nbNiveaux ; id++) {	// Donc le niveau d'indice 0 est null.
-			Niveau niveau = new Niveau(listeStr[id], id);
-			this.listeNiveaux[id] = niveau;
-			
-			int[] taille = new int[] { niveau.getNbLignes() , niveau.getNbColonnes() };
-			int[] infos = this.niveauxParTaille.get(taille);
-			if (infos == null) {
-				this.niveauxParTaille.put(taille, new int[] {id, 1});
-			} else {
-				int idNiveauDebut = infos[0];
-				int nbNiveauxCetteTaille = infos[1];
-				this.niveauxParTaille.put( taille, new int[] {idNiveauDebut , nbNiveauxCetteTaille + 1} );
+	}
+	
+	private static boolean estFichierNiveaux(Path nom) {
+		return nom.toString().endsWith(".txt");
+	}
+	
+	/**
+	 * <b>Constructeur d'un ensemble encore vide, rempli par chargerEnArrierePlan().</b>
+	 */
+	private TousNiveaux(Path repertoire) {
+		this.repertoire = repertoire;
+		this.catalogue = new Catalogue(new ArrayList<Fichier>(), new TreeMap<int[], int[]>(Arrays::compare));
+	}
+	
+	/**
+	 * <b>Méthode lançant la lecture des fichiers de niveaux sur un thread dédié et
+	 * renvoyant aussitôt un ensemble de niveaux encore vide.</b>
+	 * 
+	 * <p> Les fichiers sont lus ligne par ligne : les niveaux sont validés par lots
+	 * et indexés, et les niveaux indexés sont publiés au plus toutes les 50 ms (nouveau
+	 * catalogue), puis une dernière fois à la fin. Les écouteurs sont prévenus après
+	 * chaque publication.
+	 * 
+	 * <p> Au premier lot contenant un niveau invalide, le chargement s'arrête : les
+	 * niveaux déjà publiés restent jouables et getErreurChargement() décrit l'erreur.
+	 * 
+	 * <p> Le même thread surveille ensuite le répertoire des fichiers de niveaux.
+	 * 
+	 * @return L'ensemble des niveaux, complété au fil du chargement.
+	 * 
+	 * @see TousNiveaux#ajouterEcouteur(EcouteurChargement)
+	 * @see TousNiveaux#TousNiveaux()
+	 * @see TousNiveaux#surveiller()
+	 */
+	public static TousNiveaux chargerEnArrierePlan() {
+		TousNiveaux tousNiveaux = new TousNiveaux(repertoireNiveaux());
+		Thread chargement = new Thread(() -> {
+			tousNiveaux.charger(listerFichiers(tousNiveaux.repertoire));
+			tousNiveaux.surveiller();
+		}, "chargement-niveaux");
+		chargement.setDaemon(true);
+		chargement.start();
+		return tousNiveaux;
+	}
+	
+	private void charger(List<Path> chemins) {
+		long debut = System.nanoTime();
+		EvenementChargementNiveaux evenement = new EvenementChargementNiveaux();
+		evenement.begin();
+		
+		List<Fichier> fichiers = new ArrayList<Fichier>();
+		TreeMap<int[],int[]> parTaille = new TreeMap<int[], int[]>(Arrays::compare);
+		long[] dernierePublication = { System.nanoTime() };
+		int nbNiveaux = 1;
+		long octets = 0;
+		for (int rang=0 ; rang < chemins.size() && erreurChargement == null ; rang++) {
+			int rangFichier = rang;
+			Fichier fichier = null;
+			try {
+				fichier = nouveauFichier(chemins.get(rang));
+				fichiers.add(fichier);
+				lireFichier(fichier, nbNiveaux, niveau -> {
+					compterTaille(parTaille, niveau.getNbLignes(), niveau.getNbColonnes(), niveau.getId(), rangFichier);
+					if (System.nanoTime() - dernierePublication[0] >= INTERVALLE_PUBLICATION_NANOS) {
+						publier(fichiers, parTaille, null);
+						dernierePublication[0] = System.nanoTime();
+					}
+				});
+				fichiersLus.put(fichier.chemin, fichier);
+				octets += fichier.taille;
+			} catch (IOException | IllegalArgumentException e) {
+				e.printStackTrace();
+				erreurChargement = e.getMessage();
+			}
+			if (fichier != null) nbNiveaux += fichier.nbNiveaux;
+		}
+		
+		chargementTermine = true;
+		publier(fichiers, parTaille, null);
+		MetriquesMoteur.get().chargementPack(System.nanoTime() - debut);
+		if (evenement.shouldCommit()) {
+			evenement.fichier = repertoire.toString();
+			evenement.octets = octets;
+			evenement.nbNiveaux = nbNiveaux - 1;
+			evenement.commit();
+		}
+	}
+	
+	/**
+	 * <b>Méthode surveillant le répertoire des fichiers de niveaux et rechargeant le
+	 * catalogue quand un fichier de niveaux y est ajouté, modifié ou supprimé.</b>
+	 * 
+	 * <p> Les événements arrivant à moins de 200 ms les uns des autres sont regroupés
+	 * en un seul rechargement. Ne rend la main que si le répertoire disparaît.
+	 * 
+	 * @see TousNiveaux#recharger()
+	 */
+	private void surveiller() {
+		try (WatchService surveillance = repertoire.getFileSystem().newWatchService()) {
+			repertoire.register(surveillance, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			while (true) {
+				WatchKey cle = surveillance.take();
+				boolean aRecharger = false;
+				while (cle != null) {
+					for (WatchEvent<?> evenement : cle.pollEvents()) {
+						aRecharger |= evenement.kind() == StandardWatchEventKinds.OVERFLOW
+								|| estFichierNiveaux((Path) evenement.context());
+					}
+					if (!cle.reset()) return;	// Répertoire supprimé
+					cle = surveillance.poll(DELAI_REGROUPEMENT_MS, TimeUnit.MILLISECONDS);
+				}
+				if (aRecharger) recharger();
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * <b>Méthode reconstruisant le catalogue après un changement dans le répertoire
+	 * des fichiers de niveaux, puis le publiant d'un bloc.</b>
+	 * 
+	 * <p> Seuls les fichiers nouveaux ou dont la date ou la taille a changé sont relus.
+	 * L'index des autres fichiers est repris tel quel, à de nouveaux identifiants si un
+	 * fichier qui les précède a changé de nombre de niveaux : leurs niveaux en cache le
+	 * restent. Un niveau relu est réussi si un niveau de même contenu l'était.
+	 * 
+	 * <p> Un fichier devenu invalide ne garde que ses niveaux lus avant la première erreur,
+	 * comme au premier chargement : les positions de son index précédent ne correspondent
+	 * plus à son contenu. Il est relu à chaque rechargement, et getErreurChargement()
+	 * décrit l'erreur jusqu'à ce qu'il soit corrigé.
+	 * 
+	 * @see Niveau#Niveau(Niveau, int)
+	 * @see Niveau#getEmpreinte()
+	 */
+	void recharger() {
+		EvenementChargementNiveaux evenement = new EvenementChargementNiveaux();
+		evenement.begin();
+		Set<Long> empreintes;
+		synchronized (this) {
+			empreintes = new HashSet<Long>(empreintesReussies);
+		}
+		
+		List<Path> chemins = listerFichiers(repertoire);
+		fichiersLus.keySet().retainAll(chemins);
+		List<Fichier> fichiers = new ArrayList<Fichier>();
+		TreeMap<int[],int[]> parTaille = new TreeMap<int[], int[]>(Arrays::compare);
+		BitSet relusReussis = new BitSet();
+		List<String> erreurs = new ArrayList<String>();
+		List<String> relus = new ArrayList<String>();
+		int nbNiveaux = 1;
+		long octets = 0;
+		for (int rang=0 ; rang < chemins.size() ; rang++) {
+			Path chemin = chemins.get(rang);
+			Fichier fichier = fichiersLus.get(chemin);
+			Fichier relu = null;
+			try {
+				if (fichier == null || fichier.aChange(Files.readAttributes(chemin, BasicFileAttributes.class))) {
+					relu = nouveauFichier(chemin);
+					lireFichier(relu, nbNiveaux, niveau -> {
+						if (empreintes.contains(niveau.getEmpreinte())) relusReussis.set(niveau.getId());
+					});
+					fichier = relu;
+					fichiersLus.put(chemin, fichier);
+					relus.add(chemin.getFileName().toString());
+					octets += fichier.taille;
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				erreurs.add(e.getMessage());
+				fichiersLus.remove(chemin);	// Relu au prochain rechargement
+				fichier = relu;				// Niveaux validés avant l'erreur, null si illisible
+				if (fichier == null) continue;
+			}
+			compterTailles(parTaille, fichier, nbNiveaux, rang);
+			fichiers.add(fichier);
+			nbNiveaux += fichier.nbNiveaux;
+		}
+		
+		erreurChargement = erreurs.isEmpty() ? null : String.join("\n", erreurs);
+		publier(fichiers, parTaille, relusReussis);
+		if (evenement.shouldCommit()) {
+			evenement.fichier = String.join(",", relus);
+			evenement.octets = octets;
+			evenement.nbNiveaux = nbNiveaux - 1;
+			evenement.commit();
+		}
+	}
+	
+	/**
+	 * <b>Méthode publiant un nouveau catalogue puis prévenant les écouteurs.</b>
+	 * 
+	 * @param relusReussis Après un rechargement, niveaux réussis des fichiers relus ;
+	 *        les niveaux réussis des autres fichiers suivent leur fichier. Null si les
+	 *        identifiants déjà publiés ne changent pas.
+	 */
+	private void publier(List<Fichier> fichiers, TreeMap<int[],int[]> parTaille, BitSet relusReussis) {
+		Catalogue nouveau = new Catalogue(fichiers, new TreeMap<int[], int[]>(parTaille));
+		if (relusReussis == null) {
+			this.catalogue = nouveau;
+		} else {
+			synchronized (this) {
+				Catalogue ancien = catalogue;
+				Map<Fichier, Integer> anciensRangs = new HashMap<Fichier, Integer>();
+				for (int f=0 ; f < ancien.fichiers.length ; f++) {
+					anciensRangs.put(ancien.fichiers[f], f);
+				}
+				BitSet nouveauxReussis = relusReussis;
+				for (int f=0 ; f < nouveau.fichiers.length ; f++) {
+					Integer a = anciensRangs.get(nouveau.fichiers[f]);
+					if (a == null) continue;	// Fichier relu
+					int decalage = nouveau.premiersIds[f] - ancien.premiersIds[a];
+					for (int id = reussis.nextSetBit(ancien.premiersIds[a]) ; id >= 0 && id < ancien.premiersIds[a + 1] ;
+							id = reussis.nextSetBit(id + 1)) {
+						nouveauxReussis.set(id + decalage);
+					}
+				}
+				this.catalogue = nouveau;
+				this.reussis = nouveauxReussis;
+			}
+		}
+		for (EcouteurChargement ecouteur : ecouteurs) {
+			ecouteur.niveauxCharges();
+		}
+	}
+	
+	/**
+	 * <b>Méthode extrayant la chaîne de caractères d'un niveau (lignes non vides suivant
+	 * la ligne "Niveau"), lue par le constructeur de Niveau.</b>
+	 */
+	private static String chaineNiveau(List<String> lignes, int debut, int fin) {
+		StringBuilder strNiveau = new StringBuilder();
+		for (int l = debut + 1 ; l < fin ; l++) {
+			String ligne = lignes.get(l).trim();
+			if (!ligne.isEmpty()) strNiveau.append(ligne).append('\n');
+		}
+		return strNiveau.toString();
+	}
+	
+	/**
+	 * <b>Méthode comptant un niveau dans le dictionnaire des tailles de grille.</b>
+	 * 
+	 * <p> Les valeurs ne sont jamais modifiées mais remplacées, si bien qu'une copie
+	 * du dictionnaire peut être publiée pendant que le chargement continue.
+	 * 
+	 * @see Catalogue#niveauxParTaille
+	 */
+	private static void compterTaille(TreeMap<int[],int[]> parTaille, int nbLignes, int nbColonnes, int idNiveau, int rangFichier) {
+		int[] taille = new int[] { nbLignes , nbColonnes, rangFichier };
+		int[] infos = parTaille.get(taille);
+		if (infos == null) {
+			parTaille.put(taille, new int[] {idNiveau, 1});
+		} else {
+			int idNiveauDebut = infos[0];
+			int nbNiveauxCetteTaille = infos[1];
+			parTaille.put( taille, new int[] {idNiveauDebut , nbNiveauxCetteTaille + 1} );
+		}
+	}
+	
+	/**
+	 * <b>Méthode comptant tous les niveaux d'un fichier indexé dans le dictionnaire
+	 * des tailles de grille, sans relire le fichier.</b>
+	 */
+	private static void compterTailles(TreeMap<int[],int[]> parTaille, Fichier fichier, int premierId, int rangFichier) {
+		for (Map.Entry<Long, int[]> taille : fichier.tailles.entrySet()) {
+			int[] cle = new int[] { (int) (taille.getKey() >>> 32), (int) (long) taille.getKey(), rangFichier };
+			parTaille.put(cle, new int[] {premierId + taille.getValue()[0], taille.getValue()[1]});
 		}
 	}
 	
 	// Getters
+	/**
+	 * @return Vrai si tous les niveaux ont été lus (ou si le chargement a échoué).
+	 */
+	public boolean chargementTermine() {
+		return chargementTermine;
+	}
+	
+	/**
+	 * @return La description de l'erreur ayant interrompu le chargement, null s'il n'y en a pas.
+	 */
+	public String getErreurChargement() {
+		return erreurChargement;
+	}
+	
+	public void ajouterEcouteur(EcouteurChargement ecouteur) {
+		ecouteurs.add(ecouteur);
+	}
+	
+	public void retirerEcouteur(EcouteurChargement ecouteur) {
+		ecouteurs.remove(ecouteur);
+	}
+	
 	/**
 	 * <b>Méthode appelée pour l'IHM pour organiser la page d'accueil présentant
 	 * les niveaux en fonction des tailles de grille disponibles.</b>
 	 * 
-	 * @see TousNiveaux#niveauxParTaille
+	 * @see Catalogue#niveauxParTaille
 	 * 
-	 * @return L'attribut TreeMap niveauxParTaille
+	 * @return Le dictionnaire des tailles du catalogue courant, à ne pas modifier.
 	 */
 	public TreeMap<int[], int[]> getNiveauxParTaille() {
-		return niveauxParTaille;
+		return catalogue.niveauxParTaille;
+	}
+	
+	/**
+	 * <b>Méthode appelée par les outils qui réécrivent un fichier de niveaux pour
+	 * connaître les fichiers du catalogue courant et les niveaux de chacun.</b>
+	 * 
+	 * @see Catalogue#premiersIds
+	 * 
+	 * @return Dictionnaire dont les clés sont les chemins des fichiers, dans l'ordre
+	 *         des identifiants, et les valeurs [identifiant du premier niveau du
+	 *         fichier, nombre de niveaux du fichier].
+	 */
+	public LinkedHashMap<Path, int[]> getFichiers() {
+		Catalogue courant = catalogue;
+		LinkedHashMap<Path, int[]> fichiers = new LinkedHashMap<Path, int[]>();
+		for (int f=0 ; f < courant.fichiers.length ; f++) {
+			fichiers.put(courant.fichiers[f].chemin,
+					new int[] { courant.premiersIds[f], courant.premiersIds[f + 1] - courant.premiersIds[f] });
+		}
+		return fichiers;
+	}
+	
+	/**
+	 * @return Le nombre de demandes de niveau servies par le cache.
+	 */
+	public long getSuccesCache() {
+		return succesCache.sum();
+	}
+	
+	/**
+	 * @return Le nombre de demandes de niveau ayant relu le niveau dans son fichier.
+	 */
+	public long getEchecsCache() {
+		return echecsCache.sum();
+	}
+	
+	/**
+	 * @return La place estimée, en octets, des niveaux gardés en cache.
+	 */
+	public long getOctetsCache() {
+		synchronized (cache) {
+			return octetsCache;
+		}
+	}
+	
+	public long getBudgetCache() {
+		return budgetCache;
 	}
 	
 	// Autres méthodes
 	/**
 	 * <b>Méthode permettant de lancer un niveau choisi par l'utilisateur.</b>
 	 * 
-	 * @see TousNiveaux#listeNiveaux
+	 * <p> Le niveau est pris dans le cache s'il y est, sinon relu dans son fichier à
+	 * sa position, construit et ajouté au cache ; les niveaux les moins récemment
+	 * demandés sont alors retirés du cache jusqu'à ce qu'il tienne dans son budget.
+	 * La lecture et la construction se font hors du verrou du cache.
+	 * 
+	 * @see Fichier#lireNiveau(long[], int[], int, int)
+	 * @see Niveau#getTailleMemoire()
 	 * 
-	 * @param idNiveau Identifiant du niveau choisi (position dans l'attribut 
-	 *        listeNiveaux = position dans le fichier niveaux.txt)
+	 * @param idNiveau Identifiant du niveau choisi (position du niveau dans
+	 *        l'ensemble des fichiers)
 	 * 
-	 * @return Le niveau choisi
+	 * @return Le niveau choisi, null pour l'identifiant 0.
+	 * 
+	 * @throws IndexOutOfBoundsException Si aucun niveau ne porte cet identifiant.
+	 * @throws IllegalStateException Si le fichier du niveau a changé et n'est pas
+	 *         encore rechargé.
 	 */
 	public Niveau getNiveau(int idNiveau) {
-		return listeNiveaux[idNiveau];
+		Catalogue c = catalogue;
+		if (idNiveau == 0) return null;
+		if (idNiveau < 0 || idNiveau >= c.fin()) {
+			throw new IndexOutOfBoundsException("Niveau " + idNiveau + " inexistant");
+		}
+		int f = c.rangFichier(idNiveau);
+		Fichier fichier = c.fichiers[f];
+		int k = idNiveau - c.premiersIds[f];
+		Long cle = (long) fichier.numero << 32 | k;
+		Niveau niveau;
+		synchronized (cache) {
+			niveau = cache.get(cle);
+			if (niveau != null && niveau.getId() != idNiveau) {	// Fichier décalé par un rechargement
+				niveau = new Niveau(niveau, idNiveau);
+				cache.put(cle, niveau);
+			}
+		}
+		if (niveau != null) {
+			succesCache.increment();
+			MetriquesMoteur.get().niveauEnCache();
+			return niveau;
+		}
+		
+		echecsCache.increment();
+		MetriquesMoteur.get().niveauRelu();
+		niveau = fichier.lireNiveau(c.positions[f], c.crcs[f], k, idNiveau);
+		synchronized (cache) {
+			Niveau precedent = cache.put(cle, niveau);
+			if (precedent != null) octetsCache -= precedent.getTailleMemoire() + TAILLE_ENTREE_CACHE;
+			octetsCache += niveau.getTailleMemoire() + TAILLE_ENTREE_CACHE;
+			Iterator<Niveau> anciens = cache.values().iterator();
+			while (octetsCache > budgetCache && cache.size() > 1) {
+				octetsCache -= anciens.next().getTailleMemoire() + TAILLE_ENTREE_CACHE;
+				anciens.remove();
+			}
+		}
+		return niveau;
+	}
+	
+	/**
+	 * <b>Méthode permettant de vérifier qu'un identifiant de niveau reçu de l'extérieur
+	 * (serveur de jeu, enregistrement) désigne bien un niveau existant.</b>
+	 * 
+	 * @param idNiveau Identifiant à vérifier.
+	 * 
+	 * @return Vrai si un niveau porte cet identifiant, faux sinon.
+	 */
+	public boolean existe(int idNiveau) {
+		return idNiveau > 0 && idNiveau < catalogue.fin();
+	}
+	
+	/**
+	 * <b>Méthode donnant l'empreinte d'un niveau lue dans l'index de son fichier, sans
+	 * construire le niveau ni relire le fichier.</b>
+	 * 
+	 * @see Niveau#getEmpreinte()
+	 * 
+	 * @param idNiveau Identifiant du niveau.
+	 * @return L'empreinte du contenu du niveau lors de la lecture de son fichier.
+	 * 
+	 * @throws IndexOutOfBoundsException Si aucun niveau ne porte cet identifiant.
+	 */
+	public long getEmpreinte(int idNiveau) {
+		Catalogue c = catalogue;
+		if (idNiveau <= 0 || idNiveau >= c.fin()) {
+			throw new IndexOutOfBoundsException("Niveau " + idNiveau + " inexistant");
+		}
+		int f = c.rangFichier(idNiveau);
+		return c.empreintes[f][idNiveau - c.premiersIds[f]];
 	}
 	
 	/**
@@ -177,19 +1136,36 @@ public class TousNiveaux {
 	 * durant la session de jeu</b>
 	 * 
 	 * <p> Appelée pour différencier les niveaux réussi des autres dans la fenêtre
-	 * d'accueil.
-	 * 
-	 * <p> Demande au niveau demandé s'il est réussi.
+	 * d'accueil : une lecture du tableau de bits, sans construire le niveau.
 	 * 
-	 * @see Niveau#getReussi()
+	 * @see TousNiveaux#reussis
 	 * 
 	 * @param idNiveau Identifiant du niveau dont on veut savoir s'il a été réussi
-	 *                 (position dans l'attribut listeNiveaux = position dans 
-	 *                 le fichier niveaux.txt)
+	 *                 (position du niveau dans l'ensemble des fichiers)
 	 * @return Vrai si le niveau a été réussi durant la session de jeu, faux sinon.
 	 */
 	public boolean getReussi(int idNiveau) {
-		return listeNiveaux[idNiveau].getReussi();
+		return reussis.get(idNiveau);
+	}
+	
+	/**
+	 * <b>Méthode appelée quand un niveau a été dans une position gagnante : il est
+	 * réussi pour le reste de la session de jeu.</b>
+	 * 
+	 * <p> Si un rechargement a changé l'identifiant du niveau pendant la partie, seule
+	 * son empreinte est notée : il sera de nouveau réussi quand son fichier sera relu.
+	 * L'empreinte est comparée à celle de l'index, sans relire le fichier : elle reste
+	 * connue pendant qu'il est modifié.
+	 * 
+	 * @param niveau Niveau réussi.
+	 */
+	public synchronized void setReussi(Niveau niveau) {
+		empreintesReussies.add(niveau.getEmpreinte());
+		int id = niveau.getId();
+		if (reussis.get(id) || !existe(id) || getEmpreinte(id) != niveau.getEmpreinte()) return;
+		BitSet nouveauxReussis = (BitSet) reussis.clone();
+		nouveauxReussis.set(id);
+		this.reussis = nouveauxReussis;
 	}
 
 }
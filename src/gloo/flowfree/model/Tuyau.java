@@ -1,6 +1,12 @@
 package gloo.flowfree.model;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import gloo.flowfree.mesure.EvenementModificationTuyau;
+import gloo.flowfree.mesure.MetriquesMoteur;
 
 /**
  * <b>Classe représentant un tuyau, entité qui relie 2 plots d'une même
@@ -8,14 +14,19 @@ import java.util.ArrayList;
  * 
  * Le tuyau connait :
  * <ul>
- *     <li> La liste des cases le représentant
- *     <li> La liste des directions entre 2 cases successives le représentant.
+ *     <li> Le plateau sur lequel il est tracé
+ *     <li> Les indices des cases le représentant
+ *     <li> Les directions entre 2 cases successives le représentant.
  *     <li> Sa couleur
  * </ul>
  * 
+ * <p> Le chemin est rangé dans des tableaux de types primitifs agrandis au besoin :
+ * ajouter ou retirer la dernière case se fait en temps constant, sans objet
+ * intermédiaire, et la mémoire d'un long tuyau se limite à 5 octets par case.
+ * 
  * Le tuyau est connu :
  * <ul>
- *     <li> De sa couleur
+ *     <li> Du plateau, s'il est le tuyau courant de sa couleur
  *     <li> De chacune des cases qu'il contient
  * </ul>
  * 
@@ -24,62 +35,149 @@ import java.util.ArrayList;
  */
 public class Tuyau {
 	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
 	/**
-	 * <b>Liste des cases constituant le tuyau</b>
+	 * <b>Plateau sur lequel est tracé le tuyau, permettant de retrouver une case
+	 * à partir de son indice.</b>
+	 * 
+	 * @see Plateau#getCase(int)
 	 */
-	private ArrayList<Case> casesList;
+	private Plateau plateau;
 	
 	/**
-	 * <b>Liste des directions successives entre 2 cases constituant
-	 * le tuyau</b>
+	 * <b>Indices (dans le plateau) des cases constituant le tuyau.</b>
 	 * 
-	 * @see Tuyau#getDirList()
+	 * <p> Seules les longueur premières valeurs sont significatives.
+	 * 
+	 * @see Case#getIndice()
+	 */
+	private int[] cellules;
+	
+	/**
+	 * <b>Ordinaux des directions successives entre 2 cases constituant
+	 * le tuyau.</b>
+	 * 
+	 * <p> Seules les longueur - 1 premières valeurs sont significatives.
+	 * 
+	 * @see Tuyau#getDirections()
+	 */
+	private byte[] directions;
+	
+	/**
+	 * <b>Nombre de cases constituant le tuyau.</b>
 	 */
-	private ArrayList<Direction> dirList;
+	private int longueur;
 	
 	/**
-	 * <b>Couleur du tuyau, donc du plot de départ du tuyau.</b>
+	 * <b>Indice de la première direction modifiée (ajoutée ou retirée) depuis le
+	 * dernier instantané du tuyau.</b>
+	 * 
+	 * @see Tuyau#instantane(InstantaneTuyau)
+	 */
+	private int premierModifie;
+	
+	/**
+	 * <b>Vue en lecture seule des directions du tuyau, créée une seule fois.</b>
+	 * 
+	 * @see Tuyau#getDirections()
+	 */
+	private final List<Direction> vueDirections = new VueDirections();
+	
+	/**
+	 * <b>Indice de la couleur du tuyau, donc du plot de départ du tuyau.</b>
 	 * 
 	 * <p> Attribut non modifiable.
 	 * 
 	 * @see Tuyau#getCouleur()
 	 */
-	private Couleur couleur;
+	private int couleur;
 	
 	// Constructeur
 	/**
-	 * <b>Constructeur appelée par la couleur pour récréer un tuyau
+	 * <b>Constructeur appelée par le plateau pour récréer un tuyau
 	 * lorsqu'un des plots de cette couleur est sélectionné.</b>
 	 * 
-	 * <p> La case départ enregistre ce tuyau comme attribut.
+	 * <p> Le plateau enregistre ce tuyau comme occupant de la case départ.
 	 * 
-	 * @see Case#setTuyau(Tuyau)
+	 * @see Plateau#occuper(int, Tuyau, int)
 	 * 
 	 * @param debut Case de départ du tuyau, contient un plot de la
 	 *              couleur du tuyau.
 	 * 
-	 * @param couleur Couleur du tuyau.
+	 * @param couleur Indice de la couleur du tuyau.
 	 */
-	public Tuyau(Case debut, Couleur couleur) {
-		this.casesList = new ArrayList<Case>();
-		this.casesList.add(debut);
-		debut.setTuyau(this);
-		this.dirList = new ArrayList<Direction>();
+	public Tuyau(Case debut, int couleur) {
+		this.plateau = debut.getPlateau();
+		this.cellules = new int[8];
+		this.directions = new byte[8];
+		this.cellules[0] = debut.getIndice();
+		this.longueur = 1;
+		this.plateau.occuper(cellules[0], this, 0);
 		this.couleur = couleur;
 	}
 	
+	/**
+	 * <b>Méthode appelée par le plateau pour réutiliser ce tuyau à partir d'une
+	 * nouvelle case départ.</b>
+	 * 
+	 * <p> Les tableaux sont vidés et non réalloués : leur capacité est conservée.
+	 * Les cases de l'ancien tuyau doivent déjà l'avoir oublié.
+	 * 
+	 * @see Plateau#nouveauTuyau(int, Case)
+	 * @see Tuyau#detruireTuyau()
+	 * 
+	 * @param debut Nouvelle case de départ du tuyau.
+	 */
+	public void repartir(Case debut) {
+		this.cellules[0] = debut.getIndice();
+		this.longueur = 1;
+		this.premierModifie = 0;
+		plateau.occuper(cellules[0], this, 0);
+	}
+	
+	/**
+	 * <b>Méthode vidant ce tuyau sans réallouer ses tableaux, appelée lors de
+	 * la réinitialisation du plateau.</b>
+	 * 
+	 * @see Plateau#reinitialiser(Niveau)
+	 */
+	public void vider() {
+		this.longueur = 0;
+		this.premierModifie = 0;
+	}
+	
 	// Getters
-	public ArrayList<Direction> getDirList() {
-		return dirList;
+	/**
+	 * <b>Méthode appelée par le controleur pour dessiner le tuyau.</b>
+	 * 
+	 * <p> La liste retournée ne copie rien : c'est une vue en lecture seule sur les
+	 * directions du tuyau, qui suit ses modifications ultérieures.
+	 * 
+	 * @return Les directions successives entre 2 cases constituant le tuyau.
+	 */
+	public List<Direction> getDirections() {
+		return vueDirections;
 	}
 	
-	public Couleur getCouleur() {
+	public int getCouleur() {
 		return couleur;
 	}
 	
+	public int getLongueur() {
+		return longueur;
+	}
+	
+	/**
+	 * @return L'indice dans le plateau de la case de départ du tuyau.
+	 */
+	public int getCelluleDepart() {
+		return cellules[0];
+	}
+	
 	// Autres méthodes
 	public Case getCaseDepart() {
-		return casesList.get(0);
+		return plateau.getCase(cellules[0]);
 	}
 	
 	/**
@@ -95,7 +193,7 @@ public class Tuyau {
 	 * @return Vrai si la case est la première du tuyau, faux sinon.
 	 */
 	public boolean debuteTuyau(Case emplacement) {
-		return emplacement == casesList.get(0);
+		return emplacement.getIndice() == cellules[0];
 	}
 	
 	/**
@@ -106,41 +204,135 @@ public class Tuyau {
 	 * passée en paramètre.
 	 * 
 	 * <ul>
-	 *     <li> Si le tuyau est déjà complet ou que la direction demandée
-	 *          fait sortir du plateau (case voisine null), il ne se passe
-	 *          rien.
-	 *     <li> Sinon, on regarde si la modification correspond à un retour
-	 *          en arrière (si la case visée est l'avant dernière case du tuyau).
-	 *          <ul>
-	 *              <li> Si c'est un retour en arrière, on efface la dernière case
-	 *                   et la dernière direction constituant le tuyau.
-	 *              <li> Sinon, on demande à la case visée si elle accepte de faire
-	 *                   partie du tuyau. Si oui, on ajoute cette case et la direction
-	 *                   de propagation demandée aux attributs du tuyau.
-	 *          </ul>
+	 *     <li> Si la direction demandée fait sortir du plateau (case voisine null),
+	 *          il ne se passe rien.
+	 *     <li> Si la case visée appartient déjà à ce tuyau (en particulier si c'est
+	 *          l'avant dernière case, retour en arrière), le tuyau est raccourci
+	 *          jusqu'à cette case : seules les cases retirées sont parcourues.
+	 *     <li> Sinon, si le tuyau est déjà complet, il ne se passe rien.
+	 *     <li> Sinon, on demande à la case visée si elle accepte de faire
+	 *          partie du tuyau (en coupant éventuellement un autre tuyau). Si oui,
+	 *          on ajoute cette case et la direction de propagation demandée aux
+	 *          attributs du tuyau.
 	 * </ul>
 	 * 
 	 * @see Case#getCaseVoisine(Direction)
+	 * @see Plateau#getRang(int)
+	 * @see Tuyau#couper(int)
 	 * @see Tuyau#estComplet()
-	 * @see Case#retirerTuyau()
 	 * @see Case#accepteTuyau(Tuyau)
 	 * 
 	 * @param dir Direction de progression du tuyau demandée par l'utilisateur.
+	 * @return Vrai si le tuyau a été allongé ou raccourci, faux si le mouvement a
+	 *         été sans effet (bord du plateau, tuyau complet, case refusée).
 	 */
-	public void modifier(Direction dir) {
-		Case derniereCase = casesList.get(casesList.size() - 1);
+	public boolean modifier(Direction dir) {
+		EvenementModificationTuyau evenement = new EvenementModificationTuyau();
+		evenement.begin();
+		int longueurAvant = longueur;
+		
+		Case derniereCase = plateau.getCase(cellules[longueur - 1]);
 		Case prochaineCase = derniereCase.getCaseVoisine(dir);
-		int indexAvtDerr = casesList.size() - 2;
 		
-		if (!estComplet() && prochaineCase != null) {
-			if (indexAvtDerr >= 0 && prochaineCase == casesList.get(indexAvtDerr)) {	// Effacement de la dernière case du tuyau si retour en arrière
-				derniereCase.retirerTuyau();
-				this.casesList.remove(indexAvtDerr + 1);
-				this.dirList.remove(indexAvtDerr);
+		if (prochaineCase != null) {
+			if (prochaineCase.getTuyau() == this) {	// Retour sur le tuyau : effacement des cases qui suivent la case visée
+				couper(plateau.getRang(prochaineCase.getIndice()) + 1);
 			}
-			else if (prochaineCase.accepteTuyau(this)) {
-				this.casesList.add(prochaineCase);
-				this.dirList.add(dir);
+			else if (!estComplet() && !ajouter(prochaineCase, dir)) {
+				MetriquesMoteur.get().mouvementRefuse();
+			}
+		}
+		
+		if (evenement.shouldCommit()) {
+			evenement.couleur = couleur;
+			evenement.direction = dir.name();
+			evenement.longueurAvant = longueurAvant;
+			evenement.longueurApres = longueur;
+			evenement.commit();
+		}
+		return longueur != longueurAvant;
+	}
+	
+	/**
+	 * <b>Méthode ajoutant une case au bout du tuyau si elle l'accepte, sans événement
+	 * ni métrique.</b>
+	 * 
+	 * @see Case#accepteTuyau(Tuyau)
+	 * 
+	 * @return Vrai si la case a été ajoutée, faux si elle refuse le tuyau.
+	 */
+	private boolean ajouter(Case prochaineCase, Direction dir) {
+		if (!prochaineCase.accepteTuyau(this)) return false;
+		if (longueur == cellules.length) {
+			cellules = Arrays.copyOf(cellules, longueur * 2);
+			directions = Arrays.copyOf(directions, longueur * 2);
+		}
+		plateau.occuper(prochaineCase.getIndice(), this, longueur);
+		cellules[longueur] = prochaineCase.getIndice();
+		directions[longueur - 1] = (byte) dir.ordinal();
+		premierModifie = Math.min(premierModifie, longueur - 1);
+		longueur++;
+		return true;
+	}
+	
+	/**
+	 * <b>Méthode raccourcissant le tuyau à ses nouvelleLongueur premières cases.</b>
+	 * 
+	 * <p> Appelée par le tuyau lui-même lorsque le joueur revient sur une de ses cases,
+	 * et par une case lorsqu'un autre tuyau la traverse (coupure). Seules les cases
+	 * retirées sont parcourues, pour qu'elles oublient ce tuyau.
+	 * 
+	 * @see Case#accepteTuyau(Tuyau)
+	 * @see Plateau#liberer(int)
+	 * 
+	 * @param nouvelleLongueur Nombre de cases conservées, au moins 1 (case départ).
+	 */
+	void couper(int nouvelleLongueur) {
+		for (int k = longueur - 1 ; k >= nouvelleLongueur ; k--) {
+			plateau.liberer(cellules[k]);
+		}
+		longueur = nouvelleLongueur;
+		premierModifie = Math.min(premierModifie, nouvelleLongueur - 1);
+	}
+	
+	/**
+	 * <b>Méthode donnant le nombre de directions que le tuyau partage, depuis son début,
+	 * avec un état antérieur de ce tuyau de même case départ.</b>
+	 * 
+	 * @see Plateau#restaurer(InstantaneTuyau[], InstantaneTuyau[])
+	 * 
+	 * @param etat Etat antérieur du tuyau.
+	 * @return La longueur du plus long début commun des deux listes de directions.
+	 */
+	int prefixeCommun(InstantaneTuyau etat) {
+		int nb = Math.min(longueur - 1, etat.size());
+		int k = 0;
+		while (k < nb && directions[k] == etat.get(k).ordinal()) {
+			k++;
+		}
+		return k;
+	}
+	
+	/**
+	 * <b>Méthode prolongeant le tuyau, qui est un début de l'état passé en paramètre,
+	 * jusqu'à retrouver cet état.</b>
+	 * 
+	 * <p> Chaque case est ajoutée comme par modifier(Direction), mais sans événement
+	 * EvenementModificationTuyau : une annulation n'est pas un mouvement du joueur.
+	 * Les cases à reprendre doivent déjà être libres.
+	 * 
+	 * @see Plateau#restaurer(InstantaneTuyau[], InstantaneTuyau[])
+	 * 
+	 * @param etat Etat antérieur du tuyau, qui commence comme le tuyau actuel.
+	 * 
+	 * @throws IllegalStateException Si une case de l'état n'accepte pas le tuyau.
+	 */
+	void prolonger(InstantaneTuyau etat) {
+		for (int k = longueur - 1 ; k < etat.size() ; k++) {
+			Direction dir = etat.get(k);
+			Case prochaineCase = plateau.getCase(cellules[longueur - 1]).getCaseVoisine(dir);
+			if (prochaineCase == null || prochaineCase.getTuyau() == this || estComplet() || !ajouter(prochaineCase, dir)) {
+				throw new IllegalStateException("Le tuyau de couleur " + couleur + " ne peut pas reprendre sa direction " + k);
 			}
 		}
 	}
@@ -149,15 +341,15 @@ public class Tuyau {
 	 * <b>Méthode pour que chacune des cases du tuyau l'oublie et puisse
 	 * être utilisée dans un aure tuyau.</b>
 	 * 
-	 * <p> Méthode appelée par la couleur lorsque le joueur clique sur
+	 * <p> Méthode appelée par le plateau lorsque le joueur clique sur
 	 * un plot de cette couleur alors que ce tuyau est enregistré comme
 	 * tuyau courant.
 	 * 
-	 * @see Case#retirerTuyau()
+	 * @see Plateau#liberer(int)
 	 */
 	public void detruireTuyau() {
-		for (Case caseTuyau : casesList) {
-			caseTuyau.retirerTuyau();
+		for (int k=0 ; k < longueur ; k++) {
+			plateau.liberer(cellules[k]);
 		}
 	}
 	
@@ -169,7 +361,7 @@ public class Tuyau {
 	 * <p> Vu la méthode Case.accepteTuyau(Tuyau), si la dernière case contient
 	 * un plot, c'est forcément le deuxième de la couleur du tuyau.
 	 * 
-	 * <p> Méthode appelée par la couleur pour savoir si elle est complète (si
+	 * <p> Méthode appelée par le plateau pour savoir si une couleur est complète (si
 	 * son tuyau courant est complet) et déterminer si le niveau est réussi.
 	 * 
 	 * @see Case#getPlot()
@@ -178,9 +370,42 @@ public class Tuyau {
 	 *         dernière case contient un plot.
 	 */
 	public boolean estComplet() {
-		Case depart = casesList.get(0);
-		Case arrivee = casesList.get(casesList.size() - 1);
-		return depart!=arrivee && arrivee.getPlot() != null;
+		return longueur > 1 && plateau.getCase(cellules[longueur - 1]).getPlot() != null;
+	}
+	
+	/**
+	 * <b>Méthode donnant l'état actuel du tuyau sous une forme non modifiable, lisible
+	 * depuis un autre thread.</b>
+	 * 
+	 * <p> Les blocs de directions pleins que le tuyau n'a pas modifiés depuis
+	 * l'instantané précédent sont repris de celui-ci ; si rien n'a changé, l'instantané
+	 * précédent est renvoyé. Un seul appelant doit prendre les instantanés d'un tuyau,
+	 * en passant chaque fois le dernier obtenu.
+	 * 
+	 * @see InstantaneTuyau
+	 * 
+	 * @param precedent Dernier instantané de ce tuyau, null s'il n'y en a pas.
+	 * @return L'instantané du tuyau.
+	 */
+	public InstantaneTuyau instantane(InstantaneTuyau precedent) {
+		int nbDirections = Math.max(longueur - 1, 0);
+		boolean complet = estComplet();
+		boolean memeDepart = precedent != null && precedent.getCelluleDepart() == cellules[0];
+		int inchangees = memeDepart ? Math.min(premierModifie, Math.min(nbDirections, precedent.size())) : 0;
+		premierModifie = Integer.MAX_VALUE;
+		if (memeDepart && inchangees == nbDirections && precedent.size() == nbDirections
+				&& precedent.estComplet() == complet) {
+			return precedent;
+		}
+		
+		byte[][] blocs = new byte[(nbDirections + InstantaneTuyau.TAILLE_BLOC - 1) / InstantaneTuyau.TAILLE_BLOC][];
+		for (int b=0 ; b < blocs.length ; b++) {
+			int debut = b * InstantaneTuyau.TAILLE_BLOC;
+			int fin = Math.min(nbDirections, debut + InstantaneTuyau.TAILLE_BLOC);
+			blocs[b] = debut + InstantaneTuyau.TAILLE_BLOC <= inchangees ? precedent.getBloc(b)
+					: Arrays.copyOfRange(directions, debut, fin);
+		}
+		return new InstantaneTuyau(cellules[0], blocs, nbDirections, complet);
 	}
 	
 	// Affichage
@@ -190,13 +415,37 @@ public class Tuyau {
 	 * <p> Un case contenant un tuyau est représentée par les premières lettres de la 
 	 * couleur de ce tuyau.
 	 * 
-	 * <p> Demande sa représentation (ses premières lettres) à la couleur de ce tuyau.
+	 * <p> Demande la représentation (les premières lettres) de la couleur de ce tuyau
+	 * à la palette.
 	 * 
-	 * @see Couleur#display()
+	 * @see Palette#getAbreviation(int)
 	 * 
+	 * @param palette Palette du plateau contenant ce tuyau.
 	 * @return Chaîne de caractère représentant la couleur du tuyau.
 	 */
-	public String display() {
-		return couleur.display();
+	public String display(Palette palette) {
+		return palette.getAbreviation(couleur);
+	}
+	
+	/**
+	 * <b>Vue en lecture seule sur les directions du tuyau.</b>
+	 * 
+	 * <p> Chaque accès lit directement le tableau d'ordinaux du tuyau : aucune copie
+	 * ni aucun objet n'est créé, les directions étant les constantes de l'énumération.
+	 */
+	private class VueDirections extends AbstractList<Direction> implements RandomAccess {
+		
+		@Override
+		public Direction get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException(index);
+			}
+			return DIRECTIONS[directions[index]];
+		}
+		
+		@Override
+		public int size() {
+			return Math.max(longueur - 1, 0);
+		}
 	}
 }
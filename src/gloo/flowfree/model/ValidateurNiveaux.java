@@ -0,0 +1,330 @@
+package gloo.flowfree.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <b>Classe vérifiant un fichier de niveaux complet avant sa construction
+ * par TousNiveaux.</b>
+ * 
+ * <p>Le constructeur de Niveau fait confiance à la chaîne qu'il reçoit : une
+ * couleur absente de la palette n'aurait pas d'indice, un plot hors du plateau ne serait
+ * détecté qu'au lancement du niveau et deux plots sur la même case seraient
+ * acceptés. Ce validateur contrôle pour chaque niveau :
+ * <ul>
+ *     <li> La ligne de taille "nbLignes,nbColonnes" (entiers strictement positifs).
+ *     <li> Chaque ligne de couleur "COULEUR;i1,j1;i2,j2" : couleur de la palette, deux plots
+ *          exactement, coordonnées entières dans le plateau.
+ *     <li> L'absence de couleur en double et de plots superposés.
+ *     <li> La présence d'au moins une couleur.
+ *     <li> Les lignes de topologie "TORE", "PASSAGE;LIGNE;i", "PASSAGE;COLONNE;j" et "PONT;i,j" :
+ *          une ligne ou colonne bouclée a au moins 3 cases, un pont est dans le plateau,
+ *          n'est pas sur un plot et chacune de ses deux voies a deux voisines.
+ *     <li> La ligne "HEXAGONAL", au plus une fois : un plateau hexagonal n'a ni boucle
+ *          ni pont.
+ * </ul>
+ * 
+ * <p>Toutes les erreurs sont rapportées (et non seulement la première), avec
+ * l'identifiant du niveau et le numéro de ligne dans le fichier. Les niveaux sont
+ * validés en parallèle par paquets.
+ * 
+ * <p>Utilisation en ligne de commande : <code>ValidateurNiveaux fichier</code>
+ * 
+ * @see TousNiveaux#TousNiveaux()
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class ValidateurNiveaux {
+	
+	/**
+	 * <b>Ligne annonçant le début d'un niveau dans le fichier.</b>
+	 */
+	public static final String DEBUT_NIVEAU = "Niveau";
+	
+	/**
+	 * <b>Nombre de niveaux validés par une même tâche parallèle.</b>
+	 */
+	private static final int TAILLE_PAQUET = 4096;
+	
+	private ValidateurNiveaux() {
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Utilisation : ValidateurNiveaux fichier");
+			System.exit(2);
+		}
+		long debut = System.nanoTime();
+		List<String> lignes = Files.readAllLines(Path.of(args[0]), StandardCharsets.UTF_8);
+		int[] debuts = debutsNiveaux(lignes);
+		List<String> erreurs;
+		try {
+			Palette palette = Palette.lire(lignes, debuts.length > 0 ? debuts[0] : lignes.size());
+			erreurs = valider(lignes, debuts, palette);
+		} catch (IllegalArgumentException e) {
+			erreurs = List.of(e.getMessage());
+		}
+		long duree = System.nanoTime() - debut;
+		erreurs.forEach(System.out::println);
+		System.out.println(debuts.length + " niveaux, " + erreurs.size() + " erreur(s), validés en "
+				+ duree / 1_000_000 + " ms");
+		System.exit(erreurs.isEmpty() ? 0 : 1);
+	}
+	
+	/**
+	 * <b>Méthode repérant le début de chaque niveau dans les lignes du fichier.</b>
+	 * 
+	 * @param lignes Lignes du fichier de niveaux.
+	 * 
+	 * @return Indices (à partir de 0) des lignes "Niveau", dans l'ordre du fichier :
+	 *         le niveau d'identifiant id commence à la ligne d'indice debuts[id - 1].
+	 */
+	public static int[] debutsNiveaux(List<String> lignes) {
+		int[] debuts = new int[16];
+		int nb = 0;
+		for (int k=0 ; k < lignes.size() ; k++) {
+			if (lignes.get(k).trim().equals(DEBUT_NIVEAU)) {
+				if (nb == debuts.length) debuts = Arrays.copyOf(debuts, nb * 2);
+				debuts[nb++] = k;
+			}
+		}
+		return Arrays.copyOf(debuts, nb);
+	}
+	
+	/**
+	 * <b>Méthode validant en parallèle tous les niveaux du fichier.</b>
+	 * 
+	 * @param lignes Lignes du fichier de niveaux.
+	 * @param debuts Indices des lignes "Niveau".
+	 * @param palette Palette lue dans l'en-tête du fichier.
+	 * 
+	 * @see ValidateurNiveaux#debutsNiveaux(List)
+	 * @see Palette#lire(List, int)
+	 * 
+	 * @return La liste de toutes les erreurs, dans l'ordre des niveaux, vide
+	 *         si le fichier est valide.
+	 */
+	public static List<String> valider(List<String> lignes, int[] debuts, Palette palette) {
+		return valider(lignes, debuts, palette, 1);
+	}
+	
+	/**
+	 * <b>Méthode validant en parallèle des niveaux d'un fichier lu par morceaux.</b>
+	 * 
+	 * @param premierId Identifiant, dans son fichier, du niveau commençant à la ligne
+	 *        debuts[0], pour les messages d'erreur.
+	 * 
+	 * @see TousNiveaux#TousNiveaux()
+	 */
+	static List<String> valider(List<String> lignes, int[] debuts, Palette palette, int premierId) {
+		int nbPaquets = (debuts.length + TAILLE_PAQUET - 1) / TAILLE_PAQUET;
+		return IntStream.range(0, nbPaquets).parallel()
+				.mapToObj(p -> {
+					List<String> erreurs = new ArrayList<String>();
+					int fin = Math.min(debuts.length, (p + 1) * TAILLE_PAQUET);
+					for (int k = p * TAILLE_PAQUET ; k < fin ; k++) {
+						int finNiveau = k + 1 < debuts.length ? debuts[k + 1] : lignes.size();
+						validerNiveau(lignes, palette, premierId + k, debuts[k], finNiveau, erreurs);
+					}
+					return erreurs;
+				})
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * <b>Méthode validant un niveau, situé entre la ligne "Niveau" d'indice debut
+	 * (incluse) et la ligne d'indice fin (exclue).</b>
+	 */
+	static void validerNiveau(List<String> lignes, Palette palette, int id, int debut, int fin, List<String> erreurs) {
+		int k = debut + 1;
+		while (k < fin && lignes.get(k).isBlank()) k++;
+		if (k == fin) {
+			erreurs.add(erreur(id, debut, "niveau vide"));
+			return;
+		}
+		
+		int[] taille = lireCoordonnees(lignes.get(k));
+		if (taille == null || taille[0] <= 0 || taille[1] <= 0) {
+			erreurs.add(erreur(id, k, "taille invalide \"" + lignes.get(k).trim() + "\""));
+			return;
+		}
+		int nbLignes = taille[0];
+		int nbColonnes = taille[1];
+		
+		boolean[] couleurs = new boolean[palette.getNbCouleurs()];
+		int nbCouleurs = 0;
+		long[] casesPlots = new long[16];	// i << 32 | j
+		int nbPlots = 0;
+		boolean[] lignesBouclees = new boolean[nbLignes];
+		boolean[] colonnesBouclees = new boolean[nbColonnes];
+		long[] casesPonts = new long[0];
+		int[] lignesPonts = new int[0];
+		int ligneHexagonal = -1;
+		int ligneBoucle = -1;
+		for (k++ ; k < fin ; k++) {
+			String ligne = lignes.get(k).trim();
+			if (ligne.isEmpty()) continue;
+			String[] champs = ligne.split(";");
+			if (champs[0].equals(Topologie.HEXAGONAL)) {
+				if (champs.length != 1) {
+					erreurs.add(erreur(id, k, "\"" + ligne + "\" n'a pas la forme HEXAGONAL"));
+				} else if (ligneHexagonal >= 0) {
+					erreurs.add(erreur(id, k, "HEXAGONAL en double"));
+				} else {
+					ligneHexagonal = k;
+				}
+				continue;
+			}
+			if (champs[0].equals(Topologie.TORE) || champs[0].equals(Topologie.PASSAGE)) {
+				validerBoucle(champs, nbLignes, nbColonnes, lignesBouclees, colonnesBouclees, id, k, erreurs);
+				ligneBoucle = k;
+				continue;
+			}
+			if (champs[0].equals(Topologie.PONT)) {
+				int[] pont = champs.length == 2 ? lireCoordonnees(champs[1]) : null;
+				if (pont == null) {
+					erreurs.add(erreur(id, k, "\"" + ligne + "\" n'a pas la forme PONT;i,j"));
+				} else if (pont[0] < 0 || pont[1] < 0 || pont[0] >= nbLignes || pont[1] >= nbColonnes) {
+					erreurs.add(erreur(id, k, "pont (" + pont[0] + "," + pont[1] + ") hors du plateau "
+							+ nbLignes + "x" + nbColonnes));
+				} else {
+					casesPonts = Arrays.copyOf(casesPonts, casesPonts.length + 1);
+					casesPonts[casesPonts.length - 1] = (long) pont[0] << 32 | pont[1];
+					lignesPonts = Arrays.copyOf(lignesPonts, lignesPonts.length + 1);
+					lignesPonts[lignesPonts.length - 1] = k;
+				}
+				continue;
+			}
+			if (champs.length != 3) {
+				erreurs.add(erreur(id, k, "\"" + ligne + "\" n'a pas la forme COULEUR;i1,j1;i2,j2"));
+				continue;
+			}
+			int couleur = palette.indice(champs[0]);
+			if (couleur < 0) {
+				erreurs.add(erreur(id, k, "couleur inconnue " + champs[0]));
+			} else if (couleurs[couleur]) {
+				erreurs.add(erreur(id, k, "couleur " + champs[0] + " en double"));
+			} else {
+				couleurs[couleur] = true;
+				nbCouleurs++;
+			}
+			for (int p=1 ; p <= 2 ; p++) {
+				int[] plot = lireCoordonnees(champs[p]);
+				if (plot == null) {
+					erreurs.add(erreur(id, k, "coordonnées invalides \"" + champs[p] + "\""));
+				} else if (plot[0] < 0 || plot[1] < 0 || plot[0] >= nbLignes || plot[1] >= nbColonnes) {
+					erreurs.add(erreur(id, k, "plot (" + plot[0] + "," + plot[1] + ") hors du plateau "
+							+ nbLignes + "x" + nbColonnes));
+				} else {
+					long position = (long) plot[0] << 32 | plot[1];
+					for (int q=0 ; q < nbPlots ; q++) {
+						if (casesPlots[q] == position) {
+							erreurs.add(erreur(id, k, "plot (" + plot[0] + "," + plot[1] + ") superposé à un autre plot"));
+							break;
+						}
+					}
+					if (nbPlots == casesPlots.length) casesPlots = Arrays.copyOf(casesPlots, nbPlots * 2);
+					casesPlots[nbPlots++] = position;
+				}
+			}
+		}
+		if (nbCouleurs == 0 && nbPlots == 0) {
+			erreurs.add(erreur(id, debut, "aucune couleur"));
+		}
+		if (ligneHexagonal >= 0 && (ligneBoucle >= 0 || casesPonts.length > 0)) {
+			erreurs.add(erreur(id, ligneHexagonal, "un plateau hexagonal n'a ni boucle ni pont"));
+			return;
+		}
+		
+		// Ponts, une fois toutes les boucles et tous les plots connus
+		ponts:
+		for (int p=0 ; p < casesPonts.length ; p++) {
+			int i = (int) (casesPonts[p] >>> 32);
+			int j = (int) casesPonts[p];
+			String nom = "pont (" + i + "," + j + ")";
+			for (int q=0 ; q < p ; q++) {
+				if (casesPonts[q] == casesPonts[p]) {
+					erreurs.add(erreur(id, lignesPonts[p], nom + " en double"));
+					continue ponts;
+				}
+			}
+			for (int q=0 ; q < nbPlots ; q++) {
+				if (casesPlots[q] == casesPonts[p]) {
+					erreurs.add(erreur(id, lignesPonts[p], nom + " sur un plot"));
+					break;
+				}
+			}
+			if (!colonnesBouclees[j] && (i == 0 || i == nbLignes - 1)
+					|| !lignesBouclees[i] && (j == 0 || j == nbColonnes - 1)) {
+				erreurs.add(erreur(id, lignesPonts[p], nom + " au bord : une de ses voies est sans issue"));
+			}
+		}
+	}
+	
+	/**
+	 * <b>Méthode validant une ligne "TORE", "PASSAGE;LIGNE;i" ou "PASSAGE;COLONNE;j" et
+	 * notant les lignes et colonnes bouclées.</b>
+	 * 
+	 * <p> Une ligne ou colonne bouclée doit avoir au moins 3 cases : sinon sa case de
+	 * droite serait aussi sa case de gauche, ou la case elle-même.
+	 */
+	private static void validerBoucle(String[] champs, int nbLignes, int nbColonnes, boolean[] lignesBouclees,
+			boolean[] colonnesBouclees, int id, int k, List<String> erreurs) {
+		if (champs[0].equals(Topologie.TORE)) {
+			if (champs.length != 1) {
+				erreurs.add(erreur(id, k, "\"" + String.join(";", champs) + "\" n'a pas la forme TORE"));
+			} else if (nbLignes < 3 || nbColonnes < 3) {
+				erreurs.add(erreur(id, k, "tore de moins de 3 lignes ou colonnes"));
+			} else {
+				Arrays.fill(lignesBouclees, true);
+				Arrays.fill(colonnesBouclees, true);
+			}
+			return;
+		}
+		boolean ligne = champs.length == 3 && champs[1].equals(Topologie.LIGNE);
+		boolean colonne = champs.length == 3 && champs[1].equals(Topologie.COLONNE);
+		int rang = -1;
+		try {
+			if (ligne || colonne) rang = Integer.parseInt(champs[2].trim());
+		} catch (NumberFormatException e) {
+			ligne = colonne = false;
+		}
+		if (!ligne && !colonne) {
+			erreurs.add(erreur(id, k, "\"" + String.join(";", champs) + "\" n'a pas la forme PASSAGE;LIGNE;i ou PASSAGE;COLONNE;j"));
+		} else if (rang < 0 || rang >= (ligne ? nbLignes : nbColonnes)) {
+			erreurs.add(erreur(id, k, (ligne ? "ligne " : "colonne ") + rang + " hors du plateau "
+					+ nbLignes + "x" + nbColonnes));
+		} else if ((ligne ? nbColonnes : nbLignes) < 3) {
+			erreurs.add(erreur(id, k, "passage sur une " + (ligne ? "ligne" : "colonne") + " de moins de 3 cases"));
+		} else {
+			(ligne ? lignesBouclees : colonnesBouclees)[rang] = true;
+		}
+	}
+	
+	/**
+	 * @return Le couple d'entiers [a, b] lu dans une chaîne "a,b", null si la chaîne
+	 *         n'a pas cette forme.
+	 */
+	private static int[] lireCoordonnees(String str) {
+		String[] coord = str.trim().split(",");
+		if (coord.length != 2) return null;
+		try {
+			return new int[] { Integer.parseInt(coord[0]), Integer.parseInt(coord[1]) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private static String erreur(int id, int indiceLigne, String message) {
+		return "Niveau " + id + " (ligne " + (indiceLigne + 1) + ") : " + message;
+	}
+}
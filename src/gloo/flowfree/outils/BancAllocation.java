@@ -0,0 +1,72 @@
+package gloo.flowfree.outils;
+
+import java.lang.management.ManagementFactory;
+
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Plateau;
+import gloo.flowfree.model.PoolPlateaux;
+import gloo.flowfree.model.TousNiveaux;
+import gloo.flowfree.model.Tuyau;
+
+/**
+ * <b>Banc de mesure des octets alloués par partie, avec et sans réutilisation
+ * des plateaux.</b>
+ * 
+ * <p> Chaque partie lance un niveau (tous les niveaux du fichier à tour de rôle),
+ * démarre un tuyau depuis le premier plot de chaque couleur et le fait progresser
+ * dans chaque direction. Les octets alloués par le thread courant sont lus avant et
+ * après un grand nombre de parties, après une phase de chauffe.
+ * 
+ * <p> Utilisation : <code>BancAllocation [nombre de parties]</code>
+ * 
+ * @see PoolPlateaux
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class BancAllocation {
+	
+	public static void main(String[] args) {
+		int nbParties = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		TousNiveaux tousNiveaux = new TousNiveaux();
+		
+		for (int tour=0 ; tour < 2 ; tour++) {	// Le premier tour sert de chauffe
+			long sansReserve = mesurer(tousNiveaux, nbParties, false);
+			long avecReserve = mesurer(tousNiveaux, nbParties, true);
+			if (tour == 1) {
+				System.out.println("Sans réutilisation : " + sansReserve + " octets par partie");
+				System.out.println("Avec réutilisation : " + avecReserve + " octets par partie");
+			}
+		}
+	}
+	
+	private static long mesurer(TousNiveaux tousNiveaux, int nbParties, boolean reutiliser) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long avant = threads.getCurrentThreadAllocatedBytes();
+		Plateau plateau = null;
+		int idNiveau = 1;
+		for (int k=0 ; k < nbParties ; k++) {
+			if (!tousNiveaux.existe(idNiveau)) idNiveau = 1;
+			Niveau niveau = tousNiveaux.getNiveau(idNiveau++);
+			if (reutiliser) {
+				if (plateau != null) PoolPlateaux.rendre(plateau);
+				plateau = PoolPlateaux.obtenir(niveau);
+			} else {
+				plateau = new Plateau(niveau);
+			}
+			jouer(niveau, plateau);
+		}
+		return (threads.getCurrentThreadAllocatedBytes() - avant) / nbParties;
+	}
+	
+	private static void jouer(Niveau niveau, Plateau plateau) {
+		for (int c : niveau.getCouleursNiveau()) {
+			int[] premierPlot = niveau.getPlotsCouleur(c)[0];
+			Tuyau tuyau = plateau.getPlot(premierPlot[0], premierPlot[1]).nouveauTuyau();
+			for (Direction d : niveau.getTopologie().getDirections()) {
+				tuyau.modifier(d);
+			}
+		}
+	}
+}
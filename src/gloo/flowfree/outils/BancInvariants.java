@@ -0,0 +1,470 @@
+package gloo.flowfree.outils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import gloo.flowfree.model.Case;
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Palette;
+import gloo.flowfree.model.Plateau;
+import gloo.flowfree.model.Plot;
+import gloo.flowfree.model.Topologie;
+import gloo.flowfree.model.TousNiveaux;
+import gloo.flowfree.model.Tuyau;
+import gloo.flowfree.model.ValidateurNiveaux;
+
+/**
+ * <b>Banc de test aléatoire des invariants du modèle : des suites de sélections et
+ * de mouvements tirées au hasard sont jouées sur tous les cœurs, et l'état du plateau
+ * est vérifié après chaque commande.</b>
+ * 
+ * <p> Les niveaux joués sont ceux du répertoire de niveaux et des niveaux générés au
+ * hasard (tailles de 2 à 9, tores, passages, ponts et plateaux hexagonaux, plots sans
+ * solution garantie).
+ * Les commandes suivent la sémantique du controleur : une sélection sur un plot
+ * démarre un nouveau tuyau courant de sa couleur, une sélection ailleurs ne change
+ * rien, un mouvement fait progresser le tuyau courant. Les mouvements suivent presque
+ * tous les directions du plateau, quelques-uns une direction qu'il n'a pas ; ils reviennent
+ * souvent sur l'avant-dernière case du tuyau, et les sélections visent surtout les
+ * plots, pour atteindre les retours en arrière, l'entrée sur le second plot et la
+ * resélection d'un plot en cours de tuyau.
+ * 
+ * <p> Invariants vérifiés après chaque commande, par un parcours complet :
+ * <ul>
+ *     <li> Le tuyau de chaque couleur part d'un plot de sa couleur ; ses directions,
+ *          suivies dans la topologie depuis la case départ, parcourent des voies
+ *          distinctes qu'il occupe toutes, sans plot intermédiaire, et dont le nombre
+ *          est sa longueur.
+ *     <li> Toute voie occupée l'est par le tuyau courant de sa couleur, qui passe par
+ *          elle ; un plot n'est traversé que par un tuyau de sa couleur.
+ *     <li> Tuyau.estComplet(), Plateau.couleurComplete(int) et Plateau.plateauComplet()
+ *          donnent le même résultat qu'un nouveau parcours.
+ * </ul>
+ * 
+ * <p> Une suite en échec est réduite à une reproduction minimale : commandes après
+ * l'échec retirées, puis morceaux de commandes, couleurs et lignes de topologie
+ * retirés tant que le même invariant échoue. La reproduction est affichée au format
+ * du fichier de niveaux, suivie des commandes.
+ * 
+ * <p> Utilisation : <code>BancInvariants [--duree secondes] [--threads n]
+ * [--graine g] [--generes n]</code> (10 secondes, tous les cœurs, graine 1 et
+ * 1000 niveaux générés par défaut). Code de sortie 1 en cas d'échec.
+ * 
+ * @see Tuyau#modifier(Direction)
+ * @see Case#accepteTuyau(Tuyau)
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class BancInvariants {
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	/**
+	 * <b>Bit marquant une sélection parmi les commandes. Une sélection est codée
+	 * SELECTION | ligne << 15 | colonne, un mouvement par l'ordinal de sa direction.</b>
+	 */
+	private static final int SELECTION = 1 << 30;
+	
+	private static final int COMMANDES_MAX = 512;
+	
+	/**
+	 * <b>Niveau joué par le banc, avec sa description au format du fichier de niveaux
+	 * pour pouvoir le reconstruire privé de certaines lignes.</b>
+	 */
+	private static final class Cas {
+		final String texte;
+		final Palette palette;
+		final Niveau niveau;
+		
+		Cas(String texte, Palette palette) {
+			this.texte = texte;
+			this.palette = palette;
+			this.niveau = new Niveau(texte, 0, palette);
+		}
+	}
+	
+	/**
+	 * <b>Suite de commandes en échec sur un niveau, et description de l'échec.</b>
+	 */
+	private static final class Echec {
+		final Cas cas;
+		final int[] commandes;
+		final String message;
+		
+		Echec(Cas cas, int[] commandes, String message) {
+			this.cas = cas;
+			this.commandes = commandes;
+			this.message = message;
+		}
+		
+		/**
+		 * @return Le nom de l'invariant en échec (ou de l'exception), qui doit rester
+		 *         le même pendant la réduction.
+		 */
+		String nature() {
+			int fin = message.indexOf(" :");
+			return fin < 0 ? message : message.substring(0, fin);
+		}
+	}
+	
+	public static void main(String[] args) throws InterruptedException {
+		long duree = 10;
+		int nbThreads = Runtime.getRuntime().availableProcessors();
+		long graine = 1;
+		int nbGeneres = 1000;
+		for (int k=0 ; k + 1 < args.length ; k += 2) {
+			switch (args[k]) {
+			case "--duree": duree = Long.parseLong(args[k + 1]); break;
+			case "--threads": nbThreads = Integer.parseInt(args[k + 1]); break;
+			case "--graine": graine = Long.parseLong(args[k + 1]); break;
+			case "--generes": nbGeneres = Integer.parseInt(args[k + 1]); break;
+			default: throw new IllegalArgumentException("Option inconnue : " + args[k]);
+			}
+		}
+		
+		List<Cas> liste = new ArrayList<Cas>();
+		TousNiveaux tousNiveaux = new TousNiveaux();
+		for (int id=1 ; tousNiveaux.existe(id) ; id++) {
+			Niveau niveau = tousNiveaux.getNiveau(id);
+			liste.add(new Cas(texte(niveau), niveau.getPalette()));
+		}
+		int nbFichier = liste.size();
+		SplittableRandom generateur = new SplittableRandom(graine);
+		for (int k=0 ; k < nbGeneres ; k++) {
+			liste.add(new Cas(genererNiveau(generateur), Palette.DEFAUT));
+		}
+		Cas[] cas = liste.toArray(new Cas[0]);
+		System.out.println(nbFichier + " niveaux du fichier, " + nbGeneres + " niveaux générés, " + nbThreads + " threads");
+		
+		LongAdder nbCommandes = new LongAdder();
+		LongAdder nbParties = new LongAdder();
+		AtomicReference<Echec> echec = new AtomicReference<Echec>();
+		long debut = System.nanoTime();
+		long fin = debut + TimeUnit.SECONDS.toNanos(duree);
+		ExecutorService executeur = Executors.newFixedThreadPool(nbThreads);
+		for (int t=0 ; t < nbThreads ; t++) {
+			SplittableRandom aleatoire = generateur.split();
+			executeur.execute(() -> {
+				int[] commandes = new int[COMMANDES_MAX];
+				while (echec.get() == null && System.nanoTime() < fin) {
+					for (int partie=0 ; partie < 64 ; partie++) {
+						Cas c = cas[aleatoire.nextInt(cas.length)];
+						int nb = 1 + aleatoire.nextInt(COMMANDES_MAX);
+						tirerCommandes(c.niveau, aleatoire, commandes, nb);
+						Echec e = jouer(c, commandes, nb);
+						nbCommandes.add(nb);
+						nbParties.increment();
+						if (e != null) {
+							echec.compareAndSet(null, e);
+							break;
+						}
+					}
+				}
+			});
+		}
+		executeur.shutdown();
+		executeur.awaitTermination(duree + 60, TimeUnit.SECONDS);
+		double secondes = (System.nanoTime() - debut) / 1e9;
+		System.out.printf("%d parties, %d commandes, %.0f commandes vérifiées par seconde%n",
+				nbParties.sum(), nbCommandes.sum(), nbCommandes.sum() / secondes);
+		
+		if (echec.get() != null) {
+			Echec minimal = reduire(echec.get());
+			System.out.println("ÉCHEC " + minimal.message);
+			System.out.println(ValidateurNiveaux.DEBUT_NIVEAU + "\n" + minimal.cas.texte);
+			System.out.println("Commandes (" + minimal.commandes.length + ") : " + decrire(minimal.commandes));
+			System.exit(1);
+		}
+		System.out.println("Aucun invariant violé");
+	}
+	
+	/**
+	 * <b>Joue une suite de commandes sur un plateau neuf en vérifiant les invariants
+	 * après chacune.</b>
+	 * 
+	 * @return L'échec, avec les commandes jouées jusqu'à lui inclus, null si tous les
+	 *         invariants sont respectés.
+	 */
+	private static Echec jouer(Cas cas, int[] commandes, int nb) {
+		Niveau niveau = cas.niveau;
+		int k = 0;
+		try {
+			Plateau plateau = new Plateau(niveau);
+			int[] marques = new int[plateau.getTopologie().getNbVoies()];
+			Tuyau courant = null;
+			for (k=0 ; k < nb ; k++) {
+				int commande = commandes[k];
+				if ((commande & SELECTION) != 0) {
+					Plot plot = plateau.getPlot((commande >> 15) & 0x7FFF, commande & 0x7FFF);
+					if (plot != null) courant = plot.nouveauTuyau();
+				} else if (courant != null) {
+					courant.modifier(DIRECTIONS[commande]);
+				}
+				String message = verifier(niveau, plateau, courant, marques);
+				if (message != null) {
+					return new Echec(cas, Arrays.copyOf(commandes, k + 1), message);
+				}
+			}
+			return null;
+		} catch (RuntimeException e) {
+			StackTraceElement[] pile = e.getStackTrace();
+			String lieu = pile.length > 0 ? pile[0].toString() : "";
+			return new Echec(cas, Arrays.copyOf(commandes, Math.min(k + 1, nb)), e.getClass().getName() + " : " + lieu);
+		}
+	}
+	
+	/**
+	 * <b>Vérifie tous les invariants du plateau par un parcours complet.</b>
+	 * 
+	 * @param marques Tableau de travail, une case par voie.
+	 * 
+	 * @return La description du premier invariant violé, null si aucun ne l'est.
+	 */
+	private static String verifier(Niveau niveau, Plateau plateau, Tuyau courant, int[] marques) {
+		Topologie topologie = plateau.getTopologie();
+		Arrays.fill(marques, -1);
+		if (courant != null && plateau.getTuyau(courant.getCouleur()) != courant) {
+			return "Tuyau courant : n'est plus le tuyau de sa couleur";
+		}
+		
+		// Chemin de chaque tuyau
+		for (int c : niveau.getCouleursNiveau()) {
+			Tuyau tuyau = plateau.getTuyau(c);
+			if (tuyau == null) {
+				if (plateau.couleurComplete(c)) return "Couleur complète : couleur " + c + " sans tuyau";
+				continue;
+			}
+			if (tuyau.getCouleur() != c) return "Couleur : tuyau " + tuyau.getCouleur() + " rangé en " + c;
+			int voie = tuyau.getCelluleDepart();
+			Plot depart = voie < topologie.getNbCases() ? plateau.getCase(voie).getPlot() : null;
+			if (depart == null || depart.getCouleur() != c) return "Départ : case " + voie + " sans plot " + c;
+			List<Direction> directions = tuyau.getDirections();
+			if (directions.size() != tuyau.getLongueur() - 1) {
+				return "Longueur : " + directions.size() + " directions pour " + tuyau.getLongueur() + " cases";
+			}
+			for (int k=0 ; ; k++) {
+				if (marques[voie] >= 0) return "Voie partagée : voie " + voie + " parcourue deux fois (couleur " + c + ")";
+				marques[voie] = c;
+				Case emplacement = plateau.getCase(voie);
+				if (emplacement.getTuyau() != tuyau) return "Propriétaire : voie " + voie + " du chemin " + c + " non occupée par lui";
+				if (k == directions.size()) break;
+				if (k > 0 && emplacement.getPlot() != null) return "Plot traversé : voie " + voie + " au rang " + k + " du tuyau " + c;
+				voie = topologie.voisin(voie, directions.get(k));
+				if (voie < 0) return "Direction : le tuyau " + c + " sort du plateau au rang " + k;
+			}
+			Plot arrivee = plateau.getCase(voie).getPlot();
+			boolean complet = directions.size() > 0 && arrivee != null;
+			if (complet && arrivee.getCouleur() != c) return "Plot étranger : le tuyau " + c + " finit sur un plot " + arrivee.getCouleur();
+			if (tuyau.estComplet() != complet || plateau.couleurComplete(c) != complet) {
+				return "Complétude : couleur " + c + " complète " + tuyau.estComplet() + " au lieu de " + complet;
+			}
+		}
+		
+		// Occupant de chaque voie
+		boolean plein = true;
+		for (int voie=0 ; voie < marques.length ; voie++) {
+			Case emplacement = plateau.getCase(voie);
+			Tuyau occupant = emplacement.getTuyau();
+			Plot plot = emplacement.getPlot();
+			if (occupant == null) {
+				if (marques[voie] >= 0) return "Propriétaire : voie " + voie + " du chemin " + marques[voie] + " libre";
+				if (plot == null) plein = false;
+				continue;
+			}
+			if (plateau.getTuyau(occupant.getCouleur()) != occupant) {
+				return "Propriétaire : voie " + voie + " occupée par un ancien tuyau " + occupant.getCouleur();
+			}
+			if (marques[voie] != occupant.getCouleur()) {
+				return "Propriétaire : voie " + voie + " occupée par le tuyau " + occupant.getCouleur() + " hors de son chemin";
+			}
+			if (plot != null && plot.getCouleur() != occupant.getCouleur()) {
+				return "Plot étranger : plot " + plot.getCouleur() + " occupé par le tuyau " + occupant.getCouleur();
+			}
+		}
+		if (plateau.plateauComplet() != plein) {
+			return "Plateau complet : " + plateau.plateauComplet() + " au lieu de " + plein;
+		}
+		return null;
+	}
+	
+	/**
+	 * <b>Tire une suite de commandes : un quart de sélections, surtout sur les plots, et
+	 * des mouvements dont un sur quatre revient sur l'avant-dernière case et un sur
+	 * douze prend une direction quelconque.</b>
+	 */
+	private static void tirerCommandes(Niveau niveau, SplittableRandom aleatoire, int[] commandes, int nb) {
+		int[] couleurs = niveau.getCouleursNiveau();
+		Direction[] directions = niveau.getTopologie().getDirections();
+		int derniere = -1;
+		for (int k=0 ; k < nb ; k++) {
+			int tirage = aleatoire.nextInt(16);
+			if (tirage < 3 && couleurs.length > 0) {
+				int[] plot = niveau.getPlotsCouleur(couleurs[aleatoire.nextInt(couleurs.length)])[aleatoire.nextInt(2)];
+				commandes[k] = SELECTION | plot[0] << 15 | plot[1];
+			} else if (tirage < 4) {
+				commandes[k] = SELECTION | aleatoire.nextInt(niveau.getNbLignes()) << 15 | aleatoire.nextInt(niveau.getNbColonnes());
+			} else if (tirage < 7 && derniere >= 0) {
+				commandes[k] = DIRECTIONS[derniere].getOpposee().ordinal();
+			} else if (tirage < 15) {
+				commandes[k] = directions[aleatoire.nextInt(directions.length)].ordinal();
+			} else {
+				commandes[k] = aleatoire.nextInt(DIRECTIONS.length);
+			}
+			if ((commandes[k] & SELECTION) == 0) derniere = commandes[k];
+		}
+	}
+	
+	/**
+	 * <b>Réduit une suite en échec tant que le même invariant échoue : retrait de
+	 * morceaux de commandes de plus en plus petits, puis de chaque couleur et de
+	 * chaque ligne de topologie du niveau, jusqu'à ce que plus rien ne puisse être
+	 * retiré.</b>
+	 */
+	private static Echec reduire(Echec echec) {
+		String nature = echec.nature();
+		boolean reduit = true;
+		while (reduit) {
+			reduit = false;
+			
+			// Commandes
+			int morceaux = 2;
+			while (echec.commandes.length > 1) {
+				int[] commandes = echec.commandes;
+				int taille = (commandes.length + morceaux - 1) / morceaux;
+				boolean retire = false;
+				for (int debut=0 ; debut < commandes.length ; debut += taille) {
+					int[] candidat = new int[commandes.length - Math.min(taille, commandes.length - debut)];
+					System.arraycopy(commandes, 0, candidat, 0, debut);
+					System.arraycopy(commandes, debut + commandes.length - candidat.length, candidat, debut,
+							candidat.length - debut);
+					Echec e = jouer(echec.cas, candidat, candidat.length);
+					if (e != null && e.nature().equals(nature)) {
+						echec = e;
+						retire = reduit = true;
+						morceaux = Math.max(2, morceaux - 1);
+						break;
+					}
+				}
+				if (!retire) {
+					if (taille == 1) break;
+					morceaux = Math.min(commandes.length, 2 * morceaux);
+				}
+			}
+			
+			// Lignes du niveau, hormis la taille
+			String[] lignes = echec.cas.texte.split("\n");
+			for (int k=lignes.length - 1 ; k > 0 ; k--) {
+				StringBuilder texte = new StringBuilder(lignes[0]);
+				for (int l=1 ; l < lignes.length ; l++) {
+					if (l != k) texte.append('\n').append(lignes[l]);
+				}
+				Echec e = jouer(new Cas(texte.toString(), echec.cas.palette), echec.commandes, echec.commandes.length);
+				if (e != null && e.nature().equals(nature)) {
+					echec = e;
+					reduit = true;
+					break;
+				}
+			}
+		}
+		return echec;
+	}
+	
+	private static String decrire(int[] commandes) {
+		StringBuilder texte = new StringBuilder();
+		for (int commande : commandes) {
+			if (texte.length() > 0) texte.append(' ');
+			if ((commande & SELECTION) != 0) {
+				texte.append('(').append((commande >> 15) & 0x7FFF).append(',').append(commande & 0x7FFF).append(')');
+			} else {
+				texte.append(DIRECTIONS[commande].name());
+			}
+		}
+		return texte.toString();
+	}
+	
+	/**
+	 * <b>Description d'un niveau au format du fichier de niveaux, sans la ligne
+	 * Niveau.</b>
+	 */
+	private static String texte(Niveau niveau) {
+		Topologie topologie = niveau.getTopologie();
+		StringBuilder texte = new StringBuilder();
+		texte.append(niveau.getNbLignes()).append(',').append(niveau.getNbColonnes());
+		if (topologie.estHexagonale()) texte.append('\n').append(Topologie.HEXAGONAL);
+		for (int i=0 ; i < topologie.getNbLignes() ; i++) {
+			if (topologie.estLigneBouclee(i)) texte.append('\n').append(Topologie.PASSAGE).append(';').append(Topologie.LIGNE).append(';').append(i);
+		}
+		for (int j=0 ; j < topologie.getNbColonnes() ; j++) {
+			if (topologie.estColonneBouclee(j)) texte.append('\n').append(Topologie.PASSAGE).append(';').append(Topologie.COLONNE).append(';').append(j);
+		}
+		for (int pont : topologie.getPonts()) {
+			texte.append('\n').append(Topologie.PONT).append(';').append(pont / topologie.getNbColonnes()).append(',').append(pont % topologie.getNbColonnes());
+		}
+		for (int c : niveau.getCouleursNiveau()) {
+			int[][] plots = niveau.getPlotsCouleur(c);
+			texte.append('\n').append(niveau.getPalette().getNom(c)).append(';').append(plots[0][0]).append(',').append(plots[0][1])
+				.append(';').append(plots[1][0]).append(',').append(plots[1][1]);
+		}
+		return texte.toString();
+	}
+	
+	/**
+	 * <b>Génère un niveau au hasard, sans garantie de solution : taille de 2 à 9,
+	 * plateau hexagonal ou lignes et colonnes éventuellement bouclées et ponts éventuels
+	 * hors des bords, plots sur des cases distinctes.</b>
+	 */
+	private static String genererNiveau(SplittableRandom aleatoire) {
+		int nbLignes = 2 + aleatoire.nextInt(8);
+		int nbColonnes = 2 + aleatoire.nextInt(8);
+		StringBuilder texte = new StringBuilder();
+		texte.append(nbLignes).append(',').append(nbColonnes);
+		int forme = aleatoire.nextInt(8);
+		if (forme == 0) {
+			texte.append('\n').append(Topologie.TORE);
+		} else if (forme == 1) {
+			texte.append('\n').append(Topologie.PASSAGE).append(';').append(Topologie.LIGNE).append(';').append(aleatoire.nextInt(nbLignes));
+		} else if (forme == 2) {
+			texte.append('\n').append(Topologie.PASSAGE).append(';').append(Topologie.COLONNE).append(';').append(aleatoire.nextInt(nbColonnes));
+		} else if (forme == 3) {
+			texte.append('\n').append(Topologie.HEXAGONAL);
+		}
+		
+		boolean[] prises = new boolean[nbLignes * nbColonnes];
+		if (forme != 3 && nbLignes > 2 && nbColonnes > 2 && aleatoire.nextInt(3) == 0) {
+			for (int k=1 + aleatoire.nextInt(2) ; k > 0 ; k--) {
+				int i = 1 + aleatoire.nextInt(nbLignes - 2);
+				int j = 1 + aleatoire.nextInt(nbColonnes - 2);
+				if (prises[i * nbColonnes + j]) continue;
+				prises[i * nbColonnes + j] = true;
+				texte.append('\n').append(Topologie.PONT).append(';').append(i).append(',').append(j);
+			}
+		}
+		
+		int libres = 0;
+		for (boolean prise : prises) {
+			if (!prise) libres++;
+		}
+		int nbCouleurs = 1 + aleatoire.nextInt(Math.min(Palette.DEFAUT.getNbCouleurs(), libres / 2));
+		for (int c=0 ; c < nbCouleurs ; c++) {
+			texte.append('\n').append(Palette.DEFAUT.getNom(c));
+			for (int p=0 ; p < 2 ; p++) {
+				int cellule;
+				do {
+					cellule = aleatoire.nextInt(prises.length);
+				} while (prises[cellule]);
+				prises[cellule] = true;
+				texte.append(';').append(cellule / nbColonnes).append(',').append(cellule % nbColonnes);
+			}
+		}
+		return texte.toString();
+	}
+}
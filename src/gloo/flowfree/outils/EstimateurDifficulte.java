@@ -0,0 +1,345 @@
+package gloo.flowfree.outils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.TousNiveaux;
+import gloo.flowfree.model.ValidateurNiveaux;
+import gloo.flowfree.solveur.RechercheReference;
+
+/**
+ * <b>Outil calculant par lots la difficulté des niveaux et des statistiques sur le
+ * fichier de niveaux.</b>
+ * 
+ * <p> Pour chaque niveau, en parallèle : nombre de couleurs, nombre de cases, et les
+ * mesures de la recherche de référence (nœuds explorés, facteur de branchement,
+ * proportion de coups forcés dans la solution). Le score de difficulté vaut
+ * <br>&emsp; log2(1 + nœuds) × (2 - coups forcés) + nombre de cases / 25
+ * <br> : la taille de l'arbre de recherche domine, un niveau dont la plupart des
+ * coups sont forcés est jugé plus facile à taille égale, et la taille du plateau
+ * départage les niveaux que la recherche résout sans retour arrière.
+ * 
+ * <p> Les mesures sont conservées dans un cache sur disque indexé par l'empreinte
+ * du contenu de chaque niveau (Niveau.getEmpreinte()) : une nouvelle exécution ne
+ * recalcule que les niveaux ajoutés ou modifiés, ou ceux dont la recherche avait été
+ * interrompue avec une limite de nœuds plus basse.
+ * 
+ * <p> Utilisation :
+ * <code>EstimateurDifficulte [--format csv|ndjson] [--sortie fichier] [--cache fichier]
+ * [--limite noeuds] [--reordonner fichier]</code>
+ * <ul>
+ *     <li> Le rapport est écrit sur la sortie standard, ou dans le fichier de --sortie.
+ *     <li> Le cache par défaut est ressources/difficulte.cache.
+ *     <li> --reordonner écrit une copie de chaque fichier de niveaux dont les niveaux
+ *          sont triés par taille puis par score ; les niveaux d'une même taille
+ *          restent contigus, comme les regroupe FenetreAccueil. Avec un seul fichier
+ *          de niveaux, la copie est le fichier donné ; avec plusieurs, le fichier
+ *          donné est un répertoire où chaque copie garde le nom de son fichier.
+ *          Chaque fichier est trié séparément : un niveau ne change jamais de fichier.
+ * </ul>
+ * 
+ * @see RechercheReference
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class EstimateurDifficulte {
+	
+	/**
+	 * <b>Version du calcul des mesures ; les entrées du cache d'une autre version sont ignorées.</b>
+	 */
+	private static final int VERSION = 1;
+	
+	private static final long LIMITE_DEFAUT = 10_000_000;
+	
+	/**
+	 * <b>Mesures d'un niveau.</b>
+	 */
+	public static class Mesures {
+		private final long empreinte;
+		private final long limite;
+		private final long noeuds;
+		private final double facteurBranchement;
+		private final double ratioCoupsForces;
+		private final boolean resolu;
+		
+		Mesures(long empreinte, long limite, long noeuds, double facteurBranchement,
+				double ratioCoupsForces, boolean resolu) {
+			this.empreinte = empreinte;
+			this.limite = limite;
+			this.noeuds = noeuds;
+			this.facteurBranchement = facteurBranchement;
+			this.ratioCoupsForces = ratioCoupsForces;
+			this.resolu = resolu;
+		}
+		
+		public long getNoeuds() {
+			return noeuds;
+		}
+		
+		public double getFacteurBranchement() {
+			return facteurBranchement;
+		}
+		
+		public double getRatioCoupsForces() {
+			return ratioCoupsForces;
+		}
+		
+		public boolean estResolu() {
+			return resolu;
+		}
+		
+		/**
+		 * @return Vrai si ces mesures peuvent être reprises pour une limite de nœuds donnée :
+		 *         la recherche a abouti, ou a été interrompue avec une limite au moins égale.
+		 */
+		boolean valablePour(long limiteDemandee) {
+			return resolu || noeuds < limite || limite >= limiteDemandee;
+		}
+		
+		String versLigneCache() {
+			return Long.toHexString(empreinte) + ";" + VERSION + ";" + limite + ";" + noeuds + ";"
+					+ facteurBranchement + ";" + ratioCoupsForces + ";" + resolu;
+		}
+		
+		/**
+		 * @return Les mesures lues, null si la ligne est illisible ou d'une autre version.
+		 */
+		static Mesures depuisLigneCache(String ligne) {
+			String[] champs = ligne.split(";");
+			if (champs.length != 7) return null;
+			try {
+				if (Integer.parseInt(champs[1]) != VERSION) return null;
+				return new Mesures(Long.parseUnsignedLong(champs[0], 16), Long.parseLong(champs[2]),
+						Long.parseLong(champs[3]), Double.parseDouble(champs[4]), Double.parseDouble(champs[5]),
+						Boolean.parseBoolean(champs[6]));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+	
+	private final Map<Long, Mesures> cache = new ConcurrentHashMap<Long, Mesures>();
+	private final long limite;
+	private final AtomicInteger nbCalcules = new AtomicInteger();
+	
+	/**
+	 * @param limite Nombre maximal de nœuds de la recherche de référence par niveau.
+	 */
+	public EstimateurDifficulte(long limite) {
+		this.limite = limite;
+	}
+	
+	public int getNbCalcules() {
+		return nbCalcules.get();
+	}
+	
+	public static void main(String[] args) throws IOException {
+		boolean ndjson = false;
+		Path fichierSortie = null;
+		Path fichierCache = Path.of(System.getProperty("user.dir"), "ressources", "difficulte.cache");
+		Path fichierReordonne = null;
+		long limite = LIMITE_DEFAUT;
+		try {
+			for (int a=0 ; a < args.length ; a++) {
+				if (a + 1 >= args.length) throw new IllegalArgumentException(args[a]);
+				switch (args[a]) {
+				case "--format":
+					String format = args[++a];
+					if (!format.equals("csv") && !format.equals("ndjson")) throw new IllegalArgumentException(format);
+					ndjson = format.equals("ndjson");
+					break;
+				case "--sortie": fichierSortie = Path.of(args[++a]); break;
+				case "--cache": fichierCache = Path.of(args[++a]); break;
+				case "--reordonner": fichierReordonne = Path.of(args[++a]); break;
+				case "--limite": limite = Long.parseLong(args[++a]); break;
+				default: throw new IllegalArgumentException(args[a]);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println("Utilisation : EstimateurDifficulte [--format csv|ndjson] [--sortie fichier]"
+					+ " [--cache fichier] [--limite noeuds] [--reordonner fichier]");
+			System.exit(2);
+		}
+		
+		TousNiveaux tousNiveaux = new TousNiveaux();
+		EstimateurDifficulte estimateur = new EstimateurDifficulte(limite);
+		estimateur.lireCache(fichierCache);
+		
+		long debut = System.nanoTime();
+		List<Niveau> niveaux = new ArrayList<Niveau>();
+		for (int id=1 ; tousNiveaux.existe(id) ; id++) niveaux.add(tousNiveaux.getNiveau(id));
+		List<Mesures> mesures = estimateur.mesurerTout(niveaux);
+		long duree = System.nanoTime() - debut;
+		estimateur.ecrireCache(fichierCache);
+		
+		try (PrintWriter sortie = fichierSortie == null ? new PrintWriter(System.out)
+				: new PrintWriter(Files.newBufferedWriter(fichierSortie, StandardCharsets.UTF_8))) {
+			if (!ndjson) {
+				sortie.println("id,lignes,colonnes,couleurs,cases,noeuds,branchement,coups_forces,resolu,score");
+			}
+			for (int k=0 ; k < niveaux.size() ; k++) {
+				sortie.println(ligneRapport(niveaux.get(k), mesures.get(k), ndjson));
+			}
+		}
+		System.err.println(niveaux.size() + " niveaux, " + estimateur.getNbCalcules() + " calculés, "
+				+ (niveaux.size() - estimateur.getNbCalcules()) + " repris du cache, en " + duree / 1_000_000 + " ms");
+		
+		if (fichierReordonne != null) {
+			Map<Path, int[]> fichiers = tousNiveaux.getFichiers();
+			if (fichiers.size() > 1 && Files.exists(fichierReordonne) && !Files.isDirectory(fichierReordonne)) {
+				System.err.println(fichiers.size() + " fichiers de niveaux : --reordonner doit désigner un répertoire");
+				System.exit(2);
+			}
+			if (fichiers.size() > 1) {
+				Files.createDirectories(fichierReordonne);
+			}
+			for (Map.Entry<Path, int[]> fichier : fichiers.entrySet()) {
+				Path destination = fichiers.size() > 1 ? fichierReordonne.resolve(fichier.getKey().getFileName())
+						: fichierReordonne;
+				int premier = fichier.getValue()[0] - 1;	// Les identifiants commencent à 1
+				int fin = premier + fichier.getValue()[1];
+				reordonner(fichier.getKey(), niveaux.subList(premier, fin), mesures.subList(premier, fin), destination);
+			}
+		}
+	}
+	
+	/**
+	 * <b>Mesure en parallèle une liste de niveaux, en reprenant les mesures du cache
+	 * quand elles sont valables.</b>
+	 * 
+	 * @return Les mesures, dans l'ordre des niveaux.
+	 */
+	public List<Mesures> mesurerTout(List<Niveau> niveaux) {
+		return IntStream.range(0, niveaux.size()).parallel()
+				.mapToObj(k -> mesurer(niveaux.get(k)))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * <b>Mesure un niveau, ou reprend ses mesures du cache.</b>
+	 */
+	public Mesures mesurer(Niveau niveau) {
+		Mesures enCache = cache.get(niveau.getEmpreinte());
+		if (enCache != null && enCache.valablePour(limite)) {
+			return enCache;
+		}
+		RechercheReference recherche = new RechercheReference(niveau, limite);
+		recherche.chercher();
+		Mesures mesures = new Mesures(niveau.getEmpreinte(), limite, recherche.getNoeuds(),
+				recherche.getFacteurBranchement(), recherche.getRatioCoupsForces(), recherche.estResolu());
+		cache.put(niveau.getEmpreinte(), mesures);
+		nbCalcules.incrementAndGet();
+		return mesures;
+	}
+	
+	/**
+	 * @return Le score de difficulté d'un niveau, croissant avec la difficulté.
+	 * 
+	 * @see EstimateurDifficulte
+	 */
+	public static double score(Niveau niveau, Mesures mesures) {
+		double log2Noeuds = Math.log1p(mesures.getNoeuds()) / Math.log(2);
+		return log2Noeuds * (2 - mesures.getRatioCoupsForces())
+				+ niveau.getNbLignes() * niveau.getNbColonnes() / 25.0;
+	}
+	
+	/**
+	 * <b>Charge le cache ; un fichier absent ou des lignes illisibles sont ignorés.</b>
+	 */
+	public void lireCache(Path fichier) {
+		if (!Files.exists(fichier)) return;
+		try {
+			for (String ligne : Files.readAllLines(fichier, StandardCharsets.UTF_8)) {
+				Mesures mesures = Mesures.depuisLigneCache(ligne);
+				if (mesures != null) cache.put(mesures.empreinte, mesures);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * <b>Réécrit le cache, entrées des niveaux retirés comprises, via un fichier
+	 * temporaire renommé pour ne jamais laisser un cache tronqué.</b>
+	 */
+	public void ecrireCache(Path fichier) {
+		try {
+			Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+			try (BufferedWriter sortie = Files.newBufferedWriter(temporaire, StandardCharsets.UTF_8)) {
+				for (Mesures mesures : cache.values()) {
+					sortie.write(mesures.versLigneCache());
+					sortie.newLine();
+				}
+			}
+			Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static String ligneRapport(Niveau niveau, Mesures mesures, boolean ndjson) {
+		int nbCases = niveau.getNbLignes() * niveau.getNbColonnes();
+		Object[] valeurs = { niveau.getId(), niveau.getNbLignes(), niveau.getNbColonnes(),
+				niveau.getCouleursNiveau().length, nbCases, mesures.getNoeuds(), mesures.getFacteurBranchement(),
+				mesures.getRatioCoupsForces(), mesures.estResolu(), score(niveau, mesures) };
+		String format = ndjson
+				? "{\"id\":%d,\"lignes\":%d,\"colonnes\":%d,\"couleurs\":%d,\"cases\":%d,\"noeuds\":%d,"
+						+ "\"branchement\":%.3f,\"coups_forces\":%.3f,\"resolu\":%b,\"score\":%.2f}"
+				: "%d,%d,%d,%d,%d,%d,%.3f,%.3f,%b,%.2f";
+		return String.format(Locale.ROOT, format, valeurs);
+	}
+	
+	/**
+	 * <b>Écrit une copie d'un fichier de niveaux dont les niveaux sont triés par taille,
+	 * puis par score croissant ; la palette en tête du fichier est conservée.</b>
+	 * 
+	 * @param source Fichier de niveaux à trier.
+	 * @param niveaux Niveaux de ce fichier, dans l'ordre du fichier.
+	 * @param mesures Mesures de ces niveaux, dans le même ordre.
+	 * @param destination Fichier à écrire.
+	 * 
+	 * @throws IllegalStateException Si le fichier n'a plus le nombre de niveaux lus.
+	 */
+	private static void reordonner(Path source, List<Niveau> niveaux, List<Mesures> mesures, Path destination)
+			throws IOException {
+		List<String> lignes = Files.readAllLines(source, StandardCharsets.UTF_8);
+		int[] debuts = ValidateurNiveaux.debutsNiveaux(lignes);
+		if (debuts.length != niveaux.size()) {
+			throw new IllegalStateException(source + " a changé depuis sa lecture : " + debuts.length
+					+ " niveaux au lieu de " + niveaux.size());
+		}
+		
+		double[] scores = new double[niveaux.size()];
+		for (int k=0 ; k < niveaux.size() ; k++) {
+			scores[k] = score(niveaux.get(k), mesures.get(k));
+		}
+		List<Integer> ordre = IntStream.range(0, niveaux.size()).boxed()
+				.sorted(Comparator.<Integer>comparingInt(k -> niveaux.get(k).getNbLignes())
+						.thenComparingInt(k -> niveaux.get(k).getNbColonnes())
+						.thenComparingDouble(k -> scores[k]))
+				.collect(Collectors.toList());
+		
+		List<String> resultat = new ArrayList<String>(lignes.subList(0, debuts.length > 0 ? debuts[0] : lignes.size()));
+		for (int k : ordre) {
+			int fin = k + 1 < debuts.length ? debuts[k + 1] : lignes.size();
+			resultat.addAll(lignes.subList(debuts[k], fin));
+		}
+		Files.write(destination, resultat, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,281 @@
+package gloo.flowfree.outils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Palette;
+import gloo.flowfree.model.Topologie;
+import gloo.flowfree.model.TousNiveaux;
+
+/**
+ * <b>Outil vérifiant par lots des solutions produites hors de l'IHM.</b>
+ * 
+ * <p> Une solution donne, pour chaque couleur du niveau, la liste des directions
+ * du tuyau partant du premier plot de cette couleur (même format que
+ * Tuyau.getDirections()). Le fichier de soumissions se présente ainsi :
+ * <br>&emsp; Solution 1			&emsp; (identifiant du niveau)
+ * <br>&emsp; ROUGE;BAS,BAS,BAS,BAS,DROITE
+ * <br>&emsp; VERT;BAS,BAS,BAS,GAUCHE
+ * <br>&emsp; ...
+ * 
+ * <p> La vérification ne construit ni Plateau, ni Case, ni Tuyau : chaque
+ * soumission est parcourue une seule fois sur des tableaux d'entiers indexés
+ * par case (temps linéaire en nombre de cases), réutilisés d'une soumission
+ * à l'autre sur un même thread. Elle contrôle que chaque tuyau reste dans le
+ * plateau, ne chevauche aucun autre tuyau ni plot, relie bien les deux plots
+ * de sa couleur, et que toutes les cases sont couvertes.
+ * 
+ * <p> Les soumissions sont vérifiées en parallèle ; le rapport indique la raison
+ * du rejet de chaque soumission refusée.
+ * 
+ * <p> Utilisation : <code>VerificateurSolutions fichier</code>
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class VerificateurSolutions {
+	
+	/**
+	 * <b>Résultat de la vérification d'une soumission.</b>
+	 */
+	public static class Resultat {
+		private final int numero;
+		private final int idNiveau;
+		private final String raisonRejet;
+		
+		Resultat(int numero, int idNiveau, String raisonRejet) {
+			this.numero = numero;
+			this.idNiveau = idNiveau;
+			this.raisonRejet = raisonRejet;
+		}
+		
+		public boolean estValide() {
+			return raisonRejet == null;
+		}
+		
+		/**
+		 * @return La raison du rejet, null si la solution est valide.
+		 */
+		public String getRaisonRejet() {
+			return raisonRejet;
+		}
+		
+		@Override
+		public String toString() {
+			return "Soumission " + numero + " (niveau " + idNiveau + ") : "
+					+ (raisonRejet == null ? "valide" : "rejetée, " + raisonRejet);
+		}
+	}
+	
+	/**
+	 * <b>Tableaux de travail d'un thread : couleur+1 du plot de chaque case (0 si aucun)
+	 * et marque de la dernière soumission ayant occupé la case.</b>
+	 * 
+	 * <p> La marque évite de remettre à zéro les cases occupées entre deux soumissions.
+	 */
+	private static class Grilles {
+		int[] plots = new int[0];
+		int[] occupation = new int[0];
+		int marque;
+	}
+	
+	private static final ThreadLocal<Grilles> GRILLES = ThreadLocal.withInitial(Grilles::new);
+	
+	private final TousNiveaux tousNiveaux;
+	
+	public VerificateurSolutions(TousNiveaux tousNiveaux) {
+		this.tousNiveaux = tousNiveaux;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Utilisation : VerificateurSolutions fichier");
+			System.exit(2);
+		}
+		VerificateurSolutions verificateur = new VerificateurSolutions(new TousNiveaux());
+		String contenu = Files.readString(Path.of(args[0]), StandardCharsets.UTF_8);
+		List<String> soumissions = decouper(contenu);
+		
+		long debut = System.nanoTime();
+		List<Resultat> resultats = verifierTout(verificateur, soumissions);
+		long duree = System.nanoTime() - debut;
+		
+		long nbValides = 0;
+		for (Resultat r : resultats) {
+			System.out.println(r);
+			if (r.estValide()) nbValides++;
+		}
+		System.out.println(resultats.size() + " soumissions, " + nbValides + " valides, vérifiées en "
+				+ duree / 1_000_000 + " ms (" + (long) (resultats.size() * 1e9 / Math.max(1, duree)) + " soumissions/s)");
+	}
+	
+	/**
+	 * <b>Vérifie en parallèle une liste de soumissions au format texte.</b>
+	 * 
+	 * @return Les résultats, dans l'ordre des soumissions.
+	 */
+	public static List<Resultat> verifierTout(VerificateurSolutions verificateur, List<String> soumissions) {
+		return IntStream.range(0, soumissions.size()).parallel()
+				.mapToObj(k -> verificateur.verifierTexte(k + 1, soumissions.get(k)))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * <b>Découpe le contenu d'un fichier de soumissions en une chaîne par soumission,
+	 * commençant par la ligne "Solution idNiveau".</b>
+	 */
+	public static List<String> decouper(String contenu) {
+		List<String> soumissions = new ArrayList<String>();
+		int debut = contenu.indexOf("Solution");
+		while (debut >= 0) {
+			int suivant = contenu.indexOf("\nSolution", debut + 1);
+			soumissions.add(contenu.substring(debut, suivant < 0 ? contenu.length() : suivant).trim());
+			debut = suivant < 0 ? -1 : suivant + 1;
+		}
+		return soumissions;
+	}
+	
+	/**
+	 * <b>Analyse et vérifie une soumission au format texte.</b>
+	 * 
+	 * @param numero Numéro de la soumission, repris dans le rapport.
+	 * @param soumission Texte de la soumission.
+	 */
+	public Resultat verifierTexte(int numero, String soumission) {
+		String[] lignes = soumission.split("\n");
+		int idNiveau;
+		try {
+			idNiveau = Integer.parseInt(lignes[0].substring("Solution".length()).trim());
+		} catch (NumberFormatException e) {
+			return new Resultat(numero, -1, "en-tête invalide \"" + lignes[0] + "\"");
+		}
+		if (!tousNiveaux.existe(idNiveau)) {
+			return new Resultat(numero, idNiveau, "niveau inexistant");
+		}
+		
+		Niveau niveau = tousNiveaux.getNiveau(idNiveau);
+		Palette palette = niveau.getPalette();
+		byte[][] chemins = new byte[palette.getNbCouleurs()][];
+		for (int l=1 ; l < lignes.length ; l++) {
+			String ligne = lignes[l].trim();
+			if (ligne.isEmpty()) continue;
+			int separateur = ligne.indexOf(';');
+			if (separateur < 0) {
+				return new Resultat(numero, idNiveau, "ligne " + (l + 1) + " sans ';'");
+			}
+			String nomCouleur = ligne.substring(0, separateur);
+			int couleur = palette.indice(nomCouleur);
+			if (couleur < 0) {
+				return new Resultat(numero, idNiveau, "ligne " + (l + 1) + " : couleur inconnue " + nomCouleur);
+			}
+			byte[] chemin;
+			try {
+				String[] noms = ligne.substring(separateur + 1).split(",");
+				chemin = new byte[noms.length];
+				int n = 0;
+				for (String nom : noms) {
+					if (!nom.isBlank()) chemin[n++] = (byte) Direction.valueOf(nom.trim()).ordinal();
+				}
+				chemin = Arrays.copyOf(chemin, n);
+			} catch (IllegalArgumentException e) {
+				return new Resultat(numero, idNiveau, "ligne " + (l + 1) + " illisible : " + e.getMessage());
+			}
+			if (chemins[couleur] != null) {
+				return new Resultat(numero, idNiveau, "couleur " + nomCouleur + " donnée deux fois");
+			}
+			chemins[couleur] = chemin;
+		}
+		return new Resultat(numero, idNiveau, verifier(niveau, chemins));
+	}
+	
+	/**
+	 * <b>Vérifie une solution sur des tableaux primitifs, en temps linéaire en nombre
+	 * de cases.</b>
+	 * 
+	 * @param niveau Niveau résolu.
+	 * @param chemins Pour chaque couleur (indice dans la palette), les ordinaux des directions
+	 *                du tuyau partant du premier plot, null si la couleur est absente.
+	 * 
+	 * @return La raison du rejet, null si la solution est valide.
+	 */
+	public String verifier(Niveau niveau, byte[][] chemins) {
+		int nbColonnes = niveau.getNbColonnes();
+		Topologie topologie = niveau.getTopologie();
+		int nbCases = topologie.getNbVoies();
+		
+		Grilles g = GRILLES.get();
+		if (g.plots.length < nbCases) {
+			g.plots = new int[nbCases];
+			g.occupation = new int[nbCases];
+		}
+		if (++g.marque == Integer.MAX_VALUE) {
+			Arrays.fill(g.occupation, 0);
+			g.marque = 1;
+		}
+		int marque = g.marque;
+		int[] plots = g.plots;
+		int[] occupation = g.occupation;
+		Arrays.fill(plots, 0, nbCases, 0);
+		Palette palette = niveau.getPalette();
+		
+		for (int c : niveau.getCouleursNiveau()) {
+			for (int[] plot : niveau.getPlotsCouleur(c)) {
+				plots[plot[0] * nbColonnes + plot[1]] = c + 1;
+			}
+		}
+		for (int k=0 ; k < chemins.length ; k++) {
+			if (chemins[k] != null && niveau.getPlotsCouleur(k) == null) {
+				return "couleur " + palette.getNom(k) + " absente du niveau";
+			}
+		}
+		
+		int nbCouvertes = 0;
+		for (int c : niveau.getCouleursNiveau()) {
+			String nom = palette.getNom(c);
+			byte[] chemin = c < chemins.length ? chemins[c] : null;
+			if (chemin == null) {
+				return "couleur " + nom + " manquante";
+			}
+			int[][] positions = niveau.getPlotsCouleur(c);
+			int cellule = positions[0][0] * nbColonnes + positions[0][1];
+			int arrivee = positions[1][0] * nbColonnes + positions[1][1];
+			occupation[cellule] = marque;
+			nbCouvertes++;
+			for (int k=0 ; k < chemin.length ; k++) {
+				cellule = topologie.voisin(cellule, chemin[k]);
+				if (cellule < 0) {
+					return "le tuyau " + nom + " sort du plateau à l'étape " + (k + 1);
+				}
+				int i = topologie.cellule(cellule) / nbColonnes;
+				int j = topologie.cellule(cellule) % nbColonnes;
+				if (occupation[cellule] == marque) {
+					return "le tuyau " + nom + " chevauche une case déjà occupée en (" + i + "," + j + ")";
+				}
+				if (plots[cellule] != 0 && cellule != arrivee) {
+					return "le tuyau " + nom + " traverse le plot " + palette.getNom(plots[cellule] - 1) + " en (" + i + "," + j + ")";
+				}
+				if (cellule == arrivee && k != chemin.length - 1) {
+					return "le tuyau " + nom + " continue après son plot d'arrivée";
+				}
+				occupation[cellule] = marque;
+				nbCouvertes++;
+			}
+			if (cellule != arrivee) {
+				return "le tuyau " + nom + " n'atteint pas son plot d'arrivée";
+			}
+		}
+		if (nbCouvertes != nbCases) {
+			return (nbCases - nbCouvertes) + " case(s) non couverte(s)";
+		}
+		return null;
+	}
+}
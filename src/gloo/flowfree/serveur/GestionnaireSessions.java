@@ -0,0 +1,142 @@
+package gloo.flowfree.serveur;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import gloo.flowfree.classement.Classement;
+import gloo.flowfree.model.TousNiveaux;
+
+/**
+ * <b>Classe regroupant les sessions hébergées par le serveur de jeu.</b>
+ * 
+ * <p> Les sessions sont rangées dans un dictionnaire concurrent indexé par leur
+ * identifiant. Un thread de fond évince périodiquement les sessions qui n'ont
+ * pas été utilisées depuis un délai donné.
+ * 
+ * @see SessionJeu
+ * @see ServeurJeu
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class GestionnaireSessions {
+	
+	private final TousNiveaux tousNiveaux;
+	private final ConcurrentHashMap<String, SessionJeu> sessions = new ConcurrentHashMap<String, SessionJeu>();
+	private final long delaiInactiviteNanos;
+	private final ScheduledExecutorService eviction;
+	
+	/**
+	 * <b>Constructeur démarrant l'éviction périodique des sessions inactives.</b>
+	 * 
+	 * @param tousNiveaux Ensemble des niveaux partagé par toutes les sessions.
+	 * @param delaiInactiviteSecondes Durée d'inactivité au-delà de laquelle une session
+	 *                                est supprimée.
+	 */
+	public GestionnaireSessions(TousNiveaux tousNiveaux, long delaiInactiviteSecondes) {
+		this.tousNiveaux = tousNiveaux;
+		this.delaiInactiviteNanos = TimeUnit.SECONDS.toNanos(delaiInactiviteSecondes);
+		this.eviction = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "flowfree-eviction-sessions");
+			t.setDaemon(true);
+			return t;
+		});
+		long periode = Math.max(1, Math.min(30, delaiInactiviteSecondes / 2));
+		eviction.scheduleWithFixedDelay(this::evincer, periode, periode, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * <b>Crée une nouvelle session anonyme sur le niveau demandé.</b>
+	 * 
+	 * @param idNiveau Identifiant du niveau à jouer.
+	 * 
+	 * @return La session créée.
+	 * 
+	 * @throws IllegalArgumentException Si le niveau n'existe pas.
+	 */
+	public SessionJeu creer(int idNiveau) {
+		return creer(idNiveau, null);
+	}
+	
+	/**
+	 * <b>Crée une nouvelle session sur le niveau demandé, dont la victoire est inscrite
+	 * au classement sous le nom du joueur.</b>
+	 * 
+	 * @param idNiveau Identifiant du niveau à jouer.
+	 * @param joueur Nom du joueur, null pour une partie anonyme (non classée).
+	 * 
+	 * @return La session créée.
+	 * 
+	 * @throws IllegalArgumentException Si le niveau n'existe pas.
+	 * 
+	 * @see Classement#depuisConfiguration()
+	 */
+	public SessionJeu creer(int idNiveau, String joueur) {
+		if (!tousNiveaux.existe(idNiveau)) {
+			throw new IllegalArgumentException("Niveau " + idNiveau + " inexistant");
+		}
+		Classement classement = joueur != null ? Classement.depuisConfiguration() : null;
+		SessionJeu session = new SessionJeu(UUID.randomUUID().toString(), tousNiveaux, idNiveau, classement, joueur);
+		sessions.put(session.getId(), session);
+		return session;
+	}
+	
+	/**
+	 * @param id Identifiant de la session.
+	 * 
+	 * @return La session correspondante, dont l'instant de dernier accès est mis à
+	 *         jour, null si elle n'existe pas ou a été évincée.
+	 */
+	public SessionJeu get(String id) {
+		SessionJeu session = sessions.get(id);
+		if (session != null) {
+			session.toucher();
+		}
+		return session;
+	}
+	
+	public boolean supprimer(String id) {
+		return sessions.remove(id) != null;
+	}
+	
+	public int getNbSessions() {
+		return sessions.size();
+	}
+	
+	/**
+	 * <b>Meilleurs joueurs d'un niveau selon un critère.</b>
+	 * 
+	 * @param idNiveau Identifiant du niveau.
+	 * @param critere Critère de classement.
+	 * @param n Nombre de places voulues.
+	 * 
+	 * @return Les premières places, vide si aucun classement n'est configuré.
+	 * 
+	 * @throws IllegalArgumentException Si le niveau n'existe pas.
+	 * 
+	 * @see Classement#meilleurs(gloo.flowfree.model.Niveau, Classement.Critere, int)
+	 */
+	public List<Classement.Place> meilleurs(int idNiveau, Classement.Critere critere, int n) {
+		if (!tousNiveaux.existe(idNiveau)) {
+			throw new IllegalArgumentException("Niveau " + idNiveau + " inexistant");
+		}
+		Classement classement = Classement.depuisConfiguration();
+		return classement == null ? List.of() : classement.meilleurs(tousNiveaux.getNiveau(idNiveau), critere, n);
+	}
+	
+	/**
+	 * <b>Supprime les sessions inactives depuis plus que le délai d'inactivité.</b>
+	 */
+	void evincer() {
+		long limite = System.nanoTime() - delaiInactiviteNanos;
+		sessions.values().removeIf(session -> session.getDernierAcces() - limite < 0);
+	}
+	
+	public void arreter() {
+		eviction.shutdownNow();
+	}
+}
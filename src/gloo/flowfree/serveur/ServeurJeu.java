@@ -0,0 +1,302 @@
+package gloo.flowfree.serveur;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import gloo.flowfree.classement.Classement;
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.TousNiveaux;
+
+/**
+ * <b>Serveur HTTP/JSON hébergeant de nombreuses parties indépendantes dans une
+ * seule JVM.</b>
+ * 
+ * <p> Routes :
+ * <ul>
+ *     <li> POST /sessions?niveau=N[&amp;joueur=nom] : crée une session sur le niveau N
+ *          (201), dont la victoire est inscrite au classement si un joueur est nommé.
+ *     <li> GET /sessions/{id} : état du plateau.
+ *     <li> POST /sessions/{id}/selection?ligne=i&amp;colonne=j : sélection d'une case.
+ *     <li> POST /sessions/{id}/mouvement?direction=HAUT|BAS|DROITE|GAUCHE : progression
+ *          du tuyau courant.
+ *     <li> POST /sessions/{id}/annuler : annulation de la dernière commande.
+ *     <li> DELETE /sessions/{id} : suppression de la session (204).
+ *     <li> GET /classement?niveau=N[&amp;critere=TEMPS|COUPS][&amp;n=10] : meilleurs
+ *          joueurs du niveau N.
+ *     <li> GET /stats : nombre de sessions actives.
+ * </ul>
+ * 
+ * <p> Chaque requête est traitée sur son propre thread virtuel lorsque la JVM en
+ * dispose (Java 21 et plus), sinon sur un pool de threads extensible.
+ * 
+ * <p> Utilisation :
+ * <ul>
+ *     <li> <code>ServeurJeu [port] [délai d'inactivité en secondes]</code> (8080 et 600
+ *          par défaut).
+ *     <li> <code>ServeurJeu --mesure-memoire N</code> : crée N sessions et affiche la
+ *          mémoire occupée par session.
+ * </ul>
+ * 
+ * @see GestionnaireSessions
+ * @see SessionJeu
+ * 
+ * @author Maëlle Renaud
+ *
+ */
+public class ServeurJeu {
+	
+	private final HttpServer serveur;
+	private final GestionnaireSessions sessions;
+	
+	public ServeurJeu(int port, GestionnaireSessions sessions) throws IOException {
+		this.sessions = sessions;
+		this.serveur = HttpServer.create(new InetSocketAddress(port), 1024);
+		this.serveur.createContext("/sessions", this::traiterSessions);
+		this.serveur.createContext("/classement", this::traiterClassement);
+		this.serveur.createContext("/stats", echange -> 
+			repondre(echange, 200, "{\"sessions\":" + sessions.getNbSessions() + "}"));
+		this.serveur.setExecutor(executeurRequetes());
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length == 2 && args[0].equals("--mesure-memoire")) {
+			mesurerMemoire(Integer.parseInt(args[1]));
+			return;
+		}
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		long delai = args.length > 1 ? Long.parseLong(args[1]) : 600;
+		ServeurJeu serveur = new ServeurJeu(port, new GestionnaireSessions(new TousNiveaux(), delai));
+		serveur.demarrer();
+		System.out.println("Serveur FlowFree démarré sur le port " + port);
+	}
+	
+	public void demarrer() {
+		serveur.start();
+	}
+	
+	public void arreter() {
+		serveur.stop(0);
+		sessions.arreter();
+	}
+	
+	/**
+	 * <b>Exécuteur créant un thread virtuel par requête si la JVM le permet.</b>
+	 * 
+	 * <p> L'appel passe par la réflexion pour que le serveur compile et fonctionne
+	 * aussi sur une JVM antérieure à Java 21, avec un pool de threads classique.
+	 */
+	private static ExecutorService executeurRequetes() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+	
+	private void traiterSessions(HttpExchange echange) throws IOException {
+		try {
+			String methode = echange.getRequestMethod();
+			String[] chemin = echange.getRequestURI().getPath().split("/");	// ["", "sessions", id, action]
+			Map<String, String> parametres = lireParametres(echange.getRequestURI().getRawQuery());
+			
+			if (chemin.length == 2) {
+				if (!methode.equals("POST")) {
+					repondreErreur(echange, 405, "Méthode non autorisée");
+					return;
+				}
+				SessionJeu session = sessions.creer(Integer.parseInt(exiger(parametres, "niveau")), parametres.get("joueur"));
+				repondre(echange, 201, session.versJson());
+				return;
+			}
+			
+			SessionJeu session = sessions.get(chemin[2]);
+			if (session == null) {
+				repondreErreur(echange, 404, "Session inconnue");
+				return;
+			}
+			String action = chemin.length > 3 ? chemin[3] : "";
+			switch (methode + " " + action) {
+			case "GET ":
+				break;
+			case "DELETE ":
+				sessions.supprimer(session.getId());
+				repondre(echange, 204, null);
+				return;
+			case "POST selection":
+				session.selectionner(Integer.parseInt(exiger(parametres, "ligne")),
+						Integer.parseInt(exiger(parametres, "colonne")));
+				break;
+			case "POST mouvement":
+				session.deplacer(Direction.valueOf(exiger(parametres, "direction")));
+				break;
+			case "POST annuler":
+				session.annuler();
+				break;
+			default:
+				repondreErreur(echange, 404, "Action inconnue");
+				return;
+			}
+			repondre(echange, 200, session.versJson());
+		} catch (RuntimeException e) {
+			repondreException(echange, e);
+		}
+	}
+	
+	/**
+	 * <b>Répond la liste des meilleurs joueurs d'un niveau, du premier au dernier.</b>
+	 * 
+	 * @see GestionnaireSessions#meilleurs(int, Classement.Critere, int)
+	 */
+	private void traiterClassement(HttpExchange echange) throws IOException {
+		try {
+			Map<String, String> parametres = lireParametres(echange.getRequestURI().getRawQuery());
+			Classement.Critere critere = Classement.Critere.valueOf(parametres.getOrDefault("critere", "TEMPS"));
+			int n = Integer.parseInt(parametres.getOrDefault("n", Integer.toString(Classement.TAILLE_PODIUM)));
+			StringBuilder json = new StringBuilder("[");
+			for (Classement.Place place : sessions.meilleurs(Integer.parseInt(exiger(parametres, "niveau")), critere, n)) {
+				if (json.length() > 1) json.append(',');
+				json.append("{\"joueur\":\"").append(echapper(place.getJoueur()))
+					.append("\",\"tempsMicros\":").append(place.getTempsMicros())
+					.append(",\"coups\":").append(place.getNbCoups()).append('}');
+			}
+			repondre(echange, 200, json.append(']').toString());
+		} catch (RuntimeException e) {
+			repondreException(echange, e);
+		}
+	}
+	
+	private static String exiger(Map<String, String> parametres, String nom) {
+		String valeur = parametres.get(nom);
+		if (valeur == null) {
+			throw new IllegalArgumentException("Paramètre " + nom + " manquant");
+		}
+		return valeur;
+	}
+	
+	private static Map<String, String> lireParametres(String requete) {
+		Map<String, String> parametres = new HashMap<String, String>();
+		if (requete == null) return parametres;
+		for (String paire : requete.split("&")) {
+			int egal = paire.indexOf('=');
+			if (egal > 0) {
+				parametres.put(URLDecoder.decode(paire.substring(0, egal), StandardCharsets.UTF_8),
+						URLDecoder.decode(paire.substring(egal + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return parametres;
+	}
+	
+	/**
+	 * <b>Répond l'erreur correspondant à une exception levée par le traitement d'une
+	 * requête, pour que le client ait toujours une réponse.</b>
+	 * 
+	 * <ul>
+	 *     <li> IllegalArgumentException (paramètre manquant ou invalide, y compris
+	 *          NumberFormatException et direction inconnue) : 400.
+	 *     <li> IllegalStateException (fichier de niveaux modifié ou illisible depuis
+	 *          son chargement, classement plein) : 409.
+	 *     <li> Autre exception : 500, avec sa trace dans la console du serveur.
+	 * </ul>
+	 */
+	private static void repondreException(HttpExchange echange, RuntimeException e) throws IOException {
+		if (e instanceof IllegalArgumentException) {
+			repondreErreur(echange, 400, e.getMessage());
+		} else if (e instanceof IllegalStateException) {
+			repondreErreur(echange, 409, e.getMessage());
+		} else {
+			e.printStackTrace();
+			repondreErreur(echange, 500, e.toString());
+		}
+	}
+	
+	private static void repondreErreur(HttpExchange echange, int code, String message) throws IOException {
+		repondre(echange, code, "{\"erreur\":\"" + (message == null ? "" : echapper(message)) + "\"}");
+	}
+	
+	/**
+	 * <b>Echappe une chaîne à écrire entre guillemets dans une réponse JSON : noms de
+	 * joueurs, noms de couleurs lus dans les fichiers de niveaux, messages d'erreur.</b>
+	 */
+	static String echapper(String texte) {
+		StringBuilder json = new StringBuilder(texte.length());
+		for (int k=0 ; k < texte.length() ; k++) {
+			char c = texte.charAt(k);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.toString();
+	}
+	
+	private static void repondre(HttpExchange echange, int code, String json) throws IOException {
+		if (json == null) {
+			echange.sendResponseHeaders(code, -1);
+			echange.close();
+			return;
+		}
+		byte[] octets = json.getBytes(StandardCharsets.UTF_8);
+		echange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		echange.sendResponseHeaders(code, octets.length);
+		try (OutputStream corps = echange.getResponseBody()) {
+			corps.write(octets);
+		}
+	}
+	
+	/**
+	 * <b>Mesure la mémoire occupée par session.</b>
+	 * 
+	 * <p> Crée nbSessions sessions réparties sur tous les niveaux, joue une sélection
+	 * et quelques mouvements dans chacune, puis compare la mémoire utilisée après
+	 * ramasse-miettes avant et après la création.
+	 * 
+	 * @param nbSessions Nombre de sessions à créer (10 000 pour l'objectif de charge).
+	 */
+	private static void mesurerMemoire(int nbSessions) {
+		TousNiveaux tousNiveaux = new TousNiveaux();
+		GestionnaireSessions gestionnaire = new GestionnaireSessions(tousNiveaux, 3600);
+		long avant = memoireUtilisee();
+		List<SessionJeu> creees = new ArrayList<SessionJeu>(nbSessions);
+		int idNiveau = 1;
+		for (int k=0 ; k < nbSessions ; k++) {
+			if (!tousNiveaux.existe(idNiveau)) idNiveau = 1;
+			SessionJeu session = gestionnaire.creer(idNiveau++);
+			for (int i=0 ; i < 2 ; i++) {
+				for (int j=0 ; j < 2 ; j++) {
+					session.selectionner(i, j);
+				}
+			}
+			for (Direction d : Direction.values()) {
+				session.deplacer(d);
+			}
+			creees.add(session);
+		}
+		long apres = memoireUtilisee();
+		System.out.println(gestionnaire.getNbSessions() + " sessions : " + (apres - avant) / (1024 * 1024) + " Mo, "
+				+ (apres - avant) / nbSessions + " octets par session");
+		gestionnaire.arreter();
+	}
+	
+	private static long memoireUtilisee() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int k=0 ; k < 3 ; k++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
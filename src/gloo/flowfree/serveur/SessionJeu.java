@@ -0,0 +1,259 @@
+package gloo.flowfree.serveur;
+
+import java.util.Arrays;
+
+import gloo.flowfree.classement.Classement;
+import gloo.flowfree.control.Controleur;
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.InstantaneTuyau;
+import gloo.flowfree.model.Topologie;
+import gloo.flowfree.model.TousNiveaux;
+
+/**
+ * <b>Classe représentant une partie hébergée par le serveur de jeu.</b>
+ * 
+ * <p> Chaque session possède son propre controleur, donc son propre plateau et
+ * ses propres tuyaux : aucun état de jeu n'est partagé entre deux sessions.
+ * 
+ * <p> L'état de la partie après chaque commande est conservé dans un historique
+ * d'instantanés des tuyaux, partagés d'un état au suivant quand ils n'ont pas
+ * changé, pour pouvoir annuler la dernière commande : seuls les tuyaux qui diffèrent
+ * de l'état précédent sont alors raccourcis et prolongés, sans rejouer la partie.
+ * 
+ * <p> Toutes les méthodes publiques sont synchronisées : les requêtes concurrentes
+ * sur une même session sont traitées l'une après l'autre, les requêtes sur des
+ * sessions différentes en parallèle.
+ * 
+ * @see GestionnaireSessions
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class SessionJeu {
+	
+	/**
+	 * <b>Etat de la partie après une commande : instantanés des tuyaux par indice dans
+	 * la palette (le tableau est celui de l'état précédent si aucun tuyau n'a changé),
+	 * couleur du tuyau courant et victoire.</b>
+	 */
+	private static final class Etat {
+		
+		private final InstantaneTuyau[] tuyaux;
+		private final int couleurCourante;
+		private final boolean gagne;
+		
+		private Etat(InstantaneTuyau[] tuyaux, int couleurCourante, boolean gagne) {
+			this.tuyaux = tuyaux;
+			this.couleurCourante = couleurCourante;
+			this.gagne = gagne;
+		}
+	}
+	
+	private final String id;
+	private final int idNiveau;
+	private final Controleur controleur;
+	
+	/**
+	 * <b>Historique des états : l'état initial, puis l'état après chaque commande non
+	 * annulée.</b>
+	 */
+	private Etat[] historique = new Etat[16];
+	private int tailleHistorique;
+	private boolean gagne;
+	
+	/**
+	 * <b>Instant (System.nanoTime) du dernier accès, utilisé pour évincer les
+	 * sessions inactives.</b>
+	 */
+	private volatile long dernierAcces;
+	
+	/**
+	 * <b>Constructeur appelé par le gestionnaire de sessions.</b>
+	 * 
+	 * @param id Identifiant de la session.
+	 * @param tousNiveaux Ensemble des niveaux partagé par toutes les sessions.
+	 * @param idNiveau Identifiant du niveau joué, dont l'existence a été vérifiée.
+	 * @param classement Classement où inscrire la victoire, null pour aucun.
+	 * @param joueur Nom du joueur, ignoré sans classement.
+	 */
+	SessionJeu(String id, TousNiveaux tousNiveaux, int idNiveau, Classement classement, String joueur) {
+		this.id = id;
+		this.idNiveau = idNiveau;
+		this.controleur = new Controleur(tousNiveaux);
+		this.controleur.setAffichageConsole(false);
+		this.controleur.setClassement(classement, joueur);
+		this.controleur.preparerNiveau(idNiveau);
+		this.historique[tailleHistorique++] = new Etat(new InstantaneTuyau[controleur.getNbCouleursPalette()], -1, false);
+		toucher();
+	}
+	
+	public String getId() {
+		return id;
+	}
+	
+	long getDernierAcces() {
+		return dernierAcces;
+	}
+	
+	void toucher() {
+		dernierAcces = System.nanoTime();
+	}
+	
+	/**
+	 * <b>Sélectionne une case du plateau.</b>
+	 * 
+	 * @see Controleur#selectionCase(int, int)
+	 * 
+	 * @return Vrai si la case contient un plot, faux sinon.
+	 * 
+	 * @throws IllegalArgumentException Si la case est hors du plateau.
+	 */
+	public synchronized boolean selectionner(int i, int j) {
+		if (i < 0 || j < 0 || i >= controleur.getNbLignes() || j >= controleur.getNbColonnes()) {
+			throw new IllegalArgumentException("Case (" + i + "," + j + ") hors du plateau");
+		}
+		try {
+			return controleur.selectionCase(i, j);
+		} finally {
+			ajouterHistorique();
+		}
+	}
+	
+	/**
+	 * <b>Fait progresser le tuyau courant dans une direction.</b>
+	 * 
+	 * @see Controleur#action(Direction)
+	 * 
+	 * @return Vrai si le niveau est réussi après ce mouvement, faux sinon.
+	 */
+	public synchronized boolean deplacer(Direction dir) {
+		try {
+			gagne |= controleur.action(dir);
+			return gagne;
+		} finally {
+			ajouterHistorique();	// Même si l'inscription au classement a échoué
+		}
+	}
+	
+	/**
+	 * <b>Annule la dernière commande (sélection ou mouvement).</b>
+	 * 
+	 * <p> Seuls les tuyaux modifiés par cette commande sont remis dans leur état
+	 * précédent. Le chronomètre et le nombre de coups de la partie sont conservés, et
+	 * une victoire annulée puis rejouée n'est comptée qu'une fois.
+	 * 
+	 * @see Controleur#restaurerPlateau(InstantaneTuyau[], InstantaneTuyau[], int)
+	 * 
+	 * @return Faux si aucune commande n'était à annuler, vrai sinon.
+	 */
+	public synchronized boolean annuler() {
+		if (tailleHistorique == 1) return false;
+		Etat annule = historique[--tailleHistorique];
+		historique[tailleHistorique] = null;
+		Etat precedent = historique[tailleHistorique - 1];
+		controleur.restaurerPlateau(precedent.tuyaux, annule.tuyaux, precedent.couleurCourante);
+		gagne = precedent.gagne;
+		return true;
+	}
+	
+	/**
+	 * <b>Représentation JSON de l'état de la session : niveau, taille, plots et
+	 * tuyaux de chaque couleur.</b>
+	 * 
+	 * <p> Un plateau bouclé ou à ponts décrit aussi sa topologie : lignes et colonnes
+	 * bouclées, coordonnées des ponts. Un plateau hexagonal est marqué "hexagonal":true
+	 * (lignes impaires décalées d'une demi-case vers la droite).
+	 * 
+	 * @return Chaîne JSON décrivant le plateau.
+	 */
+	public synchronized String versJson() {
+		StringBuilder json = new StringBuilder(256);
+		json.append("{\"session\":\"").append(id)
+			.append("\",\"niveau\":").append(idNiveau)
+			.append(",\"lignes\":").append(controleur.getNbLignes())
+			.append(",\"colonnes\":").append(controleur.getNbColonnes())
+			.append(",\"gagne\":").append(gagne);
+		Topologie topologie = controleur.getTopologie();
+		if (!topologie.estRectangulaire()) {
+			ajouterTopologie(json, topologie);
+		}
+		json.append(",\"couleurs\":[");
+		boolean premiere = true;
+		for (int c : controleur.getCouleursNiveau()) {
+			if (!premiere) json.append(',');
+			premiere = false;
+			int[][] plots = controleur.getPositionPlots(c);
+			json.append("{\"couleur\":\"").append(ServeurJeu.echapper(controleur.getNomCouleur(c))).append("\",\"plots\":[");
+			ajouterCoordonnees(json, plots[0]).append(',');
+			ajouterCoordonnees(json, plots[1]).append(']');
+			if (controleur.hasTuyau(c)) {
+				json.append(",\"depart\":");
+				ajouterCoordonnees(json, controleur.getCoordDepart(c));
+				json.append(",\"directions\":[");
+				boolean premiereDirection = true;
+				for (Direction d : controleur.getDirections(c)) {
+					if (!premiereDirection) json.append(',');
+					premiereDirection = false;
+					json.append('"').append(d.name()).append('"');
+				}
+				json.append(']');
+			}
+			json.append('}');
+		}
+		return json.append("]}").toString();
+	}
+	
+	private static void ajouterTopologie(StringBuilder json, Topologie topologie) {
+		if (topologie.estHexagonale()) json.append(",\"hexagonal\":true");
+		json.append(",\"lignesBouclees\":[");
+		String separateur = "";
+		for (int i=0 ; i < topologie.getNbLignes() ; i++) {
+			if (topologie.estLigneBouclee(i)) {
+				json.append(separateur).append(i);
+				separateur = ",";
+			}
+		}
+		json.append("],\"colonnesBouclees\":[");
+		separateur = "";
+		for (int j=0 ; j < topologie.getNbColonnes() ; j++) {
+			if (topologie.estColonneBouclee(j)) {
+				json.append(separateur).append(j);
+				separateur = ",";
+			}
+		}
+		json.append("],\"ponts\":[");
+		separateur = "";
+		for (int pont : topologie.getPonts()) {
+			json.append(separateur);
+			ajouterCoordonnees(json, new int[] { pont / topologie.getNbColonnes(), pont % topologie.getNbColonnes() });
+			separateur = ",";
+		}
+		json.append(']');
+	}
+	
+	private static StringBuilder ajouterCoordonnees(StringBuilder json, int[] coord) {
+		return json.append('[').append(coord[0]).append(',').append(coord[1]).append(']');
+	}
+	
+	/**
+	 * <b>Ajoute l'état actuel à l'historique, en reprenant les instantanés des tuyaux
+	 * que la dernière commande n'a pas modifiés.</b>
+	 * 
+	 * @see Controleur#getInstantaneTuyau(int, InstantaneTuyau)
+	 */
+	private void ajouterHistorique() {
+		InstantaneTuyau[] precedents = historique[tailleHistorique - 1].tuyaux;
+		InstantaneTuyau[] tuyaux = precedents;
+		for (int c : controleur.getCouleursNiveau()) {
+			InstantaneTuyau instantane = controleur.getInstantaneTuyau(c, precedents[c]);
+			if (instantane != precedents[c]) {
+				if (tuyaux == precedents) tuyaux = precedents.clone();
+				tuyaux[c] = instantane;
+			}
+		}
+		if (tailleHistorique == historique.length) {
+			historique = Arrays.copyOf(historique, tailleHistorique * 2);
+		}
+		historique[tailleHistorique++] = new Etat(tuyaux, controleur.getCouleurCourante(), gagne);
+	}
+}
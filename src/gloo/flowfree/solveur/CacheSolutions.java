@@ -0,0 +1,302 @@
+package gloo.flowfree.solveur;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import gloo.flowfree.model.Niveau;
+
+/**
+ * <b>Cache sur disque des solutions de niveaux, indexé par l'empreinte du contenu
+ * de chaque niveau et projeté en mémoire.</b>
+ * 
+ * <p> Format du fichier :
+ * <ul>
+ *     <li> En-tête (32 octets) : entier magique "FFSC", version, capacité de la table
+ *          d'index (puissance de 2), nombre de solutions, fin des données (long).
+ *     <li> Table d'index à adressage ouvert : pour chaque entrée, l'empreinte du niveau
+ *          (long) et la position de sa solution dans le fichier (long, 0 si l'entrée
+ *          est libre).
+ *     <li> Solutions, à la suite : nombre de lignes, de colonnes et de couleurs (octets),
+ *          nombre d'étapes du tuyau de chaque couleur (short), puis les directions de
+ *          tous les tuyaux à 3 bits par étape (ordinal de la direction, bits de poids
+ *          faible d'abord), dans l'ordre de Niveau.getCouleursNiveau().
+ * </ul>
+ * 
+ * <p> La version 1 rangeait les directions sur 2 bits, sans place pour les diagonales
+ * des plateaux hexagonaux : un tel cache est refusé et doit être recalculé.
+ * 
+ * <p> Le fichier est projeté en mémoire et n'est jamais chargé dans le tas : une
+ * recherche lit quelques entrées de la table puis décode la seule solution demandée.
+ * Les pages sont chargées par le système à la demande. Les solutions sont ajoutées
+ * à la fin des données ; l'entrée d'index n'est écrite qu'après la solution, si bien
+ * qu'une écriture interrompue ne laisse qu'une solution orpheline.
+ * 
+ * @see SolveurNiveau#solution(CacheSolutions, Niveau, long)
+ * @see Niveau#getEmpreinte()
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class CacheSolutions implements Closeable {
+	
+	static final int MAGIQUE = 0x46465343;	// "FFSC"
+	static final int VERSION = 2;
+	private static final int TAILLE_EN_TETE = 32;
+	private static final int TAILLE_ENTREE = 16;
+	private static final int CAPACITE_INITIALE = 1024;
+	private static final int MARGE_DONNEES = 64 * 1024;
+	
+	private final Path fichier;
+	private FileChannel canal;
+	private MappedByteBuffer carte;
+	private int capacite;
+	private int nbSolutions;
+	private int finDonnees;
+	
+	private CacheSolutions(Path fichier) {
+		this.fichier = fichier;
+	}
+	
+	/**
+	 * <b>Ouvre un cache, en le créant s'il n'existe pas.</b>
+	 * 
+	 * @param fichier Fichier du cache.
+	 * 
+	 * @return Le cache ouvert, à fermer après usage.
+	 * 
+	 * @throws IOException Si le fichier ne peut pas être ouvert ou n'est pas un cache
+	 *         de solutions valide.
+	 */
+	public static CacheSolutions ouvrir(Path fichier) throws IOException {
+		CacheSolutions cache = new CacheSolutions(fichier);
+		cache.projeter();
+		return cache;
+	}
+	
+	private void projeter() throws IOException {
+		canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (canal.size() == 0) {
+			capacite = CAPACITE_INITIALE;
+			finDonnees = debutDonnees(capacite);
+			carte = canal.map(FileChannel.MapMode.READ_WRITE, 0, finDonnees + MARGE_DONNEES);
+			ecrireEnTete();
+			return;
+		}
+		ByteBuffer enTete = ByteBuffer.allocate(TAILLE_EN_TETE);
+		canal.read(enTete, 0);
+		enTete.flip();
+		if (enTete.remaining() < TAILLE_EN_TETE || enTete.getInt() != MAGIQUE) {
+			canal.close();
+			throw new IOException(fichier + " n'est pas un cache de solutions FlowFree");
+		}
+		int version = enTete.getInt();
+		if (version != VERSION) {
+			canal.close();
+			throw new IOException(fichier + " : version " + version + " non supportée, cache à recalculer avec SolveurNiveau");
+		}
+		capacite = enTete.getInt();
+		nbSolutions = enTete.getInt();
+		finDonnees = (int) enTete.getLong();
+		carte = canal.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(canal.size(), finDonnees));
+	}
+	
+	// Getters
+	public synchronized int getNbSolutions() {
+		return nbSolutions;
+	}
+	
+	/**
+	 * @return La taille en octets des données utiles du fichier.
+	 */
+	public synchronized int getTaille() {
+		return finDonnees;
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Cherche la solution d'un niveau.</b>
+	 * 
+	 * @param niveau Niveau dont on cherche la solution.
+	 * 
+	 * @return Pour chaque couleur (indice dans la palette), les ordinaux des directions
+	 *         du tuyau partant de son premier plot, null pour les couleurs absentes ;
+	 *         null si le niveau n'est pas dans le cache.
+	 */
+	public synchronized byte[][] chercher(Niveau niveau) {
+		int position = (int) carte.getLong(entree(trouver(niveau.getEmpreinte())) + 8);
+		if (position == 0) return null;
+		int[] couleurs = niveau.getCouleursNiveau();
+		int k = couleurs.length;
+		if (carte.get(position) != niveau.getNbLignes() || carte.get(position + 1) != niveau.getNbColonnes()
+				|| carte.get(position + 2) != k) {
+			return null;	// Collision d'empreintes
+		}
+		byte[][] chemins = new byte[niveau.getPalette().getNbCouleurs()][];
+		int debutDirections = position + 3 + 2 * k;
+		int rang = 0;
+		for (int q=0 ; q < k ; q++) {
+			byte[] chemin = new byte[carte.getShort(position + 3 + 2 * q) & 0xFFFF];
+			for (int s=0 ; s < chemin.length ; s++, rang++) {
+				chemin[s] = (byte) lireDirection(debutDirections, rang);
+			}
+			chemins[couleurs[q]] = chemin;
+		}
+		return chemins;
+	}
+	
+	/**
+	 * <b>Ajoute la solution d'un niveau, si le cache n'en a pas déjà une.</b>
+	 * 
+	 * @param niveau Niveau résolu.
+	 * @param chemins Solution au format de chercher(Niveau).
+	 * 
+	 * @return Vrai si la solution a été ajoutée.
+	 * 
+	 * @throws IOException Si le fichier ne peut pas être agrandi.
+	 */
+	public synchronized boolean ajouter(Niveau niveau, byte[][] chemins) throws IOException {
+		long empreinte = niveau.getEmpreinte();
+		if (carte.getLong(entree(trouver(empreinte)) + 8) != 0) return false;
+		if (2 * (nbSolutions + 1) > capacite) {
+			reconstruire(2 * capacite);
+		}
+		
+		int[] couleurs = niveau.getCouleursNiveau();
+		int k = couleurs.length;
+		int nbEtapes = 0;
+		for (int c : couleurs) nbEtapes += chemins[c].length;
+		int taille = 3 + 2 * k + (3 * nbEtapes + 7) / 8;
+		reserver(finDonnees + taille);
+		
+		int position = finDonnees;
+		carte.put(position, (byte) niveau.getNbLignes());
+		carte.put(position + 1, (byte) niveau.getNbColonnes());
+		carte.put(position + 2, (byte) k);
+		int debutDirections = position + 3 + 2 * k;
+		int rang = 0;
+		for (int q=0 ; q < k ; q++) {
+			byte[] chemin = chemins[couleurs[q]];
+			carte.putShort(position + 3 + 2 * q, (short) chemin.length);
+			for (int s=0 ; s < chemin.length ; s++, rang++) {
+				ecrireDirection(debutDirections, rang, chemin[s]);
+			}
+		}
+		finDonnees += taille;
+		
+		int entree = entree(trouver(empreinte));
+		carte.putLong(entree, empreinte);
+		carte.putLong(entree + 8, position);
+		nbSolutions++;
+		ecrireEnTete();
+		return true;
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		carte.force();
+		canal.close();
+	}
+	
+	/**
+	 * @return L'ordinal de la direction de rang donné, lu sur 3 bits qui peuvent
+	 *         chevaucher deux octets.
+	 */
+	private int lireDirection(int debutDirections, int rang) {
+		int bit = 3 * rang;
+		int octet = debutDirections + (bit >> 3);
+		int bits = carte.get(octet) & 0xFF;
+		if ((bit & 7) > 5) bits |= (carte.get(octet + 1) & 0xFF) << 8;
+		return bits >> (bit & 7) & 7;
+	}
+	
+	private void ecrireDirection(int debutDirections, int rang, int ordinal) {
+		int bit = 3 * rang;
+		int octet = debutDirections + (bit >> 3);
+		int decalage = bit & 7;
+		carte.put(octet, (byte) (carte.get(octet) & ~(7 << decalage) | ordinal << decalage));
+		if (decalage > 5) {
+			carte.put(octet + 1, (byte) (carte.get(octet + 1) & ~(7 >> 8 - decalage) | ordinal >> 8 - decalage));
+		}
+	}
+	
+	private static int debutDonnees(int capacite) {
+		return TAILLE_EN_TETE + capacite * TAILLE_ENTREE;
+	}
+	
+	private static int entree(int indice) {
+		return TAILLE_EN_TETE + indice * TAILLE_ENTREE;
+	}
+	
+	/**
+	 * @return L'indice de l'entrée d'index du niveau d'empreinte donnée, ou de l'entrée
+	 *         libre où l'insérer (sondage linéaire).
+	 */
+	private int trouver(long empreinte) {
+		int masque = capacite - 1;
+		int indice = (int) (empreinte ^ empreinte >>> 32) & masque;
+		while (true) {
+			int entree = entree(indice);
+			if (carte.getLong(entree + 8) == 0 || carte.getLong(entree) == empreinte) return indice;
+			indice = indice + 1 & masque;
+		}
+	}
+	
+	private void ecrireEnTete() {
+		carte.putInt(0, MAGIQUE);
+		carte.putInt(4, VERSION);
+		carte.putInt(8, capacite);
+		carte.putInt(12, nbSolutions);
+		carte.putLong(16, finDonnees);
+	}
+	
+	/**
+	 * <b>Agrandit la projection (et le fichier) pour contenir fin octets.</b>
+	 */
+	private void reserver(long fin) throws IOException {
+		if (fin <= carte.capacity()) return;
+		long taille = Math.max(fin, 2L * carte.capacity());
+		if (taille > Integer.MAX_VALUE) {
+			throw new IOException(fichier + " : cache de solutions plein");
+		}
+		carte = canal.map(FileChannel.MapMode.READ_WRITE, 0, taille);
+	}
+	
+	/**
+	 * <b>Réécrit le fichier avec une table d'index de capacité donnée, via un fichier
+	 * temporaire renommé.</b>
+	 */
+	private void reconstruire(int nouvelleCapacite) throws IOException {
+		int ancienDebut = debutDonnees(capacite);
+		int decalage = debutDonnees(nouvelleCapacite) - ancienDebut;
+		Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+		try (FileChannel nouveau = FileChannel.open(temporaire, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer ancienneCarte = carte;
+			int ancienneCapacite = capacite;
+			carte = nouveau.map(FileChannel.MapMode.READ_WRITE, 0, finDonnees + decalage + MARGE_DONNEES);
+			capacite = nouvelleCapacite;
+			carte.put(ancienDebut + decalage, ancienneCarte, ancienDebut, finDonnees - ancienDebut);
+			for (int i=0 ; i < ancienneCapacite ; i++) {
+				long position = ancienneCarte.getLong(entree(i) + 8);
+				if (position == 0) continue;
+				long empreinte = ancienneCarte.getLong(entree(i));
+				int entree = entree(trouver(empreinte));
+				carte.putLong(entree, empreinte);
+				carte.putLong(entree + 8, position + decalage);
+			}
+			finDonnees += decalage;
+			ecrireEnTete();
+			carte.force();
+		}
+		canal.close();
+		Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		projeter();
+	}
+}
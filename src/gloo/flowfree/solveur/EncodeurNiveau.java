@@ -0,0 +1,277 @@
+package gloo.flowfree.solveur;
+
+import java.util.Arrays;
+
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Topologie;
+
+/**
+ * <b>Classe traduisant un niveau en formule CNF et un modèle de cette formule en
+ * solution du niveau.</b>
+ * 
+ * <p> Variables :
+ * <ul>
+ *     <li> Pour chaque case et chaque couleur du niveau, "la case est de cette couleur".
+ *     <li> Pour chaque paire de cases voisines, "un tuyau relie ces deux cases" (arête).
+ * </ul>
+ * 
+ * <p> Les cases sont les voies de la topologie du niveau : la voie horizontale d'un pont
+ * est une case de plus, les voisines d'une case de bord bouclé sont de l'autre côté
+ * du plateau, et une case d'un plateau hexagonal a six voisines.
+ * 
+ * <p> Contraintes :
+ * <ul>
+ *     <li> Chaque case a exactement une couleur (one-hot) ; les cases des plots ont
+ *          la couleur de leur plot.
+ *     <li> Deux cases reliées par une arête ont la même couleur.
+ *     <li> Une case de plot a exactement une arête (degré 1), toute autre case en a
+ *          exactement deux (degré 2).
+ * </ul>
+ * 
+ * <p> Ces contraintes imposent que chaque couleur forme un chemin entre ses deux plots,
+ * mais autorisent en plus des cycles isolés. Plutôt que d'encoder la connexité (coûteux
+ * en variables), les cycles sont interdits à la demande : chaque cycle trouvé dans un
+ * modèle donne une clause interdisant l'ensemble de ses arêtes, et la résolution reprend.
+ * 
+ * @see SolveurNiveau
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class EncodeurNiveau {
+	
+	private final Niveau niveau;
+	private final int nbLignes;
+	private final int nbColonnes;
+	private final Topologie topologie;
+	
+	/**
+	 * <b>Indices dans la palette des couleurs du niveau ; la couleur locale q est
+	 * couleurs[q].</b>
+	 */
+	private final int[] couleurs;
+	
+	/**
+	 * <b>Variable "la case c est de la couleur locale q", à l'indice c * couleurs.length + q.</b>
+	 */
+	private final int[] variablesCouleur;
+	
+	/**
+	 * <b>Directions de la topologie du niveau.</b>
+	 */
+	private final Direction[] directions;
+	
+	/**
+	 * <b>Variable de l'arête partant de la case c dans la direction d, à l'indice
+	 * [ordinal de d][c], 0 si elle n'en a pas ; null pour une direction absente de la
+	 * topologie. Une arête est rangée sous ses deux extrémités.</b>
+	 */
+	private final int[][] aretes;
+	
+	/**
+	 * <b>Couleur locale + 1 du plot de chaque case, 0 si la case n'a pas de plot.</b>
+	 */
+	private final int[] plots;
+	
+	private final FormuleCnf formule = new FormuleCnf();
+	
+	// Constructeur
+	/**
+	 * <b>Constructeur encodant le niveau.</b>
+	 * 
+	 * @param niveau Niveau à encoder.
+	 */
+	public EncodeurNiveau(Niveau niveau) {
+		this.niveau = niveau;
+		this.nbLignes = niveau.getNbLignes();
+		this.nbColonnes = niveau.getNbColonnes();
+		this.couleurs = niveau.getCouleursNiveau();
+		this.topologie = niveau.getTopologie();
+		this.directions = topologie.getDirections();
+		int nbCases = topologie.getNbVoies();
+		int k = couleurs.length;
+		this.variablesCouleur = new int[nbCases * k];
+		this.aretes = new int[Direction.values().length][];
+		for (Direction d : directions) {
+			aretes[d.ordinal()] = new int[nbCases];
+		}
+		this.plots = new int[nbCases];
+		formule.ajouterCommentaire("FlowFree niveau " + niveau.getId() + " : " + nbLignes + "x" + nbColonnes
+				+ ", " + k + " couleurs");
+		formule.ajouterCommentaire("cycles isolés non interdits, sauf clauses ajoutées après résolution");
+		
+		// Une couleur par case
+		for (int c=0 ; c < nbCases ; c++) {
+			int[] unParmi = new int[k];
+			for (int q=0 ; q < k ; q++) {
+				unParmi[q] = variablesCouleur[c * k + q] = formule.nouvelleVariable();
+			}
+			formule.ajouterClause(unParmi);
+			formule.auPlusUn(unParmi);
+		}
+		for (int q=0 ; q < k ; q++) {
+			for (int[] plot : niveau.getPlotsCouleur(couleurs[q])) {
+				int c = plot[0] * nbColonnes + plot[1];
+				plots[c] = q + 1;
+				formule.ajouterClause(variablesCouleur[c * k + q]);
+			}
+		}
+		
+		// Arêtes entre cases voisines, de même couleur, créées depuis leur première extrémité
+		// (droite puis bas pour une case d'un plateau rectangulaire)
+		for (int c=0 ; c < nbCases ; c++) {
+			for (int r = directions.length - 1 ; r >= 0 ; r--) {
+				Direction d = directions[r];
+				int v = topologie.voisin(c, d);
+				if (v >= 0 && aretes[d.ordinal()][c] == 0) {
+					int arete = nouvelleArete(c, v);
+					aretes[d.ordinal()][c] = arete;
+					aretes[d.getOpposee().ordinal()][v] = arete;
+				}
+			}
+		}
+		
+		// Degré de chaque case
+		int[] incidentes = new int[directions.length];
+		for (int c=0 ; c < nbCases ; c++) {
+			int n = 0;
+			for (Direction d : directions) {
+				int arete = arete(c, d);
+				if (arete != 0) incidentes[n++] = arete;
+			}
+			int[] aretes = new int[n];
+			System.arraycopy(incidentes, 0, aretes, 0, n);
+			formule.exactement(plots[c] != 0 ? 1 : 2, aretes);
+		}
+	}
+	
+	private int nouvelleArete(int c1, int c2) {
+		int arete = formule.nouvelleVariable();
+		int k = couleurs.length;
+		for (int q=0 ; q < k ; q++) {
+			formule.ajouterClause(-arete, -variablesCouleur[c1 * k + q], variablesCouleur[c2 * k + q]);
+			formule.ajouterClause(-arete, -variablesCouleur[c2 * k + q], variablesCouleur[c1 * k + q]);
+		}
+		return arete;
+	}
+	
+	// Getters
+	public FormuleCnf getFormule() {
+		return formule;
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Méthode cherchant les cycles isolés d'un modèle et ajoutant, pour chacun, une
+	 * clause qui l'interdit, à la formule et au solveur.</b>
+	 * 
+	 * @param solveur Solveur venant de répondre SATISFIABLE.
+	 * @return Le nombre de cycles interdits, 0 si le modèle est une solution.
+	 */
+	public int interdireCycles(SolveurCdcl solveur) {
+		int nbCases = topologie.getNbVoies();
+		boolean[] visitees = new boolean[nbCases];
+		for (int q=0 ; q < couleurs.length ; q++) {
+			int[][] positions = niveau.getPlotsCouleur(couleurs[q]);
+			suivre(solveur, positions[0][0] * nbColonnes + positions[0][1], visitees, null);
+		}
+		int nbCycles = 0;
+		for (int c=0 ; c < nbCases ; c++) {
+			if (!visitees[c]) {
+				int[] aretes = new int[nbCases];
+				int n = suivre(solveur, c, visitees, aretes);
+				int[] clause = new int[n];
+				for (int a=0 ; a < n ; a++) {
+					clause[a] = -aretes[a];
+				}
+				formule.ajouterClause(clause);
+				solveur.ajouterClause(clause);
+				nbCycles++;
+			}
+		}
+		return nbCycles;
+	}
+	
+	/**
+	 * <b>Méthode lisant dans un modèle sans cycle le chemin de chaque couleur.</b>
+	 * 
+	 * @param solveur Solveur venant de répondre SATISFIABLE.
+	 * @param nbCouleursPalette Nombre de couleurs de la palette du niveau.
+	 * 
+	 * @return Pour chaque couleur (indice dans la palette), les ordinaux des directions
+	 *         du tuyau partant de son premier plot, null pour les couleurs absentes du
+	 *         niveau : le format de VerificateurSolutions.verifier(Niveau, byte[][]).
+	 */
+	public byte[][] decoder(SolveurCdcl solveur, int nbCouleursPalette) {
+		byte[][] chemins = new byte[nbCouleursPalette][];
+		byte[] chemin = new byte[topologie.getNbVoies()];
+		for (int q=0 ; q < couleurs.length ; q++) {
+			int[][] positions = niveau.getPlotsCouleur(couleurs[q]);
+			int precedente = -1;
+			int courante = positions[0][0] * nbColonnes + positions[0][1];
+			int arrivee = positions[1][0] * nbColonnes + positions[1][1];
+			int n = 0;
+			while (courante != arrivee) {
+				for (Direction d : directions) {
+					int arete = arete(courante, d);
+					int voisine = voisine(courante, d);
+					if (arete != 0 && voisine != precedente && solveur.valeur(arete)) {
+						chemin[n++] = (byte) d.ordinal();
+						precedente = courante;
+						courante = voisine;
+						break;
+					}
+				}
+			}
+			chemins[couleurs[q]] = Arrays.copyOf(chemin, n);
+		}
+		return chemins;
+	}
+	
+	/**
+	 * <b>Parcourt la composante (chemin ou cycle) contenant la case de départ, en
+	 * marquant ses cases.</b>
+	 * 
+	 * @return Le nombre d'arêtes parcourues, rangées dans aretes si non null.
+	 */
+	private int suivre(SolveurCdcl solveur, int depart, boolean[] visitees, int[] aretes) {
+		int n = 0;
+		int courante = depart;
+		visitees[courante] = true;
+		boolean avance = true;
+		while (avance) {
+			avance = false;
+			for (Direction d : directions) {
+				int arete = arete(courante, d);
+				if (arete == 0 || !solveur.valeur(arete)) continue;
+				int voisine = voisine(courante, d);
+				if (voisine == depart && aretes != null && n > 1) {	// Fermeture du cycle
+					aretes[n++] = arete;
+					return n;
+				}
+				if (!visitees[voisine]) {
+					if (aretes != null) aretes[n] = arete;
+					n++;
+					visitees[voisine] = true;
+					courante = voisine;
+					avance = true;
+					break;
+				}
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * @return La variable de l'arête partant de la case c dans la direction d, 0 si
+	 *         elle sortirait du plateau.
+	 */
+	private int arete(int c, Direction d) {
+		return topologie.voisin(c, d) < 0 ? 0 : aretes[d.ordinal()][c];
+	}
+	
+	private int voisine(int c, Direction d) {
+		return topologie.voisin(c, d);
+	}
+}
@@ -0,0 +1,153 @@
+package gloo.flowfree.solveur;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>Classe représentant une formule en forme normale conjonctive (CNF).</b>
+ * 
+ * <p> Les variables sont numérotées à partir de 1 et les littéraux suivent la
+ * convention DIMACS : v pour la variable v vraie, -v pour la variable v fausse.
+ * Une clause est un tableau de littéraux dont au moins un doit être vrai.
+ * 
+ * <p> La formule peut être écrite au format DIMACS pour être comparée hors ligne
+ * avec des solveurs de référence.
+ * 
+ * @see EncodeurNiveau
+ * @see SolveurCdcl
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class FormuleCnf {
+	
+	/**
+	 * <b>Nombre de variables déclarées.</b>
+	 */
+	private int nbVariables;
+	
+	/**
+	 * <b>Clauses de la formule, dans leur ordre d'ajout.</b>
+	 */
+	private ArrayList<int[]> clauses = new ArrayList<int[]>();
+	
+	/**
+	 * <b>Commentaires écrits en tête du fichier DIMACS.</b>
+	 */
+	private ArrayList<String> commentaires = new ArrayList<String>();
+	
+	// Getters
+	public int getNbVariables() {
+		return nbVariables;
+	}
+	
+	public List<int[]> getClauses() {
+		return clauses;
+	}
+	
+	// Autres méthodes
+	/**
+	 * @return Le numéro (DIMACS) d'une nouvelle variable.
+	 */
+	public int nouvelleVariable() {
+		return ++nbVariables;
+	}
+	
+	/**
+	 * <b>Méthode ajoutant une clause à la formule.</b>
+	 * 
+	 * @param litteraux Littéraux DIMACS de la clause, dont au moins un doit être vrai.
+	 */
+	public void ajouterClause(int... litteraux) {
+		for (int l : litteraux) {
+			if (l == 0 || Math.abs(l) > nbVariables) {
+				throw new IllegalArgumentException("Littéral " + l + " hors des " + nbVariables + " variables");
+			}
+		}
+		clauses.add(litteraux.clone());
+	}
+	
+	/**
+	 * <b>Méthode imposant qu'exactement n des littéraux donnés soient vrais.</b>
+	 * 
+	 * <p> Encodage par sous-ensembles, réservé aux petites listes (les degrés
+	 * d'une case, au plus 4) : pour toute partie de n + 1 littéraux, l'un d'eux est
+	 * faux ; pour toute partie de taille - n + 1 littéraux, l'un d'eux est vrai.
+	 * 
+	 * @param n Nombre de littéraux vrais exigé.
+	 * @param litteraux Littéraux DIMACS, au plus 16.
+	 */
+	public void exactement(int n, int... litteraux) {
+		int taille = litteraux.length;
+		if (n > taille) {
+			clauses.add(new int[0]);	// Contrainte impossible
+			return;
+		}
+		for (int partie = 1 ; partie < 1 << taille ; partie++) {
+			int cardinal = Integer.bitCount(partie);
+			if (cardinal == n + 1) {
+				ajouterClause(partie(litteraux, partie, true));
+			}
+			if (cardinal == taille - n + 1) {
+				ajouterClause(partie(litteraux, partie, false));
+			}
+		}
+	}
+	
+	/**
+	 * <b>Méthode imposant qu'au plus un des littéraux donnés soit vrai (encodage par paires).</b>
+	 * 
+	 * @param litteraux Littéraux DIMACS.
+	 */
+	public void auPlusUn(int... litteraux) {
+		for (int a=0 ; a < litteraux.length ; a++) {
+			for (int b = a + 1 ; b < litteraux.length ; b++) {
+				ajouterClause(-litteraux[a], -litteraux[b]);
+			}
+		}
+	}
+	
+	public void ajouterCommentaire(String commentaire) {
+		commentaires.add(commentaire);
+	}
+	
+	/**
+	 * <b>Méthode écrivant la formule au format DIMACS CNF.</b>
+	 * 
+	 * @param fichier Fichier à écrire.
+	 * 
+	 * @throws IOException Si l'écriture échoue.
+	 */
+	public void ecrireDimacs(Path fichier) throws IOException {
+		try (BufferedWriter sortie = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8)) {
+			for (String commentaire : commentaires) {
+				sortie.write("c " + commentaire + "\n");
+			}
+			sortie.write("p cnf " + nbVariables + " " + clauses.size() + "\n");
+			StringBuilder ligne = new StringBuilder();
+			for (int[] clause : clauses) {
+				ligne.setLength(0);
+				for (int l : clause) {
+					ligne.append(l).append(' ');
+				}
+				sortie.write(ligne.append("0\n").toString());
+			}
+		}
+	}
+	
+	private static int[] partie(int[] litteraux, int partie, boolean negation) {
+		int[] clause = new int[Integer.bitCount(partie)];
+		int k = 0;
+		for (int b=0 ; b < litteraux.length ; b++) {
+			if ((partie & 1 << b) != 0) {
+				clause[k++] = negation ? -litteraux[b] : litteraux[b];
+			}
+		}
+		return clause;
+	}
+}
@@ -0,0 +1,255 @@
+package gloo.flowfree.solveur;
+
+import java.util.Arrays;
+
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Topologie;
+
+/**
+ * <b>Recherche arborescente de référence, proche du raisonnement d'un joueur, servant
+ * à mesurer la difficulté d'un niveau.</b>
+ * 
+ * <p> Chaque couleur est prolongée depuis son premier plot. À chaque nœud, la couleur
+ * dont la tête a le moins de prolongements possibles est choisie (un seul prolongement :
+ * coup forcé, aucun : impasse), puis chacun de ses prolongements est essayé. Une branche
+ * est abandonnée dès qu'une case libre n'a plus deux voisines par lesquelles un tuyau
+ * pourrait passer.
+ * 
+ * <p> Contrairement au solveur SAT, cette recherche compte des coups de joueur : son
+ * nombre de nœuds, son facteur de branchement et sa proportion de coups forcés sont
+ * des mesures de difficulté.
+ * 
+ * @see SolveurNiveau
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class RechercheReference {
+	
+	private final int nbCases;
+	private final int nbCouleurs;
+	
+	/**
+	 * <b>Topologie du niveau, qui donne les 4 voisines de chaque case (ou voie de pont),
+	 * ou les 6 voisines d'une case hexagonale, -1 hors du plateau.</b>
+	 */
+	private final Topologie topologie;
+	
+	/**
+	 * <b>Ordinaux des directions de la topologie : de premiereDirection (inclus) à
+	 * finDirections (exclu).</b>
+	 */
+	private final int premiereDirection;
+	private final int finDirections;
+	
+	/**
+	 * <b>Couleur locale + 1 occupant chaque case, 0 si la case est libre.</b>
+	 */
+	private final int[] occupants;
+	
+	/**
+	 * <b>Couleur locale + 1 dont la case est la tête (couleur non terminée), 0 sinon.</b>
+	 */
+	private final int[] teteDe;
+	
+	/**
+	 * <b>Couleur locale + 1 dont la case est le plot d'arrivée, 0 sinon.</b>
+	 */
+	private final int[] cibleDe;
+	
+	private final int[] tetes;
+	private final int[] cibles;
+	private final boolean[] terminees;
+	private int nbTerminees;
+	private int nbLibres;
+	
+	/**
+	 * <b>Coup forcé ou non, pour chaque profondeur de la branche courante.</b>
+	 */
+	private final boolean[] forces;
+	
+	private final long limiteNoeuds;
+	private long noeuds;
+	private long sommeProlongements;
+	private int coupsSolution;
+	private int coupsForcesSolution;
+	private boolean resolu;
+	private boolean interrompue;
+	
+	// Constructeur
+	/**
+	 * @param niveau Niveau à explorer.
+	 * @param limiteNoeuds Nombre maximal de nœuds explorés avant abandon.
+	 */
+	public RechercheReference(Niveau niveau, long limiteNoeuds) {
+		int nbColonnes = niveau.getNbColonnes();
+		int[] couleurs = niveau.getCouleursNiveau();
+		this.topologie = niveau.getTopologie();
+		this.premiereDirection = topologie.getPremiereDirection();
+		this.finDirections = premiereDirection + topologie.getDirections().length;
+		this.nbCases = topologie.getNbVoies();
+		this.nbCouleurs = couleurs.length;
+		this.limiteNoeuds = limiteNoeuds;
+		this.occupants = new int[nbCases];
+		this.teteDe = new int[nbCases];
+		this.cibleDe = new int[nbCases];
+		this.tetes = new int[nbCouleurs];
+		this.cibles = new int[nbCouleurs];
+		this.terminees = new boolean[nbCouleurs];
+		this.forces = new boolean[nbCases + 1];
+		this.nbLibres = nbCases;
+		for (int q=0 ; q < nbCouleurs ; q++) {
+			int[][] plots = niveau.getPlotsCouleur(couleurs[q]);
+			tetes[q] = plots[0][0] * nbColonnes + plots[0][1];
+			cibles[q] = plots[1][0] * nbColonnes + plots[1][1];
+			occupants[tetes[q]] = q + 1;
+			occupants[cibles[q]] = q + 1;
+			teteDe[tetes[q]] = q + 1;
+			cibleDe[cibles[q]] = q + 1;
+			nbLibres -= 2;
+		}
+	}
+	
+	// Getters
+	public long getNoeuds() {
+		return noeuds;
+	}
+	
+	public boolean estResolu() {
+		return resolu;
+	}
+	
+	/**
+	 * @return Vrai si la limite de nœuds a été atteinte avant la fin de la recherche.
+	 */
+	public boolean estInterrompue() {
+		return interrompue;
+	}
+	
+	/**
+	 * @return Le nombre moyen de prolongements possibles de la couleur choisie à chaque nœud.
+	 */
+	public double getFacteurBranchement() {
+		return noeuds == 0 ? 0 : (double) sommeProlongements / noeuds;
+	}
+	
+	/**
+	 * @return La proportion de coups forcés parmi les coups de la solution trouvée, 0 si
+	 *         aucune solution n'a été trouvée.
+	 */
+	public double getRatioCoupsForces() {
+		return coupsSolution == 0 ? 0 : (double) coupsForcesSolution / coupsSolution;
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Lance la recherche.</b>
+	 * 
+	 * @return Vrai si une solution a été trouvée dans la limite de nœuds.
+	 */
+	public boolean chercher() {
+		Arrays.fill(forces, false);
+		resolu = chercher(0);
+		return resolu;
+	}
+	
+	private boolean chercher(int profondeur) {
+		if (nbTerminees == nbCouleurs) {
+			if (nbLibres != 0) return false;
+			coupsSolution = profondeur;
+			for (int p=0 ; p < profondeur ; p++) {
+				if (forces[p]) coupsForcesSolution++;
+			}
+			return true;
+		}
+		if (noeuds >= limiteNoeuds) {
+			interrompue = true;
+			return false;
+		}
+		noeuds++;
+		
+		// Couleur la plus contrainte
+		int choisie = -1;
+		int minimum = finDirections - premiereDirection + 1;
+		for (int q=0 ; q < nbCouleurs && minimum > 1 ; q++) {
+			if (terminees[q]) continue;
+			int n = nbProlongements(q);
+			if (n == 0) return false;
+			if (n < minimum) {
+				minimum = n;
+				choisie = q;
+			}
+		}
+		sommeProlongements += minimum;
+		forces[profondeur] = minimum == 1;
+		
+		int tete = tetes[choisie];
+		for (int d = premiereDirection ; d < finDirections ; d++) {
+			int v = topologie.voisin(tete, d);
+			if (!estProlongement(choisie, v)) continue;
+			boolean arrivee = v == cibles[choisie];
+			teteDe[tete] = 0;
+			tetes[choisie] = v;
+			if (arrivee) {
+				terminees[choisie] = true;
+				nbTerminees++;
+			} else {
+				occupants[v] = choisie + 1;
+				teteDe[v] = choisie + 1;
+				nbLibres--;
+			}
+			if (!impasseAutour(tete) && !impasseAutour(v) && chercher(profondeur + 1)) {
+				return true;
+			}
+			if (arrivee) {
+				terminees[choisie] = false;
+				nbTerminees--;
+			} else {
+				occupants[v] = 0;
+				teteDe[v] = 0;
+				nbLibres++;
+			}
+			tetes[choisie] = tete;
+			teteDe[tete] = choisie + 1;
+			if (interrompue) return false;
+		}
+		return false;
+	}
+	
+	private boolean estProlongement(int q, int v) {
+		return v >= 0 && (occupants[v] == 0 || v == cibles[q]);
+	}
+	
+	private int nbProlongements(int q) {
+		int n = 0;
+		for (int d = premiereDirection ; d < finDirections ; d++) {
+			if (estProlongement(q, topologie.voisin(tetes[q], d))) n++;
+		}
+		return n;
+	}
+	
+	/**
+	 * @return Vrai si une case libre voisine de c ne peut plus être traversée par un tuyau.
+	 */
+	private boolean impasseAutour(int c) {
+		for (int d = premiereDirection ; d < finDirections ; d++) {
+			int v = topologie.voisin(c, d);
+			if (v >= 0 && occupants[v] == 0 && nbAccesLibres(v) < 2) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return Le nombre de voisines de c par lesquelles un tuyau peut encore entrer ou
+	 *         sortir : cases libres, têtes et plots d'arrivée des couleurs non terminées.
+	 */
+	private int nbAccesLibres(int c) {
+		int n = 0;
+		for (int d = premiereDirection ; d < finDirections ; d++) {
+			int v = topologie.voisin(c, d);
+			if (v < 0) continue;
+			if (occupants[v] == 0 || teteDe[v] != 0 || (cibleDe[v] != 0 && !terminees[cibleDe[v] - 1])) n++;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,611 @@
+package gloo.flowfree.solveur;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * <b>Solveur SAT CDCL (Conflict-Driven Clause Learning) écrit entièrement en Java.</b>
+ * 
+ * <p> Le solveur reprend les techniques classiques des solveurs modernes :
+ * <ul>
+ *     <li> Propagation unitaire par deux littéraux surveillés par clause : seule la
+ *          liste des clauses surveillant un littéral devenu faux est parcourue.
+ *     <li> Analyse de conflit au premier point d'implication unique (1-UIP), apprentissage
+ *          de la clause obtenue et retour en arrière non chronologique.
+ *     <li> Heuristique de choix VSIDS : l'activité des variables rencontrées dans les
+ *          conflits augmente, les variables sont tirées d'un tas ordonné par activité.
+ *     <li> Mémorisation de la dernière valeur de chaque variable (phase saving).
+ *     <li> Redémarrages suivant la suite de Luby et suppression régulière des clauses
+ *          apprises les moins utiles (LBD élevé).
+ * </ul>
+ * 
+ * <p> En interne, le littéral de la variable v (numérotée à partir de 0) vaut 2v s'il est
+ * positif et 2v + 1 s'il est négatif. Les clauses sont reçues au format DIMACS.
+ * 
+ * <p> Le solveur est incrémental : des clauses peuvent être ajoutées après une réponse
+ * SATISFIABLE, les clauses apprises restant valables.
+ * 
+ * @see FormuleCnf
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class SolveurCdcl {
+	
+	/**
+	 * <b>Réponses possibles du solveur.</b>
+	 */
+	public enum Resultat {
+		SATISFIABLE,
+		INSATISFIABLE,
+		/** Limite de conflits atteinte avant de conclure. */
+		INCONNU,
+	}
+	
+	private static final int AUCUNE = -1;
+	private static final double DECROISSANCE_ACTIVITE = 0.95;
+	private static final int UNITE_REDEMARRAGE = 100;
+	
+	private final int nbVariables;
+	
+	/**
+	 * <b>Clauses (originales puis apprises), null une fois supprimées.</b>
+	 * 
+	 * <p> Les deux premiers littéraux d'une clause sont ses littéraux surveillés ;
+	 * pour une clause raison d'une affectation, le premier est le littéral impliqué.
+	 */
+	private final ArrayList<int[]> clauses = new ArrayList<int[]>();
+	
+	/**
+	 * <b>LBD (nombre de niveaux de décision distincts) de chaque clause apprise, 0
+	 * pour les clauses originales.</b>
+	 */
+	private final ListeEntiers lbd = new ListeEntiers();
+	
+	/**
+	 * <b>Indices des clauses apprises encore présentes.</b>
+	 */
+	private ListeEntiers apprises = new ListeEntiers();
+	
+	/**
+	 * <b>Pour chaque littéral, indices des clauses qui le surveillent.</b>
+	 */
+	private final ListeEntiers[] surveillances;
+	
+	/**
+	 * <b>Valeur de chaque variable : 1 vraie, -1 fausse, 0 non affectée.</b>
+	 */
+	private final byte[] valeurs;
+	private final int[] niveaux;
+	private final int[] raisons;
+	private final boolean[] phases;
+	private final boolean[] vus;
+	
+	private final double[] activites;
+	private double incrementActivite = 1;
+	private final TasVariables tas;
+	
+	/**
+	 * <b>Littéraux affectés, dans l'ordre d'affectation.</b>
+	 */
+	private final int[] trainee;
+	private int tailleTrainee;
+	private int tetePropagation;
+	private final ListeEntiers limitesNiveaux = new ListeEntiers();
+	
+	private boolean insatisfiable;
+	private boolean[] modele;
+	private int maxApprises;
+	
+	private long nbConflits;
+	private long nbDecisions;
+	private long nbPropagations;
+	private long nbRedemarrages;
+	
+	// Constructeurs
+	/**
+	 * @param nbVariables Nombre de variables (numérotées de 1 à nbVariables en DIMACS).
+	 */
+	public SolveurCdcl(int nbVariables) {
+		this.nbVariables = nbVariables;
+		this.surveillances = new ListeEntiers[2 * nbVariables];
+		for (int l=0 ; l < surveillances.length ; l++) {
+			surveillances[l] = new ListeEntiers();
+		}
+		this.valeurs = new byte[nbVariables];
+		this.niveaux = new int[nbVariables];
+		this.raisons = new int[nbVariables];
+		Arrays.fill(raisons, AUCUNE);
+		this.phases = new boolean[nbVariables];
+		this.vus = new boolean[nbVariables];
+		this.activites = new double[nbVariables];
+		this.trainee = new int[nbVariables];
+		this.tas = new TasVariables();
+		for (int v=0 ; v < nbVariables ; v++) {
+			tas.inserer(v);
+		}
+		this.maxApprises = 2000;
+	}
+	
+	/**
+	 * <b>Construit un solveur contenant toutes les clauses d'une formule.</b>
+	 */
+	public SolveurCdcl(FormuleCnf formule) {
+		this(formule.getNbVariables());
+		for (int[] clause : formule.getClauses()) {
+			ajouterClause(clause);
+		}
+		this.maxApprises = Math.max(2000, clauses.size() / 3);
+	}
+	
+	// Getters
+	public long getNbConflits() {
+		return nbConflits;
+	}
+	
+	public long getNbDecisions() {
+		return nbDecisions;
+	}
+	
+	public long getNbPropagations() {
+		return nbPropagations;
+	}
+	
+	public long getNbRedemarrages() {
+		return nbRedemarrages;
+	}
+	
+	/**
+	 * <b>Valeur d'une variable dans le dernier modèle trouvé.</b>
+	 * 
+	 * @param variable Numéro DIMACS de la variable.
+	 * @return Vrai si la variable est vraie dans le modèle.
+	 */
+	public boolean valeur(int variable) {
+		return modele[variable - 1];
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Méthode ajoutant une clause, avant la résolution ou entre deux résolutions.</b>
+	 * 
+	 * <p> Les littéraux en double sont retirés, une tautologie est ignorée et les
+	 * littéraux déjà faux au niveau 0 sont retirés.
+	 * 
+	 * @param dimacs Littéraux DIMACS de la clause.
+	 */
+	public void ajouterClause(int... dimacs) {
+		if (insatisfiable) return;
+		retourArriere(0);
+		int[] clause = new int[dimacs.length];
+		for (int k=0 ; k < dimacs.length ; k++) {
+			int d = dimacs[k];
+			clause[k] = d > 0 ? 2 * (d - 1) : 2 * (-d - 1) + 1;
+		}
+		Arrays.sort(clause);
+		int n = 0;
+		for (int k=0 ; k < clause.length ; k++) {
+			int l = clause[k];
+			if (k > 0 && l == clause[k - 1]) continue;
+			if (k > 0 && l == (clause[k - 1] ^ 1)) return;	// Tautologie
+			int valeur = valeurLitteral(l);
+			if (valeur == 1) return;	// Déjà satisfaite
+			if (valeur == 0) clause[n++] = l;
+		}
+		if (n == 0) {
+			insatisfiable = true;
+		} else if (n == 1) {
+			affecter(clause[0], AUCUNE);
+			if (propager() != AUCUNE) insatisfiable = true;
+		} else {
+			attacher(Arrays.copyOf(clause, n), 0);
+		}
+	}
+	
+	/**
+	 * <b>Méthode résolvant la formule sans limite de conflits.</b>
+	 * 
+	 * @see SolveurCdcl#resoudre(long)
+	 */
+	public Resultat resoudre() {
+		return resoudre(0);
+	}
+	
+	/**
+	 * <b>Méthode recherchant une affectation satisfaisant toutes les clauses.</b>
+	 * 
+	 * @param limiteConflits Nombre maximal de conflits pour cet appel, 0 pour aucune limite.
+	 * 
+	 * @return SATISFIABLE (le modèle est alors lisible par valeur(int)), INSATISFIABLE,
+	 *         ou INCONNU si la limite a été atteinte.
+	 */
+	public Resultat resoudre(long limiteConflits) {
+		if (insatisfiable) return Resultat.INSATISFIABLE;
+		retourArriere(0);
+		long conflitsAppel = 0;
+		int indiceLuby = 1;
+		long seuilRedemarrage = UNITE_REDEMARRAGE * luby(indiceLuby);
+		long conflitsDepuisRedemarrage = 0;
+		ListeEntiers appris = new ListeEntiers();
+		
+		while (true) {
+			int conflit = propager();
+			if (conflit != AUCUNE) {
+				nbConflits++;
+				conflitsAppel++;
+				conflitsDepuisRedemarrage++;
+				if (niveauCourant() == 0) {
+					insatisfiable = true;
+					return Resultat.INSATISFIABLE;
+				}
+				int niveauRetour = analyser(conflit, appris);
+				int[] clause = appris.versTableau();
+				int lbdClause = calculerLbd(clause);
+				retourArriere(niveauRetour);
+				if (clause.length == 1) {
+					affecter(clause[0], AUCUNE);
+				} else {
+					int indice = attacher(clause, lbdClause);
+					apprises.ajouter(indice);
+					affecter(clause[0], indice);
+				}
+				incrementActivite /= DECROISSANCE_ACTIVITE;
+				if (limiteConflits > 0 && conflitsAppel >= limiteConflits) {
+					retourArriere(0);
+					return Resultat.INCONNU;
+				}
+			} else {
+				if (conflitsDepuisRedemarrage >= seuilRedemarrage) {
+					retourArriere(0);
+					nbRedemarrages++;
+					conflitsDepuisRedemarrage = 0;
+					seuilRedemarrage = UNITE_REDEMARRAGE * luby(++indiceLuby);
+					continue;
+				}
+				if (apprises.taille() - tailleTrainee >= maxApprises) {
+					reduireApprises();
+				}
+				int decision = decider();
+				if (decision == AUCUNE) {
+					modele = new boolean[nbVariables];
+					for (int v=0 ; v < nbVariables ; v++) {
+						modele[v] = valeurs[v] > 0;
+					}
+					return Resultat.SATISFIABLE;
+				}
+				nbDecisions++;
+				limitesNiveaux.ajouter(tailleTrainee);
+				affecter(decision, AUCUNE);
+			}
+		}
+	}
+	
+	/**
+	 * <b>Propagation unitaire par littéraux surveillés.</b>
+	 * 
+	 * @return L'indice d'une clause en conflit, AUCUNE sinon.
+	 */
+	private int propager() {
+		while (tetePropagation < tailleTrainee) {
+			int faux = trainee[tetePropagation++] ^ 1;
+			nbPropagations++;
+			ListeEntiers liste = surveillances[faux];
+			int n = liste.taille();
+			int i = 0;
+			int j = 0;
+			while (i < n) {
+				int indice = liste.get(i++);
+				int[] c = clauses.get(indice);
+				if (c == null) continue;	// Clause supprimée : oubliée ici
+				if (c[0] == faux) {
+					c[0] = c[1];
+					c[1] = faux;
+				}
+				if (valeurLitteral(c[0]) == 1) {
+					liste.set(j++, indice);
+					continue;
+				}
+				boolean remplace = false;
+				for (int k=2 ; k < c.length ; k++) {
+					if (valeurLitteral(c[k]) != -1) {
+						c[1] = c[k];
+						c[k] = faux;
+						surveillances[c[1]].ajouter(indice);
+						remplace = true;
+						break;
+					}
+				}
+				if (remplace) continue;
+				liste.set(j++, indice);
+				if (valeurLitteral(c[0]) == -1) {
+					while (i < n) liste.set(j++, liste.get(i++));
+					liste.tronquer(j);
+					tetePropagation = tailleTrainee;
+					return indice;
+				}
+				affecter(c[0], indice);
+			}
+			liste.tronquer(j);
+		}
+		return AUCUNE;
+	}
+	
+	/**
+	 * <b>Analyse d'un conflit au premier point d'implication unique.</b>
+	 * 
+	 * @param conflit Indice de la clause en conflit.
+	 * @param appris Reçoit la clause apprise, littéral assertif en tête et littéral du
+	 *               niveau de retour en deuxième position.
+	 * @return Le niveau de retour en arrière.
+	 */
+	private int analyser(int conflit, ListeEntiers appris) {
+		appris.tronquer(0);
+		appris.ajouter(AUCUNE);
+		int compteur = 0;
+		int p = AUCUNE;
+		int index = tailleTrainee - 1;
+		int indice = conflit;
+		int niveau = niveauCourant();
+		do {
+			int[] c = clauses.get(indice);
+			for (int k = (p == AUCUNE ? 0 : 1) ; k < c.length ; k++) {
+				int q = c[k];
+				int v = q >> 1;
+				if (!vus[v] && niveaux[v] > 0) {
+					vus[v] = true;
+					augmenterActivite(v);
+					if (niveaux[v] >= niveau) {
+						compteur++;
+					} else {
+						appris.ajouter(q);
+					}
+				}
+			}
+			while (!vus[trainee[index] >> 1]) index--;
+			p = trainee[index--];
+			indice = raisons[p >> 1];
+			vus[p >> 1] = false;
+			compteur--;
+		} while (compteur > 0);
+		appris.set(0, p ^ 1);
+		
+		int niveauRetour = 0;
+		int position = 1;
+		for (int k=1 ; k < appris.taille() ; k++) {
+			int v = appris.get(k) >> 1;
+			vus[v] = false;
+			if (niveaux[v] > niveauRetour) {
+				niveauRetour = niveaux[v];
+				position = k;
+			}
+		}
+		if (appris.taille() > 1) {
+			int l = appris.get(1);
+			appris.set(1, appris.get(position));
+			appris.set(position, l);
+		}
+		return niveauRetour;
+	}
+	
+	private int calculerLbd(int[] clause) {
+		int nb = 0;
+		int[] niveauxVus = new int[clause.length];
+		for (int l : clause) {
+			int niveau = niveaux[l >> 1];
+			boolean nouveau = true;
+			for (int k=0 ; k < nb ; k++) {
+				if (niveauxVus[k] == niveau) {
+					nouveau = false;
+					break;
+				}
+			}
+			if (nouveau) niveauxVus[nb++] = niveau;
+		}
+		return nb;
+	}
+	
+	/**
+	 * <b>Suppression de la moitié des clauses apprises de LBD supérieur à 2, en
+	 * commençant par les LBD les plus élevés.</b>
+	 * 
+	 * <p> Les clauses raisons d'une affectation courante sont conservées. Les listes
+	 * de surveillance oublient les clauses supprimées lors de leur prochain parcours.
+	 */
+	private void reduireApprises() {
+		long[] candidates = new long[apprises.taille()];
+		int nb = 0;
+		for (int k=0 ; k < apprises.taille() ; k++) {
+			int indice = apprises.get(k);
+			int[] c = clauses.get(indice);
+			boolean raison = valeurLitteral(c[0]) == 1 && raisons[c[0] >> 1] == indice;
+			if (lbd.get(indice) > 2 && !raison) {
+				candidates[nb++] = (long) lbd.get(indice) << 32 | indice;
+			}
+		}
+		Arrays.sort(candidates, 0, nb);
+		for (int k = nb / 2 ; k < nb ; k++) {
+			clauses.set((int) candidates[k], null);
+		}
+		ListeEntiers restantes = new ListeEntiers();
+		for (int k=0 ; k < apprises.taille() ; k++) {
+			if (clauses.get(apprises.get(k)) != null) restantes.ajouter(apprises.get(k));
+		}
+		apprises = restantes;
+		maxApprises += maxApprises / 10;
+	}
+	
+	private int decider() {
+		while (!tas.estVide()) {
+			int v = tas.retirerMax();
+			if (valeurs[v] == 0) {
+				return 2 * v + (phases[v] ? 0 : 1);
+			}
+		}
+		return AUCUNE;
+	}
+	
+	private int attacher(int[] clause, int lbdClause) {
+		int indice = clauses.size();
+		clauses.add(clause);
+		lbd.ajouter(lbdClause);
+		surveillances[clause[0]].ajouter(indice);
+		surveillances[clause[1]].ajouter(indice);
+		return indice;
+	}
+	
+	private void affecter(int litteral, int raison) {
+		int v = litteral >> 1;
+		valeurs[v] = (byte) ((litteral & 1) == 0 ? 1 : -1);
+		niveaux[v] = niveauCourant();
+		raisons[v] = raison;
+		trainee[tailleTrainee++] = litteral;
+	}
+	
+	private void retourArriere(int niveau) {
+		if (niveauCourant() <= niveau) return;
+		int limite = limitesNiveaux.get(niveau);
+		for (int k = tailleTrainee - 1 ; k >= limite ; k--) {
+			int l = trainee[k];
+			int v = l >> 1;
+			phases[v] = (l & 1) == 0;
+			valeurs[v] = 0;
+			raisons[v] = AUCUNE;
+			if (!tas.contient(v)) tas.inserer(v);
+		}
+		tailleTrainee = limite;
+		tetePropagation = limite;
+		limitesNiveaux.tronquer(niveau);
+	}
+	
+	private int niveauCourant() {
+		return limitesNiveaux.taille();
+	}
+	
+	private int valeurLitteral(int litteral) {
+		int valeur = valeurs[litteral >> 1];
+		return (litteral & 1) == 0 ? valeur : -valeur;
+	}
+	
+	private void augmenterActivite(int v) {
+		activites[v] += incrementActivite;
+		if (activites[v] > 1e100) {
+			for (int k=0 ; k < nbVariables ; k++) {
+				activites[k] *= 1e-100;
+			}
+			incrementActivite *= 1e-100;
+		}
+		if (tas.contient(v)) tas.remonter(v);
+	}
+	
+	/**
+	 * @return Le terme d'indice i (à partir de 1) de la suite de Luby : 1 1 2 1 1 2 4 1 ...
+	 */
+	static long luby(int i) {
+		while (true) {
+			int k = 1;
+			while ((1L << k) - 1 < i) k++;
+			if (i == (1L << k) - 1) return 1L << (k - 1);
+			i -= (1 << (k - 1)) - 1;
+		}
+	}
+	
+	/**
+	 * <b>Liste d'entiers agrandie au besoin, sans entiers boxés.</b>
+	 */
+	private static class ListeEntiers {
+		private int[] valeurs = new int[4];
+		private int taille;
+		
+		void ajouter(int valeur) {
+			if (taille == valeurs.length) valeurs = Arrays.copyOf(valeurs, taille * 2);
+			valeurs[taille++] = valeur;
+		}
+		
+		int get(int k) {
+			return valeurs[k];
+		}
+		
+		void set(int k, int valeur) {
+			valeurs[k] = valeur;
+		}
+		
+		int taille() {
+			return taille;
+		}
+		
+		void tronquer(int nouvelleTaille) {
+			taille = nouvelleTaille;
+		}
+		
+		int[] versTableau() {
+			return Arrays.copyOf(valeurs, taille);
+		}
+	}
+	
+	/**
+	 * <b>Tas binaire des variables, la plus active en tête.</b>
+	 */
+	private class TasVariables {
+		private final int[] tas = new int[nbVariables];
+		private final int[] positions = new int[nbVariables];
+		private int taille;
+		
+		TasVariables() {
+			Arrays.fill(positions, AUCUNE);
+		}
+		
+		boolean estVide() {
+			return taille == 0;
+		}
+		
+		boolean contient(int v) {
+			return positions[v] != AUCUNE;
+		}
+		
+		void inserer(int v) {
+			tas[taille] = v;
+			positions[v] = taille++;
+			remonter(v);
+		}
+		
+		int retirerMax() {
+			int max = tas[0];
+			positions[max] = AUCUNE;
+			taille--;
+			if (taille > 0) {
+				tas[0] = tas[taille];
+				positions[tas[0]] = 0;
+				descendre(0);
+			}
+			return max;
+		}
+		
+		void remonter(int v) {
+			int k = positions[v];
+			while (k > 0) {
+				int parent = (k - 1) / 2;
+				if (activites[tas[parent]] >= activites[v]) break;
+				tas[k] = tas[parent];
+				positions[tas[k]] = k;
+				k = parent;
+			}
+			tas[k] = v;
+			positions[v] = k;
+		}
+		
+		private void descendre(int k) {
+			int v = tas[k];
+			while (true) {
+				int enfant = 2 * k + 1;
+				if (enfant >= taille) break;
+				if (enfant + 1 < taille && activites[tas[enfant + 1]] > activites[tas[enfant]]) enfant++;
+				if (activites[tas[enfant]] <= activites[v]) break;
+				tas[k] = tas[enfant];
+				positions[tas[k]] = k;
+				k = enfant;
+			}
+			tas[k] = v;
+			positions[v] = k;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package gloo.flowfree.solveur;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import gloo.flowfree.model.Direction;
+import gloo.flowfree.model.Niveau;
+import gloo.flowfree.model.Palette;
+import gloo.flowfree.model.TousNiveaux;
+import gloo.flowfree.outils.VerificateurSolutions;
+
+/**
+ * <b>Classe résolvant un niveau par le solveur SAT embarqué.</b>
+ * 
+ * <p> Le niveau est encodé en CNF, résolu par le solveur CDCL ; tant que le modèle
+ * contient des cycles isolés, ils sont interdits et la résolution reprend sur le
+ * même solveur (les clauses apprises sont conservées). Le modèle final est décodé
+ * en une liste de directions par couleur.
+ * 
+ * <p> Utilisation en ligne de commande :
+ * <code>SolveurNiveau [--dimacs repertoire] [--solutions fichier] [--cache fichier] [id...]</code>
+ * <ul>
+ *     <li> Sans identifiant, tous les niveaux du fichier niveaux.txt sont résolus.
+ *     <li> --dimacs écrit la formule de chaque niveau (cycles interdits compris) dans
+ *          repertoire/niveau-id.cnf, pour comparaison avec des solveurs de référence.
+ *     <li> --solutions écrit les solutions au format lu par VerificateurSolutions.
+ *     <li> --cache complète un cache de solutions : les niveaux déjà présents ne sont
+ *          pas résolus à nouveau.
+ * </ul>
+ * Chaque solution est contrôlée par VerificateurSolutions avant d'être annoncée.
+ * 
+ * @see EncodeurNiveau
+ * @see SolveurCdcl
+ * @see CacheSolutions
+ * 
+ * @author Maëlle Renaud
+ * 
+ */
+public class SolveurNiveau {
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final Niveau niveau;
+	private final EncodeurNiveau encodeur;
+	private final SolveurCdcl solveur;
+	private int nbCyclesInterdits;
+	private SolveurCdcl.Resultat resultat;
+	
+	// Constructeur
+	/**
+	 * <b>Constructeur encodant le niveau et chargeant la formule dans le solveur.</b>
+	 * 
+	 * @param niveau Niveau à résoudre.
+	 */
+	public SolveurNiveau(Niveau niveau) {
+		this.niveau = niveau;
+		this.encodeur = new EncodeurNiveau(niveau);
+		this.solveur = new SolveurCdcl(encodeur.getFormule());
+	}
+	
+	// Getters
+	public FormuleCnf getFormule() {
+		return encodeur.getFormule();
+	}
+	
+	public SolveurCdcl getSolveur() {
+		return solveur;
+	}
+	
+	public int getNbCyclesInterdits() {
+		return nbCyclesInterdits;
+	}
+	
+	/**
+	 * @return La réponse du dernier appel du solveur, null avant la résolution.
+	 */
+	public SolveurCdcl.Resultat getResultat() {
+		return resultat;
+	}
+	
+	// Autres méthodes
+	/**
+	 * <b>Méthode résolvant le niveau.</b>
+	 * 
+	 * @param limiteConflits Nombre maximal de conflits par appel du solveur, 0 pour aucune limite.
+	 * 
+	 * @return Pour chaque couleur (indice dans la palette), les ordinaux des directions
+	 *         du tuyau partant de son premier plot ; null si le niveau n'a pas de solution
+	 *         ou si la limite de conflits a été atteinte.
+	 * 
+	 * @see EncodeurNiveau#decoder(SolveurCdcl, int)
+	 */
+	public byte[][] resoudre(long limiteConflits) {
+		while (true) {
+			resultat = solveur.resoudre(limiteConflits);
+			if (resultat != SolveurCdcl.Resultat.SATISFIABLE) {
+				return null;
+			}
+			int nbCycles = encodeur.interdireCycles(solveur);
+			if (nbCycles == 0) {
+				return encodeur.decoder(solveur, niveau.getPalette().getNbCouleurs());
+			}
+			nbCyclesInterdits += nbCycles;
+		}
+	}
+	
+	/**
+	 * <b>Méthode donnant la solution d'un niveau, lue dans le cache si elle y est,
+	 * calculée et ajoutée au cache sinon.</b>
+	 * 
+	 * @param cache Cache de solutions.
+	 * @param niveau Niveau à résoudre.
+	 * @param limiteConflits Nombre maximal de conflits par appel du solveur, 0 pour aucune limite.
+	 * 
+	 * @return La solution au format de resoudre(long), null si elle n'a pas été trouvée.
+	 * 
+	 * @throws IOException Si la solution ne peut pas être ajoutée au cache.
+	 */
+	public static byte[][] solution(CacheSolutions cache, Niveau niveau, long limiteConflits) throws IOException {
+		byte[][] chemins = cache.chercher(niveau);
+		if (chemins == null) {
+			chemins = new SolveurNiveau(niveau).resoudre(limiteConflits);
+			if (chemins != null) cache.ajouter(niveau, chemins);
+		}
+		return chemins;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		Path repertoireDimacs = null;
+		Path fichierSolutions = null;
+		Path fichierCache = null;
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int a=0 ; a < args.length ; a++) {
+			if (args[a].equals("--dimacs") && a + 1 < args.length) {
+				repertoireDimacs = Path.of(args[++a]);
+				Files.createDirectories(repertoireDimacs);
+			} else if (args[a].equals("--solutions") && a + 1 < args.length) {
+				fichierSolutions = Path.of(args[++a]);
+			} else if (args[a].equals("--cache") && a + 1 < args.length) {
+				fichierCache = Path.of(args[++a]);
+			} else {
+				try {
+					ids.add(Integer.parseInt(args[a]));
+				} catch (NumberFormatException e) {
+					System.err.println("Utilisation : SolveurNiveau [--dimacs repertoire] [--solutions fichier] [--cache fichier] [id...]");
+					System.exit(2);
+				}
+			}
+		}
+		TousNiveaux tousNiveaux = new TousNiveaux();
+		if (ids.isEmpty()) {
+			for (int id=1 ; tousNiveaux.existe(id) ; id++) ids.add(id);
+		}
+		VerificateurSolutions verificateur = new VerificateurSolutions(tousNiveaux);
+		
+		int nbEchecs = 0;
+		int nbEnCache = 0;
+		try (CacheSolutions cache = fichierCache == null ? null : CacheSolutions.ouvrir(fichierCache);
+				PrintWriter solutions = fichierSolutions == null ? null
+				: new PrintWriter(Files.newBufferedWriter(fichierSolutions, StandardCharsets.UTF_8))) {
+			for (int id : ids) {
+				if (!tousNiveaux.existe(id)) {
+					System.out.println("Niveau " + id + " : inexistant");
+					nbEchecs++;
+					continue;
+				}
+				Niveau niveau = tousNiveaux.getNiveau(id);
+				if (cache != null) {
+					long debut = System.nanoTime();
+					byte[][] chemins = cache.chercher(niveau);
+					long duree = System.nanoTime() - debut;
+					if (chemins != null) {
+						String rejet = verificateur.verifier(niveau, chemins);
+						System.out.println("Niveau " + id + " : " + (rejet == null ? "en cache" : "solution en cache rejetée, " + rejet)
+								+ " (lue en " + duree / 1000 + " µs)");
+						if (rejet != null) nbEchecs++;
+						if (solutions != null) ecrireSolution(solutions, niveau, chemins);
+						nbEnCache++;
+						continue;
+					}
+				}
+				long debut = System.nanoTime();
+				SolveurNiveau solveurNiveau = new SolveurNiveau(niveau);
+				byte[][] chemins = solveurNiveau.resoudre(0);
+				long duree = System.nanoTime() - debut;
+				
+				String bilan;
+				if (chemins == null) {
+					bilan = solveurNiveau.getResultat().name().toLowerCase();
+					nbEchecs++;
+				} else {
+					String rejet = verificateur.verifier(niveau, chemins);
+					bilan = rejet == null ? "résolu" : "solution rejetée, " + rejet;
+					if (rejet != null) nbEchecs++;
+					if (solutions != null) ecrireSolution(solutions, niveau, chemins);
+					if (cache != null && rejet == null) cache.ajouter(niveau, chemins);
+				}
+				SolveurCdcl solveur = solveurNiveau.getSolveur();
+				System.out.println("Niveau " + id + " : " + bilan + " en " + duree / 1_000_000 + " ms ("
+						+ solveurNiveau.getFormule().getNbVariables() + " variables, "
+						+ solveurNiveau.getFormule().getClauses().size() + " clauses, "
+						+ solveur.getNbConflits() + " conflits, " + solveur.getNbDecisions() + " décisions, "
+						+ solveurNiveau.getNbCyclesInterdits() + " cycles interdits)");
+				if (repertoireDimacs != null) {
+					solveurNiveau.getFormule().ecrireDimacs(repertoireDimacs.resolve("niveau-" + id + ".cnf"));
+				}
+			}
+			if (cache != null) {
+				System.out.println(ids.size() + " niveaux, " + nbEnCache + " repris du cache, " + cache.getNbSolutions()
+						+ " solutions en cache (" + cache.getTaille() + " octets)");
+			}
+		}
+		System.exit(nbEchecs == 0 ? 0 : 1);
+	}
+	
+	/**
+	 * <b>Écrit une solution au format lu par VerificateurSolutions.</b>
+	 */
+	private static void ecrireSolution(PrintWriter sortie, Niveau niveau, byte[][] chemins) {
+		Palette palette = niveau.getPalette();
+		sortie.println("Solution " + niveau.getId());
+		for (int c : niveau.getCouleursNiveau()) {
+			StringBuilder ligne = new StringBuilder(palette.getNom(c)).append(';');
+			for (int k=0 ; k < chemins[c].length ; k++) {
+				if (k > 0) ligne.append(',');
+				ligne.append(DIRECTIONS[chemins[c][k]].name());
+			}
+			sortie.println(ligne);
+		}
+		sortie.println();
+	}
+}
@@ -1,3 +1,9 @@
 module gloo.freeflow {
 	requires java.desktop;
+	requires java.management;
+	requires jdk.httpserver;
+	requires jdk.jfr;
+	requires jdk.management;
+	
+	exports gloo.flowfree.mesure to java.management;
 }
\ No newline at end of file